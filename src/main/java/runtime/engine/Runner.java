@@ -3,6 +3,8 @@ package runtime.engine;
 import reactor.core.publisher.Flux;
 import runtime.engine.agents.Agent;
 import runtime.engine.memory.context.ContextManager;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.service.SessionHistoryService;
 import runtime.engine.schemas.agent.AgentRequest;
 import runtime.engine.schemas.agent.Event;
 import runtime.engine.schemas.context.Context;
@@ -20,10 +22,16 @@ import java.util.concurrent.CompletableFuture;
  */
 public class Runner implements AutoCloseable {
 
+    // 默认传给智能体的历史消息令牌预算
+    private static final int DEFAULT_HISTORY_TOKENS = 8000;
+
     private final Agent agent;
     private final ContextManager contextManager;
     private final String sessionId;
     private final String userId;
+    private MessageWindow historyWindow = MessageWindow.tokenBudget(DEFAULT_HISTORY_TOKENS);
+    // 会话是否已确认存在，确认后保存对话时不再读取会话
+    private volatile boolean sessionReady;
 
     public Runner(Agent agent, ContextManager contextManager) {
         this(agent, contextManager, "default_user", UUID.randomUUID().toString());
@@ -36,19 +44,26 @@ public class Runner implements AutoCloseable {
         this.sessionId = sessionId;
     }
 
+    /**
+     * 设置每轮对话加载的历史消息窗口，默认为令牌预算内的最近消息
+     */
+    public void setHistoryWindow(MessageWindow historyWindow) {
+        this.historyWindow = historyWindow;
+    }
+
     public Flux<Event> streamQuery(AgentRequest request) {
         return Flux.create(sink -> {
             try {
-                // 获取或创建Session
-                runtime.engine.memory.model.Session memorySession = getOrCreateSession(userId, sessionId);
+                // 只加载窗口内的历史消息
+                List<runtime.engine.memory.model.Message> history = loadHistory();
 
                 Session session = new Session();
-                session.setId(memorySession.getId());
-                session.setUserId(memorySession.getUserId());
+                session.setId(sessionId);
+                session.setUserId(userId);
                 // 转换历史消息类型
                 List<runtime.engine.schemas.agent.Message> convertedMessages = new ArrayList<>();
-                if (memorySession.getMessages() != null) {
-                    for (runtime.engine.memory.model.Message memoryMsg : memorySession.getMessages()) {
+                if (history != null) {
+                    for (runtime.engine.memory.model.Message memoryMsg : history) {
                         runtime.engine.schemas.agent.Message agentMsg = new runtime.engine.schemas.agent.Message();
                         agentMsg.setRole(memoryMsg.getType() == runtime.engine.memory.model.MessageType.USER ? "user" : "assistant");
                         
@@ -146,12 +161,29 @@ public class Runner implements AutoCloseable {
         return text;
     }
 
+    /**
+     * 按历史窗口读取会话消息，会话不存在时返回空列表
+     */
+    private List<runtime.engine.memory.model.Message> loadHistory() {
+        SessionHistoryService sessionHistoryService = contextManager.getSessionHistoryService();
+        if (sessionHistoryService == null) {
+            return new ArrayList<>();
+        }
+        return sessionHistoryService.getMessages(userId, sessionId, historyWindow).join().getMessages();
+    }
+
     /**
      * 获取或创建Session
+     * 只在首次保存时确认会话存在且不加载历史，之后直接用不含消息的会话对象追加，本轮的历史已由loadHistory读取
      */
     private runtime.engine.memory.model.Session getOrCreateSession(String userId, String sessionId) {
+        if (sessionReady) {
+            return new runtime.engine.memory.model.Session(sessionId, userId, new ArrayList<>());
+        }
         try {
-            return contextManager.composeSession(userId, sessionId).join();
+            runtime.engine.memory.model.Session session = contextManager.ensureSession(userId, sessionId).join();
+            sessionReady = true;
+            return session;
         } catch (Exception e) {
             // 如果Session不存在，通过ContextManager创建
             try {
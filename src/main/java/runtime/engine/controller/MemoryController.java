@@ -4,10 +4,14 @@ import runtime.engine.memory.dto.ContentItem;
 import runtime.engine.memory.dto.MemoryItem;
 import runtime.engine.memory.dto.MemoryRequest;
 import runtime.engine.memory.dto.MemoryResponse;
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.MemoryRecordPage;
+import runtime.engine.memory.model.MemoryStats;
 import runtime.engine.memory.model.Message;
 import runtime.engine.memory.model.MessageContent;
 import runtime.engine.memory.model.MessageType;
 import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
 import runtime.engine.memory.service.MemoryService;
 import runtime.engine.memory.service.SessionHistoryService;
 import runtime.engine.infrastructure.config.memory.MemoryProperties;
@@ -15,8 +19,10 @@ import runtime.engine.memory.context.ContextManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -44,13 +50,15 @@ public class MemoryController {
      * @param userId 用户ID
      * @param pageNum 页码（可选，默认1）
      * @param pageSize 页面大小（可选，默认10）
+     * @param cursor 游标（可选，传入时按游标翻页并忽略页码，空字符串表示第一页）
      * @return 记忆列表
      */
     @GetMapping("/user/{userId}")
     public CompletableFuture<ResponseEntity<MemoryResponse>> getUserMemories(
             @PathVariable String userId,
             @RequestParam(required = false) Integer pageNum,
-            @RequestParam(required = false) Integer pageSize) {
+            @RequestParam(required = false) Integer pageSize,
+            @RequestParam(required = false) String cursor) {
         
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -63,6 +71,11 @@ public class MemoryController {
                 int actualPageNum = pageNum != null ? pageNum : 1;
                 int actualPageSize = pageSize != null ? pageSize : memoryProperties.getDefaultPageSize();
                 
+                if (cursor != null) {
+                    return ResponseEntity.ok(cursorPage(memoryService, Optional.of(userId), cursor, actualPageSize,
+                        "获取用户记忆成功"));
+                }
+                
                 Map<String, Object> filters = Map.of(
                     "page_num", actualPageNum,
                     "page_size", actualPageSize
@@ -285,12 +298,14 @@ public class MemoryController {
      * 
      * @param pageNum 页码（可选，默认1）
      * @param pageSize 页面大小（可选，默认50）
+     * @param cursor 游标（可选，传入时按游标翻页并忽略页码，空字符串表示第一页）
      * @return 所有记忆列表
      */
     @GetMapping("/all")
     public CompletableFuture<ResponseEntity<MemoryResponse>> getAllMemories(
             @RequestParam(defaultValue = "1") int pageNum,
-            @RequestParam(defaultValue = "50") int pageSize) {
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(required = false) String cursor) {
         
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -299,6 +314,12 @@ public class MemoryController {
                     return ResponseEntity.ok(MemoryResponse.error("记忆服务未启用"));
                 }
                 
+                // 游标分页：每页耗时与翻到第几页无关
+                if (cursor != null) {
+                    return ResponseEntity.ok(cursorPage(memoryService, Optional.empty(), cursor, pageSize,
+                        "获取所有记忆成功"));
+                }
+                
                 // 获取所有记忆（这里需要实现获取所有用户记忆的方法）
                 List<MemoryItem> allMemories = getAllMemoriesFromAllUsers(memoryService, pageNum, pageSize);
                 
@@ -342,6 +363,51 @@ public class MemoryController {
         });
     }
     
+    /**
+     * 以NDJSON流式返回所有用户ID，每行一个，适用于用户量较大的存储
+     * 
+     * @return 用户ID流
+     */
+    @GetMapping(value = "/users/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<String> streamAllUsers() {
+        MemoryService memoryService = contextManager.getMemoryService();
+        if (memoryService == null) {
+            return Flux.empty();
+        }
+        return memoryService.streamAllUsers();
+    }
+    
+    /**
+     * 以NDJSON流式返回所有用户的所有记忆，边读边写，不在内存中汇总全部记忆（管理员接口）
+     * 
+     * @return 记忆流
+     */
+    @GetMapping(value = "/all/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MemoryItem> streamAllMemories() {
+        MemoryService memoryService = contextManager.getMemoryService();
+        if (memoryService == null) {
+            return Flux.empty();
+        }
+        return memoryService.streamMemories(Optional.empty())
+            .map(this::convertRecordToMemoryItem);
+    }
+    
+    /**
+     * 以NDJSON流式返回指定用户的所有记忆，边读边写，不在内存中汇总全部记忆
+     * 
+     * @param userId 用户ID
+     * @return 记忆流
+     */
+    @GetMapping(value = "/user/{userId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MemoryItem> streamUserMemories(@PathVariable String userId) {
+        MemoryService memoryService = contextManager.getMemoryService();
+        if (memoryService == null) {
+            return Flux.empty();
+        }
+        return memoryService.streamMemories(Optional.of(userId))
+            .map(this::convertRecordToMemoryItem);
+    }
+    
     /**
      * 获取指定用户的记忆统计信息
      * 
@@ -392,6 +458,42 @@ public class MemoryController {
             .collect(Collectors.toList());
     }
     
+    /**
+     * 读取一页游标分页的记忆，下一页游标放在data.next_cursor中，没有下一页时为null
+     */
+    private MemoryResponse cursorPage(MemoryService memoryService, Optional<String> userId, String cursor,
+                                      int pageSize, String message) throws Exception {
+        Optional<String> startCursor = cursor.isEmpty() ? Optional.empty() : Optional.of(cursor);
+        MemoryRecordPage page = memoryService.listMemoryRecords(userId, startCursor, pageSize).get();
+        List<MemoryItem> memoryItems = page.getRecords().stream()
+            .map(this::convertRecordToMemoryItem)
+            .collect(Collectors.toList());
+        
+        Map<String, Object> data = new HashMap<>();
+        data.put("next_cursor", page.getNextCursor());
+        MemoryResponse response = MemoryResponse.success(message, data);
+        response.setMemories(memoryItems);
+        return response;
+    }
+    
+    /**
+     * 将MemoryRecord转换为MemoryItem
+     */
+    private MemoryItem convertRecordToMemoryItem(MemoryRecord record) {
+        Message msg = record.getMessage();
+        MemoryItem item = new MemoryItem();
+        item.setId(record.getId());
+        item.setUserId(record.getUserId());
+        item.setSessionId(record.getSessionId());
+        item.setType(msg.getType().name());
+        item.setContent(msg.getContent().stream()
+            .map(content -> new ContentItem(content.getType(), content.getText()))
+            .collect(Collectors.toList()));
+        item.setMetadata(msg.getMetadata());
+        item.setTimestamp(record.getTimestamp());
+        return item;
+    }
+    
     /**
      * 将Session转换为MemoryItem列表
      */
@@ -472,7 +574,7 @@ public class MemoryController {
      */
     private List<String> getAllUsersFromMemory(MemoryService memoryService) {
         try {
-            return memoryService.getAllUsers().get();
+            return memoryService.streamAllUsers().collectList().block();
         } catch (Exception e) {
             logger.error("获取所有用户失败", e);
             return Collections.emptyList();
@@ -481,49 +583,23 @@ public class MemoryController {
     
     
     /**
-     * 获取用户记忆统计信息
+     * 获取用户记忆统计信息，两个服务的统计并行读取
      */
     private Map<String, Object> getUserMemoryStatistics(MemoryService memoryService, SessionHistoryService sessionService, String userId) {
         try {
-            Map<String, Object> stats = new HashMap<>();
-            
-            // 获取记忆统计
-            Map<String, Object> memoryFilters = Map.of("page_num", 1, "page_size", 10000);
-            List<Message> memories = memoryService.listMemory(userId, Optional.of(memoryFilters)).get();
-            
-            stats.put("total_memories", memories.size());
-            stats.put("user_messages", memories.stream()
-                .filter(msg -> msg.getType() == MessageType.USER)
-                .count());
-            stats.put("assistant_messages", memories.stream()
-                .filter(msg -> msg.getType() == MessageType.ASSISTANT)
-                .count());
+            CompletableFuture<MemoryStats> memoryStatsFuture = memoryService.getMemoryStats(userId);
+            CompletableFuture<SessionStats> sessionStatsFuture = sessionService.getSessionStats(userId);
+            MemoryStats memoryStats = memoryStatsFuture.get();
+            SessionStats sessionStats = sessionStatsFuture.get();
             
-            // 获取会话统计
-            List<Session> sessions = sessionService.listSessions(userId).get();
-            stats.put("total_sessions", sessions.size());
-            
-            // 计算平均会话长度
-            if (!sessions.isEmpty()) {
-                double avgSessionLength = sessions.stream()
-                    .mapToInt(session -> session.getMessages().size())
-                    .average()
-                    .orElse(0.0);
-                stats.put("avg_session_length", Math.round(avgSessionLength * 100.0) / 100.0);
-            } else {
-                stats.put("avg_session_length", 0.0);
-            }
-            
-            // 获取最近活动时间
-            if (!memories.isEmpty()) {
-                long latestTimestamp = memories.stream()
-                    .mapToLong(msg -> System.currentTimeMillis()) // 这里应该从消息中获取实际时间戳
-                    .max()
-                    .orElse(0L);
-                stats.put("last_activity", latestTimestamp);
-            } else {
-                stats.put("last_activity", 0L);
-            }
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("total_memories", memoryStats.getTotalMemories());
+            stats.put("user_messages", memoryStats.getUserMessages());
+            stats.put("assistant_messages", memoryStats.getAssistantMessages());
+            stats.put("total_sessions", sessionStats.getTotalSessions());
+            stats.put("total_session_messages", sessionStats.getTotalMessages());
+            stats.put("avg_session_length", sessionStats.getAverageSessionLength());
+            stats.put("last_activity", Math.max(memoryStats.getLastActivity(), sessionStats.getLastActivity()));
             
             return stats;
             
@@ -3,24 +3,61 @@ package runtime.engine.infrastructure.config.memory;
 import runtime.engine.memory.service.EmbeddingService;
 import runtime.engine.memory.service.MemoryService;
 import runtime.engine.memory.service.SessionHistoryService;
+import runtime.engine.memory.persistence.memory.service.ArchiveJob;
+import runtime.engine.memory.persistence.memory.service.CachingEmbeddingService;
 import runtime.engine.memory.persistence.memory.service.InMemoryMemoryService;
+import runtime.engine.memory.persistence.memory.service.LocalMemoryService;
 import runtime.engine.memory.persistence.memory.service.MySQLMemoryService;
 import runtime.engine.memory.persistence.memory.service.RedisMemoryService;
 import runtime.engine.memory.persistence.memory.service.SimpleEmbeddingService;
+import runtime.engine.memory.persistence.memory.service.SpringAiEmbeddingService;
 import runtime.engine.memory.persistence.session.InMemorySessionHistoryService;
+import runtime.engine.memory.persistence.session.LocalSessionHistoryService;
 import runtime.engine.memory.persistence.session.MySQLSessionHistoryService;
 import runtime.engine.memory.persistence.session.RedisSessionHistoryService;
+import runtime.engine.memory.persistence.memory.repository.ArchiveReader;
+import runtime.engine.memory.persistence.memory.repository.LocalKeyValueStore;
 import runtime.engine.memory.persistence.memory.repository.MemoryRepository;
+import runtime.engine.memory.persistence.memory.repository.MemoryStreamReader;
+import runtime.engine.memory.persistence.memory.repository.MessageBatchWriter;
+import runtime.engine.memory.persistence.memory.repository.StatsCounterRepository;
 import runtime.engine.memory.persistence.memory.repository.SessionMessageRepository;
 import runtime.engine.memory.persistence.memory.repository.SessionRepository;
+import runtime.engine.memory.codec.MessageCodec;
+import runtime.engine.memory.context.CachingSessionHistoryService;
 import runtime.engine.memory.context.ContextManager;
 import runtime.engine.memory.context.ContextManagerFactory;
+import runtime.engine.memory.context.LocalSessionInvalidationBus;
+import runtime.engine.memory.context.RedisSessionInvalidationBus;
+import runtime.engine.memory.context.SessionInvalidationBus;
+import runtime.engine.memory.index.FlatVectorIndex;
+import runtime.engine.memory.index.HnswVectorIndex;
+import runtime.engine.memory.index.ProductQuantizedVectorIndex;
+import runtime.engine.memory.index.ScalarQuantizedVectorIndex;
+import runtime.engine.memory.index.VectorIndexRegistry;
+import runtime.engine.memory.retrieval.HybridMemoryService;
+import runtime.engine.memory.retrieval.RetrievalMode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * 内存服务配置类
@@ -30,24 +67,40 @@ import org.springframework.data.redis.core.RedisTemplate;
 @EnableConfigurationProperties(MemoryProperties.class)
 public class MemoryConfig {
     
+    private static final Logger logger = LoggerFactory.getLogger(MemoryConfig.class);
+    
     /**
      * 默认的内存服务（内存实现）
      */
     @Bean
     @ConditionalOnProperty(name = "memory.service.type", havingValue = "memory", matchIfMissing = true)
-    public MemoryService inMemoryMemoryService(MemoryProperties memoryProperties) {
-        InMemoryMemoryService service = new InMemoryMemoryService();
+    public MemoryService inMemoryMemoryService(MemoryProperties memoryProperties,
+                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        MemoryProperties.InMemory inMemory = memoryProperties.getInMemory();
+        InMemoryMemoryService service = new InMemoryMemoryService(inMemory.getMaxMemoryMessages(),
+            Duration.ofMinutes(inMemory.getIdleTtlMinutes()));
         service.setMemoryProperties(memoryProperties);
+        meterRegistry.ifAvailable(service::bindTo);
         return service;
     }
     
     /**
-     * 默认的会话历史服务（内存实现）
+     * 默认的会话历史服务（内存实现），按配置限制容量并可溢出到磁盘
      */
     @Bean
     @ConditionalOnProperty(name = "memory.service.type", havingValue = "memory", matchIfMissing = true)
-    public SessionHistoryService inMemorySessionHistoryService() {
-        return new InMemorySessionHistoryService();
+    public SessionHistoryService inMemorySessionHistoryService(MemoryProperties memoryProperties,
+                                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        MemoryProperties.InMemory inMemory = memoryProperties.getInMemory();
+        String spillDirectory = inMemory.getSpillDirectory();
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService(
+            inMemory.getMaxSessions(),
+            inMemory.getMaxSessionBytes(),
+            inMemory.getMaxMessagesPerSession(),
+            Duration.ofMinutes(inMemory.getIdleTtlMinutes()),
+            spillDirectory != null && !spillDirectory.isBlank() ? Paths.get(spillDirectory) : null);
+        meterRegistry.ifAvailable(service::bindTo);
+        return service;
     }
     
     /**
@@ -56,56 +109,250 @@ public class MemoryConfig {
     @Bean
     @ConditionalOnProperty(name = "memory.service.type", havingValue = "redis")
     public MemoryService redisMemoryService(RedisTemplate<String, String> redisTemplate, MemoryProperties memoryProperties) {
-        RedisMemoryService service = new RedisMemoryService(redisTemplate);
+        RedisMemoryService service = new RedisMemoryService(redisTemplate, createMessageCodec(memoryProperties));
         service.setMemoryProperties(memoryProperties);
         return service;
     }
     
     /**
-     * Redis会话历史服务
+     * Redis会话历史服务，启用近端缓存时在外层包装进程内缓存
      */
     @Bean
     @ConditionalOnProperty(name = "memory.service.type", havingValue = "redis")
-    public SessionHistoryService redisSessionHistoryService(RedisTemplate<String, String> redisTemplate) {
-        return new RedisSessionHistoryService(redisTemplate);
+    public SessionHistoryService redisSessionHistoryService(RedisTemplate<String, String> redisTemplate,
+                                                            MemoryProperties memoryProperties,
+                                                            ObjectProvider<MeterRegistry> meterRegistry) {
+        RedisSessionHistoryService service = new RedisSessionHistoryService(redisTemplate,
+            RedisSessionHistoryService.Layout.fromName(memoryProperties.getSessionHistory().getRedisLayout()),
+            createMessageCodec(memoryProperties));
+        return withNearCache(service, memoryProperties, redisTemplate, meterRegistry);
     }
     
     /**
-     * 默认的嵌入服务
+     * 本地持久化内存服务，数据保存在本地目录的日志结构键值存储中
      */
     @Bean
-    public EmbeddingService embeddingService() {
-        return new SimpleEmbeddingService();
+    @ConditionalOnProperty(name = "memory.service.type", havingValue = "local")
+    public MemoryService localMemoryService(MemoryProperties memoryProperties) {
+        MemoryProperties.Local local = memoryProperties.getLocal();
+        LocalMemoryService service = new LocalMemoryService(openLocalStore(local, "memory"),
+            createMessageCodec(memoryProperties), local.getMaxIndexedUsers());
+        service.setMemoryProperties(memoryProperties);
+        return service;
+    }
+    
+    /**
+     * 本地持久化会话历史服务
+     */
+    @Bean
+    @ConditionalOnProperty(name = "memory.service.type", havingValue = "local")
+    public SessionHistoryService localSessionHistoryService(MemoryProperties memoryProperties) {
+        return new LocalSessionHistoryService(openLocalStore(memoryProperties.getLocal(), "sessions"),
+            createMessageCodec(memoryProperties));
+    }
+    
+    /**
+     * 按配置在远程会话历史服务外层包装近端缓存，失效通知优先使用Redis发布/订阅
+     */
+    private SessionHistoryService withNearCache(SessionHistoryService service, MemoryProperties memoryProperties,
+                                                RedisTemplate<String, String> redisTemplate,
+                                                ObjectProvider<MeterRegistry> meterRegistry) {
+        MemoryProperties.SessionHistory.NearCache nearCache = memoryProperties.getSessionHistory().getNearCache();
+        if (!nearCache.isEnabled()) {
+            return service;
+        }
+        SessionInvalidationBus invalidationBus;
+        if ("redis".equalsIgnoreCase(nearCache.getInvalidation()) && redisTemplate != null) {
+            invalidationBus = new RedisSessionInvalidationBus(redisTemplate, nearCache.getChannel());
+        } else {
+            if ("redis".equalsIgnoreCase(nearCache.getInvalidation())) {
+                logger.warn("未找到RedisTemplate，会话近端缓存的失效通知只在进程内生效，多节点部署时依赖过期时间");
+            }
+            invalidationBus = new LocalSessionInvalidationBus();
+        }
+        CachingSessionHistoryService cachingService = new CachingSessionHistoryService(service, invalidationBus,
+            nearCache.getMaxSessions(), nearCache.getMaxMessagesPerSession(),
+            Duration.ofSeconds(nearCache.getTtlSeconds()));
+        meterRegistry.ifAvailable(cachingService::bindTo);
+        return cachingService;
+    }
+    
+    private LocalKeyValueStore openLocalStore(MemoryProperties.Local local, String name) {
+        return new LocalKeyValueStore(Paths.get(local.getDirectory(), name), local.getSyncIntervalMs(),
+            local.getCompactionMinBytes());
+    }
+    
+    /**
+     * 按配置创建消息编解码器
+     */
+    private MessageCodec createMessageCodec(MemoryProperties memoryProperties) {
+        MemoryProperties.Codec codec = memoryProperties.getCodec();
+        return MessageCodec.forName(codec.getFormat(), codec.getCompressionThreshold());
+    }
+    
+    /**
+     * 嵌入服务
+     * provider为spring-ai且容器中存在EmbeddingModel时使用远程模型，否则使用内置TF-IDF实现；
+     * 启用缓存时在外层包装嵌入结果缓存并注册缓存指标
+     */
+    @Bean
+    public EmbeddingService embeddingService(MemoryProperties memoryProperties,
+                                             ObjectProvider<EmbeddingModel> embeddingModel,
+                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        MemoryProperties.Embedding embedding = memoryProperties.getEmbedding();
+        EmbeddingService service = createEmbeddingService(embedding, embeddingModel);
+        
+        MemoryProperties.Embedding.Cache cache = embedding.getCache();
+        if (!cache.isEnabled()) {
+            return service;
+        }
+        CachingEmbeddingService cachingService = new CachingEmbeddingService(service, cache.getMaxBytes());
+        meterRegistry.ifAvailable(cachingService::bindTo);
+        return cachingService;
+    }
+    
+    private EmbeddingService createEmbeddingService(MemoryProperties.Embedding embedding,
+                                                    ObjectProvider<EmbeddingModel> embeddingModel) {
+        if ("spring-ai".equalsIgnoreCase(embedding.getProvider())) {
+            EmbeddingModel model = embeddingModel.getIfAvailable();
+            if (model != null) {
+                return new SpringAiEmbeddingService(model, embedding.getMaxBatchSize(),
+                    embedding.getThreads(), embedding.getQueueCapacity());
+            }
+            logger.warn("未找到EmbeddingModel，回退到内置嵌入服务");
+        }
+        return new SimpleEmbeddingService(embedding.getThreads(), embedding.getQueueCapacity());
     }
     
     /**
      * MySQL内存服务
+     * 启用混合检索时，在向量检索之外增加关键词检索一路，两路结果按倒数排名融合
      */
     @Bean
     @ConditionalOnProperty(name = "memory.service.type", havingValue = "mysql")
     public MemoryService mysqlMemoryService(MemoryRepository memoryRepository, ObjectMapper objectMapper, 
-                                          EmbeddingService embeddingService, MemoryProperties memoryProperties) {
+                                          EmbeddingService embeddingService, MemoryProperties memoryProperties,
+                                          ObjectProvider<RedisTemplate<String, String>> redisTemplate,
+                                          ObjectProvider<JdbcTemplate> jdbcTemplate) {
         MySQLMemoryService service = new MySQLMemoryService();
         service.setMemoryRepository(memoryRepository);
+        MemoryProperties.Stats stats = memoryProperties.getStats();
+        jdbcTemplate.ifAvailable(template -> {
+            service.setMessageBatchWriter(new MessageBatchWriter(template));
+            service.setMemoryStreamReader(new MemoryStreamReader(template));
+            if (memoryProperties.getArchive().isEnabled()) {
+                service.setArchiveReader(new ArchiveReader(template));
+            }
+            if (stats.isEnabled()) {
+                service.enableStatsCounters(new StatsCounterRepository(template), stats.getMaxUsers(),
+                    stats.getRefreshIntervalMs(), stats.getReconcileIntervalMs());
+            }
+        });
         service.setObjectMapper(objectMapper);
         service.setEmbeddingService(embeddingService);
         service.setMemoryProperties(memoryProperties);
-        return service;
+        service.setVectorIndexRegistry(createVectorIndexRegistry(memoryProperties, embeddingService));
+        
+        MemoryProperties.Retrieval retrieval = memoryProperties.getRetrieval();
+        if (!retrieval.isEnabled()) {
+            return service;
+        }
+        return createHybridMemoryService(service, memoryProperties, redisTemplate);
+    }
+    
+    private MemoryService createHybridMemoryService(MemoryService vectorService, MemoryProperties memoryProperties,
+                                                    ObjectProvider<RedisTemplate<String, String>> redisTemplate) {
+        MemoryProperties.Retrieval retrieval = memoryProperties.getRetrieval();
+        MemoryService lexicalService = null;
+        if ("redis".equalsIgnoreCase(retrieval.getLexicalStore())) {
+            RedisTemplate<String, String> template = redisTemplate.getIfAvailable();
+            if (template != null) {
+                RedisMemoryService redisService = new RedisMemoryService(template, createMessageCodec(memoryProperties));
+                redisService.setMemoryProperties(memoryProperties);
+                lexicalService = redisService;
+            } else {
+                logger.warn("未找到RedisTemplate，关键词索引回退到进程内存储");
+            }
+        }
+        boolean inProcess = lexicalService == null;
+        if (inProcess) {
+            InMemoryMemoryService memoryService = new InMemoryMemoryService();
+            memoryService.setMemoryProperties(memoryProperties);
+            lexicalService = memoryService;
+        }
+        
+        HybridMemoryService hybridService = new HybridMemoryService(lexicalService, vectorService, retrieval.getThreads());
+        RetrievalMode defaultMode = RetrievalMode.fromName(retrieval.getMode(), RetrievalMode.HYBRID);
+        Map<String, RetrievalMode> agentModes = new HashMap<>();
+        retrieval.getAgents().forEach((agent, mode) -> agentModes.put(agent, RetrievalMode.fromName(mode, defaultMode)));
+        hybridService.setDefaultMode(defaultMode);
+        hybridService.setAgentModes(agentModes);
+        hybridService.setLegTimeoutMillis(retrieval.getLegTimeoutMs());
+        hybridService.setRrfK(retrieval.getRrfK());
+        hybridService.setCandidateFactor(retrieval.getCandidateFactor());
+        hybridService.setDefaultTopK(memoryProperties.getDefaultTopK());
+        // 进程内关键词索引重启后为空，按用户在首次检索时从MySQL预热
+        if (inProcess) {
+            hybridService.setLexicalWarmup(retrieval.getMaxIndexedUsers());
+        }
+        return hybridService;
     }
     
     /**
-     * MySQL会话历史服务
+     * MySQL会话历史服务，启用近端缓存时在外层包装进程内缓存
      */
     @Bean
     @ConditionalOnProperty(name = "memory.service.type", havingValue = "mysql")
     public SessionHistoryService mysqlSessionHistoryService(SessionRepository sessionRepository, 
                                                            SessionMessageRepository sessionMessageRepository, 
-                                                           ObjectMapper objectMapper) {
+                                                           ObjectMapper objectMapper,
+                                                           MemoryProperties memoryProperties,
+                                                           ObjectProvider<JdbcTemplate> jdbcTemplate,
+                                                           ObjectProvider<RedisTemplate<String, String>> redisTemplate,
+                                                           ObjectProvider<MeterRegistry> meterRegistry) {
         MySQLSessionHistoryService service = new MySQLSessionHistoryService();
         service.setSessionRepository(sessionRepository);
         service.setSessionMessageRepository(sessionMessageRepository);
         service.setObjectMapper(objectMapper);
-        return service;
+        
+        JdbcTemplate template = jdbcTemplate.getIfAvailable();
+        MemoryProperties.SessionHistory.WriteBehind writeBehind = memoryProperties.getSessionHistory().getWriteBehind();
+        if (template != null) {
+            service.setMessageBatchWriter(new MessageBatchWriter(template));
+            if (writeBehind.isEnabled()) {
+                service.enableWriteBehind(writeBehind.getMaxBatch(), writeBehind.getFlushIntervalMs(),
+                    writeBehind.getCapacity());
+                meterRegistry.ifAvailable(service::bindTo);
+            }
+            if (memoryProperties.getArchive().isEnabled()) {
+                service.setArchiveReader(new ArchiveReader(template));
+            }
+            MemoryProperties.Stats stats = memoryProperties.getStats();
+            if (stats.isEnabled()) {
+                service.enableStatsCounters(new StatsCounterRepository(template), stats.getMaxUsers(),
+                    stats.getRefreshIntervalMs(), stats.getReconcileIntervalMs());
+            }
+        } else if (writeBehind.isEnabled() || memoryProperties.getStats().isEnabled()
+                || memoryProperties.getArchive().isEnabled()) {
+            logger.warn("未找到JdbcTemplate，会话消息写后缓冲、统计计数器和归档读取未启用");
+        }
+        return withNearCache(service, memoryProperties, redisTemplate.getIfAvailable(), meterRegistry);
+    }
+    
+    /**
+     * 冷数据归档任务
+     * 定期把保留期之前的记忆和会话消息移入归档表，两个MySQL服务读取时会合并归档表中的数据
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${memory.service.type:memory}' == 'mysql' and ${memory.service.archive.enabled:false}")
+    public ArchiveJob archiveJob(JdbcTemplate jdbcTemplate, MemoryProperties memoryProperties) {
+        MemoryProperties.Archive archive = memoryProperties.getArchive();
+        ArchiveJob job = new ArchiveJob(jdbcTemplate, archive.getHotRetentionDays(), archive.getBatchSize(),
+            archive.getPartitionMonthsAhead());
+        job.start(archive.getIntervalMinutes());
+        logger.info("冷数据归档已启用，热数据保留: {} 天，执行间隔: {} 分钟",
+            archive.getHotRetentionDays(), archive.getIntervalMinutes());
+        return job;
     }
     
     /**
@@ -117,4 +364,39 @@ public class MemoryConfig {
             SessionHistoryService sessionHistoryService) {
         return ContextManagerFactory.createCustom(memoryService, sessionHistoryService);
     }
+    
+    /**
+     * 按配置创建按用户划分的向量索引注册表
+     */
+    private VectorIndexRegistry createVectorIndexRegistry(MemoryProperties memoryProperties, EmbeddingService embeddingService) {
+        MemoryProperties.VectorIndex config = memoryProperties.getVectorIndex();
+        int dimension = embeddingService.getEmbeddingDimension();
+        if ("hnsw".equalsIgnoreCase(config.getType())) {
+            if (config.isQuantized()) {
+                logger.warn("HNSW索引不支持量化，忽略quantization配置: {}", config.getQuantization());
+            }
+            return new VectorIndexRegistry(userId -> new HnswVectorIndex(dimension, config.getM(),
+                config.getEfConstruction(), config.getEfSearch(), resolveIndexFile(config.getDirectory(), userId)));
+        }
+        if ("int8".equalsIgnoreCase(config.getQuantization())) {
+            return new VectorIndexRegistry(userId -> new ScalarQuantizedVectorIndex(dimension));
+        }
+        if ("pq".equalsIgnoreCase(config.getQuantization())) {
+            return new VectorIndexRegistry(userId -> new ProductQuantizedVectorIndex(dimension,
+                config.getPqSubspaces(), config.getPqTrainingSize()));
+        }
+        return new VectorIndexRegistry(userId -> new FlatVectorIndex(dimension));
+    }
+    
+    /**
+     * 计算用户索引文件路径，用户ID经Base64编码后作为文件名，避免路径穿越
+     */
+    private Path resolveIndexFile(String directory, String userId) {
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        String fileName = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(userId.getBytes(StandardCharsets.UTF_8));
+        return Paths.get(directory, fileName + ".hnsw");
+    }
 }
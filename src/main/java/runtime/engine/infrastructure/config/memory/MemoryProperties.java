@@ -2,6 +2,9 @@ package runtime.engine.infrastructure.config.memory;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * 记忆服务配置属性
  */
@@ -9,7 +12,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class MemoryProperties {
     
     /**
-     * 记忆服务类型：memory 或 redis 或 mysql
+     * 记忆服务类型：memory 或 redis 或 mysql 或 local
      */
     private String type = "memory";
     
@@ -38,6 +41,56 @@ public class MemoryProperties {
      */
     private int defaultPageSize = 10;
     
+    /**
+     * 向量检索的相似度下限，低于该值的记忆不返回；默认-1，即不过滤
+     */
+    private double similarityThreshold = -1.0;
+    
+    /**
+     * 向量索引配置
+     */
+    private VectorIndex vectorIndex = new VectorIndex();
+    
+    /**
+     * 嵌入服务配置
+     */
+    private Embedding embedding = new Embedding();
+    
+    /**
+     * 混合检索配置
+     */
+    private Retrieval retrieval = new Retrieval();
+    
+    /**
+     * 会话历史存储配置
+     */
+    private SessionHistory sessionHistory = new SessionHistory();
+    
+    /**
+     * 消息编码配置
+     */
+    private Codec codec = new Codec();
+    
+    /**
+     * 内存存储（type为memory时）的容量配置
+     */
+    private InMemory inMemory = new InMemory();
+    
+    /**
+     * 本地持久化存储（type为local时）配置
+     */
+    private Local local = new Local();
+    
+    /**
+     * 统计计数器配置
+     */
+    private Stats stats = new Stats();
+    
+    /**
+     * 冷数据归档配置
+     */
+    private Archive archive = new Archive();
+    
     public String getType() {
         return type;
     }
@@ -85,4 +138,943 @@ public class MemoryProperties {
     public void setDefaultPageSize(int defaultPageSize) {
         this.defaultPageSize = defaultPageSize;
     }
+    
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+    
+    public void setSimilarityThreshold(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+    
+    public VectorIndex getVectorIndex() {
+        return vectorIndex;
+    }
+    
+    public void setVectorIndex(VectorIndex vectorIndex) {
+        this.vectorIndex = vectorIndex;
+    }
+    
+    public Embedding getEmbedding() {
+        return embedding;
+    }
+    
+    public void setEmbedding(Embedding embedding) {
+        this.embedding = embedding;
+    }
+    
+    public Retrieval getRetrieval() {
+        return retrieval;
+    }
+    
+    public void setRetrieval(Retrieval retrieval) {
+        this.retrieval = retrieval;
+    }
+    
+    public SessionHistory getSessionHistory() {
+        return sessionHistory;
+    }
+    
+    public void setSessionHistory(SessionHistory sessionHistory) {
+        this.sessionHistory = sessionHistory;
+    }
+    
+    public Codec getCodec() {
+        return codec;
+    }
+    
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+    
+    public InMemory getInMemory() {
+        return inMemory;
+    }
+    
+    public void setInMemory(InMemory inMemory) {
+        this.inMemory = inMemory;
+    }
+    
+    public Local getLocal() {
+        return local;
+    }
+    
+    public void setLocal(Local local) {
+        this.local = local;
+    }
+    
+    public Stats getStats() {
+        return stats;
+    }
+    
+    public void setStats(Stats stats) {
+        this.stats = stats;
+    }
+    
+    public Archive getArchive() {
+        return archive;
+    }
+    
+    public void setArchive(Archive archive) {
+        this.archive = archive;
+    }
+    
+    /**
+     * 向量索引配置属性
+     */
+    public static class VectorIndex {
+        
+        /**
+         * 索引类型：flat（精确暴力检索）或 hnsw（近似最近邻图）
+         */
+        private String type = "flat";
+        
+        /**
+         * HNSW每层每个节点的最大连接数
+         */
+        private int m = 16;
+        
+        /**
+         * HNSW构建时的候选队列大小
+         */
+        private int efConstruction = 200;
+        
+        /**
+         * HNSW检索时的候选队列大小
+         */
+        private int efSearch = 64;
+        
+        /**
+         * HNSW索引落盘目录，为空时仅在内存中维护
+         */
+        private String directory;
+        
+        /**
+         * flat索引的量化方式：none（float精确存储）、int8（标量量化）或 pq（乘积量化）
+         */
+        private String quantization = "none";
+        
+        /**
+         * 乘积量化的子空间数量，每条向量编码为该数量的字节
+         */
+        private int pqSubspaces = 25;
+        
+        /**
+         * 训练乘积量化码本所需的最少向量数，达到前按float精确检索
+         */
+        private int pqTrainingSize = 1024;
+        
+        /**
+         * 启用量化时候选集的放大倍数，候选在MySQL中按全精度向量重新打分
+         */
+        private int rescoreFactor = 4;
+        
+        public String getType() {
+            return type;
+        }
+        
+        public void setType(String type) {
+            this.type = type;
+        }
+        
+        public int getM() {
+            return m;
+        }
+        
+        public void setM(int m) {
+            this.m = m;
+        }
+        
+        public int getEfConstruction() {
+            return efConstruction;
+        }
+        
+        public void setEfConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+        }
+        
+        public int getEfSearch() {
+            return efSearch;
+        }
+        
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+        
+        public String getDirectory() {
+            return directory;
+        }
+        
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+        
+        public String getQuantization() {
+            return quantization;
+        }
+        
+        public void setQuantization(String quantization) {
+            this.quantization = quantization;
+        }
+        
+        public int getPqSubspaces() {
+            return pqSubspaces;
+        }
+        
+        public void setPqSubspaces(int pqSubspaces) {
+            this.pqSubspaces = pqSubspaces;
+        }
+        
+        public int getPqTrainingSize() {
+            return pqTrainingSize;
+        }
+        
+        public void setPqTrainingSize(int pqTrainingSize) {
+            this.pqTrainingSize = pqTrainingSize;
+        }
+        
+        public int getRescoreFactor() {
+            return rescoreFactor;
+        }
+        
+        public void setRescoreFactor(int rescoreFactor) {
+            this.rescoreFactor = rescoreFactor;
+        }
+        
+        /**
+         * 是否启用了量化
+         */
+        public boolean isQuantized() {
+            return "int8".equalsIgnoreCase(quantization) || "pq".equalsIgnoreCase(quantization);
+        }
+    }
+    
+    /**
+     * 嵌入服务配置属性
+     */
+    public static class Embedding {
+        
+        /**
+         * 嵌入服务提供方：simple（内置TF-IDF）或 spring-ai（使用容器中的EmbeddingModel）
+         */
+        private String provider = "simple";
+        
+        /**
+         * 单次远程嵌入请求的最大文本数
+         */
+        private int maxBatchSize = 64;
+        
+        /**
+         * MySQL中向量的存储格式：float32（单精度）或 int8（标量量化）
+         */
+        private String storageFormat = "float32";
+        
+        /**
+         * 嵌入结果缓存配置
+         */
+        private Cache cache = new Cache();
+        
+        /**
+         * 嵌入计算线程数，0表示与CPU核数相同
+         */
+        private int threads = 0;
+        
+        /**
+         * 嵌入计算等待队列容量，队列满时由调用线程执行
+         */
+        private int queueCapacity = 1024;
+        
+        public String getProvider() {
+            return provider;
+        }
+        
+        public void setProvider(String provider) {
+            this.provider = provider;
+        }
+        
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+        
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+        
+        public String getStorageFormat() {
+            return storageFormat;
+        }
+        
+        public void setStorageFormat(String storageFormat) {
+            this.storageFormat = storageFormat;
+        }
+        
+        public Cache getCache() {
+            return cache;
+        }
+        
+        public void setCache(Cache cache) {
+            this.cache = cache;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+        
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+        
+        /**
+         * 嵌入结果缓存配置属性
+         */
+        public static class Cache {
+            
+            /**
+             * 是否启用嵌入结果缓存
+             */
+            private boolean enabled = true;
+            
+            /**
+             * 缓存向量占用的最大字节数
+             */
+            private long maxBytes = 64L * 1024 * 1024;
+            
+            public boolean isEnabled() {
+                return enabled;
+            }
+            
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+            
+            public long getMaxBytes() {
+                return maxBytes;
+            }
+            
+            public void setMaxBytes(long maxBytes) {
+                this.maxBytes = maxBytes;
+            }
+        }
+    }
+    
+    /**
+     * 混合检索配置属性（mysql存储时生效）
+     */
+    public static class Retrieval {
+        
+        /**
+         * 是否启用关键词与向量混合检索
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 默认检索方式：lexical、vector 或 hybrid
+         */
+        private String mode = "hybrid";
+        
+        /**
+         * 按智能体名称指定的检索方式，覆盖默认值
+         */
+        private Map<String, String> agents = new HashMap<>();
+        
+        /**
+         * 关键词索引的存储：memory（进程内，按用户在首次检索时从MySQL预热）或 redis
+         */
+        private String lexicalStore = "memory";
+        
+        /**
+         * 进程内关键词索引保留的最大用户数，淘汰的用户在下次检索时重新预热
+         */
+        private long maxIndexedUsers = 10000;
+        
+        /**
+         * 每路检索的时间预算（毫秒），超时的一路按空结果参与融合
+         */
+        private long legTimeoutMs = 300;
+        
+        /**
+         * 倒数排名融合的平滑常数
+         */
+        private int rrfK = 60;
+        
+        /**
+         * 每路检索的候选数相对top_k的倍数
+         */
+        private int candidateFactor = 3;
+        
+        /**
+         * 每路检索的线程数，0表示CPU核数的一半
+         */
+        private int threads = 0;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public String getMode() {
+            return mode;
+        }
+        
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+        
+        public Map<String, String> getAgents() {
+            return agents;
+        }
+        
+        public void setAgents(Map<String, String> agents) {
+            this.agents = agents;
+        }
+        
+        public String getLexicalStore() {
+            return lexicalStore;
+        }
+        
+        public void setLexicalStore(String lexicalStore) {
+            this.lexicalStore = lexicalStore;
+        }
+        
+        public long getMaxIndexedUsers() {
+            return maxIndexedUsers;
+        }
+        
+        public void setMaxIndexedUsers(long maxIndexedUsers) {
+            this.maxIndexedUsers = maxIndexedUsers;
+        }
+        
+        public long getLegTimeoutMs() {
+            return legTimeoutMs;
+        }
+        
+        public void setLegTimeoutMs(long legTimeoutMs) {
+            this.legTimeoutMs = legTimeoutMs;
+        }
+        
+        public int getRrfK() {
+            return rrfK;
+        }
+        
+        public void setRrfK(int rrfK) {
+            this.rrfK = rrfK;
+        }
+        
+        public int getCandidateFactor() {
+            return candidateFactor;
+        }
+        
+        public void setCandidateFactor(int candidateFactor) {
+            this.candidateFactor = candidateFactor;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+    }
+    
+    /**
+     * 会话历史存储配置属性
+     */
+    public static class SessionHistory {
+        
+        /**
+         * Redis中的会话布局：list（逐条存储消息，追加为O(1)）或 json（整个会话一个字符串）
+         */
+        private String redisLayout = "list";
+        
+        /**
+         * MySQL会话消息写后缓冲配置
+         */
+        private WriteBehind writeBehind = new WriteBehind();
+        
+        /**
+         * 会话近端缓存配置
+         */
+        private NearCache nearCache = new NearCache();
+        
+        public String getRedisLayout() {
+            return redisLayout;
+        }
+        
+        public void setRedisLayout(String redisLayout) {
+            this.redisLayout = redisLayout;
+        }
+        
+        public WriteBehind getWriteBehind() {
+            return writeBehind;
+        }
+        
+        public void setWriteBehind(WriteBehind writeBehind) {
+            this.writeBehind = writeBehind;
+        }
+        
+        public NearCache getNearCache() {
+            return nearCache;
+        }
+        
+        public void setNearCache(NearCache nearCache) {
+            this.nearCache = nearCache;
+        }
+        
+        /**
+         * MySQL会话消息写后缓冲配置属性
+         */
+        public static class WriteBehind {
+            
+            /**
+             * 是否启用写后缓冲；启用后追加消息不等待落库，进程异常退出时可能丢失缓冲中的消息
+             */
+            private boolean enabled = false;
+            
+            /**
+             * 定时写出间隔（毫秒）
+             */
+            private long flushIntervalMs = 50;
+            
+            /**
+             * 每批写入的最大消息数，缓冲达到该数量时立即写出
+             */
+            private int maxBatch = 500;
+            
+            /**
+             * 缓冲容量，缓冲满时追加阻塞
+             */
+            private int capacity = 10000;
+            
+            public boolean isEnabled() {
+                return enabled;
+            }
+            
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+            
+            public long getFlushIntervalMs() {
+                return flushIntervalMs;
+            }
+            
+            public void setFlushIntervalMs(long flushIntervalMs) {
+                this.flushIntervalMs = flushIntervalMs;
+            }
+            
+            public int getMaxBatch() {
+                return maxBatch;
+            }
+            
+            public void setMaxBatch(int maxBatch) {
+                this.maxBatch = maxBatch;
+            }
+            
+            public int getCapacity() {
+                return capacity;
+            }
+            
+            public void setCapacity(int capacity) {
+                this.capacity = capacity;
+            }
+        }
+        
+        /**
+         * 会话近端缓存配置属性（redis和mysql存储时生效）
+         */
+        public static class NearCache {
+            
+            /**
+             * 是否启用近端缓存；启用后最近的会话消息缓存在进程内，追加消息时写穿
+             */
+            private boolean enabled = false;
+            
+            /**
+             * 最多缓存的会话数
+             */
+            private long maxSessions = 10000;
+            
+            /**
+             * 每个会话缓存的最近消息数，0表示不限
+             */
+            private int maxMessagesPerSession = 200;
+            
+            /**
+             * 缓存条目写入后的过期时间（秒），用于兜底丢失的失效通知，0表示不过期
+             */
+            private long ttlSeconds = 300;
+            
+            /**
+             * 节点间失效通知方式：redis（Redis发布/订阅，多节点部署）或 local（仅进程内，单节点部署）
+             */
+            private String invalidation = "redis";
+            
+            /**
+             * Redis失效通知频道
+             */
+            private String channel = "session_invalidation";
+            
+            public boolean isEnabled() {
+                return enabled;
+            }
+            
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+            
+            public long getMaxSessions() {
+                return maxSessions;
+            }
+            
+            public void setMaxSessions(long maxSessions) {
+                this.maxSessions = maxSessions;
+            }
+            
+            public int getMaxMessagesPerSession() {
+                return maxMessagesPerSession;
+            }
+            
+            public void setMaxMessagesPerSession(int maxMessagesPerSession) {
+                this.maxMessagesPerSession = maxMessagesPerSession;
+            }
+            
+            public long getTtlSeconds() {
+                return ttlSeconds;
+            }
+            
+            public void setTtlSeconds(long ttlSeconds) {
+                this.ttlSeconds = ttlSeconds;
+            }
+            
+            public String getInvalidation() {
+                return invalidation;
+            }
+            
+            public void setInvalidation(String invalidation) {
+                this.invalidation = invalidation;
+            }
+            
+            public String getChannel() {
+                return channel;
+            }
+            
+            public void setChannel(String channel) {
+                this.channel = channel;
+            }
+        }
+    }
+    
+    /**
+     * 消息编码配置属性
+     */
+    public static class Codec {
+        
+        /**
+         * Redis中消息和会话的编码格式：json（默认）或 binary（紧凑二进制），读取时两种格式均可识别
+         */
+        private String format = "json";
+        
+        /**
+         * 二进制载荷超过该字节数时使用Deflate压缩，0表示不压缩
+         */
+        private int compressionThreshold = 512;
+        
+        public String getFormat() {
+            return format;
+        }
+        
+        public void setFormat(String format) {
+            this.format = format;
+        }
+        
+        public int getCompressionThreshold() {
+            return compressionThreshold;
+        }
+        
+        public void setCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+        }
+    }
+    
+    /**
+     * 内存存储容量配置属性，默认不限制，各项上限按需开启
+     */
+    public static class InMemory {
+        
+        /**
+         * 最多保留的会话数，0表示不限，max-session-bytes大于0时改为按字节数限制
+         */
+        private long maxSessions = 0;
+        
+        /**
+         * 会话估算总字节数上限，0表示按会话数限制
+         */
+        private long maxSessionBytes = 0;
+        
+        /**
+         * 每个会话保留的最近消息数，0表示不限
+         */
+        private int maxMessagesPerSession = 0;
+        
+        /**
+         * 长期记忆保留的消息总数上限（所有用户合计），超出时淘汰最不活跃的用户，0表示不限
+         */
+        private long maxMemoryMessages = 0;
+        
+        /**
+         * 会话和用户记忆的空闲过期时间（分钟），0表示不过期
+         */
+        private long idleTtlMinutes = 0;
+        
+        /**
+         * 会话溢出目录，配置后被淘汰的会话写入磁盘，再次访问时读回
+         */
+        private String spillDirectory;
+        
+        public long getMaxSessions() {
+            return maxSessions;
+        }
+        
+        public void setMaxSessions(long maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+        
+        public long getMaxSessionBytes() {
+            return maxSessionBytes;
+        }
+        
+        public void setMaxSessionBytes(long maxSessionBytes) {
+            this.maxSessionBytes = maxSessionBytes;
+        }
+        
+        public int getMaxMessagesPerSession() {
+            return maxMessagesPerSession;
+        }
+        
+        public void setMaxMessagesPerSession(int maxMessagesPerSession) {
+            this.maxMessagesPerSession = maxMessagesPerSession;
+        }
+        
+        public long getMaxMemoryMessages() {
+            return maxMemoryMessages;
+        }
+        
+        public void setMaxMemoryMessages(long maxMemoryMessages) {
+            this.maxMemoryMessages = maxMemoryMessages;
+        }
+        
+        public long getIdleTtlMinutes() {
+            return idleTtlMinutes;
+        }
+        
+        public void setIdleTtlMinutes(long idleTtlMinutes) {
+            this.idleTtlMinutes = idleTtlMinutes;
+        }
+        
+        public String getSpillDirectory() {
+            return spillDirectory;
+        }
+        
+        public void setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+    }
+    
+    /**
+     * 统计计数器配置属性（mysql存储时生效）
+     */
+    public static class Stats {
+        
+        /**
+         * 是否启用计数器；启用前需执行schema.sql创建计数器表
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 进程内最多缓存的用户数
+         */
+        private long maxUsers = 100000;
+        
+        /**
+         * 缓存快照的刷新间隔（毫秒），超过后重新读取计数器表以获得其他实例的写入
+         */
+        private long refreshIntervalMs = 30000;
+        
+        /**
+         * 按明细表对账的间隔（毫秒），只对期间发生过写入的用户对账，0表示不定期对账
+         */
+        private long reconcileIntervalMs = 600000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getMaxUsers() {
+            return maxUsers;
+        }
+        
+        public void setMaxUsers(long maxUsers) {
+            this.maxUsers = maxUsers;
+        }
+        
+        public long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+        
+        public void setRefreshIntervalMs(long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+        
+        public long getReconcileIntervalMs() {
+            return reconcileIntervalMs;
+        }
+        
+        public void setReconcileIntervalMs(long reconcileIntervalMs) {
+            this.reconcileIntervalMs = reconcileIntervalMs;
+        }
+    }
+    
+    /**
+     * 冷数据归档配置（mysql存储时生效）
+     */
+    public static class Archive {
+        
+        /**
+         * 是否启用归档；启用前需执行schema.sql创建归档表
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 热表保留的天数，更早的记忆和会话消息移入归档表
+         */
+        private int hotRetentionDays = 90;
+        
+        /**
+         * 归档任务的执行间隔（分钟）
+         */
+        private long intervalMinutes = 60;
+        
+        /**
+         * 每个事务移动的最大行数
+         */
+        private int batchSize = 1000;
+        
+        /**
+         * 按月分区的热表预建的月份数，0表示不维护分区；使用schema-partitioned.sql时设置
+         */
+        private int partitionMonthsAhead = 0;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getHotRetentionDays() {
+            return hotRetentionDays;
+        }
+        
+        public void setHotRetentionDays(int hotRetentionDays) {
+            this.hotRetentionDays = hotRetentionDays;
+        }
+        
+        public long getIntervalMinutes() {
+            return intervalMinutes;
+        }
+        
+        public void setIntervalMinutes(long intervalMinutes) {
+            this.intervalMinutes = intervalMinutes;
+        }
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+        
+        public int getPartitionMonthsAhead() {
+            return partitionMonthsAhead;
+        }
+        
+        public void setPartitionMonthsAhead(int partitionMonthsAhead) {
+            this.partitionMonthsAhead = partitionMonthsAhead;
+        }
+    }
+    
+    /**
+     * 本地持久化存储配置属性
+     */
+    public static class Local {
+        
+        /**
+         * 数据目录，记忆和会话分别保存在其下的memory和sessions子目录中
+         */
+        private String directory = "./data/local-store";
+        
+        /**
+         * 后台刷盘间隔（毫秒），0表示每次写入后立即刷盘
+         */
+        private long syncIntervalMs = 1000;
+        
+        /**
+         * 日志文件达到该字节数后才考虑压缩
+         */
+        private long compactionMinBytes = 64L * 1024 * 1024;
+        
+        /**
+         * 进程内保留关键词索引的最大用户数，淘汰的索引在下次检索时重建
+         */
+        private long maxIndexedUsers = 10000;
+        
+        public String getDirectory() {
+            return directory;
+        }
+        
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+        
+        public long getSyncIntervalMs() {
+            return syncIntervalMs;
+        }
+        
+        public void setSyncIntervalMs(long syncIntervalMs) {
+            this.syncIntervalMs = syncIntervalMs;
+        }
+        
+        public long getCompactionMinBytes() {
+            return compactionMinBytes;
+        }
+        
+        public void setCompactionMinBytes(long compactionMinBytes) {
+            this.compactionMinBytes = compactionMinBytes;
+        }
+        
+        public long getMaxIndexedUsers() {
+            return maxIndexedUsers;
+        }
+        
+        public void setMaxIndexedUsers(long maxIndexedUsers) {
+            this.maxIndexedUsers = maxIndexedUsers;
+        }
+    }
 }
@@ -0,0 +1,452 @@
+package runtime.engine.memory.codec;
+
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.model.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制编解码器
+ * 不写字段名，长度和整数使用变长编码，字符串为UTF-8字节；载荷超过阈值时使用Deflate压缩，
+ * 压缩后更大则保留原始字节。存储层按字符串读写，二进制数据以Base64编码并加上前缀{@link #PREFIX}。
+ * 格式：
+ * <pre>
+ * 载荷    = 版本(1字节) 标志(1字节) 正文        标志位0：正文已压缩；标志位1：正文为会话
+ * 消息    = 字符串(类型名) 数量(内容) {字符串(内容类型) 字符串(文本)} 值(元数据)
+ * 会话    = 字符串(ID) 字符串(用户ID) 数量(消息) {消息}
+ * 字符串  = 变长(字节数+1, 0表示null) UTF-8字节
+ * 值      = 标记(1字节) 数据               null/字符串/整数(ZigZag变长)/浮点(含其他数值类型)/布尔/对象/数组
+ * </pre>
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    public static final String NAME = "binary";
+
+    /**
+     * 二进制载荷前缀，JSON数据不会以该字符开头
+     */
+    public static final String PREFIX = "~";
+
+    /**
+     * 仅用于读取的实例，读取时不需要压缩阈值
+     */
+    static final BinaryMessageCodec READER = new BinaryMessageCodec(0);
+
+    private static final byte VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int FLAG_SESSION = 1 << 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_DOUBLE = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_MAP = 6;
+    private static final int TAG_LIST = 7;
+
+    private final int compressionThreshold;
+
+    /**
+     * @param compressionThreshold 正文超过该字节数时压缩，小于等于0表示不压缩
+     */
+    public BinaryMessageCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * 判断载荷是否为二进制格式
+     */
+    public static boolean isBinary(String payload) {
+        return payload != null && payload.startsWith(PREFIX);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String encode(Message message) {
+        Writer writer = new Writer();
+        writeMessage(writer, message);
+        return wrap(writer.toByteArray(), 0);
+    }
+
+    @Override
+    public Message decode(String payload) {
+        if (!isBinary(payload)) {
+            return JsonCodecHolder.JSON.decode(payload);
+        }
+        Reader reader = unwrap(payload, false);
+        return readMessage(reader);
+    }
+
+    @Override
+    public String encodeSession(Session session) {
+        Writer writer = new Writer();
+        writer.writeString(session.getId());
+        writer.writeString(session.getUserId());
+        List<Message> messages = session.getMessages();
+        writer.writeCount(messages);
+        if (messages != null) {
+            for (Message message : messages) {
+                writeMessage(writer, message);
+            }
+        }
+        return wrap(writer.toByteArray(), FLAG_SESSION);
+    }
+
+    @Override
+    public Session decodeSession(String payload) {
+        if (!isBinary(payload)) {
+            return JsonCodecHolder.JSON.decodeSession(payload);
+        }
+        Reader reader = unwrap(payload, true);
+        Session session = new Session();
+        session.setId(reader.readString());
+        session.setUserId(reader.readString());
+        int count = reader.readCount();
+        if (count >= 0) {
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(readMessage(reader));
+            }
+            session.setMessages(messages);
+        }
+        return session;
+    }
+
+    private String wrap(byte[] body, int flags) {
+        if (compressionThreshold > 0 && body.length > compressionThreshold) {
+            byte[] compressed = deflate(body);
+            if (compressed.length < body.length) {
+                body = compressed;
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+        byte[] payload = new byte[body.length + 2];
+        payload[0] = VERSION;
+        payload[1] = (byte) flags;
+        System.arraycopy(body, 0, payload, 2, body.length);
+        return PREFIX + Base64.getEncoder().encodeToString(payload);
+    }
+
+    private Reader unwrap(String payload, boolean session) {
+        byte[] bytes = Base64.getDecoder().decode(payload.substring(PREFIX.length()));
+        if (bytes.length < 2 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary message payload version");
+        }
+        int flags = bytes[1];
+        if (((flags & FLAG_SESSION) != 0) != session) {
+            throw new IllegalArgumentException(session ? "Payload is not a session" : "Payload is not a message");
+        }
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            return new Reader(inflate(bytes, 2));
+        }
+        return new Reader(bytes, 2);
+    }
+
+    private static void writeMessage(Writer writer, Message message) {
+        writer.writeString(message.getType() != null ? message.getType().name() : null);
+        List<MessageContent> contents = message.getContent();
+        writer.writeCount(contents);
+        if (contents != null) {
+            for (MessageContent content : contents) {
+                writer.writeString(content.getType());
+                writer.writeString(content.getText());
+            }
+        }
+        writer.writeValue(message.getMetadata());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Message readMessage(Reader reader) {
+        Message message = new Message();
+        String type = reader.readString();
+        if (type != null) {
+            message.setType(MessageType.valueOf(type));
+        }
+        int count = reader.readCount();
+        if (count >= 0) {
+            List<MessageContent> contents = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                contents.add(new MessageContent(reader.readString(), reader.readString()));
+            }
+            message.setContent(contents);
+        }
+        Object metadata = reader.readValue();
+        if (metadata != null && !(metadata instanceof Map)) {
+            throw new IllegalArgumentException("Message metadata must be an object");
+        }
+        message.setMetadata((Map<String, Object>) metadata);
+        return message;
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed message payload");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted compressed message payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 延迟创建JSON编解码器，避免两个类的静态初始化相互依赖
+     */
+    private static final class JsonCodecHolder {
+        private static final JsonMessageCodec JSON = new JsonMessageCodec();
+    }
+
+    /**
+     * 变长编码写入器
+     */
+    private static final class Writer {
+        private byte[] buffer = new byte[128];
+        private int size;
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        /**
+         * 写入集合大小，null写为0，其余为大小加1
+         */
+        void writeCount(Collection<?> collection) {
+            writeVarLong(collection == null ? 0 : collection.size() + 1L);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeByte(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeValue(Object value) {
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else if (value instanceof String) {
+                writeByte(TAG_STRING);
+                writeString((String) value);
+            } else if (value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte) {
+                long number = ((Number) value).longValue();
+                writeByte(TAG_LONG);
+                writeVarLong((number << 1) ^ (number >> 63));
+            } else if (value instanceof Number) {
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                writeByte(TAG_DOUBLE);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    writeByte((int) (bits >>> shift));
+                }
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(TAG_MAP);
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                writeByte(TAG_LIST);
+                writeVarLong(list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else {
+                // 其他对象按JSON数据模型写入，读取结果与JSON编解码器一致
+                Object model = JsonMessageCodec.toJsonModel(value);
+                if (model == null || model instanceof String || model instanceof Number
+                        || model instanceof Boolean || model instanceof Map || model instanceof List) {
+                    writeValue(model);
+                } else {
+                    writeValue(String.valueOf(model));
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[size];
+            System.arraycopy(buffer, 0, result, 0, size);
+            return result;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, size + extra)];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+        }
+    }
+
+    /**
+     * 变长编码读取器
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this(bytes, 0);
+        }
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated binary message payload");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in binary message payload");
+        }
+
+        /**
+         * 读取集合大小，null返回-1
+         */
+        int readCount() {
+            return checkedLength(readVarLong()) - 1;
+        }
+
+        String readString() {
+            int length = checkedLength(readVarLong()) - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated binary message payload");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Object readValue() {
+            int tag = readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return readString();
+                case TAG_LONG: {
+                    long encoded = readVarLong();
+                    long number = (encoded >>> 1) ^ -(encoded & 1);
+                    // 与Jackson一致：int范围内的整数读取为Integer
+                    if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                        return (int) number;
+                    }
+                    return number;
+                }
+                case TAG_DOUBLE: {
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                }
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_MAP: {
+                    int size = checkedLength(readVarLong());
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        map.put(readString(), readValue());
+                    }
+                    return map;
+                }
+                case TAG_LIST: {
+                    int size = checkedLength(readVarLong());
+                    List<Object> list = new ArrayList<>(Math.min(size, 64));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown value tag " + tag + " in binary message payload");
+            }
+        }
+
+        private int checkedLength(long length) {
+            if (length < 0 || length > bytes.length + 1L) {
+                throw new IllegalArgumentException("Invalid length in binary message payload");
+            }
+            return (int) length;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package runtime.engine.memory.codec;
+
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.Session;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.UncheckedIOException;
+
+/**
+ * JSON编解码器，与引入编解码器之前写入的数据格式相同
+ * 读写器按类型预先构建并在所有实例间共享，避免每个服务各自创建ObjectMapper
+ */
+public class JsonMessageCodec implements MessageCodec {
+
+    public static final String NAME = "json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    private static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    private static final ObjectReader SESSION_READER = MAPPER.readerFor(Session.class);
+    private static final ObjectWriter SESSION_WRITER = MAPPER.writerFor(Session.class);
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String encode(Message message) {
+        try {
+            return MESSAGE_WRITER.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to encode message as JSON", e);
+        }
+    }
+
+    @Override
+    public Message decode(String payload) {
+        if (BinaryMessageCodec.isBinary(payload)) {
+            return BinaryMessageCodec.READER.decode(payload);
+        }
+        try {
+            return MESSAGE_READER.readValue(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to decode JSON message", e);
+        }
+    }
+
+    @Override
+    public String encodeSession(Session session) {
+        try {
+            return SESSION_WRITER.writeValueAsString(session);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to encode session as JSON", e);
+        }
+    }
+
+    @Override
+    public Session decodeSession(String payload) {
+        if (BinaryMessageCodec.isBinary(payload)) {
+            return BinaryMessageCodec.READER.decodeSession(payload);
+        }
+        try {
+            return SESSION_READER.readValue(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to decode JSON session", e);
+        }
+    }
+
+    /**
+     * 将任意元数据值转换为JSON数据模型（Map、List、String、Number、Boolean）
+     */
+    static Object toJsonModel(Object value) {
+        return MAPPER.convertValue(value, Object.class);
+    }
+}
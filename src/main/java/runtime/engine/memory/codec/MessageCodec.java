@@ -0,0 +1,51 @@
+package runtime.engine.memory.codec;
+
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.Session;
+
+/**
+ * 消息编解码器
+ * 负责将消息和会话编码为可存入字符串类型存储（如Redis字符串、哈希字段、列表元素）的载荷。
+ * 所有实现都能读取其他实现写入的数据：二进制载荷以{@link BinaryMessageCodec#PREFIX}开头，
+ * 其余按JSON解析，因此切换编码格式后已有数据无需迁移
+ */
+public interface MessageCodec {
+
+    /**
+     * 编码格式名称
+     */
+    String name();
+
+    /**
+     * 编码单条消息
+     */
+    String encode(Message message);
+
+    /**
+     * 解码单条消息，兼容JSON与二进制载荷
+     */
+    Message decode(String payload);
+
+    /**
+     * 编码整个会话
+     */
+    String encodeSession(Session session);
+
+    /**
+     * 解码整个会话，兼容JSON与二进制载荷
+     */
+    Session decodeSession(String payload);
+
+    /**
+     * 按配置名称创建编解码器，忽略大小写，未知名称使用JSON
+     *
+     * @param name binary 或 json
+     * @param compressionThreshold 二进制载荷超过该字节数时压缩，小于等于0表示不压缩
+     */
+    static MessageCodec forName(String name, int compressionThreshold) {
+        if (name != null && BinaryMessageCodec.NAME.equalsIgnoreCase(name.trim())) {
+            return new BinaryMessageCodec(compressionThreshold);
+        }
+        return new JsonMessageCodec();
+    }
+}
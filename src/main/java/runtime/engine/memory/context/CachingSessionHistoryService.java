@@ -0,0 +1,321 @@
+package runtime.engine.memory.context;
+
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
+import runtime.engine.memory.service.SessionHistoryService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 会话历史近端缓存
+ * 在远程会话存储（Redis、MySQL）之前增加一层进程内缓存，按会话保存最近的若干条消息（会话尾部）：
+ * <ul>
+ *   <li>读取：最近N条、令牌预算内的最近消息和完整会话在缓存的尾部足够时直接返回，不足时读取存储并回填</li>
+ *   <li>写入：追加消息先写入存储，成功后把新消息追加到缓存的尾部（写穿），并通过{@link SessionInvalidationBus}
+ *       通知其他节点丢弃该会话的缓存；创建和删除会话同样使各节点的缓存失效</li>
+ * </ul>
+ * 按窗口读取消息的页需要带上存储的游标：游标为会话内消息序号的存储（见{@link SessionHistoryService#sequentialCursors()}）
+ * 在写穿时按追加的消息数推算新的游标，追加后的读取仍由缓存返回，不访问存储；
+ * 游标无法推算的存储（如MySQL的消息ID）追加后只有检索会话由缓存返回，第一次读取消息页交给存储并回填游标。
+ * 游标之后的分页读取、会话列表和统计直接交给存储。失效通知可能丢失，缓存条目在写入后按过期时间兜底
+ */
+public class CachingSessionHistoryService implements SessionHistoryService, MeterBinder {
+
+    private static final String CACHE_NAME = "session_tail";
+    // 回填版本号的分段数：写入或失效时递增所在分段，读取存储期间分段有变化时放弃回填，避免旧数据覆盖新写入
+    private static final int STAMP_STRIPES = 64;
+
+    private final SessionHistoryService delegate;
+    private final SessionInvalidationBus invalidationBus;
+    private final int maxMessagesPerSession;
+    private final boolean sequentialCursors;
+    private final Cache<SessionKey, Tail> cache;
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+    // 本节点标识，忽略自己发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * @param delegate 实际存储会话的服务
+     * @param invalidationBus 节点间的失效通知通道，由本服务负责关闭
+     * @param maxSessions 最多缓存的会话数
+     * @param maxMessagesPerSession 每个会话缓存的最近消息数，0表示不限
+     * @param ttl 缓存条目写入后的过期时间，为null或0表示不过期
+     */
+    public CachingSessionHistoryService(SessionHistoryService delegate, SessionInvalidationBus invalidationBus,
+                                        long maxSessions, int maxMessagesPerSession, Duration ttl) {
+        this.delegate = delegate;
+        this.invalidationBus = invalidationBus;
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.sequentialCursors = delegate.sequentialCursors();
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .recordStats();
+        if (ttl != null && !ttl.isZero() && !ttl.isNegative()) {
+            builder.expireAfterWrite(ttl);
+        }
+        this.cache = builder.build();
+        invalidationBus.subscribe(this::onInvalidate);
+    }
+
+    @Override
+    public CompletableFuture<Void> start() {
+        return delegate.start();
+    }
+
+    @Override
+    public CompletableFuture<Void> stop() {
+        return delegate.stop().whenComplete((result, error) -> invalidationBus.close());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> health() {
+        return delegate.health();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    /**
+     * 创建会话；会话可能已存在于存储中，因此只使缓存失效而不写入空的尾部
+     */
+    @Override
+    public CompletableFuture<Session> createSession(String userId, Optional<String> sessionId) {
+        return delegate.createSession(userId, sessionId).thenApply(session -> {
+            invalidate(new SessionKey(session.getUserId(), session.getId()), true);
+            return session;
+        });
+    }
+
+    /**
+     * 检索完整会话，缓存的尾部包含完整会话时不读取存储
+     */
+    @Override
+    public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId) {
+        SessionKey key = new SessionKey(userId, sessionId);
+        Tail tail = cache.getIfPresent(key);
+        if (tail != null && tail.complete) {
+            return CompletableFuture.completedFuture(Optional.of(new Session(sessionId, userId, new ArrayList<>(tail.messages))));
+        }
+
+        long stamp = stamp(key);
+        return delegate.getSession(userId, sessionId).thenApply(session -> {
+            session.ifPresent(s -> fill(key, stamp,
+                s.getMessages() != null ? s.getMessages() : Collections.emptyList(), true, Tail.UNKNOWN_CURSOR));
+            return session;
+        });
+    }
+
+    /**
+     * 检索会话，消息按最近lastN条的窗口读取
+     * 会话已缓存时由{@link #getMessages}返回，否则交给存储，由存储决定是否创建会话
+     */
+    @Override
+    public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId, int lastN) {
+        if (lastN < 0) {
+            return getSession(userId, sessionId);
+        }
+        Tail tail = cache.getIfPresent(new SessionKey(userId, sessionId));
+        if (tail == null) {
+            return delegate.getSession(userId, sessionId, lastN);
+        }
+        // 会话不需要游标，追加后游标未知时尾部仍可直接返回
+        MessagePage cached = tail.read(MessageWindow.last(lastN));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(new Session(sessionId, userId, cached.getMessages())));
+        }
+        return getMessages(userId, sessionId, MessageWindow.last(lastN))
+            .thenApply(page -> Optional.of(new Session(sessionId, userId, new ArrayList<>(page.getMessages()))));
+    }
+
+    /**
+     * 按窗口读取会话消息，最近N条、令牌预算和全部消息窗口优先由缓存的尾部返回；
+     * 游标之后的分页，以及尾部的游标未知时，读取存储
+     */
+    @Override
+    public CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+        if (window.getKind() == MessageWindow.Kind.AFTER) {
+            return delegate.getMessages(userId, sessionId, window);
+        }
+
+        SessionKey key = new SessionKey(userId, sessionId);
+        Tail tail = cache.getIfPresent(key);
+        if (tail != null && tail.nextCursor != Tail.UNKNOWN_CURSOR) {
+            MessagePage page = tail.read(window);
+            if (page != null) {
+                return CompletableFuture.completedFuture(page);
+            }
+        }
+
+        long stamp = stamp(key);
+        return delegate.getMessages(userId, sessionId, window).thenApply(page -> {
+            // 这几种窗口都从最新的消息读起，没有更早的消息时即为完整会话；
+            // 空页无法区分空会话和不存在的会话，不回填，使缓存中的会话总是已存在于存储中
+            if (!page.getMessages().isEmpty()) {
+                fill(key, stamp, page.getMessages(), !page.hasMore(), page.getNextCursor());
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteSession(String userId, String sessionId) {
+        SessionKey key = new SessionKey(userId, sessionId);
+        return delegate.deleteSession(userId, sessionId).whenComplete((result, error) -> invalidate(key, true));
+    }
+
+    @Override
+    public CompletableFuture<List<Session>> listSessions(String userId) {
+        return delegate.listSessions(userId);
+    }
+
+    /**
+     * 追加消息：先写入存储，成功后追加到缓存的尾部并通知其他节点；写入失败时存储状态未知，直接使缓存失效
+     * 游标为消息序号的存储在尾部的游标上加上追加的消息数
+     */
+    @Override
+    public CompletableFuture<Void> appendMessage(Session session, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return delegate.appendMessage(session, messages);
+        }
+        SessionKey key = new SessionKey(session.getUserId(), session.getId());
+        List<Message> appended = new ArrayList<>(messages);
+        return delegate.appendMessage(session, messages).whenComplete((result, error) -> {
+            if (error != null) {
+                invalidate(key, true);
+                return;
+            }
+            cache.asMap().compute(key, (k, tail) -> {
+                stamps.incrementAndGet(stripe(k));
+                return tail != null ? tail.append(appended, maxMessagesPerSession, sequentialCursors) : null;
+            });
+            invalidationBus.publish(nodeId, key.userId(), key.sessionId());
+        });
+    }
+
+    @Override
+    public CompletableFuture<SessionStats> getSessionStats(String userId) {
+        return delegate.getSessionStats(userId);
+    }
+
+    private void onInvalidate(String origin, String userId, String sessionId) {
+        if (!nodeId.equals(origin)) {
+            invalidate(new SessionKey(userId, sessionId), false);
+        }
+    }
+
+    private void invalidate(SessionKey key, boolean publish) {
+        cache.asMap().compute(key, (k, tail) -> {
+            stamps.incrementAndGet(stripe(k));
+            return null;
+        });
+        if (publish) {
+            invalidationBus.publish(nodeId, key.userId(), key.sessionId());
+        }
+    }
+
+    /**
+     * 回填读取存储得到的尾部，读取期间该会话所在分段有写入或失效时放弃
+     */
+    private void fill(SessionKey key, long stamp, List<Message> messages, boolean complete, long nextCursor) {
+        Tail tail = Tail.of(messages, complete, nextCursor, maxMessagesPerSession);
+        cache.asMap().compute(key, (k, current) -> stamps.get(stripe(k)) == stamp ? tail : current);
+    }
+
+    private long stamp(SessionKey key) {
+        return stamps.get(stripe(key));
+    }
+
+    private static int stripe(SessionKey key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STAMP_STRIPES;
+    }
+
+    private record SessionKey(String userId, String sessionId) {
+    }
+
+    /**
+     * 缓存的会话尾部，不可变；消息按时间正序排列
+     */
+    private static final class Tail {
+
+        static final long UNKNOWN_CURSOR = -1;
+
+        final List<Message> messages;
+        // 尾部是否包含会话的全部消息
+        final boolean complete;
+        // 最后一条消息之后的存储游标，未知时为UNKNOWN_CURSOR
+        final long nextCursor;
+
+        private Tail(List<Message> messages, boolean complete, long nextCursor) {
+            this.messages = messages;
+            this.complete = complete;
+            this.nextCursor = nextCursor;
+        }
+
+        static Tail of(List<Message> messages, boolean complete, long nextCursor, int maxMessages) {
+            int from = maxMessages > 0 ? Math.max(0, messages.size() - maxMessages) : 0;
+            return new Tail(Collections.unmodifiableList(new ArrayList<>(messages.subList(from, messages.size()))),
+                complete && from == 0, nextCursor);
+        }
+
+        Tail append(List<Message> appended, int maxMessages, boolean sequentialCursors) {
+            List<Message> merged = new ArrayList<>(messages.size() + appended.size());
+            merged.addAll(messages);
+            merged.addAll(appended);
+            long cursor = sequentialCursors && nextCursor != UNKNOWN_CURSOR ? nextCursor + appended.size() : UNKNOWN_CURSOR;
+            return of(merged, complete, cursor, maxMessages);
+        }
+
+        /**
+         * 在尾部上应用窗口，尾部不足以确定结果时返回null
+         */
+        MessagePage read(MessageWindow window) {
+            int size = messages.size();
+            int from;
+            switch (window.getKind()) {
+                case LAST:
+                    if (!complete && size < window.getLimit()) {
+                        return null;
+                    }
+                    from = Math.max(0, size - window.getLimit());
+                    break;
+                case TOKEN_BUDGET:
+                    MessageWindow.TokenCounter counter = window.tokenCounter();
+                    from = size;
+                    while (from > 0 && counter.tryAdd(messages.get(from - 1))) {
+                        from--;
+                    }
+                    // 尾部全部计入预算时，更早的消息可能也在预算内
+                    if (from == 0 && !complete) {
+                        return null;
+                    }
+                    break;
+                case ALL:
+                    if (!complete) {
+                        return null;
+                    }
+                    from = 0;
+                    break;
+                default:
+                    return null;
+            }
+            return new MessagePage(new ArrayList<>(messages.subList(from, size)), nextCursor, from > 0 || !complete);
+        }
+    }
+}
@@ -74,29 +74,38 @@ public class ContextManager extends ServiceManager {
      * @return CompletableFuture<Session> 异步会话结果
      */
     public CompletableFuture<Session> composeSession(String userId, String sessionId) {
-        return CompletableFuture.supplyAsync(() -> {
-            SessionHistoryService sessionHistoryService = getSessionHistoryService();
-            if (sessionHistoryService != null) {
-                try {
-                    Optional<Session> sessionOpt = sessionHistoryService
-                            .getSession(userId, sessionId).get();
-                    if (sessionOpt.isEmpty()) {
+        SessionHistoryService sessionHistoryService = getSessionHistoryService();
+        if (sessionHistoryService == null) {
+            return CompletableFuture.completedFuture(new Session(sessionId, userId, new ArrayList<>()));
+        }
+        // 组合异步结果，不在线程池任务中阻塞等待另一个任务
+        return sessionHistoryService.getSession(userId, sessionId)
+                .thenCompose(sessionOpt -> sessionOpt
+                        .map(CompletableFuture::completedFuture)
                         // 如果Session不存在，创建一个新的
-                        return sessionHistoryService.createSession(userId, Optional.of(sessionId)).get();
-                    }
-                    return sessionOpt.get();
-                } catch (Exception e) {
-                    // 如果获取失败，创建一个新的Session
-                    try {
-                        return sessionHistoryService.createSession(userId, Optional.of(sessionId)).get();
-                    } catch (Exception ex) {
-                        throw new RuntimeException("Failed to get or create session", ex);
-                    }
-                }
-            } else {
-                return new Session(sessionId, userId, new ArrayList<>());
-            }
-        });
+                        .orElseGet(() -> sessionHistoryService.createSession(userId, Optional.of(sessionId))))
+                // 如果获取失败，创建一个新的Session
+                .exceptionallyCompose(e -> sessionHistoryService.createSession(userId, Optional.of(sessionId)));
+    }
+    
+    /**
+     * 确保会话存在，用于追加消息
+     * 与{@link #composeSession(String, String)}不同，只读取0条消息判断会话是否存在，不加载历史
+     * 
+     * @param userId 用户ID
+     * @param sessionId 会话ID
+     * @return CompletableFuture<Session> 异步会话结果
+     */
+    public CompletableFuture<Session> ensureSession(String userId, String sessionId) {
+        SessionHistoryService sessionHistoryService = getSessionHistoryService();
+        if (sessionHistoryService == null) {
+            return CompletableFuture.completedFuture(new Session(sessionId, userId, new ArrayList<>()));
+        }
+        return sessionHistoryService.getSession(userId, sessionId, 0)
+                .thenCompose(sessionOpt -> sessionOpt
+                        .map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> sessionHistoryService.createSession(userId, Optional.of(sessionId))))
+                .exceptionallyCompose(e -> sessionHistoryService.createSession(userId, Optional.of(sessionId)));
     }
     
     /**
@@ -0,0 +1,39 @@
+package runtime.engine.memory.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的会话失效通知通道
+ * 在发布线程上同步通知同一进程内的所有订阅者，用于单节点部署和测试
+ */
+public class LocalSessionInvalidationBus implements SessionInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalSessionInvalidationBus.class);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String origin, String userId, String sessionId) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onInvalidate(origin, userId, sessionId);
+            } catch (RuntimeException e) {
+                logger.warn("会话失效监听器处理失败，用户: {}, 会话: {}", userId, sessionId, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        listeners.clear();
+    }
+}
@@ -0,0 +1,103 @@
+package runtime.engine.memory.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于Redis发布/订阅的会话失效通知通道
+ * 每条通知编码为 {origin}:{userId长度}:{userId}{sessionId}，用户ID和会话ID可以包含任意字符。
+ * Redis发布/订阅不持久化消息，订阅连接断开期间的通知会丢失
+ */
+public class RedisSessionInvalidationBus implements SessionInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisSessionInvalidationBus.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final String channel;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private RedisMessageListenerContainer container;
+
+    public RedisSessionInvalidationBus(RedisTemplate<String, String> redisTemplate, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+    }
+
+    /**
+     * 发布失败只记录日志，写入已经成功，其他节点的缓存由过期时间兜底
+     */
+    @Override
+    public void publish(String origin, String userId, String sessionId) {
+        try {
+            redisTemplate.convertAndSend(channel, encode(origin, userId, sessionId));
+        } catch (Exception e) {
+            logger.warn("发布会话失效通知失败，用户: {}, 会话: {}", userId, sessionId, e);
+        }
+    }
+
+    /**
+     * 首次订阅时创建监听容器，所有监听器共用一个订阅连接
+     */
+    @Override
+    public synchronized void subscribe(Listener listener) {
+        listeners.add(listener);
+        if (container != null) {
+            return;
+        }
+        RedisMessageListenerContainer created = new RedisMessageListenerContainer();
+        created.setConnectionFactory(redisTemplate.getConnectionFactory());
+        created.addMessageListener(this::onMessage, new ChannelTopic(channel));
+        created.afterPropertiesSet();
+        created.start();
+        container = created;
+    }
+
+    @Override
+    public synchronized void close() {
+        listeners.clear();
+        if (container == null) {
+            return;
+        }
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            logger.warn("停止会话失效监听失败", e);
+        }
+        container = null;
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String)) {
+            return;
+        }
+        String payload = (String) body;
+        int originEnd = payload.indexOf(':');
+        int lengthEnd = originEnd < 0 ? -1 : payload.indexOf(':', originEnd + 1);
+        if (lengthEnd < 0) {
+            logger.warn("忽略格式错误的会话失效通知: {}", payload);
+            return;
+        }
+        try {
+            int userIdEnd = lengthEnd + 1 + Integer.parseInt(payload.substring(originEnd + 1, lengthEnd));
+            String origin = payload.substring(0, originEnd);
+            String userId = payload.substring(lengthEnd + 1, userIdEnd);
+            String sessionId = payload.substring(userIdEnd);
+            for (Listener listener : listeners) {
+                listener.onInvalidate(origin, userId, sessionId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("处理会话失效通知失败: {}", payload, e);
+        }
+    }
+
+    private static String encode(String origin, String userId, String sessionId) {
+        return origin + ':' + userId.length() + ':' + userId + sessionId;
+    }
+}
@@ -0,0 +1,39 @@
+package runtime.engine.memory.context;
+
+/**
+ * 会话近端缓存失效通知通道
+ * 多节点部署时，一个节点写入会话后通过该通道通知其他节点丢弃本地缓存的会话尾部。
+ * 通知为尽力投递，可能丢失，缓存需要以过期时间兜底
+ */
+public interface SessionInvalidationBus extends AutoCloseable {
+
+    /**
+     * 发布会话失效通知
+     *
+     * @param origin 发布方标识，订阅方据此忽略自己发出的通知
+     * @param userId 用户标识符
+     * @param sessionId 会话标识符
+     */
+    void publish(String origin, String userId, String sessionId);
+
+    /**
+     * 订阅会话失效通知
+     */
+    void subscribe(Listener listener);
+
+    /**
+     * 停止接收通知并释放连接
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * 会话失效通知监听器
+     */
+    @FunctionalInterface
+    interface Listener {
+
+        void onInvalidate(String origin, String userId, String sessionId);
+    }
+}
@@ -0,0 +1,159 @@
+package runtime.engine.memory.index;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于倒排表的BM25关键词索引
+ * 维护 词项 -> (文档ID -> 词频) 的倒排表以及各文档长度，检索时只访问查询词项的倒排表
+ */
+public class Bm25Index {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private final Map<Long, Map<String, Integer>> documents = new HashMap<>();
+    private final Map<Long, Integer> lengths = new HashMap<>();
+    private long totalLength;
+
+    /**
+     * 获取文档数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 添加文档，若ID已存在则覆盖
+     *
+     * @param id 文档ID
+     * @param text 文档文本
+     */
+    public void add(long id, String text) {
+        Map<String, Integer> frequencies = TextTokenizer.termFrequencies(text);
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            if (frequencies.isEmpty()) {
+                return;
+            }
+            int length = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(id, entry.getValue());
+                length += entry.getValue();
+            }
+            documents.put(id, frequencies);
+            lengths.put(id, length);
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档
+     *
+     * @return 是否删除成功
+     */
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按BM25得分检索最相关的top_k个文档，按得分降序返回
+     *
+     * @param query 查询文本
+     * @param topK 返回数量
+     */
+    public List<VectorHit> search(String query, int topK) {
+        Map<String, Integer> queryTerms = TextTokenizer.termFrequencies(query);
+        if (queryTerms.isEmpty() || topK <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            int documentCount = documents.size();
+            if (documentCount == 0) {
+                return Collections.emptyList();
+            }
+            double averageLength = (double) totalLength / documentCount;
+
+            Map<Long, Double> scores = new HashMap<>();
+            for (String term : queryTerms.keySet()) {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Bm25Scorer.idf(documentCount, posting.size());
+                for (Map.Entry<Long, Integer> entry : posting.entrySet()) {
+                    double contribution = Bm25Scorer.score(idf, entry.getValue(),
+                            lengths.get(entry.getKey()), averageLength);
+                    scores.merge(entry.getKey(), contribution, Double::sum);
+                }
+            }
+            return topHits(scores, topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            lengths.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeInternal(long id) {
+        Map<String, Integer> frequencies = documents.remove(id);
+        if (frequencies == null) {
+            return false;
+        }
+        totalLength -= lengths.remove(id);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Map<Long, Integer> posting = postings.get(entry.getKey());
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(entry.getKey());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从 文档ID -> 得分 中选出得分最高的top_k个
+     */
+    public static List<VectorHit> topHits(Map<Long, Double> scores, int topK) {
+        long[] ids = new long[scores.size()];
+        ScoreHeap heap = new ScoreHeap(Math.min(topK, scores.size()));
+        int slot = 0;
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            ids[slot] = entry.getKey();
+            heap.offer(entry.getValue().floatValue(), slot++);
+        }
+        return heap.drain(ids);
+    }
+}
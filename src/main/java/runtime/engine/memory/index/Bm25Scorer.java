@@ -0,0 +1,37 @@
+package runtime.engine.memory.index;
+
+/**
+ * BM25相关性打分
+ * 使用常用参数 k1=1.2、b=0.75，IDF采用 ln(1 + (N - df + 0.5) / (df + 0.5)) 保证非负
+ */
+public final class Bm25Scorer {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private Bm25Scorer() {
+    }
+
+    /**
+     * 计算词项的逆文档频率
+     *
+     * @param documentCount 文档总数
+     * @param documentFrequency 包含该词项的文档数
+     */
+    public static double idf(long documentCount, long documentFrequency) {
+        return Math.log(1.0 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * 计算单个词项对文档得分的贡献
+     *
+     * @param idf 词项的逆文档频率
+     * @param termFrequency 词项在文档中的出现次数
+     * @param documentLength 文档词项数
+     * @param averageDocumentLength 平均文档词项数
+     */
+    public static double score(double idf, double termFrequency, double documentLength, double averageDocumentLength) {
+        double norm = averageDocumentLength > 0 ? documentLength / averageDocumentLength : 1.0;
+        return idf * termFrequency * (K1 + 1) / (termFrequency + K1 * (1 - B + B * norm));
+    }
+}
@@ -0,0 +1,218 @@
+package runtime.engine.memory.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * 向量的紧凑二进制编码
+ * 以小端序存储归一化后的单位向量，头部记录格式、维度和原始范数：
+ * <pre>
+ * FLOAT32: [format:1][version:1][dimension:2][norm:4][float32 * dimension]
+ * INT8:    [format:1][version:1][dimension:2][norm:4][scale:4][int8 * dimension]
+ * </pre>
+ * 300维向量在FLOAT32下为1208字节、INT8下为316字节；解码直接写入float数组或返回FloatBuffer视图，不产生装箱对象
+ */
+public final class EmbeddingCodec {
+
+    public static final byte FORMAT_FLOAT32 = 1;
+    public static final byte FORMAT_INT8 = 2;
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int INT8_HEADER_BYTES = HEADER_BYTES + 4;
+    private static final int MAX_DIMENSION = 0xFFFF;
+
+    private EmbeddingCodec() {
+    }
+
+    /**
+     * 向量存储格式
+     */
+    public enum Format {
+        FLOAT32(FORMAT_FLOAT32),
+        INT8(FORMAT_INT8);
+
+        private final byte code;
+
+        Format(byte code) {
+            this.code = code;
+        }
+
+        public byte code() {
+            return code;
+        }
+
+        /**
+         * 按配置名称解析格式，忽略大小写，未知名称返回FLOAT32
+         */
+        public static Format fromName(String name) {
+            if (name != null && "int8".equalsIgnoreCase(name.trim())) {
+                return INT8;
+            }
+            return FLOAT32;
+        }
+    }
+
+    /**
+     * 编码向量
+     *
+     * @param vector 原始向量（无需预先归一化）
+     * @param format 存储格式
+     * @return 二进制编码
+     */
+    public static byte[] encode(float[] vector, Format format) {
+        if (vector.length > MAX_DIMENSION) {
+            throw new IllegalArgumentException("向量维度超出编码上限: " + vector.length);
+        }
+        float[] unit = VectorMath.normalized(vector);
+        float norm = VectorMath.norm(vector);
+
+        if (format == Format.INT8) {
+            float maxAbs = 0f;
+            for (float v : unit) {
+                maxAbs = Math.max(maxAbs, Math.abs(v));
+            }
+            float scale = maxAbs > 0f ? maxAbs / 127f : 1f;
+            ByteBuffer buffer = header(INT8_HEADER_BYTES + unit.length, format, unit.length, norm);
+            buffer.putFloat(scale);
+            for (float v : unit) {
+                buffer.put((byte) Math.round(v / scale));
+            }
+            return buffer.array();
+        }
+
+        ByteBuffer buffer = header(HEADER_BYTES + unit.length * Float.BYTES, format, unit.length, norm);
+        buffer.asFloatBuffer().put(unit);
+        return buffer.array();
+    }
+
+    /**
+     * 判断字节数组是否为本编解码器生成的编码
+     */
+    public static boolean isEncoded(byte[] data) {
+        if (data == null || data.length < HEADER_BYTES || data[1] != VERSION) {
+            return false;
+        }
+        int dimension = dimension(data);
+        if (data[0] == FORMAT_FLOAT32) {
+            return data.length == HEADER_BYTES + dimension * Float.BYTES;
+        }
+        return data[0] == FORMAT_INT8 && data.length == INT8_HEADER_BYTES + dimension;
+    }
+
+    /**
+     * 读取编码中的向量维度
+     */
+    public static int dimension(byte[] data) {
+        return (data[2] & 0xFF) | (data[3] & 0xFF) << 8;
+    }
+
+    /**
+     * 读取编码中的原始范数
+     */
+    public static float norm(byte[] data) {
+        return wrap(data).getFloat(4);
+    }
+
+    /**
+     * 解码为归一化后的单位向量
+     */
+    public static float[] decodeNormalized(byte[] data) {
+        checkEncoded(data);
+        float[] vector = new float[dimension(data)];
+        decodeNormalizedInto(data, vector);
+        return vector;
+    }
+
+    /**
+     * 解码为原始向量（单位向量乘以原始范数）
+     */
+    public static float[] decode(byte[] data) {
+        float[] vector = decodeNormalized(data);
+        float norm = norm(data);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= norm;
+        }
+        return vector;
+    }
+
+    /**
+     * 将单位向量解码到调用方提供的数组中，便于批量解码时复用缓冲区
+     *
+     * @param data 二进制编码
+     * @param target 目标数组，长度不小于维度
+     */
+    public static void decodeNormalizedInto(byte[] data, float[] target) {
+        checkEncoded(data);
+        int dimension = dimension(data);
+        if (data[0] == FORMAT_INT8) {
+            float scale = wrap(data).getFloat(HEADER_BYTES);
+            for (int i = 0; i < dimension; i++) {
+                target[i] = data[INT8_HEADER_BYTES + i] * scale;
+            }
+        } else {
+            floatView(data).get(target, 0, dimension);
+        }
+    }
+
+    /**
+     * 返回FLOAT32编码中单位向量的只读视图，不复制数据
+     *
+     * @throws IllegalArgumentException 编码不是FLOAT32格式
+     */
+    public static FloatBuffer floatView(byte[] data) {
+        checkEncoded(data);
+        if (data[0] != FORMAT_FLOAT32) {
+            throw new IllegalArgumentException("不是FLOAT32格式的向量编码");
+        }
+        return ByteBuffer.wrap(data, HEADER_BYTES, data.length - HEADER_BYTES)
+                .slice()
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * 直接在编码上计算与单位查询向量的点积（即余弦相似度），不解码为中间数组
+     *
+     * @param data 二进制编码
+     * @param unitQuery 归一化后的查询向量
+     */
+    public static float dot(byte[] data, float[] unitQuery) {
+        checkEncoded(data);
+        int dimension = Math.min(dimension(data), unitQuery.length);
+        ByteBuffer buffer = wrap(data);
+        float sum = 0f;
+        if (data[0] == FORMAT_INT8) {
+            float scale = buffer.getFloat(HEADER_BYTES);
+            for (int i = 0; i < dimension; i++) {
+                sum += data[INT8_HEADER_BYTES + i] * unitQuery[i];
+            }
+            return sum * scale;
+        }
+        for (int i = 0; i < dimension; i++) {
+            sum += buffer.getFloat(HEADER_BYTES + i * Float.BYTES) * unitQuery[i];
+        }
+        return sum;
+    }
+
+    private static ByteBuffer header(int size, Format format, int dimension, float norm) {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(format.code());
+        buffer.put(VERSION);
+        buffer.putShort((short) dimension);
+        buffer.putFloat(norm);
+        return buffer;
+    }
+
+    private static ByteBuffer wrap(byte[] data) {
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void checkEncoded(byte[] data) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("无法识别的向量编码");
+        }
+    }
+}
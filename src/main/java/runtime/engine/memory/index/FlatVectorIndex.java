@@ -0,0 +1,147 @@
+package runtime.engine.memory.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于连续float数组的精确向量索引
+ * 所有向量在写入时归一化后顺序存放在一块连续数组中，检索时逐条计算点积，
+ * 并使用容量为top_k的最小堆筛选结果，避免对全部候选排序
+ */
+public class FlatVectorIndex implements VectorIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int dimension;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> positions = new HashMap<>();
+
+    private float[] slab;
+    private long[] ids;
+    private int size;
+
+    public FlatVectorIndex(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+        this.slab = new float[INITIAL_CAPACITY * dimension];
+        this.ids = new long[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(long id, float[] vector) {
+        checkDimension(vector);
+        float[] normalized = VectorMath.normalized(vector);
+        lock.writeLock().lock();
+        try {
+            Integer existing = positions.get(id);
+            int slot;
+            if (existing != null) {
+                slot = existing;
+            } else {
+                ensureCapacity(size + 1);
+                slot = size++;
+                ids[slot] = id;
+                positions.put(id, slot);
+            }
+            System.arraycopy(normalized, 0, slab, slot * dimension, dimension);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = positions.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            int last = size - 1;
+            if (slot != last) {
+                // 用最后一个向量填补空位，保持存储连续
+                System.arraycopy(slab, last * dimension, slab, slot * dimension, dimension);
+                ids[slot] = ids[last];
+                positions.put(ids[slot], slot);
+            }
+            size = last;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorHit> search(float[] query, int topK) {
+        checkDimension(query);
+        if (topK <= 0) {
+            return Collections.emptyList();
+        }
+        float[] normalizedQuery = VectorMath.normalized(query);
+
+        lock.readLock().lock();
+        try {
+            int capacity = Math.min(topK, size);
+            if (capacity == 0) {
+                return Collections.emptyList();
+            }
+            ScoreHeap heap = new ScoreHeap(capacity);
+            for (int slot = 0; slot < size; slot++) {
+                heap.offer(VectorMath.dot(normalizedQuery, slab, slot * dimension, dimension), slot);
+            }
+            return heap.drain(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            positions.clear();
+            size = 0;
+            slab = new float[INITIAL_CAPACITY * dimension];
+            ids = new long[INITIAL_CAPACITY];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("vector dimension mismatch, expected " + dimension
+                    + " but was " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        slab = Arrays.copyOf(slab, newCapacity * dimension);
+    }
+}
@@ -0,0 +1,631 @@
+package runtime.engine.memory.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于HNSW（分层可导航小世界图）的近似最近邻向量索引
+ * 写入时增量插入图结构，检索复杂度约为O(log n)；
+ * 可选地通过内存映射文件落盘，重启后直接加载图结构而无需重建，文件中记录已写入的最大ID，
+ * 预热时只需补充此后写入的向量。
+ * 删除的节点先保留在图中用于导航，删除节点超过半数时用存活节点重建图结构
+ */
+public class HnswVectorIndex implements VectorIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorIndex.class);
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 8 * Integer.BYTES + Long.BYTES;
+    private static final int INITIAL_CAPACITY = 64;
+    // 删除节点数达到该值且超过节点总数一半时重建图结构
+    private static final int MIN_DELETED_FOR_REBUILD = 64;
+
+    private final int dimension;
+    private final int m;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Path file;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> nodesById = new HashMap<>();
+
+    private float[] vectors;
+    private long[] ids;
+    private int[][][] links;
+    private BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private long highWaterMark;
+
+    /**
+     * @param dimension 向量维度
+     * @param m 每层每个节点的最大连接数（第0层为2m）
+     * @param efConstruction 构建时的候选队列大小
+     * @param efSearch 检索时的候选队列大小
+     * @param file 落盘文件，为null时仅在内存中维护
+     */
+    public HnswVectorIndex(int dimension, int m, int efConstruction, int efSearch, Path file) {
+        if (dimension <= 0 || m < 2 || efConstruction <= 0 || efSearch <= 0) {
+            throw new IllegalArgumentException("invalid HNSW parameters: dimension=" + dimension
+                    + ", m=" + m + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxConnectionsLevel0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.file = file;
+        allocate(INITIAL_CAPACITY);
+        if (file != null && Files.exists(file)) {
+            load();
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long highWaterMark() {
+        lock.readLock().lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按ID写入向量：ID已存在且向量相同时不做修改，向量不同时替换
+     */
+    @Override
+    public void add(long id, float[] vector) {
+        checkDimension(vector);
+        float[] normalized = VectorMath.normalized(vector);
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodesById.get(id);
+            if (existing != null) {
+                if (Arrays.equals(normalized, 0, dimension, vectors, existing * dimension, (existing + 1) * dimension)) {
+                    return;
+                }
+                // 图结构不支持原地更新，旧节点标记删除后重新插入
+                markDeleted(existing);
+            }
+            insert(id, normalized);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodesById.remove(id);
+            if (node == null) {
+                return false;
+            }
+            // 删除的节点仍保留在图中用于导航，只是不再出现在结果里
+            deleted.set(node);
+            deletedCount++;
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorHit> search(float[] query, int topK) {
+        checkDimension(query);
+        if (topK <= 0) {
+            return Collections.emptyList();
+        }
+        float[] normalizedQuery = VectorMath.normalized(query);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return Collections.emptyList();
+            }
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedyClosest(normalizedQuery, current, level);
+            }
+            int ef = Math.max(efSearch, topK);
+            while (true) {
+                PriorityQueue<Candidate> found = searchLayer(normalizedQuery, current, ef, 0);
+                List<VectorHit> hits = liveHits(found, topK);
+                // 候选中的删除节点过多导致结果不足时扩大候选队列重试，直到覆盖所有可达节点
+                if (hits.size() >= topK || found.size() < ef || ef >= size) {
+                    return hits;
+                }
+                ef = Math.min(size, ef * 2);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            nodesById.clear();
+            deleted = new BitSet();
+            size = 0;
+            deletedCount = 0;
+            entryPoint = -1;
+            maxLevel = -1;
+            highWaterMark = 0;
+            allocate(INITIAL_CAPACITY);
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete HNSW index file " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 将索引写入内存映射文件
+     * 先写临时文件再原子替换，避免进程崩溃时留下半截文件
+     */
+    @Override
+    public synchronized void flush() {
+        if (file == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            long bytes = HEADER_BYTES
+                    + (long) size * (Long.BYTES + Integer.BYTES + 1)
+                    + (long) size * dimension * Float.BYTES;
+            for (int node = 0; node < size; node++) {
+                for (int[] levelLinks : links[node]) {
+                    bytes += (long) (levelLinks[0] + 1) * Integer.BYTES;
+                }
+            }
+
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(m)
+                        .putInt(size).putInt(deletedCount).putInt(entryPoint).putInt(maxLevel)
+                        .putLong(highWaterMark);
+                for (int node = 0; node < size; node++) {
+                    buffer.putLong(ids[node]).putInt(links[node].length - 1).put((byte) (deleted.get(node) ? 1 : 0));
+                }
+                buffer.asFloatBuffer().put(vectors, 0, size * dimension);
+                buffer.position(buffer.position() + size * dimension * Float.BYTES);
+                for (int node = 0; node < size; node++) {
+                    for (int[] levelLinks : links[node]) {
+                        buffer.putInt(levelLinks[0]);
+                        for (int i = 1; i <= levelLinks[0]; i++) {
+                            buffer.putInt(levelLinks[i]);
+                        }
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to flush HNSW index to " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void load() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("HNSW索引文件格式不兼容，将重新构建: {}", file);
+                return;
+            }
+            int fileDimension = buffer.getInt();
+            int fileM = buffer.getInt();
+            if (fileDimension != dimension || fileM != m) {
+                logger.warn("HNSW索引文件参数不一致（维度: {}, M: {}），将重新构建: {}", fileDimension, fileM, file);
+                return;
+            }
+            int nodeCount = buffer.getInt();
+            int fileDeletedCount = buffer.getInt();
+            int fileEntryPoint = buffer.getInt();
+            int fileMaxLevel = buffer.getInt();
+            long fileHighWaterMark = buffer.getLong();
+
+            allocate(Math.max(INITIAL_CAPACITY, nodeCount));
+            int[] nodeLevels = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                ids[node] = buffer.getLong();
+                nodeLevels[node] = buffer.getInt();
+                if (buffer.get() != 0) {
+                    deleted.set(node);
+                } else {
+                    nodesById.put(ids[node], node);
+                }
+            }
+            buffer.asFloatBuffer().get(vectors, 0, nodeCount * dimension);
+            buffer.position(buffer.position() + nodeCount * dimension * Float.BYTES);
+            for (int node = 0; node < nodeCount; node++) {
+                links[node] = new int[nodeLevels[node] + 1][];
+                for (int level = 0; level <= nodeLevels[node]; level++) {
+                    int[] levelLinks = new int[maxConnections(level) + 1];
+                    levelLinks[0] = buffer.getInt();
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        levelLinks[i] = buffer.getInt();
+                    }
+                    links[node][level] = levelLinks;
+                }
+            }
+            size = nodeCount;
+            deletedCount = fileDeletedCount;
+            entryPoint = fileEntryPoint;
+            maxLevel = fileMaxLevel;
+            highWaterMark = fileHighWaterMark;
+            logger.debug("加载HNSW索引文件完成: {}, 节点数: {}, 最大ID: {}", file, nodeCount, fileHighWaterMark);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("加载HNSW索引文件失败，将重新构建: {}", file, e);
+            nodesById.clear();
+            deleted = new BitSet();
+            size = 0;
+            deletedCount = 0;
+            entryPoint = -1;
+            maxLevel = -1;
+            highWaterMark = 0;
+            allocate(INITIAL_CAPACITY);
+        }
+    }
+
+    /**
+     * 删除节点数，供诊断使用
+     */
+    int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<VectorHit> liveHits(PriorityQueue<Candidate> found, int topK) {
+        List<Candidate> ordered = new ArrayList<>(found);
+        ordered.sort(Candidate.BY_SCORE_DESC);
+        List<VectorHit> hits = new ArrayList<>(Math.min(topK, ordered.size()));
+        for (Candidate candidate : ordered) {
+            if (deleted.get(candidate.node)) {
+                continue;
+            }
+            hits.add(new VectorHit(ids[candidate.node], candidate.score));
+            if (hits.size() == topK) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 删除节点超过半数时，用存活节点重新构建图结构，调用方需持有写锁
+     */
+    private void compactIfNeeded() {
+        if (deletedCount < MIN_DELETED_FOR_REBUILD || deletedCount * 2 <= size) {
+            return;
+        }
+        int live = size - deletedCount;
+        long[] liveIds = new long[live];
+        float[] liveVectors = new float[live * dimension];
+        int count = 0;
+        for (int node = 0; node < size; node++) {
+            if (!deleted.get(node)) {
+                liveIds[count] = ids[node];
+                System.arraycopy(vectors, node * dimension, liveVectors, count * dimension, dimension);
+                count++;
+            }
+        }
+        int removed = deletedCount;
+        nodesById.clear();
+        deleted = new BitSet();
+        size = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        allocate(Math.max(INITIAL_CAPACITY, live));
+        for (int i = 0; i < count; i++) {
+            insert(liveIds[i], Arrays.copyOfRange(liveVectors, i * dimension, (i + 1) * dimension));
+        }
+        logger.debug("HNSW索引重建完成，清理删除节点: {}，存活节点: {}", removed, count);
+    }
+
+    private void insert(long id, float[] vector) {
+        ensureCapacity(size + 1);
+        int node = size++;
+        ids[node] = id;
+        System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+        nodesById.put(id, node);
+        highWaterMark = Math.max(highWaterMark, id);
+
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> candidates = searchLayer(vector, current, efConstruction, l);
+            List<Candidate> neighbours = selectNeighbours(candidates, maxConnections(l));
+            for (Candidate neighbour : neighbours) {
+                connect(node, neighbour.node, l);
+                connect(neighbour.node, node, l);
+            }
+            current = bestOf(candidates);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 在指定层上贪心移动到最接近查询向量的节点
+     */
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentScore = score(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float candidateScore = score(query, candidate);
+                if (candidateScore > currentScore) {
+                    current = candidate;
+                    currentScore = candidateScore;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层上做束搜索，返回最多ef个最接近的节点（最小堆，堆顶为其中得分最低者）
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Candidate.BY_SCORE_DESC);
+        PriorityQueue<Candidate> found = new PriorityQueue<>(Candidate.BY_SCORE_ASC);
+
+        Candidate first = new Candidate(start, score(query, start));
+        visited.set(start);
+        toVisit.add(first);
+        found.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Candidate closest = toVisit.poll();
+            if (found.size() >= ef && closest.score < found.peek().score) {
+                break;
+            }
+            int[] neighbours = links[closest.node].length > level ? links[closest.node][level] : null;
+            if (neighbours == null) {
+                continue;
+            }
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float neighbourScore = score(query, neighbour);
+                if (found.size() < ef || neighbourScore > found.peek().score) {
+                    Candidate candidate = new Candidate(neighbour, neighbourScore);
+                    toVisit.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 启发式邻居选择：优先保留彼此分散的候选，不足时用剩余最近的候选补齐
+     */
+    private List<Candidate> selectNeighbours(PriorityQueue<Candidate> candidates, int maxConnections) {
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        ordered.sort(Candidate.BY_SCORE_DESC);
+        List<Candidate> selected = new ArrayList<>(maxConnections);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : ordered) {
+            if (selected.size() >= maxConnections) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (similarity(candidate.node, chosen.node) > candidate.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < maxConnections; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * 添加from到to的单向连接，超出容量时重新选择from的邻居
+     */
+    private void connect(int from, int to, int level) {
+        int[] fromLinks = links[from][level];
+        int count = fromLinks[0];
+        for (int i = 1; i <= count; i++) {
+            if (fromLinks[i] == to) {
+                return;
+            }
+        }
+        int maxConnections = fromLinks.length - 1;
+        if (count < maxConnections) {
+            fromLinks[count + 1] = to;
+            fromLinks[0] = count + 1;
+            return;
+        }
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.BY_SCORE_ASC);
+        float[] base = Arrays.copyOfRange(vectors, from * dimension, (from + 1) * dimension);
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new Candidate(fromLinks[i], score(base, fromLinks[i])));
+        }
+        candidates.add(new Candidate(to, score(base, to)));
+        List<Candidate> kept = selectNeighbours(candidates, maxConnections);
+        fromLinks[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            fromLinks[i + 1] = kept.get(i).node;
+        }
+    }
+
+    private void markDeleted(int node) {
+        nodesById.remove(ids[node]);
+        deleted.set(node);
+        deletedCount++;
+    }
+
+    private int bestOf(PriorityQueue<Candidate> candidates) {
+        Candidate best = null;
+        for (Candidate candidate : candidates) {
+            if (best == null || candidate.score > best.score) {
+                best = candidate;
+            }
+        }
+        return best.node;
+    }
+
+    private int randomLevel() {
+        double uniform = 1.0 - random.nextDouble();
+        return (int) Math.floor(-Math.log(uniform) * levelMultiplier);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnectionsLevel0 : m;
+    }
+
+    private float score(float[] query, int node) {
+        return VectorMath.dot(query, vectors, node * dimension, dimension);
+    }
+
+    private float similarity(int a, int b) {
+        float sum = 0f;
+        int offsetA = a * dimension;
+        int offsetB = b * dimension;
+        for (int i = 0; i < dimension; i++) {
+            sum += vectors[offsetA + i] * vectors[offsetB + i];
+        }
+        return sum;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("vector dimension mismatch, expected " + dimension
+                    + " but was " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private void allocate(int capacity) {
+        vectors = new float[capacity * dimension];
+        ids = new long[capacity];
+        links = new int[capacity][][];
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, ids.length * 2);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        ids = Arrays.copyOf(ids, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+    }
+
+    private static final class Candidate {
+        static final Comparator<Candidate> BY_SCORE_ASC = (a, b) -> Float.compare(a.score, b.score);
+        static final Comparator<Candidate> BY_SCORE_DESC = (a, b) -> Float.compare(b.score, a.score);
+
+        final int node;
+        final float score;
+
+        Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+}
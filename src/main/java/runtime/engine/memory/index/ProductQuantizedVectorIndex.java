@@ -0,0 +1,261 @@
+package runtime.engine.memory.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 乘积量化的向量索引
+ * 向量数量达到训练阈值前按float精确存储和检索；达到阈值时用已有向量训练码本，
+ * 之后每条向量只保存每个子空间一个字节的编码（300维、25个子空间时为25字节），检索通过查表累加得分。
+ * 码本训练完成后不再更新，得分为近似值，调用方应对返回的候选按全精度向量重新打分。
+ * 训练在锁外基于向量快照进行，训练期间的写入和检索照常按float存储处理
+ */
+public class ProductQuantizedVectorIndex implements VectorIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long TRAINING_SEED = 42L;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int trainingSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> positions = new HashMap<>();
+
+    private ProductQuantizer quantizer;
+    private float[] raw;
+    private byte[] codes;
+    private long[] ids;
+    private int size;
+    // 是否有线程正在训练码本
+    private boolean training;
+    // clear时递增，丢弃清空前开始的训练结果
+    private long generation;
+
+    /**
+     * @param dimension 向量维度
+     * @param subspaces 子空间数量
+     * @param trainingSize 训练码本所需的最少向量数
+     */
+    public ProductQuantizedVectorIndex(int dimension, int subspaces, int trainingSize) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+        this.subspaces = Math.max(1, Math.min(subspaces, dimension));
+        this.trainingSize = Math.max(1, trainingSize);
+        reset();
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 码本是否已训练
+     */
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try {
+            return quantizer != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(long id, float[] vector) {
+        checkDimension(vector);
+        float[] normalized = VectorMath.normalized(vector);
+        float[] sample = null;
+        int sampleSize = 0;
+        long sampleGeneration = 0;
+        lock.writeLock().lock();
+        try {
+            Integer existing = positions.get(id);
+            int slot;
+            if (existing != null) {
+                slot = existing;
+            } else {
+                ensureCapacity(size + 1);
+                slot = size++;
+                ids[slot] = id;
+                positions.put(id, slot);
+            }
+            if (quantizer != null) {
+                quantizer.encode(normalized, 0, codes, slot * subspaces);
+            } else {
+                System.arraycopy(normalized, 0, raw, slot * dimension, dimension);
+                if (size >= trainingSize && !training) {
+                    training = true;
+                    sampleSize = size;
+                    sample = Arrays.copyOf(raw, size * dimension);
+                    sampleGeneration = generation;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (sample != null) {
+            train(sample, sampleSize, sampleGeneration);
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = positions.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            int last = size - 1;
+            if (slot != last) {
+                // 用最后一个向量填补空位，保持存储连续
+                if (quantizer != null) {
+                    System.arraycopy(codes, last * subspaces, codes, slot * subspaces, subspaces);
+                } else {
+                    System.arraycopy(raw, last * dimension, raw, slot * dimension, dimension);
+                }
+                ids[slot] = ids[last];
+                positions.put(ids[slot], slot);
+            }
+            size = last;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorHit> search(float[] query, int topK) {
+        checkDimension(query);
+        if (topK <= 0) {
+            return Collections.emptyList();
+        }
+        float[] normalizedQuery = VectorMath.normalized(query);
+
+        lock.readLock().lock();
+        try {
+            int capacity = Math.min(topK, size);
+            if (capacity == 0) {
+                return Collections.emptyList();
+            }
+            ScoreHeap heap = new ScoreHeap(capacity);
+            if (quantizer != null) {
+                float[] table = quantizer.innerProductTable(normalizedQuery);
+                for (int slot = 0; slot < size; slot++) {
+                    heap.offer(quantizer.score(table, codes, slot * subspaces), slot);
+                }
+            } else {
+                for (int slot = 0; slot < size; slot++) {
+                    heap.offer(VectorMath.dot(normalizedQuery, raw, slot * dimension, dimension), slot);
+                }
+            }
+            return heap.drain(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            positions.clear();
+            generation++;
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 在锁外用向量快照训练码本并编码快照，再在写锁内换入码本，只补编训练期间新增或变化的向量，随后释放float存储
+     */
+    private void train(float[] sample, int sampleSize, long sampleGeneration) {
+        ProductQuantizer trained;
+        byte[] sampleCodes = new byte[sampleSize * subspaces];
+        try {
+            trained = ProductQuantizer.train(sample, sampleSize, dimension, subspaces, TRAINING_SEED);
+            for (int slot = 0; slot < sampleSize; slot++) {
+                trained.encode(sample, slot * dimension, sampleCodes, slot * subspaces);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                if (generation == sampleGeneration) {
+                    training = false;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation != sampleGeneration) {
+                return;
+            }
+            byte[] encoded = new byte[ids.length * subspaces];
+            for (int slot = 0; slot < size; slot++) {
+                int offset = slot * dimension;
+                if (slot < sampleSize && Arrays.equals(raw, offset, offset + dimension, sample, offset, offset + dimension)) {
+                    System.arraycopy(sampleCodes, slot * subspaces, encoded, slot * subspaces, subspaces);
+                } else {
+                    trained.encode(raw, offset, encoded, slot * subspaces);
+                }
+            }
+            quantizer = trained;
+            codes = encoded;
+            raw = null;
+            training = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        quantizer = null;
+        training = false;
+        size = 0;
+        raw = new float[INITIAL_CAPACITY * dimension];
+        codes = null;
+        ids = new long[INITIAL_CAPACITY];
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("vector dimension mismatch, expected " + dimension
+                    + " but was " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        if (quantizer != null) {
+            codes = Arrays.copyOf(codes, newCapacity * subspaces);
+        } else {
+            raw = Arrays.copyOf(raw, newCapacity * dimension);
+        }
+    }
+}
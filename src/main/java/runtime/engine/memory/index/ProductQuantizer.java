@@ -0,0 +1,175 @@
+package runtime.engine.memory.index;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 乘积量化器
+ * 将向量切分为若干个子空间，每个子空间用k-means训练出至多256个中心，向量编码为每个子空间一个字节的中心编号。
+ * 检索时为查询向量预计算各子空间与全部中心的内积表，编码的得分即查表求和（非对称距离计算）
+ */
+final class ProductQuantizer {
+
+    static final int MAX_CENTROIDS = 256;
+
+    private static final int ITERATIONS = 12;
+
+    private final int subspaces;
+    private final int centroids;
+    private final int[] offsets;
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int subspaces, int centroids, int[] offsets, float[][] codebooks) {
+        this.subspaces = subspaces;
+        this.centroids = centroids;
+        this.offsets = offsets;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * 在连续存储的样本上训练码本
+     *
+     * @param data 连续存储的单位向量
+     * @param count 样本数量
+     * @param dimension 向量维度
+     * @param subspaces 子空间数量，不超过维度
+     * @param seed 随机种子
+     */
+    static ProductQuantizer train(float[] data, int count, int dimension, int subspaces, long seed) {
+        int m = Math.max(1, Math.min(subspaces, dimension));
+        int k = Math.max(1, Math.min(MAX_CENTROIDS, count));
+        int[] offsets = new int[m + 1];
+        for (int s = 0; s <= m; s++) {
+            offsets[s] = s * dimension / m;
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] codebooks = new float[m][];
+        for (int s = 0; s < m; s++) {
+            codebooks[s] = kMeans(data, count, dimension, offsets[s], offsets[s + 1] - offsets[s], k, random);
+        }
+        return new ProductQuantizer(m, k, offsets, codebooks);
+    }
+
+    int subspaces() {
+        return subspaces;
+    }
+
+    /**
+     * 将单位向量编码为每个子空间一个字节
+     */
+    void encode(float[] vector, int vectorOffset, byte[] target, int targetOffset) {
+        for (int s = 0; s < subspaces; s++) {
+            int start = offsets[s];
+            int width = offsets[s + 1] - start;
+            target[targetOffset + s] = (byte) nearest(vector, vectorOffset + start, width, codebooks[s], centroids);
+        }
+    }
+
+    /**
+     * 预计算查询向量与各子空间全部中心的内积，按 subspace * 256 + code 索引
+     */
+    float[] innerProductTable(float[] unitQuery) {
+        float[] table = new float[subspaces * MAX_CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int start = offsets[s];
+            int width = offsets[s + 1] - start;
+            float[] codebook = codebooks[s];
+            for (int c = 0; c < centroids; c++) {
+                float sum = 0f;
+                int base = c * width;
+                for (int i = 0; i < width; i++) {
+                    sum += unitQuery[start + i] * codebook[base + i];
+                }
+                table[s * MAX_CENTROIDS + c] = sum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 使用内积表计算编码的近似得分
+     */
+    float score(float[] table, byte[] codes, int offset) {
+        float sum = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            sum += table[s * MAX_CENTROIDS + (codes[offset + s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    private static float[] kMeans(float[] data, int count, int dimension, int start, int width, int k,
+                                  SplittableRandom random) {
+        float[] centers = new float[k * width];
+        // 随机选取互不相同的样本作为初始中心
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int c = 0; c < k; c++) {
+            int pick = c + random.nextInt(count - c);
+            int tmp = order[c];
+            order[c] = order[pick];
+            order[pick] = tmp;
+            System.arraycopy(data, order[c] * dimension + start, centers, c * width, width);
+        }
+
+        int[] assignment = new int[count];
+        float[] sums = new float[k * width];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            boolean changed = iteration == 0;
+            for (int i = 0; i < count; i++) {
+                int nearest = nearest(data, i * dimension + start, width, centers, k);
+                if (nearest != assignment[i]) {
+                    assignment[i] = nearest;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                int c = assignment[i];
+                counts[c]++;
+                int base = i * dimension + start;
+                for (int d = 0; d < width; d++) {
+                    sums[c * width + d] += data[base + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // 空簇重新随机选取一个样本作为中心
+                    System.arraycopy(data, random.nextInt(count) * dimension + start, centers, c * width, width);
+                    continue;
+                }
+                float inv = 1f / counts[c];
+                for (int d = 0; d < width; d++) {
+                    centers[c * width + d] = sums[c * width + d] * inv;
+                }
+            }
+        }
+        return centers;
+    }
+
+    private static int nearest(float[] vector, int offset, int width, float[] centers, int k) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float distance = 0f;
+            int base = c * width;
+            for (int d = 0; d < width; d++) {
+                float diff = vector[offset + d] - centers[base + d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
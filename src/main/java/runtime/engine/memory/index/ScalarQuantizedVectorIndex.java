@@ -0,0 +1,183 @@
+package runtime.engine.memory.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * int8标量量化的向量索引
+ * 归一化后的向量按各自的最大绝对值对称量化为int8，连续存放在一块byte数组中，每条向量另存一个缩放系数；
+ * 检索时查询向量同样量化为int8，以整数累加计算点积，内存占用约为FlatVectorIndex的四分之一。
+ * 得分为近似值，调用方应对返回的候选按全精度向量重新打分
+ */
+public class ScalarQuantizedVectorIndex implements VectorIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int dimension;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> positions = new HashMap<>();
+
+    private byte[] codes;
+    private float[] scales;
+    private long[] ids;
+    private int size;
+
+    public ScalarQuantizedVectorIndex(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+        this.codes = new byte[INITIAL_CAPACITY * dimension];
+        this.scales = new float[INITIAL_CAPACITY];
+        this.ids = new long[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(long id, float[] vector) {
+        checkDimension(vector);
+        byte[] code = new byte[dimension];
+        float scale = quantize(VectorMath.normalized(vector), code);
+        lock.writeLock().lock();
+        try {
+            Integer existing = positions.get(id);
+            int slot;
+            if (existing != null) {
+                slot = existing;
+            } else {
+                ensureCapacity(size + 1);
+                slot = size++;
+                ids[slot] = id;
+                positions.put(id, slot);
+            }
+            System.arraycopy(code, 0, codes, slot * dimension, dimension);
+            scales[slot] = scale;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = positions.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            int last = size - 1;
+            if (slot != last) {
+                // 用最后一个向量填补空位，保持存储连续
+                System.arraycopy(codes, last * dimension, codes, slot * dimension, dimension);
+                scales[slot] = scales[last];
+                ids[slot] = ids[last];
+                positions.put(ids[slot], slot);
+            }
+            size = last;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorHit> search(float[] query, int topK) {
+        checkDimension(query);
+        if (topK <= 0) {
+            return Collections.emptyList();
+        }
+        byte[] queryCode = new byte[dimension];
+        float queryScale = quantize(VectorMath.normalized(query), queryCode);
+
+        lock.readLock().lock();
+        try {
+            int capacity = Math.min(topK, size);
+            if (capacity == 0) {
+                return Collections.emptyList();
+            }
+            ScoreHeap heap = new ScoreHeap(capacity);
+            for (int slot = 0; slot < size; slot++) {
+                int offset = slot * dimension;
+                int sum = 0;
+                for (int i = 0; i < dimension; i++) {
+                    sum += queryCode[i] * codes[offset + i];
+                }
+                heap.offer(sum * scales[slot] * queryScale, slot);
+            }
+            return heap.drain(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            positions.clear();
+            size = 0;
+            codes = new byte[INITIAL_CAPACITY * dimension];
+            scales = new float[INITIAL_CAPACITY];
+            ids = new long[INITIAL_CAPACITY];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 将单位向量对称量化为int8
+     *
+     * @return 缩放系数，原始分量约等于 code * scale
+     */
+    static float quantize(float[] unit, byte[] target) {
+        float maxAbs = 0f;
+        for (float v : unit) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        if (maxAbs == 0f) {
+            Arrays.fill(target, (byte) 0);
+            return 0f;
+        }
+        float scale = maxAbs / 127f;
+        float inv = 1f / scale;
+        for (int i = 0; i < unit.length; i++) {
+            target[i] = (byte) Math.round(unit[i] * inv);
+        }
+        return scale;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("vector dimension mismatch, expected " + dimension
+                    + " but was " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        scales = Arrays.copyOf(scales, newCapacity);
+        codes = Arrays.copyOf(codes, newCapacity * dimension);
+    }
+}
@@ -0,0 +1,118 @@
+package runtime.engine.memory.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按得分保留top_k个槽位的最小堆
+ * 使用原始数组存储得分和槽位，堆顶为当前第k大的得分，避免对全部候选排序：时间O(n log k)，额外内存O(k)。
+ * 槽位是调用方候选数组中的下标，向量索引、关键词检索、结果融合和MySQL重打分都用它选出top_k。
+ * 非线程安全，每次检索使用独立实例
+ */
+public final class ScoreHeap {
+
+    private final float[] scores;
+    private final int[] slots;
+    private int size;
+
+    public ScoreHeap(int capacity) {
+        this.scores = new float[capacity];
+        this.slots = new int[capacity];
+    }
+
+    /**
+     * 尝试加入候选，堆满时仅当得分高于堆顶才替换
+     */
+    public void offer(float score, int slot) {
+        if (size < scores.length) {
+            scores[size] = score;
+            slots[size] = slot;
+            siftUp(size++);
+        } else if (size > 0 && score > scores[0]) {
+            scores[0] = score;
+            slots[0] = slot;
+            siftDown(size);
+        }
+    }
+
+    /**
+     * 堆满时返回当前最低得分，否则返回负无穷
+     */
+    public float threshold() {
+        return size < scores.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 按得分降序取出全部结果，取出后堆为空
+     *
+     * @param ids 槽位到记忆ID的映射
+     */
+    public List<VectorHit> drain(long[] ids) {
+        VectorHit[] hits = new VectorHit[size];
+        for (int i = size - 1; i >= 0; i--) {
+            hits[i] = new VectorHit(ids[slots[0]], scores[0]);
+            scores[0] = scores[i];
+            slots[0] = slots[i];
+            siftDown(i);
+        }
+        size = 0;
+        return new ArrayList<>(Arrays.asList(hits));
+    }
+
+    /**
+     * 按得分降序取出全部槽位，取出后堆为空
+     */
+    public int[] drainSlots() {
+        int[] sorted = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            sorted[i] = slots[0];
+            scores[0] = scores[i];
+            slots[0] = slots[i];
+            siftDown(i);
+        }
+        size = 0;
+        return sorted;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[index] >= scores[parent]) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int limit) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= limit) {
+                break;
+            }
+            int right = left + 1;
+            int smallest = right < limit && scores[right] < scores[left] ? right : left;
+            if (scores[index] <= scores[smallest]) {
+                break;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        int slot = slots[i];
+        slots[i] = slots[j];
+        slots[j] = slot;
+    }
+}
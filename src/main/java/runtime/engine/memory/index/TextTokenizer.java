@@ -0,0 +1,89 @@
+package runtime.engine.memory.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 关键词检索使用的分词器
+ * 字母数字连续片段按单词切分并转为小写；中日韩文字没有空格分隔，按相邻两字切分为二元词组（单字片段保留单字）
+ */
+public final class TextTokenizer {
+
+    private TextTokenizer() {
+    }
+
+    /**
+     * 将文本切分为词项，保留重复项以便统计词频
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                cjk.appendCodePoint(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjk, tokens);
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+            } else {
+                flushWord(word, tokens);
+                flushCjk(cjk, tokens);
+            }
+        }
+        flushWord(word, tokens);
+        flushCjk(cjk, tokens);
+        return tokens;
+    }
+
+    /**
+     * 统计文本中各词项的词频，按首次出现顺序排列
+     */
+    public static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String token : tokenize(text)) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.length() > 0) {
+            tokens.add(word.toString().toLowerCase(Locale.ROOT));
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(StringBuilder cjk, List<String> tokens) {
+        if (cjk.length() == 0) {
+            return;
+        }
+        int[] codePoints = cjk.codePoints().toArray();
+        if (codePoints.length == 1) {
+            tokens.add(new String(codePoints, 0, 1));
+        } else {
+            for (int i = 0; i + 1 < codePoints.length; i++) {
+                tokens.add(new String(codePoints, i, 2));
+            }
+        }
+        cjk.setLength(0);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
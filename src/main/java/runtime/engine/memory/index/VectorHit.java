@@ -0,0 +1,29 @@
+package runtime.engine.memory.index;
+
+/**
+ * 向量检索命中结果
+ * 记录命中条目的ID及其与查询向量的相似度得分
+ */
+public class VectorHit {
+
+    private final long id;
+    private final float score;
+
+    public VectorHit(long id, float score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "VectorHit{id=" + id + ", score=" + score + "}";
+    }
+}
@@ -0,0 +1,71 @@
+package runtime.engine.memory.index;
+
+import java.util.List;
+
+/**
+ * 向量索引接口
+ * 保存单个用户的记忆向量，按相似度返回top_k候选
+ * 写入的向量在索引内部归一化，得分为归一化后的点积（即余弦相似度）
+ */
+public interface VectorIndex {
+
+    /**
+     * 获取索引的向量维度
+     *
+     * @return 向量维度
+     */
+    int dimension();
+
+    /**
+     * 获取索引中的向量数量
+     *
+     * @return 向量数量
+     */
+    int size();
+
+    /**
+     * 添加向量，若ID已存在则覆盖
+     *
+     * @param id 记忆ID
+     * @param vector 原始向量（无需预先归一化）
+     */
+    void add(long id, float[] vector);
+
+    /**
+     * 删除向量
+     *
+     * @param id 记忆ID
+     * @return 是否删除成功
+     */
+    boolean remove(long id);
+
+    /**
+     * 检索与查询向量最相似的top_k个条目，按得分降序返回
+     *
+     * @param query 查询向量（无需预先归一化）
+     * @param topK 返回数量
+     * @return 命中结果列表
+     */
+    List<VectorHit> search(float[] query, int topK);
+
+    /**
+     * 清空索引，对持久化索引同时删除其落盘数据
+     */
+    void clear();
+
+    /**
+     * 索引中写入过的最大ID，预热时只需从持久化存储补充ID更大的向量；
+     * 不从落盘文件加载的索引创建时为空，返回0即可
+     *
+     * @return 最大ID，索引为空时返回0
+     */
+    default long highWaterMark() {
+        return 0;
+    }
+
+    /**
+     * 将索引落盘，不支持持久化的索引无需实现
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,124 @@
+package runtime.engine.memory.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 按用户划分的向量索引注册表
+ * 索引在首次检索时从持久化存储预热，之后由写入路径增量维护；
+ * 持久化存储仍是唯一可信数据源，索引失效后会在下次检索时重建
+ */
+public class VectorIndexRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorIndexRegistry.class);
+
+    private final Function<String, VectorIndex> indexFactory;
+    private final Map<String, UserIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * @param indexFactory 根据用户ID创建空索引的工厂
+     */
+    public VectorIndexRegistry(Function<String, VectorIndex> indexFactory) {
+        this.indexFactory = indexFactory;
+    }
+
+    /**
+     * 获取用户索引，如尚未预热则先使用loader从持久化存储加载
+     * 预热期间并发写入的向量同样会进入索引，按ID去重；
+     * 从落盘文件加载的索引已包含文件中记录的最大ID及之前的向量，加载器只需补充之后的向量
+     *
+     * @param userId 用户ID
+     * @param loader 预热加载器，参数为索引和该索引创建时已包含的最大ID，向索引中写入ID更大的向量
+     * @return 已预热的用户索引
+     */
+    public VectorIndex getOrLoad(String userId, ObjLongConsumer<VectorIndex> loader) {
+        UserIndex userIndex = indexes.computeIfAbsent(userId, id -> new UserIndex(indexFactory.apply(id)));
+        if (!userIndex.loaded) {
+            synchronized (userIndex) {
+                if (!userIndex.loaded) {
+                    loader.accept(userIndex.index, userIndex.loadedUpTo);
+                    userIndex.loaded = true;
+                    // 预热后立即落盘，重启时持久化索引可跳过建图
+                    flushQuietly(userId, userIndex.index);
+                }
+            }
+        }
+        return userIndex.index;
+    }
+
+    /**
+     * 向已存在的用户索引追加向量
+     * 若用户索引尚未创建则忽略，后续预热会从持久化存储读到该向量
+     *
+     * @return 是否写入了索引
+     */
+    public boolean addIfPresent(String userId, long id, float[] vector) {
+        UserIndex userIndex = indexes.get(userId);
+        if (userIndex == null) {
+            return false;
+        }
+        userIndex.index.add(id, vector);
+        return true;
+    }
+
+    /**
+     * 使用户索引失效，下次检索时重新预热
+     */
+    public void invalidate(String userId) {
+        UserIndex removed = indexes.remove(userId);
+        if (removed != null) {
+            removed.index.clear();
+        }
+    }
+
+    /**
+     * 将所有已预热的索引落盘
+     */
+    public void flush() {
+        for (Map.Entry<String, UserIndex> entry : indexes.entrySet()) {
+            if (entry.getValue().loaded) {
+                flushQuietly(entry.getKey(), entry.getValue().index);
+            }
+        }
+    }
+
+    /**
+     * 释放所有用户索引的内存，已落盘的数据保留
+     */
+    public void clear() {
+        indexes.clear();
+    }
+
+    /**
+     * 判断用户索引是否已预热
+     */
+    public boolean isLoaded(String userId) {
+        UserIndex userIndex = indexes.get(userId);
+        return userIndex != null && userIndex.loaded;
+    }
+
+    private void flushQuietly(String userId, VectorIndex index) {
+        try {
+            index.flush();
+        } catch (RuntimeException e) {
+            logger.warn("向量索引落盘失败，用户: {}", userId, e);
+        }
+    }
+
+    private static final class UserIndex {
+        final VectorIndex index;
+        // 创建时从落盘文件加载的最大ID，在索引对写入路径可见之前读取，预热期间并发写入的ID不会计入
+        final long loadedUpTo;
+        volatile boolean loaded;
+
+        UserIndex(VectorIndex index) {
+            this.index = index;
+            this.loadedUpTo = index.highWaterMark();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package runtime.engine.memory.index;
+
+import java.util.List;
+
+/**
+ * 基于原始float数组的向量运算工具
+ * 避免装箱的List<Double>和中间向量对象
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * 将装箱的向量转换为float数组
+     */
+    public static float[] toFloatArray(List<? extends Number> vector) {
+        if (vector == null) {
+            return new float[0];
+        }
+        float[] result = new float[vector.size()];
+        for (int i = 0; i < result.length; i++) {
+            Number value = vector.get(i);
+            result[i] = value != null ? value.floatValue() : 0f;
+        }
+        return result;
+    }
+
+    /**
+     * 计算向量的L2范数
+     */
+    public static float norm(float[] vector) {
+        double sum = 0.0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * 原地归一化向量，零向量保持不变
+     *
+     * @return 归一化前的范数
+     */
+    public static float normalizeInPlace(float[] vector) {
+        float norm = norm(vector);
+        if (norm > 0f) {
+            float inv = 1f / norm;
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return norm;
+    }
+
+    /**
+     * 返回归一化后的向量副本
+     */
+    public static float[] normalized(float[] vector) {
+        float[] copy = vector.clone();
+        normalizeInPlace(copy);
+        return copy;
+    }
+
+    /**
+     * 计算查询向量与连续存储块中某一段的点积
+     *
+     * @param query 查询向量
+     * @param slab 连续存储的向量块
+     * @param offset 目标向量在块中的起始位置
+     * @param dimension 向量维度
+     */
+    public static float dot(float[] query, float[] slab, int offset, int dimension) {
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * slab[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * 计算两个向量的点积
+     */
+    public static float dot(float[] a, float[] b) {
+        return dot(a, b, 0, Math.min(a.length, b.length));
+    }
+
+    /**
+     * 计算两个向量的余弦相似度
+     */
+    public static float cosine(float[] a, float[] b) {
+        if (a == null || b == null || a.length != b.length) {
+            return 0f;
+        }
+        float normA = norm(a);
+        float normB = norm(b);
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return dot(a, b) / (normA * normB);
+    }
+}
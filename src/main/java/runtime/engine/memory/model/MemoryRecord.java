@@ -0,0 +1,48 @@
+package runtime.engine.memory.model;
+
+/**
+ * 带存储信息的记忆条目，用于管理接口的分页和导出
+ */
+public class MemoryRecord {
+    
+    private final String id;
+    private final String userId;
+    private final String sessionId;
+    private final Message message;
+    private final long timestamp;
+    
+    /**
+     * @param id 存储中的记忆ID，存储不提供时为null
+     * @param userId 用户ID
+     * @param sessionId 会话ID，可为null
+     * @param message 记忆消息
+     * @param timestamp 创建时间（毫秒），存储不提供时为0
+     */
+    public MemoryRecord(String id, String userId, String sessionId, Message message, long timestamp) {
+        this.id = id;
+        this.userId = userId;
+        this.sessionId = sessionId;
+        this.message = message;
+        this.timestamp = timestamp;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getSessionId() {
+        return sessionId;
+    }
+    
+    public Message getMessage() {
+        return message;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
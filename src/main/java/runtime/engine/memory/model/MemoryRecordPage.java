@@ -0,0 +1,31 @@
+package runtime.engine.memory.model;
+
+import java.util.List;
+
+/**
+ * 一页记忆条目及读取下一页的游标
+ */
+public class MemoryRecordPage {
+    
+    private final List<MemoryRecord> records;
+    private final String nextCursor;
+    
+    public MemoryRecordPage(List<MemoryRecord> records, String nextCursor) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+    }
+    
+    /**
+     * 本页的记忆条目，按创建时间倒序排列
+     */
+    public List<MemoryRecord> getRecords() {
+        return records;
+    }
+    
+    /**
+     * 下一页的游标，没有更多数据时为null；游标格式由存储实现决定
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
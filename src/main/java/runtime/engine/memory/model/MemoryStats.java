@@ -0,0 +1,62 @@
+package runtime.engine.memory.model;
+
+/**
+ * 用户记忆统计，不可变，按增量合并
+ */
+public class MemoryStats {
+    
+    private static final MemoryStats EMPTY = new MemoryStats(0, 0, 0, 0);
+    
+    private final long totalMemories;
+    private final long userMessages;
+    private final long assistantMessages;
+    private final long lastActivity;
+    
+    /**
+     * @param totalMemories 记忆总数
+     * @param userMessages 用户消息数
+     * @param assistantMessages 助手消息数
+     * @param lastActivity 最近一条记忆的创建时间（毫秒），没有记忆或存储不提供时为0
+     */
+    public MemoryStats(long totalMemories, long userMessages, long assistantMessages, long lastActivity) {
+        this.totalMemories = totalMemories;
+        this.userMessages = userMessages;
+        this.assistantMessages = assistantMessages;
+        this.lastActivity = lastActivity;
+    }
+    
+    public static MemoryStats empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * 统计一条记忆后的结果
+     */
+    public MemoryStats add(MessageType type, long timestamp) {
+        return plus(new MemoryStats(1, type == MessageType.USER ? 1 : 0, type == MessageType.ASSISTANT ? 1 : 0, timestamp));
+    }
+    
+    /**
+     * 合并增量后的结果
+     */
+    public MemoryStats plus(MemoryStats delta) {
+        return new MemoryStats(totalMemories + delta.totalMemories, userMessages + delta.userMessages,
+            assistantMessages + delta.assistantMessages, Math.max(lastActivity, delta.lastActivity));
+    }
+    
+    public long getTotalMemories() {
+        return totalMemories;
+    }
+    
+    public long getUserMessages() {
+        return userMessages;
+    }
+    
+    public long getAssistantMessages() {
+        return assistantMessages;
+    }
+    
+    public long getLastActivity() {
+        return lastActivity;
+    }
+}
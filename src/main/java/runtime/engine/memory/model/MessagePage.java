@@ -0,0 +1,40 @@
+package runtime.engine.memory.model;
+
+import java.util.List;
+
+/**
+ * 按{@link MessageWindow}读取的一页会话消息
+ */
+public class MessagePage {
+
+    private final List<Message> messages;
+    private final long nextCursor;
+    private final boolean hasMore;
+
+    public MessagePage(List<Message> messages, long nextCursor, boolean hasMore) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * 窗口内的消息，按时间正序排列
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * 最后一条返回消息之后的游标，传给{@link MessageWindow#after(long, int)}读取之后追加的消息
+     */
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * AFTER窗口表示游标之后还有消息；其他窗口表示还有更早的消息未返回
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
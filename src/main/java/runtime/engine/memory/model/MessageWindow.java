@@ -0,0 +1,202 @@
+package runtime.engine.memory.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话消息读取窗口
+ * 描述只读取会话历史的一部分：全部消息、最近N条、某个游标之后的一页，或令牌预算内的最近消息。
+ * 游标由{@link MessagePage#getNextCursor()}返回，具体含义由存储实现决定，只能用于产生它的同一存储
+ */
+public final class MessageWindow {
+
+    /**
+     * 窗口类型
+     */
+    public enum Kind {
+        ALL,
+        LAST,
+        AFTER,
+        TOKEN_BUDGET
+    }
+
+    // 估算的每条消息固定令牌开销（角色标记、分隔符等）
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final MessageWindow ALL = new MessageWindow(Kind.ALL, 0, 0, 0);
+
+    private final Kind kind;
+    private final int limit;
+    private final long cursor;
+    private final int maxTokens;
+
+    private MessageWindow(Kind kind, int limit, long cursor, int maxTokens) {
+        this.kind = kind;
+        this.limit = limit;
+        this.cursor = cursor;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * 全部消息
+     */
+    public static MessageWindow all() {
+        return ALL;
+    }
+
+    /**
+     * 最近的n条消息
+     */
+    public static MessageWindow last(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Message count must not be negative: " + n);
+        }
+        return new MessageWindow(Kind.LAST, n, 0, 0);
+    }
+
+    /**
+     * 游标之后的消息，按时间正序最多返回limit条
+     *
+     * @param cursor 上一页返回的游标，0表示从第一条消息开始
+     * @param limit 最多返回的消息数，0表示不限
+     */
+    public static MessageWindow after(long cursor, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Page limit must not be negative: " + limit);
+        }
+        return new MessageWindow(Kind.AFTER, limit, Math.max(0, cursor), 0);
+    }
+
+    /**
+     * 估算令牌数之和不超过maxTokens的最近消息
+     */
+    public static MessageWindow tokenBudget(int maxTokens) {
+        if (maxTokens < 0) {
+            throw new IllegalArgumentException("Token budget must not be negative: " + maxTokens);
+        }
+        return new MessageWindow(Kind.TOKEN_BUDGET, 0, 0, maxTokens);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * LAST窗口的消息数，或AFTER窗口的每页消息数
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * 创建令牌预算计数器，从最新的消息开始向前逐条累加
+     */
+    public TokenCounter tokenCounter() {
+        return new TokenCounter(maxTokens);
+    }
+
+    /**
+     * 估算消息的令牌数：ASCII字符按4个一个令牌计算，其他字符（如中文）每个按一个令牌计算，另加固定开销
+     */
+    public static int estimateTokens(Message message) {
+        int asciiChars = 0;
+        int otherChars = 0;
+        if (message.getContent() != null) {
+            for (MessageContent content : message.getContent()) {
+                String text = content.getText();
+                if (text == null) {
+                    continue;
+                }
+                for (int i = 0; i < text.length(); i++) {
+                    if (text.charAt(i) < 0x80) {
+                        asciiChars++;
+                    } else {
+                        otherChars++;
+                    }
+                }
+            }
+        }
+        return MESSAGE_OVERHEAD_TOKENS + (asciiChars + 3) / 4 + otherChars;
+    }
+
+    /**
+     * 在内存中的完整消息列表上应用窗口，供无法按范围读取的存储使用
+     * 游标按消息位置计算：返回的游标为最后一条返回消息之后的位置
+     *
+     * @param messages 按时间正序排列的全部消息
+     * @param firstPosition 列表中第一条消息的位置
+     * @return 窗口内的消息，只复制窗口内的部分
+     */
+    public MessagePage apply(List<Message> messages, long firstPosition) {
+        int size = messages.size();
+        int from = 0;
+        int to = size;
+        switch (kind) {
+            case LAST -> from = Math.max(0, size - limit);
+            case AFTER -> {
+                from = (int) Math.min(size, Math.max(0, cursor - firstPosition));
+                if (limit > 0) {
+                    to = (int) Math.min(size, (long) from + limit);
+                }
+            }
+            case TOKEN_BUDGET -> {
+                TokenCounter counter = tokenCounter();
+                from = size;
+                while (from > 0 && counter.tryAdd(messages.get(from - 1))) {
+                    from--;
+                }
+            }
+            default -> {
+            }
+        }
+        boolean hasMore = kind == Kind.AFTER ? to < size : from > 0;
+        return new MessagePage(new ArrayList<>(messages.subList(from, to)), firstPosition + to, hasMore);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case ALL -> "MessageWindow{all}";
+            case LAST -> "MessageWindow{last=" + limit + "}";
+            case AFTER -> "MessageWindow{after=" + cursor + ", limit=" + limit + "}";
+            case TOKEN_BUDGET -> "MessageWindow{maxTokens=" + maxTokens + "}";
+        };
+    }
+
+    /**
+     * 令牌预算计数器，非线程安全
+     */
+    public static final class TokenCounter {
+
+        private final int maxTokens;
+        private long used;
+
+        private TokenCounter(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        /**
+         * 预算足够时计入该消息并返回true，否则不计入并返回false
+         */
+        public boolean tryAdd(Message message) {
+            long total = used + estimateTokens(message);
+            if (total > maxTokens) {
+                return false;
+            }
+            used = total;
+            return true;
+        }
+
+        public long getUsed() {
+            return used;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package runtime.engine.memory.model;
+
+/**
+ * 用户会话统计，不可变，按增量合并
+ */
+public class SessionStats {
+    
+    private static final SessionStats EMPTY = new SessionStats(0, 0, 0);
+    
+    private final long totalSessions;
+    private final long totalMessages;
+    private final long lastActivity;
+    
+    /**
+     * @param totalSessions 会话总数
+     * @param totalMessages 全部会话的消息总数
+     * @param lastActivity 最近一次追加消息的时间（毫秒），存储不提供时为0
+     */
+    public SessionStats(long totalSessions, long totalMessages, long lastActivity) {
+        this.totalSessions = totalSessions;
+        this.totalMessages = totalMessages;
+        this.lastActivity = lastActivity;
+    }
+    
+    public static SessionStats empty() {
+        return EMPTY;
+    }
+    
+    /**
+     * 合并增量后的结果，计数不会小于0
+     */
+    public SessionStats plus(SessionStats delta) {
+        return new SessionStats(Math.max(0, totalSessions + delta.totalSessions),
+            Math.max(0, totalMessages + delta.totalMessages), Math.max(lastActivity, delta.lastActivity));
+    }
+    
+    public long getTotalSessions() {
+        return totalSessions;
+    }
+    
+    public long getTotalMessages() {
+        return totalMessages;
+    }
+    
+    public long getLastActivity() {
+        return lastActivity;
+    }
+    
+    /**
+     * 平均每个会话的消息数，保留两位小数
+     */
+    public double getAverageSessionLength() {
+        if (totalSessions == 0) {
+            return 0.0;
+        }
+        return Math.round((double) totalMessages / totalSessions * 100.0) / 100.0;
+    }
+}
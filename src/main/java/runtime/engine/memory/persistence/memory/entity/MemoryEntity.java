@@ -11,7 +11,9 @@ import java.time.LocalDateTime;
 @Table(name = "memories", indexes = {
     @Index(name = "idx_user_id", columnList = "user_id"),
     @Index(name = "idx_session_id", columnList = "session_id"),
-    @Index(name = "idx_created_at", columnList = "created_at")
+    @Index(name = "idx_created_at", columnList = "created_at"),
+    @Index(name = "idx_created_at_id", columnList = "created_at, id"),
+    @Index(name = "idx_user_created_at_id", columnList = "user_id, created_at, id")
 })
 public class MemoryEntity {
     
@@ -35,9 +37,19 @@ public class MemoryEntity {
     @Column(name = "metadata", columnDefinition = "JSON")
     private String metadata;
     
+    /**
+     * 旧版JSON数组格式的向量，仅用于读取历史数据
+     */
     @Column(name = "embedding", columnDefinition = "JSON")
     private String embedding;
     
+    /**
+     * 二进制格式的向量，编码见EmbeddingCodec
+     */
+    @Lob
+    @Column(name = "embedding_bin", columnDefinition = "BLOB")
+    private byte[] embeddingBin;
+    
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
     
@@ -134,4 +146,12 @@ public class MemoryEntity {
     public void setEmbedding(String embedding) {
         this.embedding = embedding;
     }
+    
+    public byte[] getEmbeddingBin() {
+        return embeddingBin;
+    }
+    
+    public void setEmbeddingBin(byte[] embeddingBin) {
+        this.embeddingBin = embeddingBin;
+    }
 }
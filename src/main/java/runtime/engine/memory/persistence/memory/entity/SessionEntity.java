@@ -34,6 +34,7 @@ public class SessionEntity {
     private LocalDateTime lastActivity;
     
     @OneToMany(mappedBy = "session", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @OrderBy("id ASC")
     private List<SessionMessageEntity> messages;
     
     public SessionEntity() {
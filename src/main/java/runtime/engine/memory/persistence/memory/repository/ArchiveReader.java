@@ -0,0 +1,171 @@
+package runtime.engine.memory.persistence.memory.repository;
+
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.persistence.memory.entity.MemoryEntity;
+import runtime.engine.memory.persistence.memory.entity.SessionMessageEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 归档层的读取和删除
+ * 超过热数据保留期的记忆和会话消息被移入压缩的归档表，保留原有ID。归档行总是早于热表中的行，
+ * 按时间倒序读取时先读热表、不足部分再从归档表补齐，按ID正序读取时相反
+ */
+public class ArchiveReader {
+
+    public static final String MEMORY_ARCHIVE = "memories_archive";
+    public static final String SESSION_MESSAGE_ARCHIVE = "session_messages_archive";
+
+    private static final String SELECT_MEMORY_COLUMNS =
+        "SELECT id, user_id, session_id, message_type, content, metadata, embedding, embedding_bin, created_at, updated_at FROM "
+            + MEMORY_ARCHIVE;
+    private static final String MEMORY_ORDER = " ORDER BY created_at DESC, id DESC";
+
+    private static final String SELECT_SESSION_MESSAGE_COLUMNS =
+        "SELECT id, session_id, message_type, content, metadata, created_at FROM " + SESSION_MESSAGE_ARCHIVE;
+
+    // 检索重新打分需要全精度向量，这里读取全部列
+    private static final RowMapper<MemoryEntity> MEMORY_ROW_MAPPER = (rs, rowNum) -> {
+        MemoryEntity entity = MemoryStreamReader.ROW_MAPPER.mapRow(rs, rowNum);
+        entity.setEmbedding(rs.getString("embedding"));
+        entity.setEmbeddingBin(rs.getBytes("embedding_bin"));
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        entity.setUpdatedAt(updatedAt != null ? updatedAt.toLocalDateTime() : entity.getCreatedAt());
+        return entity;
+    };
+
+    private static final RowMapper<SessionMessageEntity> SESSION_MESSAGE_ROW_MAPPER = (rs, rowNum) -> {
+        SessionMessageEntity entity = new SessionMessageEntity();
+        entity.setId(rs.getLong("id"));
+        entity.setSessionId(rs.getString("session_id"));
+        entity.setMessageType(MessageType.valueOf(rs.getString("message_type")));
+        entity.setContent(rs.getString("content"));
+        entity.setMetadata(rs.getString("metadata"));
+        entity.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        return entity;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ArchiveReader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 按(创建时间, ID)倒序读取一页归档记忆
+     *
+     * @param userId 用户ID，为空时读取所有用户
+     * @param beforeCreatedAt 上一页最后一条的创建时间，为null时从最新的归档记忆开始
+     * @param beforeId 上一页最后一条的ID
+     * @param limit 最多返回的条数
+     */
+    public List<MemoryEntity> findMemoryPage(Optional<String> userId, LocalDateTime beforeCreatedAt, long beforeId, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT_MEMORY_COLUMNS).append(" WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (userId.isPresent()) {
+            sql.append(" AND user_id = ?");
+            args.add(userId.get());
+        }
+        if (beforeCreatedAt != null) {
+            Timestamp createdAt = Timestamp.valueOf(beforeCreatedAt);
+            sql.append(" AND (created_at < ? OR (created_at = ? AND id < ?))");
+            args.add(createdAt);
+            args.add(createdAt);
+            args.add(beforeId);
+        }
+        sql.append(MEMORY_ORDER).append(" LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), MEMORY_ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * 按创建时间倒序、偏移量分页读取用户的归档记忆
+     */
+    public List<MemoryEntity> findMemoriesByUserId(String userId, long offset, int limit) {
+        return jdbcTemplate.query(SELECT_MEMORY_COLUMNS + " WHERE user_id = ?" + MEMORY_ORDER + " LIMIT ? OFFSET ?",
+            MEMORY_ROW_MAPPER, userId, limit, offset);
+    }
+
+    /**
+     * 按ID读取归档记忆
+     */
+    public List<MemoryEntity> findMemoriesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query(SELECT_MEMORY_COLUMNS + " WHERE id IN (" + placeholders(ids.size()) + ")",
+            MEMORY_ROW_MAPPER, ids.toArray());
+    }
+
+    /**
+     * 读取用户ID大于afterId的归档记忆的向量，每行依次为ID、二进制向量、JSON向量
+     */
+    public List<Object[]> findEmbeddingsByUserId(String userId, long afterId) {
+        return jdbcTemplate.query("SELECT id, embedding_bin, embedding FROM " + MEMORY_ARCHIVE
+                + " WHERE user_id = ? AND id > ? AND (embedding_bin IS NOT NULL OR embedding IS NOT NULL)",
+            (rs, rowNum) -> new Object[] {rs.getLong("id"), rs.getBytes("embedding_bin"), rs.getString("embedding")},
+            userId, afterId);
+    }
+
+    /**
+     * 删除用户的归档记忆，指定会话时只删除该会话的记忆
+     */
+    public void deleteMemories(String userId, Optional<String> sessionId) {
+        if (sessionId.isPresent()) {
+            jdbcTemplate.update("DELETE FROM " + MEMORY_ARCHIVE + " WHERE user_id = ? AND session_id = ?",
+                userId, sessionId.get());
+        } else {
+            jdbcTemplate.update("DELETE FROM " + MEMORY_ARCHIVE + " WHERE user_id = ?", userId);
+        }
+    }
+
+    /**
+     * 按ID倒序读取指定ID之前的归档会话消息
+     */
+    public List<SessionMessageEntity> findSessionMessagesBefore(String sessionId, long beforeId, int limit) {
+        return jdbcTemplate.query(SELECT_SESSION_MESSAGE_COLUMNS + " WHERE session_id = ? AND id < ? ORDER BY id DESC LIMIT ?",
+            SESSION_MESSAGE_ROW_MAPPER, sessionId, beforeId, limit);
+    }
+
+    /**
+     * 按ID正序读取指定ID之后的归档会话消息
+     *
+     * @param limit 最多返回的条数，小于等于0表示不限
+     */
+    public List<SessionMessageEntity> findSessionMessagesAfter(String sessionId, long afterId, int limit) {
+        if (limit <= 0) {
+            return jdbcTemplate.query(SELECT_SESSION_MESSAGE_COLUMNS + " WHERE session_id = ? AND id > ? ORDER BY id",
+                SESSION_MESSAGE_ROW_MAPPER, sessionId, afterId);
+        }
+        return jdbcTemplate.query(SELECT_SESSION_MESSAGE_COLUMNS + " WHERE session_id = ? AND id > ? ORDER BY id LIMIT ?",
+            SESSION_MESSAGE_ROW_MAPPER, sessionId, afterId, limit);
+    }
+
+    /**
+     * 删除会话的归档消息
+     */
+    public void deleteSessionMessages(String sessionId) {
+        jdbcTemplate.update("DELETE FROM " + SESSION_MESSAGE_ARCHIVE + " WHERE session_id = ?", sessionId);
+    }
+
+    /**
+     * 统计用户全部会话的归档消息数
+     */
+    public long countSessionMessages(String userId) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + SESSION_MESSAGE_ARCHIVE
+            + " a JOIN sessions s ON a.session_id = s.session_id WHERE s.user_id = ?", Long.class, userId);
+        return count != null ? count : 0;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
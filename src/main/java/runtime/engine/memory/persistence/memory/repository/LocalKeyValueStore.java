@@ -0,0 +1,618 @@
+package runtime.engine.memory.persistence.memory.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 本地日志结构键值存储
+ * 写入以批为单位追加到目录下的单个日志文件，每批带长度和CRC32校验，一批内的写入要么全部生效要么全部丢弃。
+ * 内存中用跳表按键有序保存每个键最新值在文件中的位置，读取为一次定位读，支持按前缀正序或倒序扫描。
+ * 打开时顺序重放日志重建索引，末尾写了一半或校验失败的批视为崩溃时未完成的写入并截断。
+ * 同步间隔为0时每批写入后立即刷盘；否则由后台线程定期刷盘，进程崩溃不丢数据，断电最多丢失一个间隔内的写入。
+ * 日志达到压缩下限且被覆盖或删除的数据超过一半时，后台把有效数据重写到新文件后原子替换，压缩期间读写等待。
+ * 打开时对目录下的锁文件加排他锁，直到关闭才释放，另一个进程或实例打开同一目录时失败
+ */
+public class LocalKeyValueStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalKeyValueStore.class);
+
+    private static final String LOG_FILE = "data.log";
+    private static final String COMPACT_FILE = "data.log.compact";
+    private static final String LOCK_FILE = "LOCK";
+    // 批头：载荷长度和CRC32
+    private static final int HEADER_BYTES = 8;
+    // 单个键值独占一批时除键和值以外的字节数：批头、操作数、操作类型、键长度、值长度
+    private static final int ENTRY_OVERHEAD_BYTES = HEADER_BYTES + 4 + 1 + 4 + 4;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // 本进程中已打开的目录；同一进程内关闭锁文件的任一通道会释放进程在该文件上的全部锁，不能靠再次加锁来检测
+    private static final Set<Path> OPEN_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    private final Path directory;
+    private final Path lockPath;
+    private final Path logFile;
+    private final long syncIntervalMillis;
+    private final long compactionMinBytes;
+    private final ConcurrentSkipListMap<String, Ref> index = new ConcurrentSkipListMap<>();
+    // 读取和追加持有读锁，压缩替换文件和关闭持有写锁
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private FileChannel lockChannel;
+    private FileChannel channel;
+    private long logBytes;
+    private long liveBytes;
+    private volatile boolean unsynced;
+    private volatile boolean closed;
+
+    /**
+     * 打开目录中的存储，目录或日志不存在时创建
+     *
+     * @param directory 存储目录，同一目录同时只能由一个实例打开
+     * @param syncIntervalMillis 后台刷盘间隔，0表示每批写入后立即刷盘
+     * @param compactionMinBytes 日志达到该大小后才考虑压缩
+     */
+    public LocalKeyValueStore(Path directory, long syncIntervalMillis, long compactionMinBytes) {
+        this.directory = directory;
+        this.logFile = directory.resolve(LOG_FILE);
+        this.lockPath = directory.toAbsolutePath().normalize();
+        this.syncIntervalMillis = Math.max(0, syncIntervalMillis);
+        this.compactionMinBytes = Math.max(0, compactionMinBytes);
+        try {
+            Files.createDirectories(directory);
+            lockDirectory();
+            // 压缩中途退出时留下的临时文件，原日志仍然完整
+            Files.deleteIfExists(directory.resolve(COMPACT_FILE));
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            replay();
+        } catch (IOException e) {
+            closeChannelQuietly();
+            throw new UncheckedIOException("Failed to open local store " + directory, e);
+        } catch (RuntimeException e) {
+            closeChannelQuietly();
+            throw e;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-store-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.syncIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, this.syncIntervalMillis, this.syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        }
+        logger.info("本地存储已打开，目录: {}, 键数: {}, 日志字节数: {}", directory, index.size(), logBytes);
+    }
+
+    /**
+     * 拼接键：各部分中的'%'和'/'被转义，以'/'连接，保证按前缀扫描时不会匹配到其他ID
+     */
+    public static String key(String... parts) {
+        StringBuilder key = new StringBuilder();
+        for (String part : parts) {
+            if (key.length() > 0) {
+                key.append('/');
+            }
+            key.append(part.replace("%", "%25").replace("/", "%2F"));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 拼接键前缀，即{@link #key}之后再加'/'
+     */
+    public static String prefix(String... parts) {
+        return key(parts) + '/';
+    }
+
+    /**
+     * 取键的最后一部分并还原转义，与{@link #key}互逆
+     */
+    public static String lastPart(String key) {
+        String part = key.substring(key.lastIndexOf('/') + 1);
+        return part.replace("%2F", "/").replace("%25", "%");
+    }
+
+    /**
+     * 读取键的值，不存在时返回null
+     */
+    public byte[] get(String key) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Ref ref = index.get(key);
+            return ref != null ? read(ref) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] value) {
+        write(new WriteBatch().put(key, value));
+    }
+
+    public void delete(String key) {
+        write(new WriteBatch().delete(key));
+    }
+
+    /**
+     * 原子写入一批修改：追加到日志后更新索引，同步间隔为0时在返回前刷盘
+     */
+    public void write(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        byte[] record = encode(batch);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            synchronized (appendLock) {
+                long position = logBytes;
+                writeFully(channel, ByteBuffer.wrap(record), position);
+                if (syncIntervalMillis == 0) {
+                    channel.force(false);
+                } else {
+                    unsynced = true;
+                }
+                apply(ByteBuffer.wrap(record, HEADER_BYTES, record.length - HEADER_BYTES).slice(),
+                    position + HEADER_BYTES);
+                logBytes = position + record.length;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write local store " + directory, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        maybeCompact();
+    }
+
+    /**
+     * 按键正序扫描前缀下的键值
+     *
+     * @param fromKey 起始键（包含），为null时从前缀下第一个键开始
+     * @param skip 跳过的条数
+     * @param limit 最多返回的条数，小于等于0表示不限
+     */
+    public List<Entry> scan(String prefix, String fromKey, int skip, int limit) {
+        NavigableMap<String, Ref> range = prefixRange(prefix);
+        if (fromKey != null) {
+            range = range.tailMap(fromKey, true);
+        }
+        return collect(range, skip, limit);
+    }
+
+    /**
+     * 按键倒序扫描前缀下的键值
+     *
+     * @param beforeKey 结束键（不包含），为null时从前缀下最后一个键开始
+     * @param limit 最多返回的条数，小于等于0表示不限
+     */
+    public List<Entry> scanDescending(String prefix, String beforeKey, int limit) {
+        NavigableMap<String, Ref> range = prefixRange(prefix);
+        if (beforeKey != null) {
+            range = range.headMap(beforeKey, false);
+        }
+        return collect(range.descendingMap(), 0, limit);
+    }
+
+    /**
+     * 前缀下的全部键，按正序排列，只访问内存中的索引
+     */
+    public List<String> keys(String prefix) {
+        return new ArrayList<>(prefixRange(prefix).keySet());
+    }
+
+    /**
+     * 前缀下的键数，只访问内存中的索引
+     */
+    public int count(String prefix) {
+        return prefixRange(prefix).size();
+    }
+
+    /**
+     * 前缀下最大的键，没有时返回null
+     */
+    public String lastKey(String prefix) {
+        Map.Entry<String, Ref> last = prefixRange(prefix).lastEntry();
+        return last != null ? last.getKey() : null;
+    }
+
+    /**
+     * 把尚未刷盘的写入刷到磁盘
+     */
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if (unsynced) {
+                unsynced = false;
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            unsynced = true;
+            throw new UncheckedIOException("Failed to sync local store " + directory, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把有效数据重写到新日志后原子替换旧日志，期间读写等待
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            long before = logBytes;
+            Path temp = directory.resolve(COMPACT_FILE);
+            Map<String, Ref> moved = new HashMap<>(index.size() * 2);
+            long position = 0;
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Map.Entry<String, Ref> entry : index.entrySet()) {
+                    byte[] value = read(entry.getValue());
+                    byte[] record = encode(new WriteBatch().put(entry.getKey(), value));
+                    writeFully(target, ByteBuffer.wrap(record), position);
+                    // 单个键值的批中值位于末尾
+                    moved.put(entry.getKey(), new Ref(position + record.length - value.length, value.length, record.length));
+                    position += record.length;
+                }
+                target.force(true);
+            }
+            Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.putAll(moved);
+            logBytes = position;
+            liveBytes = position;
+            unsynced = false;
+            logger.info("本地存储压缩完成，目录: {}, 日志字节数: {} -> {}", directory, before, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact local store " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * 停止后台线程，刷盘后关闭日志文件并释放目录锁
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                channel.force(true);
+                channel.close();
+            } finally {
+                // 锁文件的通道关闭时释放锁
+                lockChannel.close();
+                OPEN_DIRECTORIES.remove(lockPath);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close local store " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 对目录下的锁文件加排他锁；锁已被其他进程持有或已由本进程的其他实例持有时失败
+     */
+    private void lockDirectory() throws IOException {
+        if (!OPEN_DIRECTORIES.add(lockPath)) {
+            throw new IllegalStateException("Local store " + directory + " is already opened by another instance");
+        }
+        FileChannel opened = null;
+        try {
+            opened = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+            FileLock fileLock = opened.tryLock();
+            if (fileLock == null) {
+                throw new IllegalStateException("Local store " + directory + " is locked by another process");
+            }
+            lockChannel = opened;
+        } catch (IOException | RuntimeException e) {
+            if (opened != null) {
+                opened.close();
+            }
+            OPEN_DIRECTORIES.remove(lockPath);
+            throw e;
+        }
+    }
+
+    /**
+     * 从头重放日志重建索引，遇到不完整或校验失败的批时截断其后的内容
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (size - position >= HEADER_BYTES) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || length > size - position - HEADER_BYTES) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_BYTES);
+            if (checksum(payload.array(), 0, length) != checksum) {
+                break;
+            }
+            payload.flip();
+            apply(payload, position + HEADER_BYTES);
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            logger.warn("本地存储日志末尾不完整，已截断，目录: {}, 截断字节数: {}, 偏移: {}", directory,
+                size - position, position);
+            channel.truncate(position);
+            channel.force(true);
+        }
+        logBytes = position;
+    }
+
+    /**
+     * 把一批的载荷应用到索引，载荷中值的位置加上payloadPosition即为值在日志中的位置
+     */
+    private void apply(ByteBuffer payload, long payloadPosition) {
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            byte type = payload.get();
+            int keyLength = payload.getInt();
+            String key = new String(payload.array(), payload.arrayOffset() + payload.position(), keyLength,
+                StandardCharsets.UTF_8);
+            payload.position(payload.position() + keyLength);
+            Ref previous;
+            if (type == PUT) {
+                int valueLength = payload.getInt();
+                Ref ref = new Ref(payloadPosition + payload.position(), valueLength,
+                    ENTRY_OVERHEAD_BYTES + keyLength + valueLength);
+                payload.position(payload.position() + valueLength);
+                previous = index.put(key, ref);
+                liveBytes += ref.footprint();
+            } else {
+                previous = index.remove(key);
+            }
+            if (previous != null) {
+                liveBytes -= previous.footprint();
+            }
+        }
+    }
+
+    private void maybeCompact() {
+        long total;
+        long live;
+        synchronized (appendLock) {
+            total = logBytes;
+            live = liveBytes;
+        }
+        if (total < compactionMinBytes || total - live <= live || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    logger.warn("本地存储压缩失败，目录: {}", directory, e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 存储已关闭
+            compacting.set(false);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            logger.warn("本地存储刷盘失败，目录: {}", directory, e);
+        }
+    }
+
+    private byte[] read(Ref ref) {
+        ByteBuffer value = ByteBuffer.allocate(ref.length());
+        try {
+            readFully(channel, value, ref.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read local store " + directory, e);
+        }
+        return value.array();
+    }
+
+    private List<Entry> collect(NavigableMap<String, Ref> range, int skip, int limit) {
+        List<Entry> entries = new ArrayList<>(limit > 0 ? Math.min(limit, 1024) : 16);
+        int skipped = 0;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            for (Map.Entry<String, Ref> entry : range.entrySet()) {
+                if (skipped < skip) {
+                    skipped++;
+                    continue;
+                }
+                entries.add(new Entry(entry.getKey(), read(entry.getValue())));
+                if (limit > 0 && entries.size() >= limit) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    /**
+     * 以前缀开头的键的范围视图
+     */
+    private NavigableMap<String, Ref> prefixRange(String prefix) {
+        if (prefix.isEmpty()) {
+            return index;
+        }
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return index.tailMap(prefix, true);
+        }
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+        return index.subMap(prefix, true, end, false);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Local store " + directory + " is closed");
+        }
+    }
+
+    private void closeChannelQuietly() {
+        for (FileChannel opened : new FileChannel[] {channel, lockChannel}) {
+            try {
+                if (opened != null) {
+                    opened.close();
+                }
+            } catch (IOException ignored) {
+                // 打开失败时的清理
+            }
+        }
+        if (lockChannel != null) {
+            OPEN_DIRECTORIES.remove(lockPath);
+        }
+    }
+
+    private static byte[] encode(WriteBatch batch) {
+        int size = HEADER_BYTES + 4;
+        for (Operation operation : batch.operations) {
+            size += 1 + 4 + operation.key().length;
+            if (operation.value() != null) {
+                size += 4 + operation.value().length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.position(HEADER_BYTES);
+        buffer.putInt(batch.operations.size());
+        for (Operation operation : batch.operations) {
+            buffer.put(operation.value() != null ? PUT : DELETE);
+            buffer.putInt(operation.key().length);
+            buffer.put(operation.key());
+            if (operation.value() != null) {
+                buffer.putInt(operation.value().length);
+                buffer.put(operation.value());
+            }
+        }
+        buffer.putInt(0, size - HEADER_BYTES);
+        buffer.putInt(4, checksum(buffer.array(), HEADER_BYTES, size - HEADER_BYTES));
+        return buffer.array();
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of local store log at offset " + offset);
+            }
+            offset += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * 一批原子写入的修改，按添加顺序应用
+     */
+    public static final class WriteBatch {
+
+        private final List<Operation> operations = new ArrayList<>();
+
+        public WriteBatch put(String key, byte[] value) {
+            operations.add(new Operation(key.getBytes(StandardCharsets.UTF_8), value));
+            return this;
+        }
+
+        public WriteBatch delete(String key) {
+            operations.add(new Operation(key.getBytes(StandardCharsets.UTF_8), null));
+            return this;
+        }
+
+        public int size() {
+            return operations.size();
+        }
+
+        public boolean isEmpty() {
+            return operations.isEmpty();
+        }
+    }
+
+    /**
+     * 扫描返回的键值
+     */
+    public record Entry(String key, byte[] value) {
+    }
+
+    /**
+     * 写入操作，值为null表示删除
+     */
+    private record Operation(byte[] key, byte[] value) {
+    }
+
+    /**
+     * 值在日志中的位置和长度；footprint为该键值单独成批时的字节数，用于估算可回收的空间
+     */
+    private record Ref(long position, int length, int footprint) {
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -63,10 +64,45 @@ public interface MemoryRepository extends JpaRepository<MemoryEntity, Long> {
      * 获取用户的所有记忆（不分页）
      */
     List<MemoryEntity> findByUserIdOrderByCreatedAtDesc(String userId);
-    
+
+    /**
+     * 获取用户ID大于afterId的记忆的ID、二进制embedding和旧版JSON embedding，用于预热向量索引；afterId为0时读取全部
+     */
+    @Query("SELECT m.id, m.embeddingBin, m.embedding FROM MemoryEntity m " +
+           "WHERE m.userId = :userId AND m.id > :afterId AND (m.embeddingBin IS NOT NULL OR m.embedding IS NOT NULL)")
+    List<Object[]> findEmbeddingsByUserIdAndIdGreaterThan(@Param("userId") String userId, @Param("afterId") long afterId);
+
     /**
      * 获取所有记忆（不分页）
      */
     @Query("SELECT m FROM MemoryEntity m ORDER BY m.createdAt DESC")
     List<MemoryEntity> findAllOrderByCreatedAtDesc();
+
+    /**
+     * 键集分页的第一页：按(创建时间, ID)倒序
+     */
+    @Query("SELECT m FROM MemoryEntity m ORDER BY m.createdAt DESC, m.id DESC")
+    List<MemoryEntity> findFirstPage(Pageable pageable);
+
+    /**
+     * 键集分页的后续页：从上一页最后一条记录的(创建时间, ID)之后继续，耗时与页码无关
+     */
+    @Query("SELECT m FROM MemoryEntity m WHERE m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<MemoryEntity> findPageBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * 指定用户的键集分页第一页
+     */
+    @Query("SELECT m FROM MemoryEntity m WHERE m.userId = :userId ORDER BY m.createdAt DESC, m.id DESC")
+    List<MemoryEntity> findFirstPageByUserId(@Param("userId") String userId, Pageable pageable);
+
+    /**
+     * 指定用户的键集分页后续页
+     */
+    @Query("SELECT m FROM MemoryEntity m WHERE m.userId = :userId " +
+           "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<MemoryEntity> findPageBeforeByUserId(@Param("userId") String userId, @Param("createdAt") LocalDateTime createdAt,
+                                              @Param("id") Long id, Pageable pageable);
 }
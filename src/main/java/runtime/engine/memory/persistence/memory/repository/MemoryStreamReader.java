@@ -0,0 +1,72 @@
+package runtime.engine.memory.persistence.memory.repository;
+
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.persistence.memory.entity.MemoryEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.stream.Stream;
+
+/**
+ * 基于JDBC流式结果集的记忆读取
+ * 结果集逐行从MySQL读取（fetch size为Integer.MIN_VALUE时MySQL驱动不缓存整个结果集），
+ * 导出全部记忆时内存占用与数据量无关。返回的Stream占用一个数据库连接，调用方必须关闭。
+ * 热数据读取memories表，归档数据读取memories_archive表
+ */
+public class MemoryStreamReader {
+
+    // MySQL驱动约定：fetch size为Integer.MIN_VALUE时逐行流式读取
+    private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    static final String SELECT_COLUMNS = "SELECT id, user_id, session_id, message_type, content, metadata, created_at FROM ";
+    private static final String ORDER = " ORDER BY created_at DESC, id DESC";
+
+    static final RowMapper<MemoryEntity> ROW_MAPPER = (rs, rowNum) -> {
+        MemoryEntity entity = new MemoryEntity();
+        entity.setId(rs.getLong("id"));
+        entity.setUserId(rs.getString("user_id"));
+        entity.setSessionId(rs.getString("session_id"));
+        entity.setMessageType(MessageType.valueOf(rs.getString("message_type")));
+        entity.setContent(rs.getString("content"));
+        entity.setMetadata(rs.getString("metadata"));
+        entity.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        return entity;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MemoryStreamReader(JdbcTemplate jdbcTemplate) {
+        // 单独的JdbcTemplate，流式fetch size不影响其他查询
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+    }
+
+    /**
+     * 按(创建时间, ID)倒序流式读取全部记忆
+     */
+    public Stream<MemoryEntity> streamAll() {
+        return jdbcTemplate.queryForStream(SELECT_COLUMNS + "memories" + ORDER, ROW_MAPPER);
+    }
+
+    /**
+     * 按(创建时间, ID)倒序流式读取指定用户的记忆
+     */
+    public Stream<MemoryEntity> streamByUserId(String userId) {
+        return jdbcTemplate.queryForStream(SELECT_COLUMNS + "memories WHERE user_id = ?" + ORDER, ROW_MAPPER, userId);
+    }
+
+    /**
+     * 按(创建时间, ID)倒序流式读取全部归档记忆
+     */
+    public Stream<MemoryEntity> streamArchivedAll() {
+        return jdbcTemplate.queryForStream(SELECT_COLUMNS + ArchiveReader.MEMORY_ARCHIVE + ORDER, ROW_MAPPER);
+    }
+
+    /**
+     * 按(创建时间, ID)倒序流式读取指定用户的归档记忆
+     */
+    public Stream<MemoryEntity> streamArchivedByUserId(String userId) {
+        return jdbcTemplate.queryForStream(SELECT_COLUMNS + ArchiveReader.MEMORY_ARCHIVE + " WHERE user_id = ?" + ORDER,
+            ROW_MAPPER, userId);
+    }
+}
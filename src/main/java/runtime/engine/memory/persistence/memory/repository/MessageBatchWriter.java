@@ -0,0 +1,140 @@
+package runtime.engine.memory.persistence.memory.repository;
+
+import runtime.engine.memory.persistence.memory.entity.MemoryEntity;
+import runtime.engine.memory.persistence.memory.entity.SessionMessageEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于JDBC的批量写入
+ * 实体使用IDENTITY主键，Hibernate无法合并插入，saveAll仍是逐条INSERT；
+ * 这里把一批记录拼成一条多行INSERT，一次往返写入，需要主键时通过生成键一并取回。
+ * 一批记录拆成多条语句时在同一个事务中提交，失败后整批重试不会重复写入已提交的部分
+ */
+public class MessageBatchWriter {
+
+    // 单条INSERT语句最多包含的行数，避免超过max_allowed_packet
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private static final String INSERT_SESSION_MESSAGES =
+        "INSERT INTO session_messages (session_id, message_type, content, metadata, created_at) VALUES ";
+    private static final String SESSION_MESSAGE_VALUES = "(?, ?, ?, ?, ?)";
+
+    private static final String INSERT_MEMORIES =
+        "INSERT INTO memories (user_id, session_id, message_type, content, metadata, embedding_bin, created_at, updated_at) VALUES ";
+    private static final String MEMORY_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public MessageBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+    }
+
+    /**
+     * 批量插入会话消息，并用一条UPDATE刷新涉及会话的最近活动时间
+     */
+    public void insertSessionMessages(List<SessionMessageEntity> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Set<String> sessionIds = new LinkedHashSet<>();
+        for (SessionMessageEntity message : messages) {
+            sessionIds.add(message.getSessionId());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            touchSessions(sessionIds);
+            for (List<SessionMessageEntity> chunk : chunks(messages)) {
+                List<Object> args = new ArrayList<>(chunk.size() * 5);
+                for (SessionMessageEntity message : chunk) {
+                    args.add(message.getSessionId());
+                    args.add(message.getMessageType().name());
+                    args.add(message.getContent());
+                    args.add(message.getMetadata());
+                    args.add(Timestamp.valueOf(message.getCreatedAt()));
+                }
+                jdbcTemplate.update(INSERT_SESSION_MESSAGES + values(SESSION_MESSAGE_VALUES, chunk.size()), args.toArray());
+            }
+        });
+    }
+
+    /**
+     * 批量插入记忆，并把生成的主键回填到实体中
+     */
+    public void insertMemories(List<MemoryEntity> memories) {
+        if (memories.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            for (List<MemoryEntity> chunk : chunks(memories)) {
+                insertMemoryChunk(chunk);
+            }
+        });
+    }
+
+    private void insertMemoryChunk(List<MemoryEntity> chunk) {
+        String sql = INSERT_MEMORIES + values(MEMORY_VALUES, chunk.size());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            int index = 1;
+            for (MemoryEntity memory : chunk) {
+                statement.setString(index++, memory.getUserId());
+                statement.setString(index++, memory.getSessionId());
+                statement.setString(index++, memory.getMessageType().name());
+                statement.setString(index++, memory.getContent());
+                statement.setString(index++, memory.getMetadata());
+                statement.setBytes(index++, memory.getEmbeddingBin());
+                statement.setTimestamp(index++, Timestamp.valueOf(memory.getCreatedAt()));
+                statement.setTimestamp(index++, Timestamp.valueOf(memory.getUpdatedAt()));
+            }
+            return statement;
+        }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != chunk.size()) {
+            throw new IllegalStateException("Expected " + chunk.size() + " generated keys but got " + keys.size());
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            Object key = keys.get(i).values().iterator().next();
+            chunk.get(i).setId(((Number) key).longValue());
+        }
+    }
+
+    private void touchSessions(Set<String> sessionIds) {
+        List<Object> args = new ArrayList<>(sessionIds.size() + 2);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        args.add(now);
+        args.add(now);
+        args.addAll(sessionIds);
+        jdbcTemplate.update("UPDATE sessions SET last_activity = ?, updated_at = ? WHERE session_id IN ("
+            + String.join(", ", Collections.nCopies(sessionIds.size(), "?")) + ")", args.toArray());
+    }
+
+    private static String values(String row, int count) {
+        return String.join(", ", Collections.nCopies(count, row));
+    }
+
+    private static <T> List<List<T>> chunks(List<T> rows) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            chunks.add(rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT)));
+        }
+        return chunks;
+    }
+}
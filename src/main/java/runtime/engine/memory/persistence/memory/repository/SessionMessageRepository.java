@@ -26,6 +26,21 @@ public interface SessionMessageRepository extends JpaRepository<SessionMessageEn
      */
     Page<SessionMessageEntity> findBySessionIdOrderByCreatedAtAsc(String sessionId, Pageable pageable);
     
+    /**
+     * 按ID倒序分页查找会话消息，用于读取最近的消息
+     */
+    List<SessionMessageEntity> findBySessionIdOrderByIdDesc(String sessionId, Pageable pageable);
+    
+    /**
+     * 查找ID小于指定值的会话消息，按ID倒序分页，用于从末尾向前逐批读取
+     */
+    List<SessionMessageEntity> findBySessionIdAndIdLessThanOrderByIdDesc(String sessionId, Long id, Pageable pageable);
+    
+    /**
+     * 查找ID大于游标的会话消息，按ID正序分页
+     */
+    List<SessionMessageEntity> findBySessionIdAndIdGreaterThanOrderByIdAsc(String sessionId, Long id, Pageable pageable);
+    
     /**
      * 根据会话ID删除消息
      */
@@ -36,6 +51,13 @@ public interface SessionMessageRepository extends JpaRepository<SessionMessageEn
      */
     long countBySessionId(String sessionId);
     
+    /**
+     * 统计用户全部会话的消息数量
+     */
+    @Query("SELECT COUNT(sm) FROM SessionMessageEntity sm WHERE sm.sessionId IN "
+        + "(SELECT s.sessionId FROM SessionEntity s WHERE s.userId = :userId)")
+    long countByUserId(@Param("userId") String userId);
+    
     /**
      * 获取会话的最新消息
      */
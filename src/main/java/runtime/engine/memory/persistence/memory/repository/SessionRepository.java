@@ -4,8 +4,11 @@ import runtime.engine.memory.persistence.memory.entity.SessionEntity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -31,6 +34,38 @@ public interface SessionRepository extends JpaRepository<SessionEntity, Long> {
      */
     Optional<SessionEntity> findByUserIdAndSessionId(String userId, String sessionId);
     
+    /**
+     * 查找会话并在同一条查询中加载全部消息
+     */
+    @Query("SELECT DISTINCT s FROM SessionEntity s LEFT JOIN FETCH s.messages "
+        + "WHERE s.userId = :userId AND s.sessionId = :sessionId")
+    Optional<SessionEntity> findWithMessages(@Param("userId") String userId, @Param("sessionId") String sessionId);
+    
+    /**
+     * 创建会话，会话ID已存在时不做任何修改
+     * 不使用ON DUPLICATE KEY UPDATE：驱动默认返回匹配行数，已存在且未修改的行同样返回1，无法区分是否新建
+     * 
+     * @return 新建时返回1，会话ID已存在时返回0
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO sessions (session_id, user_id, created_at, updated_at, last_activity) "
+        + "VALUES (:sessionId, :userId, NOW(), NOW(), NOW())",
+        nativeQuery = true)
+    int insertIfAbsent(@Param("userId") String userId, @Param("sessionId") String sessionId);
+    
+    /**
+     * 刷新会话的最近活动时间（仅当属于该用户）
+     * 驱动默认返回匹配行数，活动时间未变化时同样返回1
+     * 
+     * @return 会话属于该用户时返回1，会话不存在或属于其他用户时返回0
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE sessions SET last_activity = NOW() WHERE session_id = :sessionId AND user_id = :userId",
+        nativeQuery = true)
+    int touchSession(@Param("userId") String userId, @Param("sessionId") String sessionId);
+    
     /**
      * 根据用户ID删除会话
      */
@@ -0,0 +1,160 @@
+package runtime.engine.memory.persistence.memory.repository;
+
+import runtime.engine.memory.model.MemoryStats;
+import runtime.engine.memory.model.SessionStats;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * 统计计数器表的读写
+ * 计数器随记忆和会话消息的写入增量维护，统计查询按主键读取一行，耗时与明细表大小无关；
+ * 删除数据后以及定期对账时按单个用户从明细表（热表和归档表）重新计算
+ */
+public class StatsCounterRepository {
+
+    private static final String INCREMENT_MEMORY_COUNTERS =
+        "INSERT INTO user_memory_counters (user_id, total_memories, user_messages, assistant_messages, last_activity) "
+            + "VALUES (?, ?, ?, ?, NOW()) ON DUPLICATE KEY UPDATE "
+            + "total_memories = total_memories + VALUES(total_memories), "
+            + "user_messages = user_messages + VALUES(user_messages), "
+            + "assistant_messages = assistant_messages + VALUES(assistant_messages), "
+            + "last_activity = VALUES(last_activity)";
+
+    private static final String RECONCILE_MEMORY_COUNTERS =
+        "INSERT INTO user_memory_counters (user_id, total_memories, user_messages, assistant_messages, last_activity) "
+            + "SELECT ?, COUNT(*), COALESCE(SUM(message_type = 'USER'), 0), COALESCE(SUM(message_type = 'ASSISTANT'), 0), "
+            + "MAX(created_at) FROM (SELECT message_type, created_at FROM memories WHERE user_id = ? "
+            + "UNION ALL SELECT message_type, created_at FROM " + ArchiveReader.MEMORY_ARCHIVE + " WHERE user_id = ?) m "
+            + "ON DUPLICATE KEY UPDATE "
+            + "total_memories = VALUES(total_memories), user_messages = VALUES(user_messages), "
+            + "assistant_messages = VALUES(assistant_messages), last_activity = VALUES(last_activity)";
+
+    private static final String INCREMENT_SESSION_COUNTERS =
+        "INSERT INTO session_counters (session_id, user_id, message_count, user_messages, assistant_messages, last_activity) "
+            + "VALUES (?, ?, ?, ?, ?, NOW()) ON DUPLICATE KEY UPDATE "
+            + "message_count = message_count + VALUES(message_count), "
+            + "user_messages = user_messages + VALUES(user_messages), "
+            + "assistant_messages = assistant_messages + VALUES(assistant_messages), "
+            + "last_activity = VALUES(last_activity)";
+
+    private static final String INCREMENT_USER_SESSION_COUNTERS =
+        "INSERT INTO user_session_counters (user_id, total_sessions, total_messages, last_activity) "
+            + "VALUES (?, ?, ?, NOW()) ON DUPLICATE KEY UPDATE "
+            + "total_sessions = total_sessions + VALUES(total_sessions), "
+            + "total_messages = total_messages + VALUES(total_messages), "
+            + "last_activity = VALUES(last_activity)";
+
+    private static final String RECONCILE_SESSION_COUNTERS =
+        "INSERT INTO session_counters (session_id, user_id, message_count, user_messages, assistant_messages, last_activity) "
+            + "SELECT s.session_id, s.user_id, COUNT(m.id), COALESCE(SUM(m.message_type = 'USER'), 0), "
+            + "COALESCE(SUM(m.message_type = 'ASSISTANT'), 0), MAX(m.created_at) "
+            + "FROM sessions s LEFT JOIN ("
+            + "SELECT sm.id, sm.session_id, sm.message_type, sm.created_at FROM session_messages sm "
+            + "JOIN sessions hs ON hs.session_id = sm.session_id WHERE hs.user_id = ? "
+            + "UNION ALL SELECT am.id, am.session_id, am.message_type, am.created_at FROM "
+            + ArchiveReader.SESSION_MESSAGE_ARCHIVE + " am "
+            + "JOIN sessions hs ON hs.session_id = am.session_id WHERE hs.user_id = ?"
+            + ") m ON m.session_id = s.session_id "
+            + "WHERE s.user_id = ? GROUP BY s.session_id, s.user_id ON DUPLICATE KEY UPDATE "
+            + "message_count = VALUES(message_count), user_messages = VALUES(user_messages), "
+            + "assistant_messages = VALUES(assistant_messages), last_activity = VALUES(last_activity)";
+
+    private static final String DELETE_ORPHAN_SESSION_COUNTERS =
+        "DELETE c FROM session_counters c LEFT JOIN sessions s ON s.session_id = c.session_id "
+            + "WHERE c.user_id = ? AND s.session_id IS NULL";
+
+    private static final String REFRESH_USER_SESSION_COUNTERS =
+        "INSERT INTO user_session_counters (user_id, total_sessions, total_messages, last_activity) "
+            + "SELECT ?, (SELECT COUNT(*) FROM sessions WHERE user_id = ?), "
+            + "(SELECT COALESCE(SUM(message_count), 0) FROM session_counters WHERE user_id = ?), "
+            + "(SELECT MAX(last_activity) FROM sessions WHERE user_id = ?) ON DUPLICATE KEY UPDATE "
+            + "total_sessions = VALUES(total_sessions), total_messages = VALUES(total_messages), "
+            + "last_activity = VALUES(last_activity)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StatsCounterRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 累加用户的记忆计数
+     */
+    public void incrementMemoryCounters(String userId, long total, long userMessages, long assistantMessages) {
+        jdbcTemplate.update(INCREMENT_MEMORY_COUNTERS, userId, total, userMessages, assistantMessages);
+    }
+
+    /**
+     * 读取用户的记忆计数，没有计数器时返回空统计
+     */
+    public MemoryStats loadMemoryStats(String userId) {
+        List<MemoryStats> rows = jdbcTemplate.query(
+            "SELECT total_memories, user_messages, assistant_messages, last_activity FROM user_memory_counters WHERE user_id = ?",
+            (rs, rowNum) -> new MemoryStats(rs.getLong("total_memories"), rs.getLong("user_messages"),
+                rs.getLong("assistant_messages"), toMillis(rs.getTimestamp("last_activity"))),
+            userId);
+        return rows.isEmpty() ? MemoryStats.empty() : rows.get(0);
+    }
+
+    /**
+     * 按记忆明细重新计算用户的记忆计数
+     */
+    public void reconcileMemoryCounters(String userId) {
+        jdbcTemplate.update(RECONCILE_MEMORY_COUNTERS, userId, userId, userId);
+    }
+
+    /**
+     * 记录新建的会话
+     */
+    public void incrementSessions(String userId, long sessions) {
+        jdbcTemplate.update(INCREMENT_USER_SESSION_COUNTERS, userId, sessions, 0);
+    }
+
+    /**
+     * 累加会话和用户的消息计数
+     */
+    public void incrementSessionMessages(String userId, String sessionId, long messages,
+                                         long userMessages, long assistantMessages) {
+        jdbcTemplate.update(INCREMENT_SESSION_COUNTERS, sessionId, userId, messages, userMessages, assistantMessages);
+        jdbcTemplate.update(INCREMENT_USER_SESSION_COUNTERS, userId, 0, messages);
+    }
+
+    /**
+     * 删除会话的计数器，并按剩余会话重新汇总用户的会话计数
+     */
+    public void removeSession(String userId, String sessionId) {
+        jdbcTemplate.update("DELETE FROM session_counters WHERE session_id = ?", sessionId);
+        refreshUserSessionCounters(userId);
+    }
+
+    /**
+     * 读取用户的会话计数，没有计数器时返回空统计
+     */
+    public SessionStats loadSessionStats(String userId) {
+        List<SessionStats> rows = jdbcTemplate.query(
+            "SELECT total_sessions, total_messages, last_activity FROM user_session_counters WHERE user_id = ?",
+            (rs, rowNum) -> new SessionStats(rs.getLong("total_sessions"), rs.getLong("total_messages"),
+                toMillis(rs.getTimestamp("last_activity"))),
+            userId);
+        return rows.isEmpty() ? SessionStats.empty() : rows.get(0);
+    }
+
+    /**
+     * 按会话消息明细重新计算用户各会话的计数，再汇总用户的会话计数
+     */
+    public void reconcileSessionCounters(String userId) {
+        jdbcTemplate.update(RECONCILE_SESSION_COUNTERS, userId, userId, userId);
+        jdbcTemplate.update(DELETE_ORPHAN_SESSION_COUNTERS, userId);
+        refreshUserSessionCounters(userId);
+    }
+
+    private void refreshUserSessionCounters(String userId) {
+        jdbcTemplate.update(REFRESH_USER_SESSION_COUNTERS, userId, userId, userId, userId);
+    }
+
+    private static long toMillis(Timestamp timestamp) {
+        return timestamp != null ? timestamp.getTime() : 0;
+    }
+}
@@ -0,0 +1,199 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import runtime.engine.memory.persistence.memory.repository.ArchiveReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷数据归档任务
+ * 定期把创建时间早于保留期的记忆和会话消息按批移入压缩的归档表，每批的复制和删除在同一事务中完成，
+ * 热表及其索引的大小只与保留期内的数据量有关。热表按月分区时（见sql/schema-partitioned.sql），
+ * 同时预建后续月份的分区，并删除保留期之前已清空的分区
+ */
+public class ArchiveJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveJob.class);
+
+    private static final String MEMORY_COLUMNS =
+        "id, user_id, session_id, message_type, content, metadata, embedding, embedding_bin, created_at, updated_at";
+    private static final String SESSION_MESSAGE_COLUMNS = "id, session_id, message_type, content, metadata, created_at";
+
+    // 月分区命名为p加年月，如p202601保存2026年1月的数据
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int hotRetentionDays;
+    private final int batchSize;
+    private final int partitionMonthsAhead;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param jdbcTemplate JDBC模板
+     * @param hotRetentionDays 热表保留的天数，更早的数据移入归档表
+     * @param batchSize 每个事务移动的最大行数
+     * @param partitionMonthsAhead 分区表预建的月份数，0表示不维护分区
+     */
+    public ArchiveJob(JdbcTemplate jdbcTemplate, int hotRetentionDays, int batchSize, int partitionMonthsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.hotRetentionDays = Math.max(1, hotRetentionDays);
+        this.batchSize = Math.max(1, batchSize);
+        this.partitionMonthsAhead = Math.max(0, partitionMonthsAhead);
+    }
+
+    /**
+     * 启动后台线程，按固定间隔执行归档
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, intervalMinutes);
+        scheduler.scheduleWithFixedDelay(this::runSafely, interval, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 停止后台线程，正在执行的批次会完成
+     */
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 执行一次归档，移动保留期之前的全部数据后维护分区
+     *
+     * @return 本次移入归档表的行数
+     */
+    public long runOnce() {
+        LocalDateTime cutoff = LocalDate.now().minusDays(hotRetentionDays).atStartOfDay();
+        long moved = archive("memories", ArchiveReader.MEMORY_ARCHIVE, MEMORY_COLUMNS, cutoff)
+            + archive("session_messages", ArchiveReader.SESSION_MESSAGE_ARCHIVE, SESSION_MESSAGE_COLUMNS, cutoff);
+        if (partitionMonthsAhead > 0) {
+            maintainPartitions("memories", cutoff);
+            maintainPartitions("session_messages", cutoff);
+        }
+        if (moved > 0) {
+            logger.info("归档完成，截止时间: {}, 移入归档表: {} 行", cutoff, moved);
+        }
+        return moved;
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            logger.error("归档任务执行失败", e);
+        }
+    }
+
+    /**
+     * 按(created_at, id)顺序逐批移动截止时间之前的行，直到没有可移动的行
+     */
+    private long archive(String table, String archiveTable, String columns, LocalDateTime cutoff) {
+        Timestamp before = Timestamp.valueOf(cutoff);
+        long moved = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM " + table + " WHERE created_at < ? ORDER BY created_at, id LIMIT ?",
+                Long.class, before, batchSize);
+            if (ids.isEmpty()) {
+                return moved;
+            }
+            // 带上created_at条件，分区表只访问截止时间之前的分区
+            String where = " WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ") AND created_at < ?";
+            Object[] args = new Object[ids.size() + 1];
+            for (int i = 0; i < ids.size(); i++) {
+                args[i] = ids.get(i);
+            }
+            args[ids.size()] = before;
+            transactionTemplate.executeWithoutResult(status -> {
+                // 复制和删除在同一事务中，归档表中不会已有该行；不忽略错误，失败时整批回滚
+                jdbcTemplate.update("INSERT INTO " + archiveTable + " (" + columns + ") SELECT " + columns
+                    + " FROM " + table + where, args);
+                jdbcTemplate.update("DELETE FROM " + table + where, args);
+            });
+            moved += ids.size();
+            if (ids.size() < batchSize) {
+                return moved;
+            }
+        }
+    }
+
+    /**
+     * 预建当前月份之后的分区，并删除截止时间之前已清空的月分区；未分区的表直接跳过
+     */
+    private void maintainPartitions(String table, LocalDateTime cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList(
+            "SELECT PARTITION_NAME FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() "
+                + "AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION",
+            String.class, table);
+        if (partitions.isEmpty() || !partitions.contains("pmax")) {
+            return;
+        }
+
+        YearMonth last = null;
+        for (String partition : partitions) {
+            YearMonth month = parseMonth(partition);
+            if (month != null && (last == null || month.isAfter(last))) {
+                last = month;
+            }
+        }
+        YearMonth target = YearMonth.now().plusMonths(partitionMonthsAhead);
+        for (YearMonth month = last != null ? last.plusMonths(1) : YearMonth.now(); !month.isAfter(target);
+                month = month.plusMonths(1)) {
+            // 新分区从pmax中拆出；pmax中通常没有数据，拆分很快
+            jdbcTemplate.execute("ALTER TABLE " + table + " REORGANIZE PARTITION pmax INTO ("
+                + "PARTITION " + month.format(PARTITION_NAME) + " VALUES LESS THAN (UNIX_TIMESTAMP('"
+                + month.plusMonths(1).atDay(1) + " 00:00:00')), PARTITION pmax VALUES LESS THAN MAXVALUE)");
+            logger.info("新增分区，表: {}, 分区: {}", table, month.format(PARTITION_NAME));
+        }
+
+        YearMonth cutoffMonth = YearMonth.from(cutoff);
+        for (String partition : partitions) {
+            YearMonth month = parseMonth(partition);
+            if (month == null || !month.isBefore(cutoffMonth)) {
+                continue;
+            }
+            List<Integer> rows = jdbcTemplate.queryForList(
+                "SELECT 1 FROM " + table + " PARTITION (" + partition + ") LIMIT 1", Integer.class);
+            if (rows.isEmpty()) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + partition);
+                logger.info("删除已归档的分区，表: {}, 分区: {}", table, partition);
+            }
+        }
+    }
+
+    private static YearMonth parseMonth(String partition) {
+        if (partition.length() != 7 || partition.charAt(0) != 'p') {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition, PARTITION_NAME);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
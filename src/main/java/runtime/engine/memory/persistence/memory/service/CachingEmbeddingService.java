@@ -0,0 +1,187 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import runtime.engine.memory.service.EmbeddingService;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 带缓存的嵌入服务装饰器
+ * 以预处理后文本的128位哈希为键缓存float[]向量，按向量字节数加权并由W-TinyLFU策略淘汰；
+ * 并发请求同一文本时共享同一次计算，命中时完全跳过下游嵌入计算，只通过{@link EmbeddingService#recordCachedText}
+ * 通知下游更新语料统计，使TF-IDF等实现的统计与缓存是否命中无关。
+ * 返回的向量数组为缓存共享实例，调用方不得修改
+ */
+public class CachingEmbeddingService implements EmbeddingService, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingService.class);
+    // 缓存条目除向量数据外的估算开销（键、数组头、缓存节点）
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final String CACHE_NAME = "embedding";
+
+    private final EmbeddingService delegate;
+    private final boolean caseInsensitive;
+    private final AsyncCache<TextHash, float[]> cache;
+
+    /**
+     * 只有内置TF-IDF实现（嵌入前统一小写化）按不区分大小写的文本缓存，远程模型区分大小写
+     *
+     * @param delegate 实际执行嵌入计算的服务
+     * @param maximumBytes 缓存向量占用的最大字节数
+     */
+    public CachingEmbeddingService(EmbeddingService delegate, long maximumBytes) {
+        this(delegate, maximumBytes, delegate instanceof SimpleEmbeddingService);
+    }
+
+    /**
+     * @param delegate 实际执行嵌入计算的服务
+     * @param maximumBytes 缓存向量占用的最大字节数
+     * @param caseInsensitive 缓存键是否忽略大小写，只有下游嵌入结果与大小写无关时才能开启
+     */
+    public CachingEmbeddingService(EmbeddingService delegate, long maximumBytes, boolean caseInsensitive) {
+        this.delegate = delegate;
+        this.caseInsensitive = caseInsensitive;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((TextHash key, float[] vector) -> ENTRY_OVERHEAD_BYTES + vector.length * Float.BYTES)
+                .recordStats()
+                .buildAsync();
+    }
+
+    @Override
+    public CompletableFuture<List<Double>> embedText(String text) {
+        return embedVector(text).thenApply(vector -> {
+            List<Double> list = new ArrayList<>(vector.length);
+            for (float value : vector) {
+                list.add((double) value);
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public CompletableFuture<float[]> embedVector(String text) {
+        // 未命中时映射函数在调用线程中执行
+        boolean[] computed = {false};
+        CompletableFuture<float[]> vector = cache.get(TextHash.of(text, caseInsensitive), (key, executor) -> {
+            computed[0] = true;
+            return delegate.embedVector(text);
+        });
+        if (!computed[0]) {
+            delegate.recordCachedText(text);
+        }
+        return vector;
+    }
+
+    /**
+     * 批量嵌入，只将未命中的文本整批交给下游，批内重复文本只计算一次
+     */
+    @Override
+    public CompletableFuture<List<float[]>> embedTexts(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        List<TextHash> keys = new ArrayList<>(texts.size());
+        Map<TextHash, String> textsByKey = new LinkedHashMap<>();
+        for (String text : texts) {
+            TextHash key = TextHash.of(text, caseInsensitive);
+            keys.add(key);
+            textsByKey.putIfAbsent(key, text);
+        }
+
+        Set<TextHash> computed = new HashSet<>();
+        CompletableFuture<Map<TextHash, float[]>> loaded = cache.getAll(textsByKey.keySet(), (missingKeys, executor) -> {
+            computed.addAll(missingKeys);
+            return loadAll(missingKeys, textsByKey);
+        });
+        // 下游只计算每个未命中的文本一次，其余的每次出现都按缓存命中记录
+        for (int i = 0; i < texts.size(); i++) {
+            if (!computed.remove(keys.get(i))) {
+                delegate.recordCachedText(texts.get(i));
+            }
+        }
+        return loaded
+            .thenApply(vectors -> {
+                List<float[]> results = new ArrayList<>(keys.size());
+                for (TextHash key : keys) {
+                    results.add(vectors.get(key));
+                }
+                return results;
+            });
+    }
+
+    private CompletableFuture<Map<TextHash, float[]>> loadAll(Set<? extends TextHash> missingKeys,
+                                                             Map<TextHash, String> textsByKey) {
+        List<TextHash> keys = new ArrayList<>(missingKeys);
+        List<String> texts = new ArrayList<>(keys.size());
+        for (TextHash key : keys) {
+            texts.add(textsByKey.get(key));
+        }
+        logger.debug("嵌入缓存未命中，提交下游批量计算，文本数: {}", texts.size());
+        return delegate.embedTexts(texts).thenApply(vectors -> {
+            Map<TextHash, float[]> loaded = new HashMap<>(keys.size() * 2);
+            for (int i = 0; i < keys.size(); i++) {
+                loaded.put(keys.get(i), vectors.get(i));
+            }
+            return loaded;
+        });
+    }
+
+    @Override
+    public double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
+        return delegate.cosineSimilarity(vector1, vector2);
+    }
+
+    @Override
+    public double euclideanDistance(List<Double> vector1, List<Double> vector2) {
+        return delegate.euclideanDistance(vector1, vector2);
+    }
+
+    @Override
+    public int getEmbeddingDimension() {
+        return delegate.getEmbeddingDimension();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * 注册缓存命中、未命中、淘汰等指标，通过Actuator的metrics端点查看（cache.gets、cache.evictions等）
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), CACHE_NAME);
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * 获取缓存条目数的估计值
+     */
+    public long estimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+}
@@ -0,0 +1,64 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 嵌入服务专用线程池工厂
+ */
+final class EmbeddingExecutors {
+
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private EmbeddingExecutors() {
+    }
+
+    /**
+     * 进程内共享的嵌入线程池，供未指定线程池的服务使用，不能关闭
+     */
+    static ExecutorService shared() {
+        return SharedHolder.EXECUTOR;
+    }
+
+    /**
+     * 创建有界线程池，队列满时由调用线程执行，以此对上游形成背压
+     *
+     * @param namePrefix 线程名前缀
+     * @param threads 工作线程数，0表示与CPU核数相同
+     * @param queueCapacity 等待队列容量
+     * @return 线程池
+     */
+    static ExecutorService newBoundedExecutor(String namePrefix, int threads, int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY),
+                new NamedThreadFactory(namePrefix), new ThreadPoolExecutor.CallerRunsPolicy());
+        // 空闲线程超时退出，未调用shutdown的线程池也不会一直占用线程
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class SharedHolder {
+        static final ExecutorService EXECUTOR = newBoundedExecutor("embedding-shared", 0, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
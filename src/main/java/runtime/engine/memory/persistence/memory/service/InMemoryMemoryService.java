@@ -1,11 +1,20 @@
 package runtime.engine.memory.persistence.memory.service;
 
+import runtime.engine.memory.index.Bm25Index;
+import runtime.engine.memory.index.VectorHit;
 import runtime.engine.memory.model.Message;
 import runtime.engine.memory.model.MessageContent;
 import runtime.engine.memory.model.MessageType;
 import runtime.engine.memory.service.MemoryService;
 import runtime.engine.infrastructure.config.memory.MemoryProperties;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,25 +22,48 @@ import java.util.stream.Collectors;
 
 /**
  * 内存实现的内存服务
+ * 每个用户维护一份BM25倒排索引，随addMemory/deleteMemory增量更新，检索只访问查询词项的倒排表。
+ * 用户数据存放在有界缓存中：按全部用户的消息总数限制容量、支持空闲过期，淘汰时整个用户的消息和索引一起释放。
+ * 缓存指标见 /actuator/metrics/cache.evictions?tag=cache:memory
  */
-public class InMemoryMemoryService implements MemoryService {
+public class InMemoryMemoryService implements MemoryService, MeterBinder {
     
-    private final Map<String, Map<String, List<Message>>> store = new ConcurrentHashMap<>();
+    private static final String CACHE_NAME = "memory";
+    private final Cache<String, UserMemory> store;
     private static final String DEFAULT_SESSION_ID = "default_session";
     private MemoryProperties memoryProperties;
     
+    /**
+     * 创建不限容量、不过期的存储，适用于开发、测试和作为混合检索的关键词索引
+     */
+    public InMemoryMemoryService() {
+        this(0, Duration.ZERO);
+    }
+    
+    /**
+     * @param maxMessages 全部用户的消息总数上限，0表示不限
+     * @param idleTtl 用户数据空闲过期时间，0表示不过期
+     */
+    public InMemoryMemoryService(long maxMessages, Duration idleTtl) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maxMessages > 0) {
+            builder.maximumWeight(maxMessages)
+                    .weigher((String userId, UserMemory memory) -> memory.messageCount);
+        }
+        if (idleTtl != null && !idleTtl.isZero() && !idleTtl.isNegative()) {
+            builder.expireAfterAccess(idleTtl);
+        }
+        this.store = builder.build();
+    }
+    
     @Override
     public CompletableFuture<Void> start() {
-        return CompletableFuture.runAsync(() -> {
-            store.clear();
-        });
+        return CompletableFuture.runAsync(store::invalidateAll);
     }
     
     @Override
     public CompletableFuture<Void> stop() {
-        return CompletableFuture.runAsync(() -> {
-            store.clear();
-        });
+        return CompletableFuture.runAsync(store::invalidateAll);
     }
     
     @Override
@@ -39,21 +71,33 @@ public class InMemoryMemoryService implements MemoryService {
         return CompletableFuture.completedFuture(true);
     }
     
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, store, CACHE_NAME);
+    }
+    
     @Override
     public CompletableFuture<Void> addMemory(String userId, List<Message> messages, Optional<String> sessionId) {
         return CompletableFuture.runAsync(() -> {
-            store.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
-            
             String storageKey = sessionId.orElse(DEFAULT_SESSION_ID);
-            store.get(userId).computeIfAbsent(storageKey, k -> new ArrayList<>())
-                    .addAll(messages);
+            // 在缓存的原子更新中写入，缓存据此重新计算用户的消息数权重
+            store.asMap().compute(userId, (key, memory) -> {
+                UserMemory target = memory != null ? memory : new UserMemory();
+                synchronized (target) {
+                    for (Message message : messages) {
+                        target.add(storageKey, message, getQueryText(message));
+                    }
+                }
+                return target;
+            });
         });
     }
     
     @Override
     public CompletableFuture<List<Message>> searchMemory(String userId, List<Message> messages, Optional<Map<String, Object>> filters) {
         return CompletableFuture.supplyAsync(() -> {
-            if (!store.containsKey(userId) || messages == null || messages.isEmpty()) {
+            UserMemory memory = store.getIfPresent(userId);
+            if (memory == null || messages == null || messages.isEmpty()) {
                 return Collections.emptyList();
             }
             
@@ -63,33 +107,24 @@ public class InMemoryMemoryService implements MemoryService {
                 return Collections.emptyList();
             }
             
-            Set<String> keywords = Arrays.stream(query.toLowerCase().split("\\s+"))
-                    .collect(Collectors.toSet());
-            
-            List<Message> allMessages = store.get(userId).values().stream()
-                    .flatMap(List::stream)
-                    .collect(Collectors.toList());
-            
-            List<Message> matchedMessages = allMessages.stream()
-                    .filter(msg -> {
-                        String content = getQueryText(msg);
-                        if (content != null) {
-                            String contentLower = content.toLowerCase();
-                            return keywords.stream().anyMatch(keyword -> contentLower.contains(keyword));
-                        }
-                        return false;
-                    })
-                    .collect(Collectors.toList());
-            
+            int topK = Integer.MAX_VALUE;
             if (filters.isPresent() && filters.get().containsKey("top_k")) {
                 Object topKObj = filters.get().get("top_k");
                 if (topKObj instanceof Integer) {
-                    int topK = (Integer) topKObj;
-                    int startIndex = Math.max(0, matchedMessages.size() - topK);
-                    return matchedMessages.subList(startIndex, matchedMessages.size());
+                    topK = (Integer) topKObj;
                 }
             }
             
+            // 按BM25得分降序返回匹配的消息
+            List<Message> matchedMessages = new ArrayList<>();
+            synchronized (memory) {
+                for (VectorHit hit : memory.index.search(query, topK)) {
+                    Message message = memory.documents.get(hit.getId());
+                    if (message != null) {
+                        matchedMessages.add(message);
+                    }
+                }
+            }
             return matchedMessages;
         });
     }
@@ -97,14 +132,18 @@ public class InMemoryMemoryService implements MemoryService {
     @Override
     public CompletableFuture<List<Message>> listMemory(String userId, Optional<Map<String, Object>> filters) {
         return CompletableFuture.supplyAsync(() -> {
-            if (!store.containsKey(userId)) {
+            UserMemory memory = store.getIfPresent(userId);
+            if (memory == null) {
                 return Collections.emptyList();
             }
             
-            List<Message> allMessages = store.get(userId).entrySet().stream()
-                    .sorted(Map.Entry.comparingByKey())
-                    .flatMap(entry -> entry.getValue().stream())
-                    .collect(Collectors.toList());
+            List<Message> allMessages;
+            synchronized (memory) {
+                allMessages = memory.sessions.entrySet().stream()
+                        .sorted(Map.Entry.comparingByKey())
+                        .flatMap(entry -> entry.getValue().stream())
+                        .collect(Collectors.toList());
+            }
             
             if (filters.isPresent()) {
                 Map<String, Object> filterMap = filters.get();
@@ -129,14 +168,15 @@ public class InMemoryMemoryService implements MemoryService {
     @Override
     public CompletableFuture<Void> deleteMemory(String userId, Optional<String> sessionId) {
         return CompletableFuture.runAsync(() -> {
-            if (!store.containsKey(userId)) {
-                return;
-            }
-            
             if (sessionId.isPresent()) {
-                store.get(userId).remove(sessionId.get());
+                store.asMap().computeIfPresent(userId, (key, memory) -> {
+                    synchronized (memory) {
+                        memory.removeSession(sessionId.get());
+                    }
+                    return memory;
+                });
             } else {
-                store.remove(userId);
+                store.invalidate(userId);
             }
         });
     }
@@ -144,7 +184,7 @@ public class InMemoryMemoryService implements MemoryService {
     @Override
     public CompletableFuture<List<String>> getAllUsers() {
         return CompletableFuture.supplyAsync(() -> {
-            return new ArrayList<>(store.keySet());
+            return new ArrayList<>(store.asMap().keySet());
         });
     }
     
@@ -177,4 +217,43 @@ public class InMemoryMemoryService implements MemoryService {
     public void setMemoryProperties(MemoryProperties memoryProperties) {
         this.memoryProperties = memoryProperties;
     }
+    
+    /**
+     * 单个用户的消息与关键词索引
+     * 有文本的消息在索引内分配递增ID，并按会话记录ID以便删除会话时同步清理倒排表；读写由调用方对实例加锁
+     */
+    private static final class UserMemory {
+        final Map<String, List<Message>> sessions = new HashMap<>();
+        final Bm25Index index = new Bm25Index();
+        final Map<Long, Message> documents = new HashMap<>();
+        final Map<String, List<Long>> sessionDocuments = new HashMap<>();
+        long nextId;
+        int messageCount;
+        
+        void add(String sessionId, Message message, String text) {
+            sessions.computeIfAbsent(sessionId, k -> new ArrayList<>()).add(message);
+            messageCount++;
+            if (text != null) {
+                long id = nextId++;
+                documents.put(id, message);
+                index.add(id, text);
+                sessionDocuments.computeIfAbsent(sessionId, k -> new ArrayList<>()).add(id);
+            }
+        }
+        
+        void removeSession(String sessionId) {
+            List<Message> removed = sessions.remove(sessionId);
+            if (removed != null) {
+                messageCount -= removed.size();
+            }
+            List<Long> ids = sessionDocuments.remove(sessionId);
+            if (ids == null) {
+                return;
+            }
+            for (Long id : ids) {
+                index.remove(id);
+                documents.remove(id);
+            }
+        }
+    }
 }
@@ -0,0 +1,327 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import runtime.engine.memory.codec.MessageCodec;
+import runtime.engine.memory.index.Bm25Index;
+import runtime.engine.memory.index.VectorHit;
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.MemoryRecordPage;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.persistence.memory.repository.LocalKeyValueStore;
+import runtime.engine.memory.service.MemoryService;
+import runtime.engine.infrastructure.config.memory.MemoryProperties;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于本地键值存储的内存服务实现
+ * 记忆逐条保存在进程内的{@link LocalKeyValueStore}中，没有网络往返，适用于单节点和边缘部署。键布局如下：
+ * <pre>
+ * memory/{userId}/{seq}                     记忆，值为创建时间、会话ID和编码后的消息；seq为用户内递增的16位十六进制序号
+ * memory_session/{userId}/{sessionId}/{seq} 会话中的记忆序号，值为空，用于按会话删除
+ * memory_user/{userId}                      用户登记，值为空
+ * </pre>
+ * 一次写入的记忆、会话索引和用户登记在同一批中原子写入。关键词检索使用进程内的BM25索引，
+ * 用户首次检索时从存储重建，之后随写入和删除增量更新；索引按用户数有界缓存，淘汰后下次检索时重建
+ */
+public class LocalMemoryService implements MemoryService {
+
+    private static final String MEMORY = "memory";
+    private static final String MEMORY_SESSION = "memory_session";
+    private static final String MEMORY_USER = "memory_user";
+    private static final String DEFAULT_SESSION_ID = "default_session";
+    private static final byte[] EMPTY = new byte[0];
+
+    private final LocalKeyValueStore store;
+    private final MessageCodec codec;
+    private final Cache<String, Bm25Index> indexes;
+    // 用户的下一个记忆序号，首次写入时按存储中最后一条记忆推算，删除用户时移除
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    private MemoryProperties memoryProperties;
+
+    /**
+     * @param store 本地键值存储
+     * @param codec 消息编解码器
+     * @param maxIndexedUsers 进程内保留关键词索引的最大用户数
+     */
+    public LocalMemoryService(LocalKeyValueStore store, MessageCodec codec, long maxIndexedUsers) {
+        this.store = store;
+        this.codec = codec;
+        this.indexes = Caffeine.newBuilder().maximumSize(Math.max(1, maxIndexedUsers)).build();
+    }
+
+    @Override
+    public CompletableFuture<Void> start() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> stop() {
+        return CompletableFuture.runAsync(() -> {
+            indexes.invalidateAll();
+            store.close();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> health() {
+        return CompletableFuture.completedFuture(store.isOpen());
+    }
+
+    @Override
+    public CompletableFuture<Void> addMemory(String userId, List<Message> messages, Optional<String> sessionId) {
+        return CompletableFuture.runAsync(() -> {
+            if (messages == null || messages.isEmpty()) {
+                return;
+            }
+            String session = sessionId.orElse(DEFAULT_SESSION_ID);
+            long first = sequences.computeIfAbsent(userId, this::loadSequence).getAndAdd(messages.size());
+            long now = System.currentTimeMillis();
+
+            LocalKeyValueStore.WriteBatch batch = new LocalKeyValueStore.WriteBatch();
+            for (int i = 0; i < messages.size(); i++) {
+                String seq = sequence(first + i);
+                batch.put(memoryPrefix(userId) + seq, encodeValue(now, session, messages.get(i)));
+                batch.put(sessionPrefix(userId, session) + seq, EMPTY);
+            }
+            batch.put(LocalKeyValueStore.key(MEMORY_USER, userId), EMPTY);
+            store.write(batch);
+
+            // 已加载的索引增量更新，未加载的在下次检索时从存储重建
+            indexes.asMap().computeIfPresent(userId, (key, index) -> {
+                for (int i = 0; i < messages.size(); i++) {
+                    String text = getQueryText(messages.get(i));
+                    if (text != null) {
+                        index.add(first + i, text);
+                    }
+                }
+                return index;
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> searchMemory(String userId, List<Message> messages, Optional<Map<String, Object>> filters) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (messages == null || messages.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            Message lastMessage = messages.get(messages.size() - 1);
+            String query = getQueryText(lastMessage);
+            if (query == null || query.trim().isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            int topK = Integer.MAX_VALUE;
+            if (filters.isPresent() && filters.get().containsKey("top_k")) {
+                Object topKObj = filters.get().get("top_k");
+                if (topKObj instanceof Integer) {
+                    topK = (Integer) topKObj;
+                }
+            }
+
+            // 按BM25得分降序返回，只读取命中的记忆
+            List<Message> matchedMessages = new ArrayList<>();
+            for (VectorHit hit : indexes.get(userId, this::loadIndex).search(query, topK)) {
+                byte[] value = store.get(memoryPrefix(userId) + sequence(hit.getId()));
+                if (value != null) {
+                    matchedMessages.add(decodeMessage(value));
+                }
+            }
+            return matchedMessages;
+        });
+    }
+
+    /**
+     * 按写入顺序列出用户的记忆，分页时跳过前面的页
+     */
+    @Override
+    public CompletableFuture<List<Message>> listMemory(String userId, Optional<Map<String, Object>> filters) {
+        return CompletableFuture.supplyAsync(() -> {
+            int skip = 0;
+            int limit = 0;
+            if (filters.isPresent()) {
+                Map<String, Object> filterMap = filters.get();
+                int pageNum = (Integer) filterMap.getOrDefault("page_num", 1);
+                int pageSize = (Integer) filterMap.getOrDefault("page_size",
+                    memoryProperties != null ? memoryProperties.getDefaultPageSize() : 10);
+                skip = Math.max(0, (pageNum - 1) * pageSize);
+                limit = Math.max(1, pageSize);
+            }
+
+            List<Message> results = new ArrayList<>();
+            for (LocalKeyValueStore.Entry entry : store.scan(memoryPrefix(userId), null, skip, limit)) {
+                results.add(decodeMessage(entry.value()));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * 按序号倒序分页列出用户的记忆，游标为上一页最后一条记忆的序号；未指定用户时使用默认实现
+     */
+    @Override
+    public CompletableFuture<MemoryRecordPage> listMemoryRecords(Optional<String> userId, Optional<String> cursor, int limit) {
+        if (userId.isEmpty()) {
+            return MemoryService.super.listMemoryRecords(userId, cursor, limit);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            String user = userId.get();
+            String prefix = memoryPrefix(user);
+            int pageSize = Math.max(1, limit);
+            // 多读一条判断是否还有下一页
+            List<LocalKeyValueStore.Entry> entries = store.scanDescending(prefix,
+                cursor.map(seq -> prefix + seq).orElse(null), pageSize + 1);
+            boolean hasMore = entries.size() > pageSize;
+            List<LocalKeyValueStore.Entry> page = hasMore ? entries.subList(0, pageSize) : entries;
+
+            List<MemoryRecord> records = new ArrayList<>(page.size());
+            for (LocalKeyValueStore.Entry entry : page) {
+                records.add(decodeRecord(user, entry));
+            }
+            String nextCursor = hasMore ? LocalKeyValueStore.lastPart(page.get(page.size() - 1).key()) : null;
+            return new MemoryRecordPage(records, nextCursor);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMemory(String userId, Optional<String> sessionId) {
+        return CompletableFuture.runAsync(() -> {
+            LocalKeyValueStore.WriteBatch batch = new LocalKeyValueStore.WriteBatch();
+            if (sessionId.isPresent()) {
+                List<Long> removed = new ArrayList<>();
+                for (String key : store.keys(sessionPrefix(userId, sessionId.get()))) {
+                    String seq = LocalKeyValueStore.lastPart(key);
+                    batch.delete(key);
+                    batch.delete(memoryPrefix(userId) + seq);
+                    removed.add(Long.parseUnsignedLong(seq, 16));
+                }
+                store.write(batch);
+                indexes.asMap().computeIfPresent(userId, (key, index) -> {
+                    removed.forEach(index::remove);
+                    return index;
+                });
+            } else {
+                store.keys(memoryPrefix(userId)).forEach(batch::delete);
+                store.keys(LocalKeyValueStore.prefix(MEMORY_SESSION, userId)).forEach(batch::delete);
+                batch.delete(LocalKeyValueStore.key(MEMORY_USER, userId));
+                store.write(batch);
+                indexes.invalidate(userId);
+                sequences.remove(userId);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllUsers() {
+        return CompletableFuture.supplyAsync(() -> {
+            List<String> users = new ArrayList<>();
+            for (String key : store.keys(LocalKeyValueStore.prefix(MEMORY_USER))) {
+                users.add(LocalKeyValueStore.lastPart(key));
+            }
+            return users;
+        });
+    }
+
+    /**
+     * 设置记忆配置属性
+     */
+    public void setMemoryProperties(MemoryProperties memoryProperties) {
+        this.memoryProperties = memoryProperties;
+    }
+
+    /**
+     * 从存储中读取用户的全部记忆重建关键词索引
+     */
+    private Bm25Index loadIndex(String userId) {
+        Bm25Index index = new Bm25Index();
+        for (LocalKeyValueStore.Entry entry : store.scan(memoryPrefix(userId), null, 0, 0)) {
+            String text = getQueryText(decodeMessage(entry.value()));
+            if (text != null) {
+                index.add(Long.parseUnsignedLong(LocalKeyValueStore.lastPart(entry.key()), 16), text);
+            }
+        }
+        return index;
+    }
+
+    private AtomicLong loadSequence(String userId) {
+        String last = store.lastKey(memoryPrefix(userId));
+        return new AtomicLong(last != null ? Long.parseUnsignedLong(LocalKeyValueStore.lastPart(last), 16) + 1 : 0);
+    }
+
+    /**
+     * 记忆的值：创建时间（8字节）、会话ID长度（4字节）、会话ID、编码后的消息
+     */
+    private byte[] encodeValue(long createdAt, String sessionId, Message message) {
+        byte[] session = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = codec.encode(message).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Long.BYTES + Integer.BYTES + session.length + payload.length)
+            .putLong(createdAt)
+            .putInt(session.length)
+            .put(session)
+            .put(payload)
+            .array();
+    }
+
+    private Message decodeMessage(byte[] value) {
+        int sessionLength = ByteBuffer.wrap(value, Long.BYTES, Integer.BYTES).getInt();
+        int offset = Long.BYTES + Integer.BYTES + sessionLength;
+        return codec.decode(new String(value, offset, value.length - offset, StandardCharsets.UTF_8));
+    }
+
+    private MemoryRecord decodeRecord(String userId, LocalKeyValueStore.Entry entry) {
+        ByteBuffer buffer = ByteBuffer.wrap(entry.value());
+        long createdAt = buffer.getLong();
+        int sessionLength = buffer.getInt();
+        String sessionId = new String(entry.value(), buffer.position(), sessionLength, StandardCharsets.UTF_8);
+        return new MemoryRecord(LocalKeyValueStore.lastPart(entry.key()), userId, sessionId, decodeMessage(entry.value()), createdAt);
+    }
+
+    /**
+     * 从消息中获取查询文本
+     *
+     * @param message 消息对象
+     * @return 查询文本，如果无法提取则返回null
+     */
+    private String getQueryText(Message message) {
+        if (message == null || message.getContent() == null) {
+            return null;
+        }
+
+        if (message.getType() == MessageType.MESSAGE) {
+            return message.getContent().stream()
+                    .filter(content -> "text".equals(content.getType()))
+                    .map(MessageContent::getText)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        return null;
+    }
+
+    private static String memoryPrefix(String userId) {
+        return LocalKeyValueStore.prefix(MEMORY, userId);
+    }
+
+    private static String sessionPrefix(String userId, String sessionId) {
+        return LocalKeyValueStore.prefix(MEMORY_SESSION, userId, sessionId);
+    }
+
+    /**
+     * 定长十六进制序号，键的字典序与序号大小一致
+     */
+    private static String sequence(long seq) {
+        return String.format("%016x", seq);
+    }
+}
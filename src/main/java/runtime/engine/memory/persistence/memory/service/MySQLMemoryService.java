@@ -1,12 +1,27 @@
 package runtime.engine.memory.persistence.memory.service;
 
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.MemoryRecordPage;
+import runtime.engine.memory.model.MemoryStats;
 import runtime.engine.memory.model.Message;
 import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
 import runtime.engine.memory.service.EmbeddingService;
 import runtime.engine.memory.service.MemoryService;
 import runtime.engine.infrastructure.config.memory.MemoryProperties;
+import runtime.engine.memory.index.EmbeddingCodec;
+import runtime.engine.memory.index.FlatVectorIndex;
+import runtime.engine.memory.index.ScoreHeap;
+import runtime.engine.memory.index.VectorHit;
+import runtime.engine.memory.index.VectorIndex;
+import runtime.engine.memory.index.VectorIndexRegistry;
+import runtime.engine.memory.index.VectorMath;
 import runtime.engine.memory.persistence.memory.entity.MemoryEntity;
+import runtime.engine.memory.persistence.memory.repository.ArchiveReader;
 import runtime.engine.memory.persistence.memory.repository.MemoryRepository;
+import runtime.engine.memory.persistence.memory.repository.MemoryStreamReader;
+import runtime.engine.memory.persistence.memory.repository.MessageBatchWriter;
+import runtime.engine.memory.persistence.memory.repository.StatsCounterRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
@@ -14,28 +29,83 @@ import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 基于MySQL的内存服务实现
+ * 相似度检索走进程内的按用户向量索引，MySQL仅作为索引预热和重建的持久化数据源
  */
 public class MySQLMemoryService implements MemoryService {
     
     private static final Logger logger = LoggerFactory.getLogger(MySQLMemoryService.class);
     private static final String DEFAULT_SESSION_ID = "default_session";
+    /**
+     * 向量检索的候选放大倍数，为按内容去重预留余量
+     */
+    private static final int CANDIDATE_FACTOR = 4;
     
     private MemoryRepository memoryRepository;
+    private MessageBatchWriter messageBatchWriter;
+    private MemoryStreamReader memoryStreamReader;
+    private StatsCounterRepository statsCounterRepository;
+    private StatsCache<MemoryStats> statsCache;
+    private ArchiveReader archiveReader;
     private ObjectMapper objectMapper;
     private EmbeddingService embeddingService;
     private MemoryProperties memoryProperties;
+    private VectorIndexRegistry vectorIndexRegistry = new VectorIndexRegistry(
+        userId -> new FlatVectorIndex(embeddingService.getEmbeddingDimension()));
     
     public void setMemoryRepository(MemoryRepository memoryRepository) {
         this.memoryRepository = memoryRepository;
     }
     
+    /**
+     * 设置JDBC批量写入，设置后新增记忆用多行INSERT一次写入，而不是逐条保存
+     */
+    public void setMessageBatchWriter(MessageBatchWriter messageBatchWriter) {
+        this.messageBatchWriter = messageBatchWriter;
+    }
+    
+    /**
+     * 设置JDBC流式读取，设置后导出记忆使用流式结果集，否则按键集分页逐页读取
+     */
+    public void setMemoryStreamReader(MemoryStreamReader memoryStreamReader) {
+        this.memoryStreamReader = memoryStreamReader;
+    }
+    
+    /**
+     * 设置归档层读取，设置后列出、检索、导出和删除记忆同时覆盖归档表中的冷数据
+     */
+    public void setArchiveReader(ArchiveReader archiveReader) {
+        this.archiveReader = archiveReader;
+    }
+    
+    /**
+     * 启用统计计数器：写入记忆时累加计数器，统计查询读取进程内缓存或计数器表
+     * 
+     * @param statsCounterRepository 计数器表读写
+     * @param maxUsers 进程内最多缓存的用户数
+     * @param refreshMillis 缓存快照的刷新间隔（毫秒）
+     * @param reconcileMillis 按明细表对账的间隔（毫秒），小于等于0时不定期对账
+     */
+    public void enableStatsCounters(StatsCounterRepository statsCounterRepository, long maxUsers,
+                                    long refreshMillis, long reconcileMillis) {
+        this.statsCounterRepository = statsCounterRepository;
+        this.statsCache = new StatsCache<>("memories", maxUsers, refreshMillis, reconcileMillis,
+            statsCounterRepository::loadMemoryStats, statsCounterRepository::reconcileMemoryCounters);
+    }
+    
     public void setObjectMapper(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
     }
@@ -48,6 +118,10 @@ public class MySQLMemoryService implements MemoryService {
         this.memoryProperties = memoryProperties;
     }
     
+    public void setVectorIndexRegistry(VectorIndexRegistry vectorIndexRegistry) {
+        this.vectorIndexRegistry = vectorIndexRegistry;
+    }
+    
     @Override
     public CompletableFuture<Void> start() {
         return CompletableFuture.completedFuture(null);
@@ -55,7 +129,13 @@ public class MySQLMemoryService implements MemoryService {
     
     @Override
     public CompletableFuture<Void> stop() {
-        return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> {
+            vectorIndexRegistry.flush();
+            vectorIndexRegistry.clear();
+            if (statsCache != null) {
+                statsCache.close();
+            }
+        });
     }
     
     @Override
@@ -78,6 +158,9 @@ public class MySQLMemoryService implements MemoryService {
             try {
                 String sessionIdValue = sessionId.orElse(DEFAULT_SESSION_ID);
                 
+                List<MemoryEntity> entities = new ArrayList<>(messages.size());
+                List<MemoryEntity> embeddedEntities = new ArrayList<>();
+                List<String> texts = new ArrayList<>();
                 for (Message message : messages) {
                     MemoryEntity entity = new MemoryEntity();
                     entity.setUserId(userId);
@@ -85,17 +168,35 @@ public class MySQLMemoryService implements MemoryService {
                     entity.setMessageType(message.getType());
                     entity.setContent(serializeMessageContent(message.getContent()));
                     entity.setMetadata(serializeMetadata(message.getMetadata()));
+                    entities.add(entity);
                     
-                    // 生成embedding
                     String text = extractTextFromMessage(message);
                     if (text != null && !text.trim().isEmpty()) {
-                        List<Double> embedding = embeddingService.embedText(text).get();
-                        entity.setEmbedding(serializeEmbedding(embedding));
+                        embeddedEntities.add(entity);
+                        texts.add(text);
                     }
-                    
-                    memoryRepository.save(entity);
                 }
                 
+                // 整批生成embedding，只产生一次嵌入调用，以二进制格式存储
+                EmbeddingCodec.Format embeddingFormat = EmbeddingCodec.Format.fromName(
+                    memoryProperties != null ? memoryProperties.getEmbedding().getStorageFormat() : null);
+                List<float[]> vectors = texts.isEmpty()
+                    ? Collections.emptyList()
+                    : embeddingService.embedTexts(texts).get();
+                for (int i = 0; i < embeddedEntities.size(); i++) {
+                    embeddedEntities.get(i).setEmbeddingBin(EmbeddingCodec.encode(vectors.get(i), embeddingFormat));
+                }
+                
+                if (messageBatchWriter != null) {
+                    messageBatchWriter.insertMemories(entities);
+                } else {
+                    memoryRepository.saveAll(entities);
+                }
+                for (int i = 0; i < embeddedEntities.size(); i++) {
+                    vectorIndexRegistry.addIfPresent(userId, embeddedEntities.get(i).getId(), vectors.get(i));
+                }
+                recordStats(userId, messages);
+                
                 logger.info("成功添加 {} 条记忆到MySQL，用户: {}, 会话: {}",
                     messages.size(), userId, sessionIdValue);
                     
@@ -122,37 +223,8 @@ public class MySQLMemoryService implements MemoryService {
                 }
                 
                 // 生成查询embedding
-                List<Double> queryEmbedding = embeddingService.embedText(queryText).get();
+                float[] queryVector = embeddingService.embedVector(queryText).get();
                 
-                // 获取用户所有记忆
-                List<MemoryEntity> allMemories = memoryRepository.findByUserIdOrderByCreatedAtDesc(userId);
-
-                // 计算相似度并排序
-                List<MemorySimilarity> similarities = allMemories.stream()
-                    .filter(memory -> memory.getEmbedding() != null && !memory.getEmbedding().trim().isEmpty())
-                    .map(memory -> {
-                        try {
-                            List<Double> memoryEmbedding = deserializeEmbedding(memory.getEmbedding());
-                            double similarity = embeddingService.cosineSimilarity(queryEmbedding, memoryEmbedding);
-                            return new MemorySimilarity(memory, similarity);
-                        } catch (Exception e) {
-                            logger.warn("计算相似度失败，记忆ID: {}", memory.getId(), e);
-                            return new MemorySimilarity(memory, 0.0);
-                        }
-                    })
-//                    .filter(ms -> ms.similarity > 0.1) // 过滤低相似度结果
-                    .sorted((a, b) -> Double.compare(b.similarity, a.similarity)) // 按相似度降序
-                    .collect(Collectors.toList());
-                
-                // 去重：相同内容的记忆只保留最新的
-                Map<String, MemorySimilarity> deduplicated = new LinkedHashMap<>();
-                for (MemorySimilarity ms : similarities) {
-                    String content = ms.memory.getContent();
-                    if (!deduplicated.containsKey(content) || 
-                        ms.memory.getCreatedAt().isAfter(deduplicated.get(content).memory.getCreatedAt())) {
-                        deduplicated.put(content, ms);
-                    }
-                }
                 // 获取top_k结果
                 int topK = memoryProperties != null ? memoryProperties.getDefaultTopK() : 10;
                 if (filters.isPresent() && filters.get().containsKey("top_k")) {
@@ -162,13 +234,65 @@ public class MySQLMemoryService implements MemoryService {
                     }
                 }
                 
-                List<Message> results = deduplicated.values().stream()
-                    .limit(topK)
-                    .map(ms -> convertToMessage(ms.memory))
-                    .collect(Collectors.toList());
+                // 在用户向量索引中检索候选，索引未预热时从MySQL加载
+                VectorIndex index = vectorIndexRegistry.getOrLoad(userId, (idx, after) -> loadVectorIndex(userId, idx, after));
+                List<VectorHit> hits = index.search(queryVector, topK * CANDIDATE_FACTOR * rescoreFactor());
+                if (hits.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                
+                List<Long> hitIds = hits.stream().map(VectorHit::getId).collect(Collectors.toList());
+                Map<Long, MemoryEntity> entitiesById = memoryRepository.findAllById(hitIds)
+                    .stream()
+                    .collect(Collectors.toMap(MemoryEntity::getId, entity -> entity));
+                if (archiveReader != null && entitiesById.size() < hitIds.size()) {
+                    // 热表中找不到的候选可能已被归档
+                    List<Long> missing = hitIds.stream()
+                        .filter(id -> !entitiesById.containsKey(id))
+                        .collect(Collectors.toList());
+                    for (MemoryEntity archived : archiveReader.findMemoriesByIds(missing)) {
+                        entitiesById.put(archived.getId(), archived);
+                    }
+                }
+                
+                // 按MySQL中的全精度向量重新打分，过滤低相似度候选并按内容去重后用ScoreHeap筛选top_k：
+                // 相同内容的记忆共用一个槽位，只保留最新的，得分取相似度最高的一条
+                float[] unitQuery = VectorMath.normalized(queryVector);
+                double threshold = similarityThreshold();
+                List<MemoryEntity> candidates = new ArrayList<>(hits.size());
+                float[] scores = new float[hits.size()];
+                Map<String, Integer> slotsByContent = new HashMap<>();
+                for (VectorHit hit : hits) {
+                    MemoryEntity memory = entitiesById.get(hit.getId());
+                    if (memory == null) {
+                        continue;
+                    }
+                    float score = rescore(hit, memory, unitQuery);
+                    if (score < threshold || Float.isNaN(score)) {
+                        continue;
+                    }
+                    Integer slot = slotsByContent.get(memory.getContent());
+                    if (slot == null) {
+                        slotsByContent.put(memory.getContent(), candidates.size());
+                        scores[candidates.size()] = score;
+                        candidates.add(memory);
+                    } else {
+                        candidates.set(slot, newer(candidates.get(slot), memory));
+                        scores[slot] = Math.max(scores[slot], score);
+                    }
+                }
                 
-                logger.info("MySQL基于embedding搜索记忆完成，用户: {}, 查询: {}, 候选数: {}, 去重后: {}, 返回数: {}",
-                    userId, queryText, similarities.size(), deduplicated.size(), results.size());
+                ScoreHeap heap = new ScoreHeap(Math.max(0, Math.min(topK, candidates.size())));
+                for (int slot = 0; slot < candidates.size(); slot++) {
+                    heap.offer(scores[slot], slot);
+                }
+                List<Message> results = new ArrayList<>(heap.size());
+                for (int slot : heap.drainSlots()) {
+                    results.add(convertToMessage(candidates.get(slot)));
+                }
+                
+                logger.info("MySQL基于embedding搜索记忆完成，用户: {}, 查询: {}, 索引大小: {}, 候选数: {}, 返回数: {}",
+                    userId, queryText, index.size(), hits.size(), results.size());
                 
                 return results;
                 
@@ -196,7 +320,15 @@ public class MySQLMemoryService implements MemoryService {
                 Pageable pageable = PageRequest.of(pageNum - 1, pageSize);
                 Page<MemoryEntity> memoryPage = memoryRepository.findByUserIdOrderByCreatedAtDesc(userId, pageable);
                 
-                List<Message> results = memoryPage.getContent().stream()
+                List<MemoryEntity> rows = memoryPage.getContent();
+                if (archiveReader != null && rows.size() < pageSize) {
+                    // 热表的记忆读完后接着读归档记忆，归档记忆都早于热表中的记忆
+                    long archiveOffset = Math.max(0, pageable.getOffset() - memoryPage.getTotalElements());
+                    rows = new ArrayList<>(rows);
+                    rows.addAll(archiveReader.findMemoriesByUserId(userId, archiveOffset, pageSize - rows.size()));
+                }
+                
+                List<Message> results = rows.stream()
                     .map(this::convertToMessage)
                     .collect(Collectors.toList());
                 
@@ -223,6 +355,15 @@ public class MySQLMemoryService implements MemoryService {
                     memoryRepository.deleteByUserId(userId);
                     logger.debug("删除用户所有记忆，用户: {}", userId);
                 }
+                if (archiveReader != null) {
+                    archiveReader.deleteMemories(userId, sessionId);
+                }
+                // 删除后索引在下次检索时从MySQL重建
+                vectorIndexRegistry.invalidate(userId);
+                if (statsCache != null) {
+                    statsCounterRepository.reconcileMemoryCounters(userId);
+                    statsCache.invalidate(userId);
+                }
             } catch (Exception e) {
                 logger.error("MySQL删除记忆失败", e);
                 throw new RuntimeException("MySQL删除记忆失败", e);
@@ -244,6 +385,100 @@ public class MySQLMemoryService implements MemoryService {
         });
     }
     
+    /**
+     * 启用统计计数器时读取缓存的计数，否则遍历用户的记忆计数
+     */
+    @Override
+    public CompletableFuture<MemoryStats> getMemoryStats(String userId) {
+        if (statsCache == null) {
+            return MemoryService.super.getMemoryStats(userId);
+        }
+        return CompletableFuture.supplyAsync(() -> statsCache.get(userId));
+    }
+    
+    /**
+     * 按(创建时间, ID)键集分页列出记忆，游标为上一页最后一条记录的创建时间和ID
+     */
+    @Override
+    public CompletableFuture<MemoryRecordPage> listMemoryRecords(Optional<String> userId, Optional<String> cursor, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            int pageSize = Math.max(1, limit);
+            // 多查一条判断是否还有下一页
+            Pageable pageable = PageRequest.of(0, pageSize + 1);
+            Keyset keyset = cursor.map(Keyset::decode).orElse(null);
+            List<MemoryEntity> rows;
+            if (keyset != null) {
+                rows = userId.isPresent()
+                    ? memoryRepository.findPageBeforeByUserId(userId.get(), keyset.createdAt(), keyset.id(), pageable)
+                    : memoryRepository.findPageBefore(keyset.createdAt(), keyset.id(), pageable);
+            } else {
+                rows = userId.isPresent()
+                    ? memoryRepository.findFirstPageByUserId(userId.get(), pageable)
+                    : memoryRepository.findFirstPage(pageable);
+            }
+            
+            if (archiveReader != null && rows.size() <= pageSize) {
+                // 热表读完后从归档表接着读，归档记忆都早于热表中的记忆，游标格式不变
+                Keyset from = rows.isEmpty() ? keyset : Keyset.of(rows.get(rows.size() - 1));
+                rows = new ArrayList<>(rows);
+                rows.addAll(archiveReader.findMemoryPage(userId, from != null ? from.createdAt() : null,
+                    from != null ? from.id() : 0, pageSize + 1 - rows.size()));
+            }
+            
+            boolean hasMore = rows.size() > pageSize;
+            List<MemoryEntity> page = hasMore ? rows.subList(0, pageSize) : rows;
+            List<MemoryRecord> records = new ArrayList<>(page.size());
+            for (MemoryEntity entity : page) {
+                records.add(convertToRecord(entity));
+            }
+            String nextCursor = hasMore ? Keyset.of(page.get(page.size() - 1)).encode() : null;
+            return new MemoryRecordPage(records, nextCursor);
+        });
+    }
+    
+    /**
+     * 流式导出记忆：配置了流式读取时使用单条查询的流式结果集，否则按键集分页逐页读取；
+     * 配置了归档层时热表读完后再读归档表，同一时刻只占用一个连接
+     */
+    @Override
+    public Flux<MemoryRecord> streamMemories(Optional<String> userId) {
+        if (memoryStreamReader == null) {
+            return MemoryService.super.streamMemories(userId).subscribeOn(Schedulers.boundedElastic());
+        }
+        Flux<MemoryEntity> hot = Flux.using(
+                () -> userId.isPresent() ? memoryStreamReader.streamByUserId(userId.get()) : memoryStreamReader.streamAll(),
+                Flux::fromStream,
+                Stream::close);
+        if (archiveReader != null) {
+            hot = hot.concatWith(Flux.using(
+                () -> userId.isPresent()
+                    ? memoryStreamReader.streamArchivedByUserId(userId.get())
+                    : memoryStreamReader.streamArchivedAll(),
+                Flux::fromStream,
+                Stream::close));
+        }
+        return hot.map(this::convertToRecord)
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    /**
+     * 累加写入记忆的计数；计数器更新失败不影响已写入的记忆，由对账修正
+     */
+    private void recordStats(String userId, List<Message> messages) {
+        if (statsCache == null) {
+            return;
+        }
+        long userMessages = messages.stream().filter(m -> m.getType() == MessageType.USER).count();
+        long assistantMessages = messages.stream().filter(m -> m.getType() == MessageType.ASSISTANT).count();
+        try {
+            statsCounterRepository.incrementMemoryCounters(userId, messages.size(), userMessages, assistantMessages);
+        } catch (RuntimeException e) {
+            logger.warn("更新记忆计数失败，等待对账修正，用户: {}", userId, e);
+        }
+        MemoryStats delta = new MemoryStats(messages.size(), userMessages, assistantMessages, System.currentTimeMillis());
+        statsCache.apply(userId, stats -> stats.plus(delta));
+    }
+    
     /**
      * 序列化消息内容
      */
@@ -306,6 +541,14 @@ public class MySQLMemoryService implements MemoryService {
     /**
      * 将MemoryEntity转换为Message
      */
+    private MemoryRecord convertToRecord(MemoryEntity entity) {
+        long timestamp = entity.getCreatedAt() != null
+            ? entity.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            : 0;
+        return new MemoryRecord(String.valueOf(entity.getId()), entity.getUserId(), entity.getSessionId(),
+            convertToMessage(entity), timestamp);
+    }
+    
     private Message convertToMessage(MemoryEntity entity) {
         Message message = new Message();
         message.setType(entity.getMessageType());
@@ -331,43 +574,122 @@ public class MySQLMemoryService implements MemoryService {
     }
     
     /**
-     * 序列化embedding向量
+     * 反序列化旧版JSON数组格式的embedding向量
      */
-    private String serializeEmbedding(List<Double> embedding) {
+    private float[] deserializeEmbedding(String embeddingJson) {
         try {
-            return objectMapper.writeValueAsString(embedding);
+            if (embeddingJson == null || embeddingJson.trim().isEmpty()) {
+                return new float[0];
+            }
+            return objectMapper.readValue(embeddingJson, float[].class);
         } catch (JsonProcessingException e) {
-            logger.warn("序列化embedding失败", e);
-            return null;
+            logger.warn("反序列化embedding失败", e);
+            return new float[0];
         }
     }
     
     /**
-     * 反序列化embedding向量
+     * 量化索引的候选放大倍数，未启用量化时为1
      */
-    @SuppressWarnings("unchecked")
-    private List<Double> deserializeEmbedding(String embeddingJson) {
-        try {
-            if (embeddingJson == null || embeddingJson.trim().isEmpty()) {
-                return Collections.emptyList();
+    private int rescoreFactor() {
+        if (memoryProperties == null) {
+            return 1;
+        }
+        MemoryProperties.VectorIndex config = memoryProperties.getVectorIndex();
+        if (!config.isQuantized() || "hnsw".equalsIgnoreCase(config.getType())) {
+            return 1;
+        }
+        return Math.max(1, config.getRescoreFactor());
+    }
+    
+    /**
+     * 相似度下限，未配置或不高于-1时不过滤
+     */
+    private double similarityThreshold() {
+        if (memoryProperties == null || memoryProperties.getSimilarityThreshold() <= -1.0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return memoryProperties.getSimilarityThreshold();
+    }
+    
+    /**
+     * 使用候选记忆的全精度向量重新计算相似度
+     * 无法解码全精度向量的候选保留索引给出的得分
+     */
+    private float rescore(VectorHit hit, MemoryEntity memory, float[] unitQuery) {
+        byte[] binary = memory.getEmbeddingBin();
+        if (EmbeddingCodec.isEncoded(binary) && EmbeddingCodec.dimension(binary) == unitQuery.length) {
+            return EmbeddingCodec.dot(binary, unitQuery);
+        }
+        if (memory.getEmbedding() != null) {
+            float[] legacy = deserializeEmbedding(memory.getEmbedding());
+            if (legacy.length == unitQuery.length) {
+                return VectorMath.cosine(legacy, unitQuery);
+            }
+        }
+        return hit.getScore();
+    }
+    
+    /**
+     * 内容相同的两条记忆中保留较新的一条
+     */
+    private static MemoryEntity newer(MemoryEntity existing, MemoryEntity candidate) {
+        return candidate.getCreatedAt().isAfter(existing.getCreatedAt()) ? candidate : existing;
+    }
+    
+    /**
+     * 从MySQL加载用户ID大于after的embedding到向量索引；从落盘文件加载的索引只补充文件之后写入的记忆
+     */
+    private void loadVectorIndex(String userId, VectorIndex index, long after) {
+        List<Object[]> rows = memoryRepository.findEmbeddingsByUserIdAndIdGreaterThan(userId, after);
+        if (archiveReader != null) {
+            // 归档记忆仍参与检索
+            rows = new ArrayList<>(rows);
+            rows.addAll(archiveReader.findEmbeddingsByUserId(userId, after));
+        }
+        int loaded = 0;
+        int legacy = 0;
+        for (Object[] row : rows) {
+            Long id = (Long) row[0];
+            byte[] binary = (byte[]) row[1];
+            float[] embedding;
+            if (EmbeddingCodec.isEncoded(binary)) {
+                embedding = EmbeddingCodec.decodeNormalized(binary);
+            } else {
+                embedding = deserializeEmbedding((String) row[2]);
+                legacy++;
+            }
+            if (embedding.length == index.dimension()) {
+                index.add(id, embedding);
+                loaded++;
             }
-            return objectMapper.readValue(embeddingJson, List.class);
-        } catch (JsonProcessingException e) {
-            logger.warn("反序列化embedding失败", e);
-            return Collections.emptyList();
         }
+        logger.info("预热用户向量索引完成，用户: {}, 起始ID: {}, 向量数: {}, 其中JSON格式: {}", userId, after, loaded, legacy);
     }
     
     /**
-     * 记忆相似度内部类
+     * 键集分页游标：记录的创建时间和ID，编码为URL安全的Base64字符串
      */
-    private static class MemorySimilarity {
-        final MemoryEntity memory;
-        final double similarity;
+    private record Keyset(LocalDateTime createdAt, long id) {
+        
+        static Keyset of(MemoryEntity entity) {
+            return new Keyset(entity.getCreatedAt(), entity.getId());
+        }
+        
+        static Keyset decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.lastIndexOf('|');
+                return new Keyset(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid memory cursor: " + cursor, e);
+            }
+        }
         
-        MemorySimilarity(MemoryEntity memory, double similarity) {
-            this.memory = memory;
-            this.similarity = similarity;
+        String encode() {
+            String value = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
         }
     }
 }
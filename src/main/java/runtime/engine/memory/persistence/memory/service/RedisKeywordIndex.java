@@ -0,0 +1,255 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import runtime.engine.memory.index.Bm25Index;
+import runtime.engine.memory.index.Bm25Scorer;
+import runtime.engine.memory.index.TextTokenizer;
+import runtime.engine.memory.index.VectorHit;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.*;
+
+/**
+ * 存储在Redis中的BM25倒排索引
+ * 每条消息以其记忆ID作为文档引用，键布局如下：
+ * <pre>
+ * memory_idx:{userId}:{term}          ZSET  文档引用 -> 词频
+ * memory_idx_len:{userId}             HASH  文档引用 -> 文档词项数
+ * memory_idx_stats:{userId}           HASH  docs / total_len
+ * memory_idx_terms:{userId}:{session} SET   会话中出现过的词项，用于删除会话时定位倒排表
+ * </pre>
+ * 检索只读取查询词项对应的有序集合和候选文档的长度，不加载用户的全部消息
+ */
+class RedisKeywordIndex {
+
+    private static final String POSTING_PREFIX = "memory_idx:";
+    private static final String LENGTH_PREFIX = "memory_idx_len:";
+    private static final String STATS_PREFIX = "memory_idx_stats:";
+    private static final String TERMS_PREFIX = "memory_idx_terms:";
+    private static final String FIELD_DOCS = "docs";
+    private static final String FIELD_TOTAL_LENGTH = "total_len";
+    private static final char LEGACY_REF_SEPARATOR = '#';
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    RedisKeywordIndex(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 在调用方的流水线或事务中写入一条消息的倒排信息
+     *
+     * @param operations 流水线中的Redis操作
+     * @param ref 文档引用
+     */
+    void add(RedisOperations<String, String> operations, String userId, String sessionId, String ref, String text) {
+        Map<String, Integer> frequencies = TextTokenizer.termFrequencies(text);
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            operations.opsForZSet().add(postingKey(userId, entry.getKey()), ref, entry.getValue());
+            length += entry.getValue();
+        }
+        operations.opsForSet().add(termsKey(userId, sessionId), frequencies.keySet().toArray(new String[0]));
+        operations.opsForHash().put(lengthKey(userId), ref, String.valueOf(length));
+        operations.opsForHash().increment(statsKey(userId), FIELD_DOCS, 1);
+        operations.opsForHash().increment(statsKey(userId), FIELD_TOTAL_LENGTH, length);
+    }
+
+    /**
+     * 删除会话的全部倒排信息
+     *
+     * @param documentRefs 会话中全部消息的文档引用
+     */
+    void removeSession(String userId, String sessionId, Collection<String> documentRefs) {
+        removeDocuments(userId, sessionId, documentRefs.toArray(), true);
+    }
+
+    /**
+     * 删除旧布局中一个会话的倒排信息，旧布局以 会话ID#消息位置 作为文档引用
+     * 会话的词项集合可能已包含按新ID写入的消息的词项，因此保留
+     *
+     * @param messageCount 旧布局中该会话的消息数
+     */
+    void removeLegacySession(String userId, String sessionId, int messageCount) {
+        Object[] refs = new Object[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            refs[i] = sessionId + LEGACY_REF_SEPARATOR + i;
+        }
+        removeDocuments(userId, sessionId, refs, false);
+    }
+
+    private void removeDocuments(String userId, String sessionId, Object[] refs, boolean deleteTerms) {
+        Set<String> terms = redisTemplate.opsForSet().members(termsKey(userId, sessionId));
+        if (terms == null || terms.isEmpty() || refs.length == 0) {
+            if (deleteTerms) {
+                redisTemplate.delete(termsKey(userId, sessionId));
+            }
+            return;
+        }
+        List<Object> lengths = redisTemplate.opsForHash().multiGet(lengthKey(userId), Arrays.asList(refs));
+        long documents = 0;
+        long totalLength = 0;
+        for (Object length : lengths) {
+            if (length != null) {
+                documents++;
+                totalLength += Long.parseLong(length.toString());
+            }
+        }
+        long removedDocuments = documents;
+        long removedLength = totalLength;
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                for (String term : terms) {
+                    operations.opsForZSet().remove(postingKey(userId, term), refs);
+                }
+                operations.opsForHash().delete(lengthKey(userId), refs);
+                operations.opsForHash().increment(statsKey(userId), FIELD_DOCS, -removedDocuments);
+                operations.opsForHash().increment(statsKey(userId), FIELD_TOTAL_LENGTH, -removedLength);
+                if (deleteTerms) {
+                    operations.delete(termsKey(userId, sessionId));
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 删除用户的全部倒排信息
+     *
+     * @param sessionIds 用户的全部会话ID
+     */
+    void removeUser(String userId, Collection<String> sessionIds) {
+        List<String> termsKeys = new ArrayList<>(sessionIds.size());
+        for (String sessionId : sessionIds) {
+            termsKeys.add(termsKey(userId, sessionId));
+        }
+        // 一次流水线读取全部会话的词项集合
+        List<Object> termSets = termsKeys.isEmpty() ? Collections.emptyList()
+                : redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                        RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                        for (String termsKey : termsKeys) {
+                            operations.opsForSet().members(termsKey);
+                        }
+                        return null;
+                    }
+                });
+
+        Set<String> keys = new HashSet<>(termsKeys);
+        for (Object terms : termSets) {
+            if (terms != null) {
+                for (Object term : (Collection<?>) terms) {
+                    keys.add(postingKey(userId, term.toString()));
+                }
+            }
+        }
+        keys.add(lengthKey(userId));
+        keys.add(statsKey(userId));
+        redisTemplate.delete(keys);
+    }
+
+    /**
+     * 按BM25得分检索最相关的top_k条消息，按得分降序返回文档引用
+     */
+    List<String> search(String userId, String query, int topK) {
+        List<String> terms = new ArrayList<>(TextTokenizer.termFrequencies(query).keySet());
+        if (terms.isEmpty() || topK <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                operations.opsForHash().multiGet(statsKey(userId), Arrays.asList(FIELD_DOCS, FIELD_TOTAL_LENGTH));
+                for (String term : terms) {
+                    operations.opsForZSet().rangeWithScores(postingKey(userId, term), 0, -1);
+                }
+                return null;
+            }
+        });
+
+        List<?> stats = (List<?>) results.get(0);
+        long documentCount = parseLong(stats.get(0));
+        if (documentCount <= 0) {
+            return Collections.emptyList();
+        }
+        double averageLength = (double) parseLong(stats.get(1)) / documentCount;
+
+        // 文档引用映射为连续编号，复用Bm25Index的top_k选择
+        List<String> refs = new ArrayList<>();
+        Map<String, Integer> refIds = new HashMap<>();
+        List<Map<Integer, Double>> termPostings = new ArrayList<>(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            Map<Integer, Double> posting = new HashMap<>();
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) results.get(i + 1);
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    Integer refId = refIds.computeIfAbsent(tuple.getValue(), ref -> {
+                        refs.add(ref);
+                        return refs.size() - 1;
+                    });
+                    posting.put(refId, tuple.getScore());
+                }
+            }
+            termPostings.add(posting);
+        }
+        if (refs.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Object> lengths = redisTemplate.opsForHash().multiGet(lengthKey(userId), new ArrayList<>(refs));
+        Map<Long, Double> scores = new HashMap<>();
+        for (Map<Integer, Double> posting : termPostings) {
+            if (posting.isEmpty()) {
+                continue;
+            }
+            double idf = Bm25Scorer.idf(documentCount, posting.size());
+            for (Map.Entry<Integer, Double> entry : posting.entrySet()) {
+                double contribution = Bm25Scorer.score(idf, entry.getValue(),
+                        parseLong(lengths.get(entry.getKey())), averageLength);
+                scores.merge((long) entry.getKey(), contribution, Double::sum);
+            }
+        }
+
+        List<String> hits = new ArrayList<>();
+        for (VectorHit hit : Bm25Index.topHits(scores, topK)) {
+            hits.add(refs.get((int) hit.getId()));
+        }
+        return hits;
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0L : Long.parseLong(value.toString());
+    }
+
+    private static String postingKey(String userId, String term) {
+        return POSTING_PREFIX + userId + ":" + term;
+    }
+
+    private static String lengthKey(String userId) {
+        return LENGTH_PREFIX + userId;
+    }
+
+    private static String statsKey(String userId) {
+        return STATS_PREFIX + userId;
+    }
+
+    private static String termsKey(String userId, String sessionId) {
+        return TERMS_PREFIX + userId + ":" + sessionId;
+    }
+}
@@ -1,5 +1,7 @@
 package runtime.engine.memory.persistence.memory.service;
 
+import runtime.engine.memory.codec.JsonMessageCodec;
+import runtime.engine.memory.codec.MessageCodec;
 import runtime.engine.memory.model.Message;
 import runtime.engine.memory.model.MessageContent;
 import runtime.engine.memory.model.MessageType;
@@ -8,38 +10,103 @@ import runtime.engine.infrastructure.config.memory.MemoryProperties;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 基于Redis的内存服务实现
+ * 每条记忆单独存储并分配自增ID，键布局如下：
+ * <pre>
+ * memory_seq:{userId}                 STRING 记忆ID序列
+ * memory_msgs:{userId}                HASH   记忆ID -> 编码后的消息，格式见{@link MessageCodec}
+ * memory_timeline:{userId}            ZSET   记忆ID，按写入顺序（自增ID）排序
+ * memory_session:{userId}:{sessionId} LIST   会话中的记忆ID
+ * memory_sessions:{userId}            SET    用户的会话ID
+ * memory_users                        SET    用户注册表，写入记忆时登记
+ * </pre>
+ * 写入只追加新消息，与历史大小无关；分页为一次ZRANGE加HMGET。
+ * 关键词检索使用存储在Redis有序集合中的BM25倒排索引，见{@link RedisKeywordIndex}。
+ * 旧布局 user_memory:{userId}（每个会话一个JSON字段）的数据在首次访问该用户时迁移，迁移由 memory_migrate_lock:{userId} 锁协调，
+ * 其他节点等待迁移完成后再访问；每个会话的写入与旧字段删除在同一个事务中提交，迁移中断或重试不会重复写入。
+ * 用户列表从注册表中以SSCAN游标分批读取，不使用会阻塞Redis的KEYS命令；
+ * 注册表引入前已有的用户在启动时通过SCAN补登记一次
  */
 public class RedisMemoryService implements MemoryService {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisMemoryService.class);
+    private static final String LEGACY_PREFIX = "user_memory:";
+    private static final String TIMELINE_PREFIX = "memory_timeline:";
+    private static final String USERS_KEY = "memory_users";
+    private static final String USERS_READY_KEY = "memory_users:ready";
+    private static final int SCAN_BATCH_SIZE = 500;
+    private static final String MIGRATION_LOCK_PREFIX = "memory_migrate_lock:";
+    private static final Duration MIGRATION_LOCK_TTL = Duration.ofMinutes(5);
+    // 等待其他节点完成迁移的最长时间和检查间隔
+    private static final Duration MIGRATION_WAIT = Duration.ofSeconds(30);
+    private static final Duration MIGRATION_POLL_INTERVAL = Duration.ofMillis(100);
+    // 迁移单个会话时旧数据键被并发修改的最大重试次数
+    private static final int MIGRATION_ATTEMPTS = 5;
+    /**
+     * 仅当锁仍由自己持有时释放，避免锁过期后误删其他节点的锁
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
     private final RedisTemplate<String, String> redisTemplate;
+    /**
+     * 仅用于读取旧布局中的JSON会话数据
+     */
     private final ObjectMapper objectMapper;
+    private final MessageCodec codec;
+    private final RedisKeywordIndex keywordIndex;
+    private final Set<String> migratedUsers = ConcurrentHashMap.newKeySet();
     private static final String DEFAULT_SESSION_ID = "default_session";
     private MemoryProperties memoryProperties;
-    
+
     public RedisMemoryService(RedisTemplate<String, String> redisTemplate) {
+        this(redisTemplate, new JsonMessageCodec());
+    }
+
+    public RedisMemoryService(RedisTemplate<String, String> redisTemplate, MessageCodec codec) {
         this.redisTemplate = redisTemplate;
         this.objectMapper = new ObjectMapper();
+        this.codec = codec;
+        this.keywordIndex = new RedisKeywordIndex(redisTemplate);
     }
-    
+
     @Override
     public CompletableFuture<Void> start() {
-        return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                registerExistingUsers();
+            } catch (Exception e) {
+                logger.warn("补登记Redis记忆用户失败，将在下次启动时重试", e);
+            }
+        });
     }
-    
+
     @Override
     public CompletableFuture<Void> stop() {
         return CompletableFuture.completedFuture(null);
     }
-    
+
     @Override
     public CompletableFuture<Boolean> health() {
         return CompletableFuture.supplyAsync(() -> {
@@ -51,204 +118,437 @@ public class RedisMemoryService implements MemoryService {
             }
         });
     }
-    
-    private String getUserKey(String userId) {
-        return "user_memory:" + userId;
+
+    private String getSequenceKey(String userId) {
+        return "memory_seq:" + userId;
     }
-    
-    private String serialize(List<Message> messages) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(messages);
+
+    private String getMessagesKey(String userId) {
+        return "memory_msgs:" + userId;
     }
-    
-    private List<Message> deserialize(String messagesJson) throws JsonProcessingException {
-        if (messagesJson == null || messagesJson.trim().isEmpty()) {
-            return Collections.emptyList();
-        }
-        return objectMapper.readValue(messagesJson, new TypeReference<List<Message>>() {});
+
+    private String getTimelineKey(String userId) {
+        return TIMELINE_PREFIX + userId;
+    }
+
+    private String getSessionKey(String userId, String sessionId) {
+        return "memory_session:" + userId + ":" + sessionId;
+    }
+
+    private String getSessionsKey(String userId) {
+        return "memory_sessions:" + userId;
     }
-    
+
+    private String getLegacyKey(String userId) {
+        return LEGACY_PREFIX + userId;
+    }
+
     @Override
     public CompletableFuture<Void> addMemory(String userId, List<Message> messages, Optional<String> sessionId) {
         return CompletableFuture.runAsync(() -> {
             try {
-                String key = getUserKey(userId);
-                String field = sessionId.orElse(DEFAULT_SESSION_ID);
-                
-                HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
-                String existingJson = hashOps.get(key, field);
-                List<Message> existingMessages = deserialize(existingJson);
-                
-                List<Message> allMessages = new ArrayList<>(existingMessages);
-                allMessages.addAll(messages);
-                
-                hashOps.put(key, field, serialize(allMessages));
+                if (messages == null || messages.isEmpty()) {
+                    return;
+                }
+                migrateLegacy(userId);
+                appendMessages(userId, sessionId.orElse(DEFAULT_SESSION_ID), messages);
             } catch (Exception e) {
                 throw new RuntimeException("Failed to add memory to Redis", e);
             }
         });
     }
-    
+
     @Override
     public CompletableFuture<List<Message>> searchMemory(String userId, List<Message> messages, Optional<Map<String, Object>> filters) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                String key = getUserKey(userId);
                 if (messages == null || messages.isEmpty()) {
                     return Collections.emptyList();
                 }
-                
+
                 Message lastMessage = messages.get(messages.size() - 1);
                 String query = getQueryText(lastMessage);
                 if (query == null || query.trim().isEmpty()) {
                     return Collections.emptyList();
                 }
-                
-                Set<String> keywords = Arrays.stream(query.toLowerCase().split("\\s+"))
-                        .collect(Collectors.toSet());
-
-                System.out.println("keywords: "+keywords);
-
-                HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
-                Map<String, String> allFields = hashOps.entries(key);
-                
-                List<Message> allMessages = new ArrayList<>();
-                for (String sessionId : allFields.keySet()) {
-                    String messagesJson = allFields.get(sessionId);
-                    List<Message> sessionMessages = deserialize(messagesJson);
-                    allMessages.addAll(sessionMessages);
-                }
-                
-                List<Message> matchedMessages = allMessages.stream()
-                        .filter(msg -> {
-                            String content = getQueryText(msg);
-                            if (content != null) {
-                                String contentLower = content.toLowerCase();
-                                return keywords.stream().anyMatch(keyword -> contentLower.contains(keyword));
-                            }
-                            return false;
-                        })
-                        .collect(Collectors.toList());
-                
+
+                int topK = Integer.MAX_VALUE;
                 if (filters.isPresent() && filters.get().containsKey("top_k")) {
                     Object topKObj = filters.get().get("top_k");
                     if (topKObj instanceof Integer) {
-                        int topK = (Integer) topKObj;
-                        int startIndex = Math.max(0, matchedMessages.size() - topK);
-                        return matchedMessages.subList(startIndex, matchedMessages.size());
+                        topK = (Integer) topKObj;
                     }
                 }
-                
-                return matchedMessages;
+
+                migrateLegacy(userId);
+                // 只加载命中的消息
+                return loadMessages(userId, keywordIndex.search(userId, query, topK));
             } catch (Exception e) {
                 throw new RuntimeException("Failed to search memory in Redis", e);
             }
         });
     }
-    
+
     @Override
     public CompletableFuture<List<Message>> listMemory(String userId, Optional<Map<String, Object>> filters) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                String key = getUserKey(userId);
-                HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
-                Map<String, String> allFields = hashOps.entries(key);
-                
-                List<Message> allMessages = new ArrayList<>();
-                for (String sessionId : allFields.keySet().stream().sorted().collect(Collectors.toList())) {
-                    String messagesJson = allFields.get(sessionId);
-                    List<Message> sessionMessages = deserialize(messagesJson);
-                    allMessages.addAll(sessionMessages);
-                }
-                
+                migrateLegacy(userId);
+                long start = 0;
+                long end = -1;
                 if (filters.isPresent()) {
                     Map<String, Object> filterMap = filters.get();
                     int pageNum = (Integer) filterMap.getOrDefault("page_num", 1);
-                    int pageSize = (Integer) filterMap.getOrDefault("page_size", 
+                    int pageSize = (Integer) filterMap.getOrDefault("page_size",
                         memoryProperties != null ? memoryProperties.getDefaultPageSize() : 10);
-                    
-                    int startIndex = (pageNum - 1) * pageSize;
-                    int endIndex = Math.min(startIndex + pageSize, allMessages.size());
-                    
-                    if (startIndex >= allMessages.size()) {
-                        return Collections.emptyList();
-                    }
-                    
-                    return allMessages.subList(startIndex, endIndex);
+
+                    start = (long) (pageNum - 1) * pageSize;
+                    end = start + pageSize - 1;
+                }
+
+                Set<String> ids = redisTemplate.opsForZSet().range(getTimelineKey(userId), start, end);
+                if (ids == null || ids.isEmpty()) {
+                    return Collections.emptyList();
                 }
-                
-                return allMessages;
+                return loadMessages(userId, new ArrayList<>(ids));
             } catch (Exception e) {
                 throw new RuntimeException("Failed to list memory from Redis", e);
             }
         });
     }
-    
+
     @Override
     public CompletableFuture<Void> deleteMemory(String userId, Optional<String> sessionId) {
         return CompletableFuture.runAsync(() -> {
             try {
-                String key = getUserKey(userId);
-                HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
-                
+                migrateLegacy(userId);
                 if (sessionId.isPresent()) {
-                    hashOps.delete(key, sessionId.get());
+                    deleteSession(userId, sessionId.get());
                 } else {
-                    redisTemplate.delete(key);
+                    deleteUser(userId);
                 }
             } catch (Exception e) {
                 throw new RuntimeException("Failed to delete memory from Redis", e);
             }
         });
     }
-    
+
     /**
      * 清空所有内存数据
      */
     public CompletableFuture<Void> clearAllMemory() {
         return CompletableFuture.runAsync(() -> {
             try {
-                Set<String> keys = redisTemplate.keys(getUserKey("*"));
-                if (keys != null && !keys.isEmpty()) {
-                    redisTemplate.delete(keys);
+                // 每次从注册表取一批用户删除，删除用户时会将其移出注册表，直到注册表为空
+                while (true) {
+                    Set<String> batch = redisTemplate.opsForSet().distinctRandomMembers(USERS_KEY, SCAN_BATCH_SIZE);
+                    if (batch == null || batch.isEmpty()) {
+                        break;
+                    }
+                    for (String userId : batch) {
+                        deleteUser(userId);
+                    }
                 }
             } catch (Exception e) {
                 throw new RuntimeException("Failed to clear all memory from Redis", e);
             }
         });
     }
-    
+
     /**
      * 删除指定用户的所有内存数据
      */
     public CompletableFuture<Void> deleteUserMemory(String userId) {
         return CompletableFuture.runAsync(() -> {
             try {
-                String key = getUserKey(userId);
-                redisTemplate.delete(key);
+                deleteUser(userId);
             } catch (Exception e) {
                 throw new RuntimeException("Failed to delete user memory from Redis", e);
             }
         });
     }
-    
+
     @Override
     public CompletableFuture<List<String>> getAllUsers() {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Set<String> keys = redisTemplate.keys(getUserKey("*"));
-                if (keys == null) {
-                    return Collections.emptyList();
+                List<String> users = new ArrayList<>();
+                try (Cursor<String> cursor = scanUsers()) {
+                    cursor.forEachRemaining(users::add);
                 }
-                
-                return keys.stream()
-                    .map(key -> key.substring("user_memory:".length()))
-                    .collect(Collectors.toList());
+                return users;
             } catch (Exception e) {
                 throw new RuntimeException("Failed to get all users from Redis", e);
             }
         });
     }
-    
+
+    /**
+     * 以SSCAN游标逐批读取用户注册表，订阅取消或完成时关闭游标
+     */
+    @Override
+    public Flux<String> streamAllUsers() {
+        return Flux.using(this::scanUsers, cursor -> Flux.fromIterable(() -> cursor), Cursor::close)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 为消息分配ID并在一个流水线中写入消息、会话列表、时间线和倒排索引
+     */
+    private void appendMessages(String userId, String sessionId, List<Message> messages) {
+        Map<String, String> encoded = allocateIds(userId, messages);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                writeMessages((RedisOperations<String, String>) redisOperations, userId, sessionId, messages, encoded);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 为消息分配连续的ID并编码，返回按消息顺序排列的 ID -> 编码后的消息
+     */
+    private Map<String, String> allocateIds(String userId, List<Message> messages) {
+        Long lastId = redisTemplate.opsForValue().increment(getSequenceKey(userId), messages.size());
+        long firstId = lastId - messages.size() + 1;
+
+        Map<String, String> encoded = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            encoded.put(String.valueOf(firstId + i), codec.encode(messages.get(i)));
+        }
+        return encoded;
+    }
+
+    /**
+     * 写入消息、会话列表、时间线和倒排索引，命令在调用方的流水线或事务中执行
+     */
+    private void writeMessages(RedisOperations<String, String> operations, String userId, String sessionId,
+                               List<Message> messages, Map<String, String> encoded) {
+        List<String> ids = new ArrayList<>(encoded.keySet());
+        operations.opsForHash().putAll(getMessagesKey(userId), encoded);
+        operations.opsForList().rightPushAll(getSessionKey(userId, sessionId), ids);
+        for (String id : ids) {
+            operations.opsForZSet().add(getTimelineKey(userId), id, Long.parseLong(id));
+        }
+        operations.opsForSet().add(getSessionsKey(userId), sessionId);
+        operations.opsForSet().add(USERS_KEY, userId);
+        for (int i = 0; i < messages.size(); i++) {
+            String text = getQueryText(messages.get(i));
+            if (text != null) {
+                keywordIndex.add(operations, userId, sessionId, ids.get(i), text);
+            }
+        }
+    }
+
+    /**
+     * 按ID顺序批量读取消息，已删除的ID跳过
+     */
+    private List<Message> loadMessages(String userId, List<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
+        List<String> payloads = hashOps.multiGet(getMessagesKey(userId), ids);
+        List<Message> messages = new ArrayList<>(ids.size());
+        for (String payload : payloads) {
+            if (payload != null) {
+                messages.add(codec.decode(payload));
+            }
+        }
+        return messages;
+    }
+
+    private void deleteSession(String userId, String sessionId) {
+        String sessionKey = getSessionKey(userId, sessionId);
+        List<String> ids = redisTemplate.opsForList().range(sessionKey, 0, -1);
+        List<String> sessionIds = ids != null ? ids : Collections.emptyList();
+        keywordIndex.removeSession(userId, sessionId, sessionIds);
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                if (!sessionIds.isEmpty()) {
+                    Object[] members = sessionIds.toArray();
+                    operations.opsForHash().delete(getMessagesKey(userId), members);
+                    operations.opsForZSet().remove(getTimelineKey(userId), members);
+                }
+                operations.delete(sessionKey);
+                operations.opsForSet().remove(getSessionsKey(userId), sessionId);
+                return null;
+            }
+        });
+    }
+
+    private void deleteUser(String userId) {
+        Set<String> sessionIds = redisTemplate.opsForSet().members(getSessionsKey(userId));
+        Set<String> sessions = sessionIds != null ? sessionIds : Collections.emptySet();
+        keywordIndex.removeUser(userId, sessions);
+
+        List<String> keys = new ArrayList<>();
+        for (String sessionId : sessions) {
+            keys.add(getSessionKey(userId, sessionId));
+        }
+        keys.add(getMessagesKey(userId));
+        keys.add(getTimelineKey(userId));
+        keys.add(getSessionsKey(userId));
+        keys.add(getSequenceKey(userId));
+        keys.add(getLegacyKey(userId));
+        redisTemplate.delete(keys);
+        redisTemplate.opsForSet().remove(USERS_KEY, userId);
+        migratedUsers.remove(userId);
+    }
+
+    private Cursor<String> scanUsers() {
+        return redisTemplate.opsForSet().scan(USERS_KEY, ScanOptions.scanOptions().count(SCAN_BATCH_SIZE).build());
+    }
+
+    /**
+     * 将注册表引入前写入的用户登记到注册表，使用SCAN逐批遍历键空间，完成后写入标记只执行一次
+     */
+    private void registerExistingUsers() {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(USERS_READY_KEY))) {
+            return;
+        }
+        int registered = 0;
+        for (String prefix : Arrays.asList(TIMELINE_PREFIX, LEGACY_PREFIX)) {
+            ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(SCAN_BATCH_SIZE).build();
+            List<String> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+            try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    batch.add(cursor.next().substring(prefix.length()));
+                    if (batch.size() == SCAN_BATCH_SIZE) {
+                        registered += registerUsers(batch);
+                    }
+                }
+            }
+            registered += registerUsers(batch);
+        }
+        redisTemplate.opsForValue().set(USERS_READY_KEY, String.valueOf(System.currentTimeMillis()));
+        if (registered > 0) {
+            logger.info("已将{}个已有用户登记到Redis记忆用户注册表", registered);
+        }
+    }
+
+    private int registerUsers(List<String> users) {
+        int count = users.size();
+        if (count > 0) {
+            redisTemplate.opsForSet().add(USERS_KEY, users.toArray(new String[0]));
+            users.clear();
+        }
+        return count;
+    }
+
+    /**
+     * 将旧布局（每个会话一个JSON字段）的数据迁移为逐条存储，每个用户在进程内只检查一次
+     * 多个节点可能同时首次访问该用户，只有取得迁移锁的节点执行迁移；其他节点等待迁移完成，
+     * 避免在旧数据尚未迁移时返回不完整的记忆
+     */
+    private void migrateLegacy(String userId) throws JsonProcessingException {
+        if (migratedUsers.contains(userId)) {
+            return;
+        }
+        String legacyKey = getLegacyKey(userId);
+        String lockKey = MIGRATION_LOCK_PREFIX + userId;
+        long deadline = System.currentTimeMillis() + MIGRATION_WAIT.toMillis();
+        boolean waiting = false;
+        // 旧数据的每个会话迁移后即被删除，键不存在说明迁移已完成
+        while (Boolean.TRUE.equals(redisTemplate.hasKey(legacyKey))) {
+            String token = UUID.randomUUID().toString();
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, MIGRATION_LOCK_TTL))) {
+                try {
+                    migrateLegacySessions(userId);
+                } finally {
+                    redisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), token);
+                }
+                break;
+            }
+            if (!waiting) {
+                logger.info("用户{}的记忆正在由其他节点迁移，等待迁移完成", userId);
+                waiting = true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("Timed out waiting for the legacy memory migration of user " + userId);
+            }
+            try {
+                Thread.sleep(MIGRATION_POLL_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the legacy memory migration of user " + userId, e);
+            }
+        }
+        migratedUsers.add(userId);
+    }
+
+    private void migrateLegacySessions(String userId) throws JsonProcessingException {
+        HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
+        Set<String> sessionIds = hashOps.keys(getLegacyKey(userId));
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return;
+        }
+        int sessions = 0;
+        int migrated = 0;
+        for (String sessionId : new TreeSet<>(sessionIds)) {
+            int count = migrateLegacySession(userId, sessionId);
+            if (count >= 0) {
+                sessions++;
+                migrated += count;
+            }
+        }
+        logger.info("用户{}的记忆已迁移为逐条存储，会话数: {}, 消息数: {}", userId, sessions, migrated);
+    }
+
+    /**
+     * 迁移旧布局中的一个会话
+     * 写入逐条存储的消息与删除旧字段在同一个事务中提交，并WATCH旧数据键：迁移中断时两者都未生效，
+     * 迁移锁过期后其他节点已迁移该会话时事务放弃，重新读取发现旧字段已删除后跳过，因此会话不会被重复写入
+     *
+     * @return 迁移的消息数，会话已被其他调用者迁移时返回-1
+     */
+    private int migrateLegacySession(String userId, String sessionId) throws JsonProcessingException {
+        String legacyKey = getLegacyKey(userId);
+        HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
+        for (int attempt = 0; attempt < MIGRATION_ATTEMPTS; attempt++) {
+            String legacyJson = hashOps.get(legacyKey, sessionId);
+            if (legacyJson == null) {
+                return -1;
+            }
+            List<Message> messages = objectMapper.readValue(legacyJson, new TypeReference<List<Message>>() {});
+            // 旧布局的倒排索引以 会话ID#位置 为文档引用，只删除这些引用，保留已按新ID写入的索引和统计；重复执行无副作用
+            keywordIndex.removeLegacySession(userId, sessionId, messages.size());
+            Map<String, String> encoded = messages.isEmpty() ? Collections.emptyMap() : allocateIds(userId, messages);
+
+            List<Object> results = redisTemplate.execute(new SessionCallback<List<Object>>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> List<Object> execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                    RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                    operations.watch(legacyKey);
+                    HashOperations<String, String, String> watchedHashOps = operations.opsForHash();
+                    if (!legacyJson.equals(watchedHashOps.get(legacyKey, sessionId))) {
+                        operations.unwatch();
+                        return Collections.emptyList();
+                    }
+                    operations.multi();
+                    if (!messages.isEmpty()) {
+                        writeMessages(operations, userId, sessionId, messages, encoded);
+                    }
+                    operations.opsForHash().delete(legacyKey, sessionId);
+                    return operations.exec();
+                }
+            });
+            // 事务放弃时exec返回空结果，重新读取旧字段
+            if (results != null && !results.isEmpty()) {
+                return messages.size();
+            }
+        }
+        throw new IllegalStateException("Failed to migrate legacy memory session " + sessionId + " of user " + userId
+                + " after " + MIGRATION_ATTEMPTS + " conflicting attempts");
+    }
+
     /**
      * 从消息中获取查询文本
      */
@@ -256,7 +556,7 @@ public class RedisMemoryService implements MemoryService {
         if (message == null || message.getContent() == null) {
             return null;
         }
-        
+
         if (message.getType() == MessageType.MESSAGE) {
             return message.getContent().stream()
                     .filter(content -> "text".equals(content.getType()))
@@ -265,10 +565,10 @@ public class RedisMemoryService implements MemoryService {
                     .findFirst()
                     .orElse(null);
         }
-        
+
         return null;
     }
-    
+
     /**
      * 设置记忆配置属性
      */
@@ -1,110 +1,205 @@
 package runtime.engine.memory.persistence.memory.service;
 
+import runtime.engine.memory.index.VectorMath;
 import runtime.engine.memory.service.EmbeddingService;
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.RealVector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 
 /**
  * 简单的文本嵌入服务实现
  * 使用TF-IDF和词频统计作为向量表示
+ * 词汇表和文档频率基于ConcurrentHashMap与LongAdder维护，可被多个线程并发更新；
+ * 嵌入计算运行在专用的有界线程池上，而非公共ForkJoinPool
  */
 public class SimpleEmbeddingService implements EmbeddingService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(SimpleEmbeddingService.class);
     private static final int EMBEDDING_DIMENSION = 300; // 固定维度
-    
-    private final Map<String, Integer> vocabulary = new HashMap<>();
-    private final Map<String, Integer> documentFrequencies = new HashMap<>();
-    private int totalDocuments = 0;
-    
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}\\s]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ConcurrentHashMap<String, Integer> vocabulary = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> documentFrequencies = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTermIndex = new AtomicInteger();
+    private final LongAdder totalDocuments = new LongAdder();
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * 使用进程内共享的嵌入线程池创建服务，不创建自己的线程
+     */
+    public SimpleEmbeddingService() {
+        this(EmbeddingExecutors.shared());
+    }
+
+    /**
+     * 使用专用的有界线程池创建服务
+     * 队列满时由调用线程执行，以此对上游形成背压
+     *
+     * @param threads 工作线程数，0表示与CPU核数相同
+     * @param queueCapacity 等待队列容量
+     */
+    public SimpleEmbeddingService(int threads, int queueCapacity) {
+        this.ownedExecutor = EmbeddingExecutors.newBoundedExecutor("embedding-worker", threads, queueCapacity);
+        this.executor = ownedExecutor;
+    }
+
+    /**
+     * 使用外部提供的执行器创建服务，执行器的生命周期由调用方管理
+     */
+    public SimpleEmbeddingService(Executor executor) {
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
     @Override
     public CompletableFuture<List<Double>> embedText(String text) {
+        return embedVector(text).thenApply(SimpleEmbeddingService::toBoxedList);
+    }
+
+    @Override
+    public CompletableFuture<float[]> embedVector(String text) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                if (text == null || text.trim().isEmpty()) {
-                    return createZeroVector();
-                }
-                
-                // 预处理文本
-                String processedText = preprocessText(text);
-                List<String> tokens = tokenize(processedText);
-                
-                if (tokens.isEmpty()) {
-                    return createZeroVector();
-                }
-                
-                // 计算TF-IDF向量
-                List<Double> embedding = computeTfIdfVector(tokens);
-                
-                // 归一化向量
-                normalizeVector(embedding);
-                
-                logger.debug("生成文本嵌入，文本长度: {}, 向量维度: {}", text.length(), embedding.size());
-                
-                return embedding;
-                
+                return computeEmbedding(text);
             } catch (Exception e) {
                 logger.error("生成文本嵌入失败", e);
-                return createZeroVector();
+                return new float[EMBEDDING_DIMENSION];
             }
-        });
+        }, executor);
     }
-    
+
+    /**
+     * 在一次任务中完成整批文本的向量化
+     * 先统一更新整批文档的词汇表和文档频率，再基于同一份文档总数计算各文本的TF-IDF向量
+     */
     @Override
-    public double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
-        if (vector1 == null || vector2 == null || vector1.size() != vector2.size()) {
-            return 0.0;
+    public CompletableFuture<List<float[]>> embedTexts(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
         }
-        
-        try {
-            RealVector v1 = new ArrayRealVector(vector1.stream().mapToDouble(Double::doubleValue).toArray());
-            RealVector v2 = new ArrayRealVector(vector2.stream().mapToDouble(Double::doubleValue).toArray());
-            
-            double dotProduct = v1.dotProduct(v2);
-            double norm1 = v1.getNorm();
-            double norm2 = v2.getNorm();
-            
-            if (norm1 == 0.0 || norm2 == 0.0) {
-                return 0.0;
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return computeEmbeddings(texts);
+            } catch (Exception e) {
+                logger.error("批量生成文本嵌入失败", e);
+                List<float[]> empty = new ArrayList<>(texts.size());
+                for (int i = 0; i < texts.size(); i++) {
+                    empty.add(new float[EMBEDDING_DIMENSION]);
+                }
+                return empty;
             }
-            
-            return dotProduct / (norm1 * norm2);
-            
-        } catch (Exception e) {
-            logger.error("计算余弦相似度失败", e);
+        }, executor);
+    }
+
+    /**
+     * 缓存命中的文本同样计入词汇表和文档频率，与未命中时的统计一致
+     */
+    @Override
+    public void recordCachedText(String text) {
+        Map<String, Integer> termFrequencies = termFrequencies(text);
+        if (!termFrequencies.isEmpty()) {
+            updateVocabulary(termFrequencies.keySet());
+        }
+    }
+
+    @Override
+    public double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
+        if (vector1 == null || vector2 == null || vector1.size() != vector2.size()) {
             return 0.0;
         }
+        return VectorMath.cosine(VectorMath.toFloatArray(vector1), VectorMath.toFloatArray(vector2));
     }
-    
+
     @Override
     public double euclideanDistance(List<Double> vector1, List<Double> vector2) {
         if (vector1 == null || vector2 == null || vector1.size() != vector2.size()) {
             return Double.MAX_VALUE;
         }
-        
-        try {
-            RealVector v1 = new ArrayRealVector(vector1.stream().mapToDouble(Double::doubleValue).toArray());
-            RealVector v2 = new ArrayRealVector(vector2.stream().mapToDouble(Double::doubleValue).toArray());
-            
-            return v1.getDistance(v2);
-            
-        } catch (Exception e) {
-            logger.error("计算欧几里得距离失败", e);
-            return Double.MAX_VALUE;
+
+        double sum = 0.0;
+        for (int i = 0; i < vector1.size(); i++) {
+            double diff = vector1.get(i) - vector2.get(i);
+            sum += diff * diff;
         }
+        return Math.sqrt(sum);
     }
-    
+
     @Override
     public int getEmbeddingDimension() {
         return EMBEDDING_DIMENSION;
     }
-    
+
+    /**
+     * 计算单条文本的归一化TF-IDF向量
+     */
+    private float[] computeEmbedding(String text) {
+        Map<String, Integer> termFrequencies = termFrequencies(text);
+        if (termFrequencies.isEmpty()) {
+            return new float[EMBEDDING_DIMENSION];
+        }
+
+        // 更新词汇表和文档频率
+        updateVocabulary(termFrequencies.keySet());
+
+        float[] embedding = computeTfIdfVector(termFrequencies, totalDocuments.sum());
+        logger.debug("生成文本嵌入，文本长度: {}, 向量维度: {}", text.length(), embedding.length);
+        return embedding;
+    }
+
+    /**
+     * 计算一批文本的归一化TF-IDF向量，结果与输入顺序一致
+     */
+    private List<float[]> computeEmbeddings(List<String> texts) {
+        List<Map<String, Integer>> batch = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Map<String, Integer> termFrequencies = termFrequencies(text);
+            if (!termFrequencies.isEmpty()) {
+                updateVocabulary(termFrequencies.keySet());
+            }
+            batch.add(termFrequencies);
+        }
+
+        double documents = totalDocuments.sum();
+        List<float[]> embeddings = new ArrayList<>(batch.size());
+        for (Map<String, Integer> termFrequencies : batch) {
+            embeddings.add(termFrequencies.isEmpty()
+                    ? new float[EMBEDDING_DIMENSION]
+                    : computeTfIdfVector(termFrequencies, documents));
+        }
+
+        logger.debug("批量生成文本嵌入，文本数: {}, 向量维度: {}", texts.size(), EMBEDDING_DIMENSION);
+        return embeddings;
+    }
+
+    /**
+     * 预处理并分词后统计词频
+     */
+    private Map<String, Integer> termFrequencies(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // 预处理文本
+        List<String> tokens = tokenize(preprocessText(text));
+
+        // 计算词频
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String token : tokens) {
+            termFrequencies.merge(token, 1, Integer::sum);
+        }
+        return termFrequencies;
+    }
+
     /**
      * 预处理文本
      */
@@ -112,106 +207,101 @@ public class SimpleEmbeddingService implements EmbeddingService {
         if (text == null) {
             return "";
         }
-        
-        return text.toLowerCase()
-                .replaceAll("[^\\p{L}\\p{N}\\s]", " ") // 保留字母、数字和空格
-                .replaceAll("\\s+", " ") // 合并多个空格
-                .trim();
+
+        String lettersOnly = NON_WORD.matcher(text.toLowerCase()).replaceAll(" "); // 保留字母、数字和空格
+        return WHITESPACE.matcher(lettersOnly).replaceAll(" ").trim(); // 合并多个空格
     }
-    
+
     /**
      * 分词
      */
     private List<String> tokenize(String text) {
-        if (text == null || text.trim().isEmpty()) {
+        if (text == null || text.isEmpty()) {
             return Collections.emptyList();
         }
-        
-        return Arrays.stream(text.split("\\s+"))
-                .filter(token -> token.length() > 1) // 过滤单字符
-                .collect(Collectors.toList());
+
+        List<String> tokens = new ArrayList<>();
+        for (String token : WHITESPACE.split(text)) {
+            if (token.length() > 1) { // 过滤单字符
+                tokens.add(token);
+            }
+        }
+        return tokens;
     }
-    
+
     /**
-     * 计算TF-IDF向量
+     * 计算归一化的TF-IDF向量
      */
-    private List<Double> computeTfIdfVector(List<String> tokens) {
-        // 计算词频
-        Map<String, Integer> termFrequencies = new HashMap<>();
-        for (String token : tokens) {
-            termFrequencies.put(token, termFrequencies.getOrDefault(token, 0) + 1);
-        }
-        
-        // 更新词汇表和文档频率
-        updateVocabulary(termFrequencies.keySet());
-        
-        // 创建向量
-        List<Double> vector = new ArrayList<>(Collections.nCopies(EMBEDDING_DIMENSION, 0.0));
-        
+    private float[] computeTfIdfVector(Map<String, Integer> termFrequencies, double documents) {
+        float[] vector = new float[EMBEDDING_DIMENSION];
+
         for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
             String term = entry.getKey();
             int tf = entry.getValue();
-            
-            if (vocabulary.containsKey(term)) {
-                int termIndex = vocabulary.get(term) % EMBEDDING_DIMENSION;
-                double idf = computeIdf(term);
-                double tfIdf = tf * idf;
-                vector.set(termIndex, vector.get(termIndex) + tfIdf);
+
+            Integer termId = vocabulary.get(term);
+            if (termId != null) {
+                int termIndex = termId % EMBEDDING_DIMENSION;
+                double idf = computeIdf(term, documents);
+                vector[termIndex] += (float) (tf * idf);
             }
         }
-        
+
+        // 归一化向量
+        VectorMath.normalizeInPlace(vector);
         return vector;
     }
-    
+
     /**
      * 更新词汇表
+     * 新词通过computeIfAbsent分配递增编号，文档频率通过LongAdder累加，均无需全局锁
      */
     private void updateVocabulary(Set<String> terms) {
         for (String term : terms) {
-            vocabulary.putIfAbsent(term, vocabulary.size());
-            documentFrequencies.put(term, documentFrequencies.getOrDefault(term, 0) + 1);
+            vocabulary.computeIfAbsent(term, t -> nextTermIndex.getAndIncrement());
+            documentFrequencies.computeIfAbsent(term, t -> new LongAdder()).increment();
         }
-        totalDocuments++;
+        totalDocuments.increment();
     }
-    
+
     /**
      * 计算IDF值
      */
-    private double computeIdf(String term) {
-        int df = documentFrequencies.getOrDefault(term, 1);
-        return Math.log((double) totalDocuments / df);
+    private double computeIdf(String term, double documents) {
+        LongAdder df = documentFrequencies.get(term);
+        long frequency = df != null ? Math.max(1L, df.sum()) : 1L;
+        return Math.log(Math.max(documents, frequency) / frequency);
     }
-    
-    /**
-     * 归一化向量
-     */
-    private void normalizeVector(List<Double> vector) {
-        double norm = Math.sqrt(vector.stream().mapToDouble(v -> v * v).sum());
-        if (norm > 0) {
-            for (int i = 0; i < vector.size(); i++) {
-                vector.set(i, vector.get(i) / norm);
-            }
+
+    private static List<Double> toBoxedList(float[] vector) {
+        List<Double> list = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            list.add((double) value);
         }
+        return list;
     }
-    
-    /**
-     * 创建零向量
-     */
-    private List<Double> createZeroVector() {
-        return new ArrayList<>(Collections.nCopies(EMBEDDING_DIMENSION, 0.0));
-    }
-    
+
     /**
      * 获取词汇表大小
      */
     public int getVocabularySize() {
         return vocabulary.size();
     }
-    
+
     /**
      * 获取总文档数
      */
     public int getTotalDocuments() {
-        return totalDocuments;
+        return totalDocuments.intValue();
+    }
+
+    /**
+     * 关闭服务自有的线程池，由Spring在容器关闭时调用
+     */
+    @Override
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
     }
 }
@@ -0,0 +1,124 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import runtime.engine.memory.index.VectorMath;
+import runtime.engine.memory.service.EmbeddingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 基于Spring AI EmbeddingModel的嵌入服务实现
+ * 批量接口按批次向模型发起请求，每批只产生一次远程调用
+ */
+public class SpringAiEmbeddingService implements EmbeddingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpringAiEmbeddingService.class);
+
+    private final EmbeddingModel embeddingModel;
+    private final int maxBatchSize;
+    private final ExecutorService executor;
+    private volatile int dimension = -1;
+
+    /**
+     * @param embeddingModel Spring AI嵌入模型
+     * @param maxBatchSize 单次请求的最大文本数，超出时拆分为多次请求
+     * @param threads 工作线程数，0表示与CPU核数相同
+     * @param queueCapacity 等待队列容量
+     */
+    public SpringAiEmbeddingService(EmbeddingModel embeddingModel, int maxBatchSize, int threads, int queueCapacity) {
+        this.embeddingModel = embeddingModel;
+        this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : Integer.MAX_VALUE;
+        this.executor = EmbeddingExecutors.newBoundedExecutor("embedding-client", threads, queueCapacity);
+    }
+
+    @Override
+    public CompletableFuture<List<Double>> embedText(String text) {
+        return embedVector(text).thenApply(vector -> {
+            List<Double> list = new ArrayList<>(vector.length);
+            for (float value : vector) {
+                list.add((double) value);
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public CompletableFuture<float[]> embedVector(String text) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return embeddingModel.embed(text);
+            } catch (Exception e) {
+                logger.error("调用嵌入模型失败", e);
+                throw new RuntimeException("调用嵌入模型失败", e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<float[]>> embedTexts(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                List<float[]> vectors = new ArrayList<>(texts.size());
+                for (int from = 0; from < texts.size(); from += maxBatchSize) {
+                    int to = (int) Math.min((long) from + maxBatchSize, texts.size());
+                    vectors.addAll(embeddingModel.embed(texts.subList(from, to)));
+                }
+                logger.debug("批量调用嵌入模型完成，文本数: {}", texts.size());
+                return vectors;
+            } catch (Exception e) {
+                logger.error("批量调用嵌入模型失败，文本数: {}", texts.size(), e);
+                throw new RuntimeException("批量调用嵌入模型失败", e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
+        if (vector1 == null || vector2 == null || vector1.size() != vector2.size()) {
+            return 0.0;
+        }
+        return VectorMath.cosine(VectorMath.toFloatArray(vector1), VectorMath.toFloatArray(vector2));
+    }
+
+    @Override
+    public double euclideanDistance(List<Double> vector1, List<Double> vector2) {
+        if (vector1 == null || vector2 == null || vector1.size() != vector2.size()) {
+            return Double.MAX_VALUE;
+        }
+
+        double sum = 0.0;
+        for (int i = 0; i < vector1.size(); i++) {
+            double diff = vector1.get(i) - vector2.get(i);
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * 获取嵌入向量的维度，首次调用时向模型查询并缓存
+     */
+    @Override
+    public int getEmbeddingDimension() {
+        if (dimension < 0) {
+            dimension = embeddingModel.dimensions();
+        }
+        return dimension;
+    }
+
+    /**
+     * 关闭请求线程池，由Spring在容器关闭时调用
+     */
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
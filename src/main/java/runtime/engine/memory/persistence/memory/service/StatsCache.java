@@ -0,0 +1,126 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * 进程内统计缓存
+ * 缓存按用户加载的计数器快照，本进程的写入直接把增量合并到缓存中，读取命中时不访问数据库；
+ * 快照超过刷新间隔后重新加载，以读到其他实例的写入。后台线程定期对发生过写入的用户执行对账，
+ * 按明细表重新计算计数器，修正写入失败或并发造成的偏差
+ */
+public class StatsCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsCache.class);
+
+    private final String name;
+    private final Cache<String, Entry<V>> cache;
+    private final Function<String, V> loader;
+    private final Consumer<String> reconciler;
+    private final long refreshNanos;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param name 缓存名称，用于线程名和日志
+     * @param maxEntries 最多缓存的用户数
+     * @param refreshMillis 快照刷新间隔，小于等于0时每次读取都重新加载
+     * @param reconcileMillis 对账间隔，小于等于0时不定期对账
+     * @param loader 从计数器表加载快照
+     * @param reconciler 按明细表重新计算用户的计数器
+     */
+    public StatsCache(String name, long maxEntries, long refreshMillis, long reconcileMillis,
+                      Function<String, V> loader, Consumer<String> reconciler) {
+        this.name = name;
+        this.cache = Caffeine.newBuilder().maximumSize(Math.max(1, maxEntries)).build();
+        this.loader = loader;
+        this.reconciler = reconciler;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, refreshMillis));
+        if (reconcileMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stats-reconcile-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reconcile, reconcileMillis, reconcileMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * 获取用户的统计快照，缓存未命中或已过刷新间隔时从计数器表加载
+     */
+    public V get(String userId) {
+        Entry<V> entry = cache.getIfPresent(userId);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.loadedAt < refreshNanos) {
+            return entry.value;
+        }
+        V value = loader.apply(userId);
+        cache.put(userId, new Entry<>(value, now));
+        return value;
+    }
+
+    /**
+     * 把本进程写入的增量合并到已缓存的快照中，并记录该用户待对账；未缓存的用户在下次读取时加载
+     */
+    public void apply(String userId, UnaryOperator<V> delta) {
+        cache.asMap().computeIfPresent(userId, (key, entry) -> new Entry<>(delta.apply(entry.value), entry.loadedAt));
+        dirty.add(userId);
+    }
+
+    /**
+     * 丢弃用户的快照，删除数据等无法按增量合并的写入之后调用
+     */
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    /**
+     * 对上次对账以来发生过写入的用户重新计算计数器；失败的用户留到下次对账
+     */
+    public void reconcile() {
+        List<String> users = new ArrayList<>(dirty);
+        int failed = 0;
+        for (String userId : users) {
+            dirty.remove(userId);
+            try {
+                reconciler.accept(userId);
+                cache.invalidate(userId);
+            } catch (RuntimeException e) {
+                dirty.add(userId);
+                failed++;
+                logger.warn("统计缓存校正失败，缓存: {}, 用户: {}", name, userId, e);
+            }
+        }
+        if (!users.isEmpty()) {
+            logger.debug("统计缓存校正完成，缓存: {}, 成功: {}, 失败: {}", name, users.size() - failed, failed);
+        }
+    }
+
+    /**
+     * 停止后台对账
+     */
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+}
@@ -1,136 +1,269 @@
 package runtime.engine.memory.persistence.session;
 
 import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
 import runtime.engine.memory.model.Session;
 import runtime.engine.memory.service.SessionHistoryService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 内存实现的会话历史服务
- * 将所有会话数据存储在字典中，适用于开发、测试和不需要持久化的场景
+ * 会话存放在有界缓存中（W-TinyLFU淘汰），可按会话数或估算字节数限制容量，并支持空闲过期；
+ * 每个会话最多保留最近的若干条消息。配置溢出目录时，被淘汰的会话写入磁盘，再次访问时读回。
+ * 读取不存在的会话返回空会话但不占用存储，首次追加消息时才保存。
+ * 每个会话的消息保存在{@link SessionLog}中：读取返回不可变快照上的列表视图，不复制消息列表；追加无锁。
+ * 缓存命中、淘汰等指标见 /actuator/metrics/cache.evictions?tag=cache:session_history
  */
-public class InMemorySessionHistoryService implements SessionHistoryService {
-    
-    private final Map<String, Map<String, Session>> sessions = new ConcurrentHashMap<>();
-    
+public class InMemorySessionHistoryService implements SessionHistoryService, MeterBinder {
+
+    private static final String CACHE_NAME = "session_history";
+    // 估算的会话固定开销（键、日志对象、缓存节点等）
+    private static final int SESSION_OVERHEAD_BYTES = 256;
+
+    private final Cache<SessionKey, SessionLog> sessions;
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+    private final int maxMessagesPerSession;
+    private final SessionSpillStore spillStore;
+    private final boolean weighted;
+
+    /**
+     * 创建不限容量、不过期的会话存储，适用于开发和测试
+     */
+    public InMemorySessionHistoryService() {
+        this(0, 0, 0, Duration.ZERO, null);
+    }
+
+    /**
+     * @param maxSessions 最多保留的会话数，maxBytes大于0时不生效，0表示不限
+     * @param maxBytes 会话估算总字节数上限，0表示按会话数限制
+     * @param maxMessagesPerSession 每个会话保留的最近消息数，0表示不限
+     * @param idleTtl 会话空闲过期时间，0表示不过期
+     * @param spillDirectory 溢出目录，null表示淘汰的会话直接丢弃
+     */
+    public InMemorySessionHistoryService(long maxSessions, long maxBytes, int maxMessagesPerSession,
+                                         Duration idleTtl, Path spillDirectory) {
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.spillStore = spillDirectory != null ? new SessionSpillStore(spillDirectory) : null;
+        this.weighted = maxBytes > 0;
+
+        Caffeine<SessionKey, SessionLog> builder = Caffeine.newBuilder()
+                .recordStats()
+                .evictionListener((SessionKey key, SessionLog log, RemovalCause cause) -> onEvicted(key, log));
+        if (weighted) {
+            builder.maximumWeight(maxBytes).weigher((SessionKey key, SessionLog log) ->
+                    (int) Math.min(SESSION_OVERHEAD_BYTES + log.snapshot().bytes(), Integer.MAX_VALUE));
+        } else if (maxSessions > 0) {
+            builder.maximumSize(maxSessions);
+        }
+        if (idleTtl != null && !idleTtl.isZero() && !idleTtl.isNegative()) {
+            builder.expireAfterAccess(idleTtl);
+        }
+        this.sessions = builder.build();
+    }
+
     @Override
     public CompletableFuture<Void> start() {
-        return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> {
+            if (spillStore != null) {
+                spillStore.forEachSession(this::index);
+            }
+        });
     }
-    
+
     @Override
     public CompletableFuture<Void> stop() {
         return CompletableFuture.completedFuture(null);
     }
-    
+
     @Override
     public CompletableFuture<Boolean> health() {
         return CompletableFuture.completedFuture(true);
     }
-    
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, sessions, CACHE_NAME);
+    }
+
     @Override
     public CompletableFuture<Session> createSession(String userId, Optional<String> sessionId) {
         return CompletableFuture.supplyAsync(() -> {
             String sid = sessionId.filter(s -> s != null && !s.trim().isEmpty())
                     .orElse(UUID.randomUUID().toString());
-            
-            Session session = new Session(sid, userId, new ArrayList<>());
-            sessions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>())
-                    .put(sid, session);
-            
-            return deepCopy(session);
+
+            sessions.put(new SessionKey(userId, sid), new SessionLog());
+            if (spillStore != null) {
+                spillStore.delete(userId, sid);
+            }
+            index(userId, sid);
+
+            return new Session(sid, userId, new ArrayList<>());
         });
     }
-    
+
+    /**
+     * 检索会话，返回当前快照的副本；会话不存在时返回未保存的空会话
+     */
     @Override
     public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId) {
         return CompletableFuture.supplyAsync(() -> {
-            Session session = sessions.getOrDefault(userId, Collections.emptyMap())
-                    .get(sessionId);
-            
-            if (session == null) {
-                session = new Session(sessionId, userId, new ArrayList<>());
-                sessions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>())
-                        .put(sessionId, session);
+            SessionLog log = load(new SessionKey(userId, sessionId));
+            if (log == null) {
+                return Optional.of(new Session(sessionId, userId, new ArrayList<>()));
+            }
+            return Optional.of(new Session(sessionId, userId, log.snapshot().view(-1)));
+        });
+    }
+
+    /**
+     * 消息位置每追加一条加一，裁剪旧消息后保持不变
+     */
+    @Override
+    public boolean sequentialCursors() {
+        return true;
+    }
+
+    /**
+     * 按窗口读取会话消息，直接在当前快照上截取，只复制窗口内的消息
+     * 游标为消息在会话中的位置，裁剪旧消息后保持不变；从溢出目录读回的会话位置从0重新计算
+     */
+    @Override
+    public CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+        return CompletableFuture.supplyAsync(() -> {
+            SessionLog log = load(new SessionKey(userId, sessionId));
+            if (log == null) {
+                return window.apply(Collections.emptyList(), 0);
             }
-            
-            return Optional.of(deepCopy(session));
+            SessionLog.Snapshot snapshot = log.snapshot();
+            return window.apply(snapshot.view(-1), snapshot.firstPosition());
         });
     }
-    
+
     @Override
     public CompletableFuture<Void> deleteSession(String userId, String sessionId) {
         return CompletableFuture.runAsync(() -> {
-            Map<String, Session> userSessions = sessions.get(userId);
-            if (userSessions != null) {
-                userSessions.remove(sessionId);
+            sessions.invalidate(new SessionKey(userId, sessionId));
+            if (spillStore != null) {
+                spillStore.delete(userId, sessionId);
             }
+            unindex(userId, sessionId);
         });
     }
-    
+
     @Override
     public CompletableFuture<List<Session>> listSessions(String userId) {
         return CompletableFuture.supplyAsync(() -> {
-            Map<String, Session> userSessions = sessions.getOrDefault(userId, Collections.emptyMap());
-            
+            Set<String> sessionIds = userSessions.getOrDefault(userId, Collections.emptySet());
+
             // 为了提高性能和减少数据传输，返回的会话对象不包含详细的响应历史
-            return userSessions.values().stream()
-                    .map(this::createSessionWithoutHistory)
-                    .collect(Collectors.toList());
+            List<Session> result = new ArrayList<>(sessionIds.size());
+            for (String sessionId : sessionIds) {
+                if (sessions.asMap().containsKey(new SessionKey(userId, sessionId))
+                        || (spillStore != null && spillStore.contains(userId, sessionId))) {
+                    result.add(new Session(sessionId, userId, new ArrayList<>()));
+                }
+            }
+            return result;
         });
     }
-    
+
     @Override
     public CompletableFuture<Void> appendMessage(Session session, List<Message> messages) {
         return CompletableFuture.runAsync(() -> {
             if (messages == null || messages.isEmpty()) {
                 return;
             }
-            
-            // 更新传入的会话对象
-            session.getMessages().addAll(messages);
-            
-            // 更新内存中的副本
-            Map<String, Session> userSessions = sessions.get(session.getUserId());
-            if (userSessions != null) {
-                Session storageSession = userSessions.get(session.getId());
-                if (storageSession != null) {
-                    storageSession.getMessages().addAll(messages);
-                } else {
-                    System.err.println("Warning: Session " + session.getId() +
-                            " not found in storage for append_message.");
+
+            String userId = session.getUserId();
+            String sessionId = session.getId();
+            SessionKey key = new SessionKey(userId, sessionId);
+            SessionLog log;
+            while (true) {
+                // 会话未保存时创建，已溢出时读回；日志在追加前被淘汰封存时重新加载后重试
+                log = sessions.get(key, this::loadOrCreate);
+                if (log.append(messages, maxMessagesPerSession)) {
+                    break;
                 }
             }
+            if (weighted) {
+                // 以同一日志替换自身，使缓存按追加后的大小重新计算权重
+                sessions.asMap().replace(key, log, log);
+            }
+            index(userId, sessionId);
+
+            // 更新传入的会话对象：快照视图直接换成包含新消息的视图，其他列表按原方式追加
+            List<Message> current = session.getMessages();
+            if (current instanceof SessionLog.SnapshotList
+                    && ((SessionLog.SnapshotList) current).isSnapshotView()) {
+                session.setMessages(log.snapshot().view(current.size() + messages.size()));
+            } else {
+                current.addAll(messages);
+            }
         });
     }
-    
+
+    /**
+     * 从缓存读取会话日志，已溢出到磁盘时读回缓存
+     */
+    private SessionLog load(SessionKey key) {
+        if (spillStore == null) {
+            return sessions.getIfPresent(key);
+        }
+        return sessions.get(key, this::loadSpilled);
+    }
+
+    private SessionLog loadSpilled(SessionKey key) {
+        Session spilled = spillStore.take(key.userId, key.sessionId);
+        return spilled != null ? new SessionLog(spilled.getMessages()) : null;
+    }
+
+    private SessionLog loadOrCreate(SessionKey key) {
+        SessionLog log = spillStore != null ? loadSpilled(key) : null;
+        return log != null ? log : new SessionLog();
+    }
+
     /**
-     * 创建不包含历史记录的会话副本
-     * 
-     * @param session 原始会话
-     * @return 不包含历史记录的会话副本
+     * 淘汰时封存日志，之后的追加会重新加载；配置了溢出目录时写入最终快照
      */
-    private Session createSessionWithoutHistory(Session session) {
-        Session copy = deepCopy(session);
-        copy.setMessages(new ArrayList<>());
-        return copy;
+    private void onEvicted(SessionKey key, SessionLog log) {
+        if (log == null) {
+            unindex(key.userId, key.sessionId);
+            return;
+        }
+        SessionLog.Snapshot snapshot = log.seal();
+        if (spillStore != null) {
+            spillStore.write(new Session(key.sessionId, key.userId, snapshot.view(-1)));
+        } else {
+            unindex(key.userId, key.sessionId);
+        }
+    }
+
+    private void index(String userId, String sessionId) {
+        userSessions.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
     }
-    
+
+    private void unindex(String userId, String sessionId) {
+        userSessions.computeIfPresent(userId, (k, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
     /**
-     * 深拷贝会话对象
-     * 
-     * @param session 要拷贝的会话
-     * @return 深拷贝的会话对象
+     * 缓存键：用户ID与会话ID
      */
-    private Session deepCopy(Session session) {
-        Session copy = new Session();
-        copy.setId(session.getId());
-        copy.setUserId(session.getUserId());
-        copy.setMessages(new ArrayList<>(session.getMessages()));
-        return copy;
+    private record SessionKey(String userId, String sessionId) {
     }
 }
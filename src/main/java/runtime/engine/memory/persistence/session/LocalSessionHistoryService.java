@@ -0,0 +1,262 @@
+package runtime.engine.memory.persistence.session;
+
+import runtime.engine.memory.codec.MessageCodec;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
+import runtime.engine.memory.persistence.memory.repository.LocalKeyValueStore;
+import runtime.engine.memory.service.SessionHistoryService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于本地键值存储的会话历史服务实现
+ * 数据保存在进程内的{@link LocalKeyValueStore}中，没有网络往返，适用于单节点和边缘部署。键布局如下：
+ * <pre>
+ * session/{userId}/{sessionId}        会话登记，值为最近更新时间（毫秒）
+ * message/{userId}/{sessionId}/{seq}  编码后的消息，格式见{@link MessageCodec}；seq为会话内递增的16位十六进制序号
+ * </pre>
+ * 追加消息与更新会话登记在同一批中原子写入；按窗口读取为一次前缀范围扫描，只读取窗口内的消息，游标为消息序号加一。
+ * 读取不存在的会话返回空会话但不保存，首次追加消息时才登记
+ */
+public class LocalSessionHistoryService implements SessionHistoryService {
+
+    private static final String SESSION = "session";
+    private static final String MESSAGE = "message";
+    // 令牌预算窗口每次向前读取的消息数
+    private static final int TOKEN_BUDGET_BATCH = 64;
+
+    private final LocalKeyValueStore store;
+    private final MessageCodec codec;
+    // 会话的下一个消息序号，首次追加时按存储中最后一条消息推算，删除会话时移除
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+    public LocalSessionHistoryService(LocalKeyValueStore store, MessageCodec codec) {
+        this.store = store;
+        this.codec = codec;
+    }
+
+    @Override
+    public CompletableFuture<Void> start() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> stop() {
+        return CompletableFuture.runAsync(store::close);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> health() {
+        return CompletableFuture.completedFuture(store.isOpen());
+    }
+
+    @Override
+    public CompletableFuture<Session> createSession(String userId, Optional<String> sessionId) {
+        return CompletableFuture.supplyAsync(() -> {
+            String sid = sessionId.filter(s -> s != null && !s.trim().isEmpty())
+                    .orElse(UUID.randomUUID().toString());
+            store.put(sessionKey(userId, sid), timestamp(System.currentTimeMillis()));
+            return new Session(sid, userId, new ArrayList<>());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId) {
+        return CompletableFuture.supplyAsync(() -> Optional.of(
+            new Session(sessionId, userId, decode(store.scan(messagePrefix(userId, sessionId), null, 0, 0)))));
+    }
+
+    /**
+     * 游标为会话内连续分配的消息序号
+     */
+    @Override
+    public boolean sequentialCursors() {
+        return true;
+    }
+
+    /**
+     * 按窗口读取会话消息，按序号范围扫描，不读取窗口之外的消息；会话不存在时返回空页
+     */
+    @Override
+    public CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+        return CompletableFuture.supplyAsync(() -> {
+            String prefix = messagePrefix(userId, sessionId);
+            switch (window.getKind()) {
+                case AFTER: {
+                    int limit = window.getLimit();
+                    // 多读一条判断游标之后是否还有消息
+                    List<LocalKeyValueStore.Entry> entries = store.scan(prefix,
+                        prefix + sequence(window.getCursor()), 0, limit > 0 ? limit + 1 : 0);
+                    boolean hasMore = limit > 0 && entries.size() > limit;
+                    if (hasMore) {
+                        entries = entries.subList(0, limit);
+                    }
+                    long nextCursor = entries.isEmpty()
+                        ? window.getCursor()
+                        : sequenceOf(entries.get(entries.size() - 1).key()) + 1;
+                    return new MessagePage(decode(entries), nextCursor, hasMore);
+                }
+                case LAST: {
+                    int limit = window.getLimit();
+                    List<LocalKeyValueStore.Entry> newest = store.scanDescending(prefix, null, limit + 1);
+                    long nextCursor = newest.isEmpty() ? 0 : sequenceOf(newest.get(0).key()) + 1;
+                    boolean hasMore = newest.size() > limit;
+                    List<Message> messages = decode(newest.subList(0, Math.min(limit, newest.size())));
+                    Collections.reverse(messages);
+                    return new MessagePage(messages, nextCursor, hasMore);
+                }
+                case TOKEN_BUDGET:
+                    return getMessagesWithinBudget(prefix, window);
+                default: {
+                    List<LocalKeyValueStore.Entry> entries = store.scan(prefix, null, 0, 0);
+                    long nextCursor = entries.isEmpty() ? 0 : sequenceOf(entries.get(entries.size() - 1).key()) + 1;
+                    return new MessagePage(decode(entries), nextCursor, false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteSession(String userId, String sessionId) {
+        return CompletableFuture.runAsync(() -> {
+            String prefix = messagePrefix(userId, sessionId);
+            LocalKeyValueStore.WriteBatch batch = new LocalKeyValueStore.WriteBatch();
+            batch.delete(sessionKey(userId, sessionId));
+            for (String key : store.keys(prefix)) {
+                batch.delete(key);
+            }
+            store.write(batch);
+            sequences.remove(prefix);
+        });
+    }
+
+    /**
+     * 列出用户的会话，按最近更新时间倒序排列；为了减少读取，返回的会话不包含消息
+     */
+    @Override
+    public CompletableFuture<List<Session>> listSessions(String userId) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<LocalKeyValueStore.Entry> entries = store.scan(LocalKeyValueStore.prefix(SESSION, userId), null, 0, 0);
+            entries.sort(Comparator.comparingLong((LocalKeyValueStore.Entry entry) -> timestampOf(entry.value())).reversed());
+            List<Session> sessions = new ArrayList<>(entries.size());
+            for (LocalKeyValueStore.Entry entry : entries) {
+                sessions.add(new Session(LocalKeyValueStore.lastPart(entry.key()), userId, new ArrayList<>()));
+            }
+            return sessions;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> appendMessage(Session session, List<Message> messages) {
+        return CompletableFuture.runAsync(() -> {
+            if (messages == null || messages.isEmpty()) {
+                return;
+            }
+
+            String userId = session.getUserId();
+            String sessionId = session.getId();
+            String prefix = messagePrefix(userId, sessionId);
+            long first = sequences.computeIfAbsent(prefix, this::loadSequence).getAndAdd(messages.size());
+
+            LocalKeyValueStore.WriteBatch batch = new LocalKeyValueStore.WriteBatch();
+            for (int i = 0; i < messages.size(); i++) {
+                batch.put(prefix + sequence(first + i), codec.encode(messages.get(i)).getBytes(StandardCharsets.UTF_8));
+            }
+            batch.put(sessionKey(userId, sessionId), timestamp(System.currentTimeMillis()));
+            store.write(batch);
+
+            // 更新传入的会话对象
+            session.getMessages().addAll(messages);
+        });
+    }
+
+    /**
+     * 会话数和消息数只访问存储的内存索引，最近活动时间取会话登记中的更新时间
+     */
+    @Override
+    public CompletableFuture<SessionStats> getSessionStats(String userId) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<LocalKeyValueStore.Entry> sessions = store.scan(LocalKeyValueStore.prefix(SESSION, userId), null, 0, 0);
+            long lastActivity = 0;
+            for (LocalKeyValueStore.Entry entry : sessions) {
+                lastActivity = Math.max(lastActivity, timestampOf(entry.value()));
+            }
+            return new SessionStats(sessions.size(), store.count(LocalKeyValueStore.prefix(MESSAGE, userId)), lastActivity);
+        });
+    }
+
+    /**
+     * 从最新的消息开始逐批向前读取，直到令牌预算用完或没有更早的消息
+     */
+    private MessagePage getMessagesWithinBudget(String prefix, MessageWindow window) {
+        MessageWindow.TokenCounter counter = window.tokenCounter();
+        LinkedList<Message> kept = new LinkedList<>();
+        long nextCursor = 0;
+        List<LocalKeyValueStore.Entry> batch = store.scanDescending(prefix, null, TOKEN_BUDGET_BATCH);
+        if (!batch.isEmpty()) {
+            nextCursor = sequenceOf(batch.get(0).key()) + 1;
+        }
+        while (!batch.isEmpty()) {
+            for (LocalKeyValueStore.Entry entry : batch) {
+                Message message = codec.decode(new String(entry.value(), StandardCharsets.UTF_8));
+                if (!counter.tryAdd(message)) {
+                    return new MessagePage(new ArrayList<>(kept), nextCursor, true);
+                }
+                kept.addFirst(message);
+            }
+            if (batch.size() < TOKEN_BUDGET_BATCH) {
+                break;
+            }
+            batch = store.scanDescending(prefix, batch.get(batch.size() - 1).key(), TOKEN_BUDGET_BATCH);
+        }
+        return new MessagePage(new ArrayList<>(kept), nextCursor, false);
+    }
+
+    private AtomicLong loadSequence(String prefix) {
+        String last = store.lastKey(prefix);
+        return new AtomicLong(last != null ? sequenceOf(last) + 1 : 0);
+    }
+
+    private List<Message> decode(List<LocalKeyValueStore.Entry> entries) {
+        List<Message> messages = new ArrayList<>(entries.size());
+        for (LocalKeyValueStore.Entry entry : entries) {
+            messages.add(codec.decode(new String(entry.value(), StandardCharsets.UTF_8)));
+        }
+        return messages;
+    }
+
+    private static String sessionKey(String userId, String sessionId) {
+        return LocalKeyValueStore.key(SESSION, userId, sessionId);
+    }
+
+    private static String messagePrefix(String userId, String sessionId) {
+        return LocalKeyValueStore.prefix(MESSAGE, userId, sessionId);
+    }
+
+    /**
+     * 定长十六进制序号，键的字典序与序号大小一致
+     */
+    private static String sequence(long seq) {
+        return String.format("%016x", seq);
+    }
+
+    private static long sequenceOf(String key) {
+        return Long.parseUnsignedLong(LocalKeyValueStore.lastPart(key), 16);
+    }
+
+    private static byte[] timestamp(long millis) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(millis).array();
+    }
+
+    private static long timestampOf(byte[] value) {
+        return value.length >= Long.BYTES ? ByteBuffer.wrap(value).getLong() : 0;
+    }
+}
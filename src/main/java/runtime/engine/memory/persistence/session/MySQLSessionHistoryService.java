@@ -2,16 +2,28 @@ package runtime.engine.memory.persistence.session;
 
 import runtime.engine.memory.model.Message;
 import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.MessageType;
 import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
 import runtime.engine.memory.service.SessionHistoryService;
 import runtime.engine.memory.persistence.memory.entity.SessionEntity;
 import runtime.engine.memory.persistence.memory.entity.SessionMessageEntity;
+import runtime.engine.memory.persistence.memory.repository.ArchiveReader;
+import runtime.engine.memory.persistence.memory.repository.MessageBatchWriter;
 import runtime.engine.memory.persistence.memory.repository.SessionMessageRepository;
 import runtime.engine.memory.persistence.memory.repository.SessionRepository;
+import runtime.engine.memory.persistence.memory.repository.StatsCounterRepository;
+import runtime.engine.memory.persistence.memory.service.StatsCache;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -19,14 +31,25 @@ import java.util.stream.Collectors;
 
 /**
  * 基于MySQL的会话历史服务实现
+ * 配置{@link MessageBatchWriter}时追加消息用一条多行INSERT写入；启用写后缓冲时追加只进入缓冲区，
+ * 由后台线程合并多个请求的消息后批量写入，读取和删除会话前若该会话有未写出的消息则先写出缓冲。
+ * 配置{@link ArchiveReader}时，已归档的早期消息与热表中的消息按ID拼接读取
  */
-public class MySQLSessionHistoryService implements SessionHistoryService {
+public class MySQLSessionHistoryService implements SessionHistoryService, MeterBinder {
     
     private static final Logger logger = LoggerFactory.getLogger(MySQLSessionHistoryService.class);
     
+    // 令牌预算窗口从最新消息向前每次查询的行数
+    private static final int TOKEN_BUDGET_BATCH = 32;
+    
     private SessionRepository sessionRepository;
     private SessionMessageRepository sessionMessageRepository;
     private ObjectMapper objectMapper;
+    private MessageBatchWriter messageBatchWriter;
+    private WriteBehindBuffer<SessionMessageEntity> writeBehindBuffer;
+    private StatsCounterRepository statsCounterRepository;
+    private StatsCache<SessionStats> statsCache;
+    private ArchiveReader archiveReader;
     
     public void setSessionRepository(SessionRepository sessionRepository) {
         this.sessionRepository = sessionRepository;
@@ -40,6 +63,58 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
         this.objectMapper = objectMapper;
     }
     
+    public void setMessageBatchWriter(MessageBatchWriter messageBatchWriter) {
+        this.messageBatchWriter = messageBatchWriter;
+    }
+    
+    /**
+     * 启用写后缓冲，需先设置MessageBatchWriter
+     * 
+     * @param maxBatch 每批写入的最大消息数，缓冲达到该数量时立即写出
+     * @param flushIntervalMillis 定时写出间隔（毫秒）
+     * @param capacity 缓冲容量，缓冲满时追加阻塞
+     */
+    public void enableWriteBehind(int maxBatch, long flushIntervalMillis, int capacity) {
+        if (messageBatchWriter == null) {
+            throw new IllegalStateException("Write-behind requires a MessageBatchWriter");
+        }
+        MessageBatchWriter writer = messageBatchWriter;
+        this.writeBehindBuffer = new WriteBehindBuffer<>("session-messages", maxBatch, flushIntervalMillis,
+            capacity, writer::insertSessionMessages, SessionMessageEntity::getSessionId);
+    }
+    
+    /**
+     * 注册写后缓冲的丢弃记录数指标
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.bindTo(registry);
+        }
+    }
+    
+    /**
+     * 设置归档层读取，设置后读取和删除会话同时覆盖归档表中的早期消息
+     */
+    public void setArchiveReader(ArchiveReader archiveReader) {
+        this.archiveReader = archiveReader;
+    }
+    
+    /**
+     * 启用统计计数器：创建会话和追加消息时累加计数器，统计查询读取进程内缓存或计数器表
+     * 
+     * @param statsCounterRepository 计数器表读写
+     * @param maxUsers 进程内最多缓存的用户数
+     * @param refreshMillis 缓存快照的刷新间隔（毫秒）
+     * @param reconcileMillis 按明细表对账的间隔（毫秒），小于等于0时不定期对账
+     */
+    public void enableStatsCounters(StatsCounterRepository statsCounterRepository, long maxUsers,
+                                    long refreshMillis, long reconcileMillis) {
+        this.statsCounterRepository = statsCounterRepository;
+        this.statsCache = new StatsCache<>("sessions", maxUsers, refreshMillis, reconcileMillis,
+            statsCounterRepository::loadSessionStats, statsCounterRepository::reconcileSessionCounters);
+    }
+    
     @Override
     public CompletableFuture<Void> start() {
         return CompletableFuture.completedFuture(null);
@@ -47,7 +122,13 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
     
     @Override
     public CompletableFuture<Void> stop() {
-        return CompletableFuture.completedFuture(null);
+        if (statsCache != null) {
+            statsCache.close();
+        }
+        if (writeBehindBuffer == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(writeBehindBuffer::close);
     }
     
     @Override
@@ -64,6 +145,9 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
         });
     }
     
+    /**
+     * 创建会话，通过一条INSERT IGNORE完成；会话已存在时返回已有的会话，会话ID属于其他用户时失败
+     */
     @Override
     public CompletableFuture<Session> createSession(String userId, Optional<String> sessionId) {
         return CompletableFuture.supplyAsync(() -> {
@@ -71,20 +155,14 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
                 String sid = sessionId.filter(s -> s != null && !s.trim().isEmpty())
                     .orElse(UUID.randomUUID().toString());
                 
-                // 检查会话是否已存在
-                if (sessionRepository.existsBySessionId(sid)) {
-                    logger.warn("会话已存在: {}", sid);
-                    Optional<Session> existingSession = getSession(userId, sid).get();
-                    return existingSession.orElseThrow(() -> new RuntimeException("获取已存在会话失败"));
+                if (createSessionRow(userId, sid)) {
+                    logger.debug("创建会话成功，用户: {}, 会话: {}", userId, sid);
+                    return new Session(sid, userId, new ArrayList<>());
                 }
                 
-                SessionEntity entity = new SessionEntity(sid, userId);
-                sessionRepository.save(entity);
-                
-                Session session = new Session(sid, userId, new ArrayList<>());
-                logger.debug("创建会话成功，用户: {}, 会话: {}", userId, sid);
-                
-                return session;
+                logger.debug("会话已存在: {}", sid);
+                flushPendingWrites(sid);
+                return loadSession(userId, sid).orElseGet(() -> new Session(sid, userId, new ArrayList<>()));
                 
             } catch (Exception e) {
                 logger.error("创建会话失败", e);
@@ -93,27 +171,26 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
         });
     }
     
+    /**
+     * 检索会话，会话和消息通过一条JOIN FETCH查询加载；会话不存在时用一条INSERT IGNORE创建
+     */
     @Override
     public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                Optional<SessionEntity> entityOpt = sessionRepository.findByUserIdAndSessionId(userId, sessionId);
-                
-                if (entityOpt.isPresent()) {
-                    List<Message> messages = getSessionMessages(sessionId);
-                    
-                    Session session = new Session(sessionId, userId, messages);
+                flushPendingWrites(sessionId);
+                Optional<Session> session = loadSession(userId, sessionId);
+                if (session.isPresent()) {
                     logger.debug("获取会话成功，用户: {}, 会话: {}, 消息数: {}", 
-                        userId, sessionId, messages.size());
-                    
-                    return Optional.of(session);
-                } else {
-                    // 如果会话不存在，创建一个新的
-                    logger.debug("会话不存在，创建新会话，用户: {}, 会话: {}", userId, sessionId);
-                    Session newSession = createSession(userId, Optional.of(sessionId)).get();
-                    return Optional.of(newSession);
+                        userId, sessionId, session.get().getMessages().size());
+                    return session;
                 }
                 
+                // 如果会话不存在，创建一个新的
+                logger.debug("会话不存在，创建新会话，用户: {}, 会话: {}", userId, sessionId);
+                createSessionRow(userId, sessionId);
+                return Optional.of(new Session(sessionId, userId, new ArrayList<>()));
+                
             } catch (Exception e) {
                 logger.error("获取会话失败", e);
                 return Optional.empty();
@@ -121,16 +198,129 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
         });
     }
     
+    /**
+     * 检索会话，会话不存在时与完整读取一样创建，消息按最近lastN条的窗口读取
+     * 会话行由一条INSERT IGNORE创建或确认，之后直接读取窗口，不再单独检查会话是否存在
+     */
+    @Override
+    public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId, int lastN) {
+        if (lastN < 0) {
+            return getSession(userId, sessionId);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                flushPendingWrites(sessionId);
+                boolean created = createSessionRow(userId, sessionId);
+                List<Message> messages = created
+                    ? new ArrayList<>()
+                    : new ArrayList<>(readWindow(sessionId, MessageWindow.last(lastN)).getMessages());
+                return Optional.of(new Session(sessionId, userId, messages));
+            } catch (Exception e) {
+                logger.error("获取会话失败", e);
+                return Optional.empty();
+            }
+        });
+    }
+    
+    /**
+     * 创建会话行，以INSERT IGNORE的结果判断是否新建，只有确实新建时才累加会话计数；
+     * 会话已存在时按用户刷新最近活动时间，同时确认会话属于该用户
+     * 
+     * @return 是否新建了会话
+     * @throws IllegalStateException 会话ID已属于其他用户
+     */
+    private boolean createSessionRow(String userId, String sessionId) {
+        if (sessionRepository.insertIfAbsent(userId, sessionId) == 1) {
+            recordSessionCreated(userId);
+            return true;
+        }
+        if (sessionRepository.touchSession(userId, sessionId) == 1) {
+            return false;
+        }
+        // 会话属于其他用户，或在插入与刷新之间被删除；只重试一次创建
+        if (sessionRepository.insertIfAbsent(userId, sessionId) == 1) {
+            recordSessionCreated(userId);
+            return true;
+        }
+        throw new IllegalStateException("Session " + sessionId + " belongs to another user");
+    }
+    
+    /**
+     * 按窗口读取会话消息，使用分页查询只加载窗口内的行
+     * 游标为消息ID；会话不存在时返回空页且不创建会话
+     */
+    @Override
+    public CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                flushPendingWrites(sessionId);
+                if (!sessionRepository.existsByUserIdAndSessionId(userId, sessionId)) {
+                    return new MessagePage(new ArrayList<>(), window.getCursor(), false);
+                }
+                return readWindow(sessionId, window);
+            } catch (Exception e) {
+                logger.error("按窗口获取会话消息失败", e);
+                throw new RuntimeException("按窗口获取会话消息失败", e);
+            }
+        });
+    }
+    
+    /**
+     * 读取已确认属于当前用户的会话在窗口内的消息
+     */
+    private MessagePage readWindow(String sessionId, MessageWindow window) {
+        switch (window.getKind()) {
+            case AFTER: {
+                int limit = window.getLimit();
+                // 多查一行判断游标之后是否还有消息
+                List<SessionMessageEntity> rows = readAfter(sessionId, window.getCursor(), limit > 0 ? limit + 1 : 0);
+                boolean hasMore = limit > 0 && rows.size() > limit;
+                if (hasMore) {
+                    rows = rows.subList(0, limit);
+                }
+                long nextCursor = rows.isEmpty() ? window.getCursor() : rows.get(rows.size() - 1).getId();
+                return new MessagePage(convertToMessages(rows), nextCursor, hasMore);
+            }
+            case LAST: {
+                int limit = window.getLimit();
+                List<SessionMessageEntity> newest = readBefore(sessionId, Long.MAX_VALUE, limit + 1);
+                long nextCursor = newest.isEmpty() ? 0 : newest.get(0).getId();
+                boolean hasMore = newest.size() > limit;
+                List<SessionMessageEntity> rows = new ArrayList<>(newest.subList(0, Math.min(limit, newest.size())));
+                Collections.reverse(rows);
+                return new MessagePage(convertToMessages(rows), nextCursor, hasMore);
+            }
+            case TOKEN_BUDGET:
+                return getMessagesWithinBudget(sessionId, window);
+            default: {
+                List<SessionMessageEntity> rows = readAfter(sessionId, 0L, 0);
+                long nextCursor = rows.isEmpty() ? 0 : rows.get(rows.size() - 1).getId();
+                return new MessagePage(convertToMessages(rows), nextCursor, false);
+            }
+        }
+    }
+    
     @Override
     public CompletableFuture<Void> deleteSession(String userId, String sessionId) {
         return CompletableFuture.runAsync(() -> {
             try {
+                // 先写出缓冲中的消息，避免删除后再被写入
+                flushPendingWrites(sessionId);
+                
                 // 先删除会话消息
                 sessionMessageRepository.deleteBySessionId(sessionId);
+                if (archiveReader != null) {
+                    archiveReader.deleteSessionMessages(sessionId);
+                }
                 
                 // 再删除会话
                 sessionRepository.deleteBySessionId(sessionId);
                 
+                if (statsCache != null) {
+                    statsCounterRepository.removeSession(userId, sessionId);
+                    statsCache.invalidate(userId);
+                }
+                
                 logger.debug("删除会话成功，用户: {}, 会话: {}", userId, sessionId);
                 
             } catch (Exception e) {
@@ -144,6 +334,7 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
     public CompletableFuture<List<Session>> listSessions(String userId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                // 会话行在创建时已写入，缓冲中的消息只影响最近活动时间的排序，不等待写出
                 List<SessionEntity> entities = sessionRepository.findByUserIdOrderByLastActivityDesc(userId);
                 
                 List<Session> sessions = entities.stream()
@@ -172,25 +363,35 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
                     return;
                 }
                 
-                // 更新会话活动时间
-                Optional<SessionEntity> entityOpt = sessionRepository.findBySessionId(session.getId());
-                if (entityOpt.isPresent()) {
-                    SessionEntity entity = entityOpt.get();
-                    entity.setLastActivity(new java.sql.Timestamp(System.currentTimeMillis()).toLocalDateTime());
-                    sessionRepository.save(entity);
-                }
-                
-                // 添加消息到会话
+                List<SessionMessageEntity> messageEntities = new ArrayList<>(messages.size());
                 for (Message message : messages) {
                     SessionMessageEntity messageEntity = new SessionMessageEntity();
                     messageEntity.setSessionId(session.getId());
                     messageEntity.setMessageType(message.getType());
                     messageEntity.setContent(serializeMessageContent(message.getContent()));
                     messageEntity.setMetadata(serializeMetadata(message.getMetadata()));
-                    
-                    sessionMessageRepository.save(messageEntity);
+                    messageEntities.add(messageEntity);
+                }
+                
+                if (writeBehindBuffer != null) {
+                    // 只进入缓冲区，由后台线程与其他请求的消息合并写入
+                    writeBehindBuffer.submitAll(messageEntities);
+                } else if (messageBatchWriter != null) {
+                    // 一次UPDATE刷新活动时间，一条多行INSERT写入全部消息
+                    messageBatchWriter.insertSessionMessages(messageEntities);
+                } else {
+                    // 更新会话活动时间
+                    Optional<SessionEntity> entityOpt = sessionRepository.findBySessionId(session.getId());
+                    if (entityOpt.isPresent()) {
+                        SessionEntity entity = entityOpt.get();
+                        entity.setLastActivity(new java.sql.Timestamp(System.currentTimeMillis()).toLocalDateTime());
+                        sessionRepository.save(entity);
+                    }
+                    sessionMessageRepository.saveAll(messageEntities);
                 }
                 
+                recordMessages(session, messages);
+                
                 // 更新会话对象
                 session.getMessages().addAll(messages);
                 
@@ -205,21 +406,165 @@ public class MySQLSessionHistoryService implements SessionHistoryService {
     }
     
     /**
-     * 获取会话的所有消息
+     * 启用统计计数器时读取缓存的计数，否则按用户执行计数查询
      */
-    private List<Message> getSessionMessages(String sessionId) {
+    @Override
+    public CompletableFuture<SessionStats> getSessionStats(String userId) {
+        if (statsCache != null) {
+            return CompletableFuture.supplyAsync(() -> statsCache.get(userId));
+        }
+        // 未启用计数器时用计数查询统计，不加载消息
+        return CompletableFuture.supplyAsync(() -> {
+            long totalMessages = sessionMessageRepository.countByUserId(userId);
+            if (archiveReader != null) {
+                totalMessages += archiveReader.countSessionMessages(userId);
+            }
+            long lastActivity = sessionRepository.findByUserIdOrderByLastActivityDesc(userId, PageRequest.of(0, 1))
+                .stream()
+                .map(SessionEntity::getLastActivity)
+                .filter(Objects::nonNull)
+                .map(time -> java.sql.Timestamp.valueOf(time).getTime())
+                .findFirst()
+                .orElse(0L);
+            return new SessionStats(sessionRepository.countByUserId(userId), totalMessages, lastActivity);
+        });
+    }
+    
+    /**
+     * 累加新建会话的计数；计数器更新失败不影响会话的创建，由对账修正
+     */
+    private void recordSessionCreated(String userId) {
+        if (statsCache == null) {
+            return;
+        }
         try {
-            List<SessionMessageEntity> messageEntities = sessionMessageRepository
-                .findBySessionIdOrderByCreatedAtAsc(sessionId);
-            
-            return messageEntities.stream()
-                .map(this::convertToMessage)
-                .collect(Collectors.toList());
-                
-        } catch (Exception e) {
-            logger.error("获取会话消息失败", e);
-            return Collections.emptyList();
+            statsCounterRepository.incrementSessions(userId, 1);
+        } catch (RuntimeException e) {
+            logger.warn("更新会话计数失败，等待对账修正，用户: {}", userId, e);
+        }
+        statsCache.apply(userId, stats -> stats.plus(new SessionStats(1, 0, 0)));
+    }
+    
+    /**
+     * 累加追加消息的计数；启用写后缓冲时计数在消息落库前更新，写出失败的消息由对账修正
+     */
+    private void recordMessages(Session session, List<Message> messages) {
+        if (statsCache == null) {
+            return;
+        }
+        String userId = session.getUserId();
+        long userMessages = messages.stream().filter(m -> m.getType() == MessageType.USER).count();
+        long assistantMessages = messages.stream().filter(m -> m.getType() == MessageType.ASSISTANT).count();
+        try {
+            statsCounterRepository.incrementSessionMessages(userId, session.getId(), messages.size(),
+                userMessages, assistantMessages);
+        } catch (RuntimeException e) {
+            logger.warn("更新会话消息计数失败，等待对账修正，用户: {}, 会话: {}", userId, session.getId(), e);
+        }
+        SessionStats delta = new SessionStats(0, messages.size(), System.currentTimeMillis());
+        statsCache.apply(userId, stats -> stats.plus(delta));
+    }
+    
+    /**
+     * 会话在写后缓冲中有尚未落库的消息时写出缓冲，并等待后台正在写出的批次完成；读取其他会话不等待
+     */
+    private void flushPendingWrites(String sessionId) {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.flush(sessionId);
+        }
+    }
+    
+    /**
+     * 在一条查询中加载会话及其全部消息
+     */
+    private Optional<Session> loadSession(String userId, String sessionId) {
+        return sessionRepository.findWithMessages(userId, sessionId).map(entity -> {
+            List<SessionMessageEntity> rows = entity.getMessages() != null ? entity.getMessages() : Collections.emptyList();
+            if (archiveReader != null) {
+                // 已归档的消息都早于热表中的消息
+                List<SessionMessageEntity> archived = archiveReader.findSessionMessagesAfter(sessionId, 0L, 0);
+                if (!archived.isEmpty()) {
+                    archived.addAll(rows);
+                    rows = archived;
+                }
+            }
+            return new Session(sessionId, userId, convertToMessages(rows));
+        });
+    }
+    
+    /**
+     * 按ID倒序读取指定ID之前的消息，热表不足时从归档表补齐
+     */
+    private List<SessionMessageEntity> readBefore(String sessionId, long beforeId, int limit) {
+        List<SessionMessageEntity> rows = beforeId == Long.MAX_VALUE
+            ? sessionMessageRepository.findBySessionIdOrderByIdDesc(sessionId, PageRequest.of(0, limit))
+            : sessionMessageRepository.findBySessionIdAndIdLessThanOrderByIdDesc(sessionId, beforeId, PageRequest.of(0, limit));
+        if (archiveReader == null || rows.size() >= limit) {
+            return rows;
+        }
+        long from = rows.isEmpty() ? beforeId : rows.get(rows.size() - 1).getId();
+        List<SessionMessageEntity> merged = new ArrayList<>(rows);
+        merged.addAll(archiveReader.findSessionMessagesBefore(sessionId, from, limit - rows.size()));
+        return merged;
+    }
+    
+    /**
+     * 按ID正序读取指定ID之后的消息，先读归档表再读热表
+     * 
+     * @param limit 最多返回的条数，小于等于0表示不限
+     */
+    private List<SessionMessageEntity> readAfter(String sessionId, long afterId, int limit) {
+        List<SessionMessageEntity> archived = archiveReader != null
+            ? archiveReader.findSessionMessagesAfter(sessionId, afterId, limit)
+            : Collections.emptyList();
+        if (limit > 0 && archived.size() >= limit) {
+            return archived;
+        }
+        long from = archived.isEmpty() ? afterId : archived.get(archived.size() - 1).getId();
+        int remaining = limit > 0 ? limit - archived.size() : 0;
+        List<SessionMessageEntity> rows = sessionMessageRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(sessionId,
+            from, remaining > 0 ? PageRequest.of(0, remaining) : Pageable.unpaged());
+        if (archived.isEmpty()) {
+            return rows;
+        }
+        List<SessionMessageEntity> merged = new ArrayList<>(archived);
+        merged.addAll(rows);
+        return merged;
+    }
+    
+    /**
+     * 从最新的消息开始按ID逐批向前查询，直到令牌预算用完或没有更早的消息
+     */
+    private MessagePage getMessagesWithinBudget(String sessionId, MessageWindow window) {
+        MessageWindow.TokenCounter counter = window.tokenCounter();
+        LinkedList<Message> kept = new LinkedList<>();
+        long nextCursor = 0;
+        List<SessionMessageEntity> batch = readBefore(sessionId, Long.MAX_VALUE, TOKEN_BUDGET_BATCH);
+        if (!batch.isEmpty()) {
+            nextCursor = batch.get(0).getId();
+        }
+        while (!batch.isEmpty()) {
+            for (SessionMessageEntity row : batch) {
+                Message message = convertToMessage(row);
+                if (!counter.tryAdd(message)) {
+                    return new MessagePage(new ArrayList<>(kept), nextCursor, true);
+                }
+                kept.addFirst(message);
+            }
+            if (batch.size() < TOKEN_BUDGET_BATCH) {
+                break;
+            }
+            batch = readBefore(sessionId, batch.get(batch.size() - 1).getId(), TOKEN_BUDGET_BATCH);
+        }
+        return new MessagePage(new ArrayList<>(kept), nextCursor, false);
+    }
+    
+    private List<Message> convertToMessages(List<SessionMessageEntity> rows) {
+        List<Message> messages = new ArrayList<>(rows.size());
+        for (SessionMessageEntity row : rows) {
+            messages.add(convertToMessage(row));
         }
+        return messages;
     }
     
     /**
@@ -1,38 +1,157 @@
 package runtime.engine.memory.persistence.session;
 
+import runtime.engine.memory.codec.JsonMessageCodec;
+import runtime.engine.memory.codec.MessageCodec;
 import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
 import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
 import runtime.engine.memory.service.SessionHistoryService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * 基于Redis的会话历史服务实现
+ * 支持两种存储布局：
+ * <ul>
+ *   <li>LIST（默认）：每个会话的消息逐条编码后存放在列表 session_msgs:{userId}:{sessionId} 中，
+ *       会话元数据存放在哈希 session_meta:{userId}:{sessionId} 中；追加为一个脚本中的RPUSH，
+ *       读取最近N条消息或游标之后的一页使用LRANGE，不传输完整历史，游标为消息在列表中的下标</li>
+ *   <li>JSON：整个会话序列化为一个字符串 session:{userId}:{sessionId}，追加时在WATCH事务中读取并整体改写，
+ *       并发追加冲突时重试</li>
+ * </ul>
+ * LIST布局的读取和追加各在一个脚本中完成，脚本发现旧JSON布局的数据时先将其迁移到列表中再重试。
+ * 两种布局都维护会话摘要哈希 session_meta:{userId}:{sessionId}（创建/更新时间、消息数），
+ * 列出会话时通过一次流水线读取摘要，不下载消息历史。
+ * 消息和会话的编码格式由{@link MessageCodec}决定，读取时兼容JSON与二进制载荷
  */
 public class RedisSessionHistoryService implements SessionHistoryService {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisSessionHistoryService.class);
+
+    /**
+     * 会话存储布局
+     */
+    public enum Layout {
+        LIST,
+        JSON;
+
+        /**
+         * 按配置名称解析布局，忽略大小写，未知名称返回LIST
+         */
+        public static Layout fromName(String name) {
+            if (name != null && "json".equalsIgnoreCase(name.trim())) {
+                return JSON;
+            }
+            return LIST;
+        }
+    }
+
+    private static final String FIELD_CREATED_AT = "created_at";
+    private static final String FIELD_UPDATED_AT = "updated_at";
+    private static final String FIELD_MESSAGE_COUNT = "message_count";
+    // 令牌预算窗口从列表末尾向前每次读取的消息数
+    private static final int TOKEN_BUDGET_BATCH = 32;
+    // JSON布局追加遇到并发修改时的最大尝试次数
+    private static final int JSON_APPEND_ATTEMPTS = 10;
+
+    /**
+     * 读取LIST布局会话最近若干条消息的脚本，返回列表长度和消息
+     * KEYS: 旧JSON键、消息列表、摘要哈希、会话索引；ARGV: 消息数（负数表示全部）、是否创建会话、会话ID、用户ID、当前时间
+     * 摘要哈希不存在时：存在旧JSON数据返回nil，由调用方迁移后重试；否则创建空会话，或在不创建时返回空数组
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_LIST_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 then\n"
+                    + "  if redis.call('EXISTS', KEYS[1]) == 1 then return false end\n"
+                    + "  if ARGV[2] == '0' then return {} end\n"
+                    + "  redis.call('HSET', KEYS[3], 'id', ARGV[3], 'user_id', ARGV[4], '" + FIELD_CREATED_AT + "', ARGV[5],"
+                    + " '" + FIELD_UPDATED_AT + "', ARGV[5], '" + FIELD_MESSAGE_COUNT + "', 0)\n"
+                    + "  redis.call('SADD', KEYS[4], ARGV[3])\n"
+                    + "end\n"
+                    + "local size = redis.call('LLEN', KEYS[2])\n"
+                    + "local limit = tonumber(ARGV[1])\n"
+                    + "local from = 0\n"
+                    + "if limit >= 0 and size > limit then from = size - limit end\n"
+                    + "local result = {tostring(size)}\n"
+                    + "if from < size then\n"
+                    + "  local items = redis.call('LRANGE', KEYS[2], from, size - 1)\n"
+                    + "  for i = 1, #items do result[i + 1] = items[i] end\n"
+                    + "end\n"
+                    + "return result",
+            List.class);
+
+    /**
+     * 向LIST布局会话追加消息的脚本，返回追加后的列表长度
+     * KEYS: 旧JSON键、消息列表、摘要哈希、会话索引；ARGV: 会话ID、用户ID、当前时间、编码后的消息
+     * 会话仍为旧JSON布局时不追加并返回-1，由调用方迁移后重试
+     */
+    private static final RedisScript<Long> APPEND_LIST_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 and redis.call('EXISTS', KEYS[1]) == 1 then return -1 end\n"
+                    + "for i = 4, #ARGV do redis.call('RPUSH', KEYS[2], ARGV[i]) end\n"
+                    + "redis.call('HSETNX', KEYS[3], 'id', ARGV[1])\n"
+                    + "redis.call('HSETNX', KEYS[3], 'user_id', ARGV[2])\n"
+                    + "redis.call('HSETNX', KEYS[3], '" + FIELD_CREATED_AT + "', ARGV[3])\n"
+                    + "redis.call('HINCRBY', KEYS[3], '" + FIELD_MESSAGE_COUNT + "', #ARGV - 3)\n"
+                    + "redis.call('HSET', KEYS[3], '" + FIELD_UPDATED_AT + "', ARGV[3])\n"
+                    + "redis.call('SADD', KEYS[4], ARGV[1])\n"
+                    + "return redis.call('LLEN', KEYS[2])",
+            Long.class);
+
+    /**
+     * 迁移旧JSON布局会话的脚本
+     * KEYS: 旧JSON键、消息列表、摘要哈希、会话索引；ARGV: 会话ID、用户ID、当前时间、编码后的消息
+     */
+    private static final RedisScript<Long> MIGRATE_LEGACY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('DEL', KEYS[1]) == 0 then return 0 end\n"
+                    + "for i = #ARGV, 4, -1 do redis.call('LPUSH', KEYS[2], ARGV[i]) end\n"
+                    + "redis.call('HSETNX', KEYS[3], 'id', ARGV[1])\n"
+                    + "redis.call('HSETNX', KEYS[3], 'user_id', ARGV[2])\n"
+                    + "redis.call('HSETNX', KEYS[3], '" + FIELD_CREATED_AT + "', ARGV[3])\n"
+                    + "redis.call('HINCRBY', KEYS[3], '" + FIELD_MESSAGE_COUNT + "', #ARGV - 3)\n"
+                    + "redis.call('HSET', KEYS[3], '" + FIELD_UPDATED_AT + "', ARGV[3])\n"
+                    + "redis.call('SADD', KEYS[4], ARGV[1])\n"
+                    + "return 1",
+            Long.class);
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
-    
+    private final MessageCodec codec;
+    private final Layout layout;
+
     public RedisSessionHistoryService(RedisTemplate<String, String> redisTemplate) {
+        this(redisTemplate, Layout.LIST);
+    }
+
+    public RedisSessionHistoryService(RedisTemplate<String, String> redisTemplate, Layout layout) {
+        this(redisTemplate, layout, new JsonMessageCodec());
+    }
+
+    public RedisSessionHistoryService(RedisTemplate<String, String> redisTemplate, Layout layout, MessageCodec codec) {
         this.redisTemplate = redisTemplate;
-        this.objectMapper = new ObjectMapper();
+        this.codec = codec;
+        this.layout = layout;
     }
-    
+
     @Override
     public CompletableFuture<Void> start() {
         return CompletableFuture.completedFuture(null);
     }
-    
+
     @Override
     public CompletableFuture<Void> stop() {
         return CompletableFuture.completedFuture(null);
     }
-    
+
     @Override
     public CompletableFuture<Boolean> health() {
         return CompletableFuture.supplyAsync(() -> {
@@ -44,108 +163,283 @@ public class RedisSessionHistoryService implements SessionHistoryService {
             }
         });
     }
-    
+
     private String getSessionKey(String userId, String sessionId) {
         return "session:" + userId + ":" + sessionId;
     }
-    
+
+    private String getMessagesKey(String userId, String sessionId) {
+        return "session_msgs:" + userId + ":" + sessionId;
+    }
+
+    private String getMetaKey(String userId, String sessionId) {
+        return "session_meta:" + userId + ":" + sessionId;
+    }
+
     private String getIndexKey(String userId) {
         return "session_index:" + userId;
     }
-    
-    private String sessionToJson(Session session) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(session);
+
+    private List<String> encodeMessages(List<Message> messages) {
+        List<String> encoded = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            encoded.add(codec.encode(message));
+        }
+        return encoded;
     }
-    
-    private Session sessionFromJson(String json) throws JsonProcessingException {
-        return objectMapper.readValue(json, Session.class);
+
+    private List<Message> decodeMessages(List<String> encoded) {
+        if (encoded == null) {
+            return new ArrayList<>();
+        }
+        List<Message> messages = new ArrayList<>(encoded.size());
+        for (String payload : encoded) {
+            messages.add(codec.decode(payload));
+        }
+        return messages;
     }
-    
+
     @Override
     public CompletableFuture<Session> createSession(String userId, Optional<String> sessionId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
                 String sid = sessionId.filter(s -> s != null && !s.trim().isEmpty())
                         .orElse(UUID.randomUUID().toString());
-                
+
                 Session session = new Session(sid, userId, new ArrayList<>());
-                String key = getSessionKey(userId, sid);
-                
-                redisTemplate.opsForValue().set(key, sessionToJson(session));
-                redisTemplate.opsForSet().add(getIndexKey(userId), sid);
-                
+                if (layout == Layout.LIST) {
+                    resetListSession(userId, sid);
+                } else {
+                    writeJsonSession(userId, sid, codec.encodeSession(session), 0, true);
+                }
+
                 return session;
             } catch (Exception e) {
                 throw new RuntimeException("Failed to create session in Redis", e);
             }
         });
     }
-    
+
+    /**
+     * 检索会话，会话不存在时创建；LIST布局读取到旧JSON布局的数据时先迁移
+     */
     @Override
     public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
+                if (layout == Layout.LIST) {
+                    ListWindow tail = readListWindow(userId, sessionId, -1, true);
+                    return Optional.of(new Session(sessionId, userId, tail.messages()));
+                }
+
                 String key = getSessionKey(userId, sessionId);
                 String sessionJson = redisTemplate.opsForValue().get(key);
-                
+
                 if (sessionJson == null) {
                     // 如果会话不存在，创建一个新的
                     Session session = new Session(sessionId, userId, new ArrayList<>());
-                    redisTemplate.opsForValue().set(key, sessionToJson(session));
-                    redisTemplate.opsForSet().add(getIndexKey(userId), sessionId);
+                    writeJsonSession(userId, sessionId, codec.encodeSession(session), 0, true);
                     return Optional.of(session);
                 }
-                
-                return Optional.of(sessionFromJson(sessionJson));
+
+                return Optional.of(codec.decodeSession(sessionJson));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to get session from Redis", e);
+            }
+        });
+    }
+
+    /**
+     * 检索会话并只加载最近的lastN条消息，会话不存在时创建
+     * LIST布局在一个脚本中完成创建和读取，JSON布局使用默认实现
+     */
+    @Override
+    public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId, int lastN) {
+        if (layout != Layout.LIST || lastN < 0) {
+            return SessionHistoryService.super.getSession(userId, sessionId, lastN);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ListWindow tail = readListWindow(userId, sessionId, lastN, true);
+                return Optional.of(new Session(sessionId, userId, tail.messages()));
             } catch (Exception e) {
                 throw new RuntimeException("Failed to get session from Redis", e);
             }
         });
     }
-    
+
+    /**
+     * 两种布局的游标都是消息在会话中的下标，每追加一条加一
+     */
+    @Override
+    public boolean sequentialCursors() {
+        return true;
+    }
+
+    /**
+     * 按窗口读取会话消息
+     * LIST布局按下标范围读取，JSON布局读取整个会话后截取；会话不存在时返回空页且不创建会话
+     */
+    @Override
+    public CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (layout == Layout.JSON) {
+                    String sessionJson = redisTemplate.opsForValue().get(getSessionKey(userId, sessionId));
+                    List<Message> messages = sessionJson != null
+                            ? codec.decodeSession(sessionJson).getMessages()
+                            : new ArrayList<>();
+                    return window.apply(messages, 0);
+                }
+
+                return getListMessages(userId, sessionId, window);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to get session messages from Redis", e);
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<Void> deleteSession(String userId, String sessionId) {
         return CompletableFuture.runAsync(() -> {
             try {
-                String key = getSessionKey(userId, sessionId);
-                redisTemplate.delete(key);
-                redisTemplate.opsForSet().remove(getIndexKey(userId), sessionId);
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                        RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                        operations.delete(Arrays.asList(getSessionKey(userId, sessionId),
+                                getMessagesKey(userId, sessionId), getMetaKey(userId, sessionId)));
+                        operations.opsForSet().remove(getIndexKey(userId), sessionId);
+                        return null;
+                    }
+                });
             } catch (Exception e) {
                 throw new RuntimeException("Failed to delete session from Redis", e);
             }
         });
     }
-    
+
     @Override
     public CompletableFuture<List<Session>> listSessions(String userId) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                String indexKey = getIndexKey(userId);
-                Set<String> sessionIds = redisTemplate.opsForSet().members(indexKey);
-                
-                if (sessionIds == null) {
+                Set<String> members = redisTemplate.opsForSet().members(getIndexKey(userId));
+                if (members == null || members.isEmpty()) {
                     return Collections.emptyList();
                 }
-                
-                List<Session> sessions = new ArrayList<>();
-                for (String sessionId : sessionIds) {
-                    String key = getSessionKey(userId, sessionId);
-                    String sessionJson = redisTemplate.opsForValue().get(key);
-                    if (sessionJson != null) {
-                        Session session = sessionFromJson(sessionJson);
-                        // 为了提高性能，返回的会话不包含详细历史
-                        session.setMessages(new ArrayList<>());
-                        sessions.add(session);
+                List<String> sessionIds = new ArrayList<>(members);
+
+                // 一次流水线读取全部会话摘要
+                List<Object> updatedAts = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                        RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                        for (String sessionId : sessionIds) {
+                            operations.opsForHash().get(getMetaKey(userId, sessionId), FIELD_UPDATED_AT);
+                        }
+                        return null;
+                    }
+                });
+
+                Map<String, Long> updated = new HashMap<>();
+                List<String> withoutSummary = new ArrayList<>();
+                for (int i = 0; i < sessionIds.size(); i++) {
+                    Object updatedAt = updatedAts.get(i);
+                    if (updatedAt != null) {
+                        updated.put(sessionIds.get(i), Long.parseLong(updatedAt.toString()));
+                    } else {
+                        withoutSummary.add(sessionIds.get(i));
                     }
                 }
-                
+
+                // 没有摘要的旧JSON会话用一次MGET确认是否仍存在
+                if (!withoutSummary.isEmpty() && layout == Layout.JSON) {
+                    List<String> keys = new ArrayList<>(withoutSummary.size());
+                    for (String sessionId : withoutSummary) {
+                        keys.add(getSessionKey(userId, sessionId));
+                    }
+                    List<String> jsons = redisTemplate.opsForValue().multiGet(keys);
+                    for (int i = 0; i < withoutSummary.size(); i++) {
+                        if (jsons != null && jsons.get(i) != null) {
+                            updated.put(withoutSummary.get(i), 0L);
+                        }
+                    }
+                } else if (layout == Layout.LIST) {
+                    // LIST布局读取或追加时才迁移旧数据，索引中的会话均视为存在
+                    withoutSummary.forEach(sessionId -> updated.put(sessionId, 0L));
+                }
+
+                // 为了提高性能，返回的会话不包含详细历史，按最近更新时间倒序排列
+                List<Session> sessions = new ArrayList<>(updated.size());
+                updated.entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                        .forEach(entry -> sessions.add(new Session(entry.getKey(), userId, new ArrayList<>())));
                 return sessions;
             } catch (Exception e) {
                 throw new RuntimeException("Failed to list sessions from Redis", e);
             }
         });
     }
-    
+
+    /**
+     * 从会话摘要中汇总消息数和最近更新时间，不读取消息历史
+     * 没有摘要的旧JSON会话读取一次消息计数（LIST布局同时完成迁移）
+     */
+    @Override
+    public CompletableFuture<SessionStats> getSessionStats(String userId) {
+        return listSessions(userId).thenCompose(sessions -> {
+            if (sessions.isEmpty()) {
+                return CompletableFuture.completedFuture(SessionStats.empty());
+            }
+            List<Object> summaries;
+            try {
+                summaries = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                        RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                        for (Session session : sessions) {
+                            operations.opsForHash().multiGet(getMetaKey(userId, session.getId()),
+                                    Arrays.asList(FIELD_MESSAGE_COUNT, FIELD_UPDATED_AT));
+                        }
+                        return null;
+                    }
+                });
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to read session stats from Redis", e);
+            }
+
+            long totalMessages = 0;
+            long lastActivity = 0;
+            List<CompletableFuture<MessagePage>> withoutSummary = new ArrayList<>();
+            for (int i = 0; i < sessions.size(); i++) {
+                List<?> fields = (List<?>) summaries.get(i);
+                Object count = fields != null ? fields.get(0) : null;
+                Object updatedAt = fields != null ? fields.get(1) : null;
+                if (count != null) {
+                    totalMessages += Long.parseLong(count.toString());
+                } else {
+                    withoutSummary.add(getMessages(userId, sessions.get(i).getId(), MessageWindow.all()));
+                }
+                if (updatedAt != null) {
+                    lastActivity = Math.max(lastActivity, Long.parseLong(updatedAt.toString()));
+                }
+            }
+
+            long summarized = totalMessages;
+            long latest = lastActivity;
+            return CompletableFuture.allOf(withoutSummary.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                long total = summarized;
+                for (CompletableFuture<MessagePage> page : withoutSummary) {
+                    total += page.join().getMessages().size();
+                }
+                return new SessionStats(sessions.size(), total, latest);
+            });
+        });
+    }
+
     @Override
     public CompletableFuture<Void> appendMessage(Session session, List<Message> messages) {
         return CompletableFuture.runAsync(() -> {
@@ -153,30 +447,24 @@ public class RedisSessionHistoryService implements SessionHistoryService {
                 if (messages == null || messages.isEmpty()) {
                     return;
                 }
-                
+
                 // 更新传入的会话对象
                 session.getMessages().addAll(messages);
-                
+
                 String userId = session.getUserId();
                 String sessionId = session.getId();
-                String key = getSessionKey(userId, sessionId);
-                
-                String sessionJson = redisTemplate.opsForValue().get(key);
-                if (sessionJson != null) {
-                    Session storedSession = sessionFromJson(sessionJson);
-                    storedSession.getMessages().addAll(messages);
-                    redisTemplate.opsForValue().set(key, sessionToJson(storedSession));
-                    redisTemplate.opsForSet().add(getIndexKey(userId), sessionId);
+
+                if (layout == Layout.LIST) {
+                    appendListMessages(userId, sessionId, encodeMessages(messages));
                 } else {
-                    System.err.println("Warning: Session " + session.getId() +
-                            " not found in storage for append_message.");
+                    appendJsonMessages(userId, sessionId, messages);
                 }
             } catch (Exception e) {
                 throw new RuntimeException("Failed to append message to session in Redis", e);
             }
         });
     }
-    
+
     /**
      * 删除指定用户的所有会话历史数据
      */
@@ -185,18 +473,269 @@ public class RedisSessionHistoryService implements SessionHistoryService {
             try {
                 String indexKey = getIndexKey(userId);
                 Set<String> sessionIds = redisTemplate.opsForSet().members(indexKey);
-                
+
+                List<String> keys = new ArrayList<>();
                 if (sessionIds != null) {
                     for (String sessionId : sessionIds) {
-                        String key = getSessionKey(userId, sessionId);
-                        redisTemplate.delete(key);
+                        keys.add(getSessionKey(userId, sessionId));
+                        keys.add(getMessagesKey(userId, sessionId));
+                        keys.add(getMetaKey(userId, sessionId));
                     }
                 }
-                
-                redisTemplate.delete(indexKey);
+                keys.add(indexKey);
+                redisTemplate.delete(keys);
             } catch (Exception e) {
                 throw new RuntimeException("Failed to delete user sessions from Redis", e);
             }
         });
     }
+
+    /**
+     * 在一个流水线中新建LIST布局的会话：清空已有消息和旧JSON数据，重置元数据并登记会话索引
+     */
+    private void resetListSession(String userId, String sessionId) {
+        String now = String.valueOf(System.currentTimeMillis());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                operations.delete(Arrays.asList(getMessagesKey(userId, sessionId), getSessionKey(userId, sessionId)));
+                writeSummary(operations, userId, sessionId, 0, true, now);
+                operations.opsForSet().add(getIndexKey(userId), sessionId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 用一个脚本向LIST布局的会话追加消息并更新元数据，并发追加不会相互覆盖
+     * 会话仍为旧JSON布局时先迁移再追加，追加的消息排在旧消息之后
+     */
+    private void appendListMessages(String userId, String sessionId, List<String> encodedMessages) {
+        List<String> args = new ArrayList<>(encodedMessages.size() + 3);
+        args.add(sessionId);
+        args.add(userId);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.addAll(encodedMessages);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long size = redisTemplate.execute(APPEND_LIST_SCRIPT, listKeys(userId, sessionId), args.toArray());
+            if (size == null || size >= 0) {
+                return;
+            }
+            migrateLegacySession(userId, sessionId);
+        }
+        throw new IllegalStateException("Session " + sessionId + " is still in the legacy layout after migration");
+    }
+
+    /**
+     * 在WATCH事务中改写JSON布局的会话，会话不存在时创建
+     * 读取与写入之间会话被其他调用者修改时事务不执行，重新读取后重试
+     */
+    private void appendJsonMessages(String userId, String sessionId, List<Message> messages) {
+        String key = getSessionKey(userId, sessionId);
+        for (int attempt = 0; attempt < JSON_APPEND_ATTEMPTS; attempt++) {
+            List<Object> results = redisTemplate.execute(new SessionCallback<List<Object>>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> List<Object> execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                    RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                    operations.watch(key);
+                    String sessionJson = operations.opsForValue().get(key);
+                    // 按窗口读取不创建会话，会话在首次追加时创建，与LIST布局一致
+                    boolean created = sessionJson == null;
+                    Session storedSession = created
+                            ? new Session(sessionId, userId, new ArrayList<>())
+                            : codec.decodeSession(sessionJson);
+                    storedSession.getMessages().addAll(messages);
+                    String encodedSession = codec.encodeSession(storedSession);
+                    String now = String.valueOf(System.currentTimeMillis());
+
+                    operations.multi();
+                    operations.opsForValue().set(key, encodedSession);
+                    writeSummary(operations, userId, sessionId, messages.size(), created, now);
+                    operations.opsForSet().add(getIndexKey(userId), sessionId);
+                    return operations.exec();
+                }
+            });
+            // 事务因WATCH的键被修改而放弃时exec返回空结果
+            if (results != null && !results.isEmpty()) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Failed to append to session " + sessionId + " after "
+                + JSON_APPEND_ATTEMPTS + " conflicting attempts");
+    }
+
+    /**
+     * 在一个流水线中写入JSON布局的会话、会话摘要和会话索引
+     *
+     * @param appended 本次追加的消息数
+     * @param reset 是否为新建会话
+     */
+    private void writeJsonSession(String userId, String sessionId, String encodedSession, int appended, boolean reset) {
+        String now = String.valueOf(System.currentTimeMillis());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                RedisOperations<String, String> operations = (RedisOperations<String, String>) redisOperations;
+                operations.opsForValue().set(getSessionKey(userId, sessionId), encodedSession);
+                writeSummary(operations, userId, sessionId, appended, reset, now);
+                operations.opsForSet().add(getIndexKey(userId), sessionId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 更新会话摘要哈希，新建会话时重置创建时间和消息数
+     */
+    private void writeSummary(RedisOperations<String, String> operations, String userId, String sessionId,
+                              int appended, boolean reset, String now) {
+        String metaKey = getMetaKey(userId, sessionId);
+        if (reset) {
+            Map<String, String> summary = new HashMap<>();
+            summary.put("id", sessionId);
+            summary.put("user_id", userId);
+            summary.put(FIELD_CREATED_AT, now);
+            summary.put(FIELD_MESSAGE_COUNT, String.valueOf(appended));
+            operations.opsForHash().putAll(metaKey, summary);
+        } else {
+            operations.opsForHash().putIfAbsent(metaKey, "id", sessionId);
+            operations.opsForHash().putIfAbsent(metaKey, "user_id", userId);
+            operations.opsForHash().putIfAbsent(metaKey, FIELD_CREATED_AT, now);
+            operations.opsForHash().increment(metaKey, FIELD_MESSAGE_COUNT, appended);
+        }
+        operations.opsForHash().put(metaKey, FIELD_UPDATED_AT, now);
+    }
+
+    private List<String> listKeys(String userId, String sessionId) {
+        return List.of(getSessionKey(userId, sessionId), getMessagesKey(userId, sessionId),
+                getMetaKey(userId, sessionId), getIndexKey(userId));
+    }
+
+    /**
+     * LIST布局一次读取的结果：读取时的列表长度和列表末尾的消息
+     */
+    private record ListWindow(long size, List<Message> messages) {
+    }
+
+    /**
+     * 用一个脚本读取LIST布局会话最近的limit条消息，同时得到列表长度
+     * 会话仍为旧JSON布局时先迁移再重读；会话不存在时按create创建空会话，否则返回null
+     *
+     * @param limit 读取的消息数，负数表示全部
+     */
+    @SuppressWarnings("unchecked")
+    private ListWindow readListWindow(String userId, String sessionId, int limit, boolean create) {
+        List<String> keys = listKeys(userId, sessionId);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<String> result = redisTemplate.execute(READ_LIST_SCRIPT, keys, String.valueOf(limit),
+                    create ? "1" : "0", sessionId, userId, String.valueOf(System.currentTimeMillis()));
+            if (result != null) {
+                if (result.isEmpty()) {
+                    return null;
+                }
+                return new ListWindow(Long.parseLong(result.get(0)), decodeMessages(result.subList(1, result.size())));
+            }
+            migrateLegacySession(userId, sessionId);
+        }
+        throw new IllegalStateException("Session " + sessionId + " is still in the legacy layout after migration");
+    }
+
+    /**
+     * 将旧JSON布局的会话迁移到列表中
+     * 迁移在一个脚本中原子执行：删除旧数据成功的调用者负责迁移，旧消息插入到列表头部，
+     * 迁移前已追加到列表中的消息保持在其后
+     *
+     * @return 是否存在旧JSON布局的数据（可能已被并发调用者迁移）
+     */
+    private boolean migrateLegacySession(String userId, String sessionId) {
+        String legacyJson = redisTemplate.opsForValue().get(getSessionKey(userId, sessionId));
+        if (legacyJson == null) {
+            return false;
+        }
+        List<String> encoded = encodeMessages(codec.decodeSession(legacyJson).getMessages());
+        List<String> args = new ArrayList<>(encoded.size() + 3);
+        args.add(sessionId);
+        args.add(userId);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.addAll(encoded);
+        Long migrated = redisTemplate.execute(MIGRATE_LEGACY_SCRIPT, listKeys(userId, sessionId), args.toArray());
+        if (migrated != null && migrated == 1L) {
+            logger.info("会话{}已从JSON布局迁移到列表布局，消息数: {}", sessionId, encoded.size());
+        }
+        return true;
+    }
+
+    /**
+     * 按窗口读取列表中的消息，会话不存在时返回空页
+     * 列表只在末尾追加，最近消息与列表长度在同一个脚本中读取，更早的消息按绝对下标读取，结果不受并发追加影响
+     */
+    private MessagePage getListMessages(String userId, String sessionId, MessageWindow window) {
+        String messagesKey = getMessagesKey(userId, sessionId);
+        switch (window.getKind()) {
+            case AFTER -> {
+                long from = window.getCursor();
+                int limit = window.getLimit();
+                // 多读一条判断之后是否还有消息
+                List<String> encoded = redisTemplate.opsForList().range(messagesKey, from, limit > 0 ? from + limit : -1);
+                if ((encoded == null || encoded.isEmpty())
+                        && Boolean.FALSE.equals(redisTemplate.hasKey(getMetaKey(userId, sessionId)))
+                        && migrateLegacySession(userId, sessionId)) {
+                    // 只有读到空页时才检查旧JSON布局，迁移后重读
+                    encoded = redisTemplate.opsForList().range(messagesKey, from, limit > 0 ? from + limit : -1);
+                }
+                List<Message> messages = decodeMessages(encoded);
+                boolean hasMore = limit > 0 && messages.size() > limit;
+                if (hasMore) {
+                    messages = messages.subList(0, limit);
+                }
+                return new MessagePage(new ArrayList<>(messages), from + messages.size(), hasMore);
+            }
+            case LAST -> {
+                ListWindow tail = readListWindow(userId, sessionId, window.getLimit(), false);
+                if (tail == null) {
+                    return window.apply(Collections.emptyList(), 0);
+                }
+                return new MessagePage(tail.messages(), tail.size(), tail.size() > tail.messages().size());
+            }
+            case TOKEN_BUDGET -> {
+                ListWindow tail = readListWindow(userId, sessionId, TOKEN_BUDGET_BATCH, false);
+                if (tail == null) {
+                    return window.apply(Collections.emptyList(), 0);
+                }
+                MessageWindow.TokenCounter counter = window.tokenCounter();
+                LinkedList<Message> kept = new LinkedList<>();
+                long size = tail.size();
+                long from = size;
+                List<Message> batch = tail.messages();
+                while (true) {
+                    boolean full = false;
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        if (!counter.tryAdd(batch.get(i))) {
+                            full = true;
+                            break;
+                        }
+                        kept.addFirst(batch.get(i));
+                        from--;
+                    }
+                    if (full || batch.isEmpty() || from <= 0) {
+                        break;
+                    }
+                    long batchStart = Math.max(0, from - TOKEN_BUDGET_BATCH);
+                    batch = decodeMessages(redisTemplate.opsForList().range(messagesKey, batchStart, from - 1));
+                }
+                return new MessagePage(new ArrayList<>(kept), size, from > 0);
+            }
+            default -> {
+                ListWindow all = readListWindow(userId, sessionId, -1, false);
+                if (all == null) {
+                    return window.apply(Collections.emptyList(), 0);
+                }
+                return new MessagePage(all.messages(), all.size(), false);
+            }
+        }
+    }
 }
@@ -0,0 +1,269 @@
+package runtime.engine.memory.persistence.session;
+
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 会话消息日志
+ * 以不可变快照保存一个会话的消息：已写满的块组成主干，末尾未满的块单独保存，追加时只复制末尾块
+ * （每{@value #CHUNK_SIZE}条消息复制一次主干），发布后的块不再修改。
+ * 读取直接获取当前快照，O(1)且始终一致；追加通过CAS替换快照，无需加锁。
+ * 淘汰时日志被封存，之后的追加返回false，由调用方重新加载后重试，避免消息写入已淘汰的日志
+ */
+final class SessionLog {
+
+    static final int CHUNK_SIZE = 32;
+    private static final Message[][] NO_CHUNKS = new Message[0][];
+    private static final Message[] NO_MESSAGES = new Message[0];
+    // 估算的消息固定开销（对象头、内容对象、列表节点等）
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    private final AtomicReference<Snapshot> state;
+
+    SessionLog() {
+        this.state = new AtomicReference<>(Snapshot.EMPTY);
+    }
+
+    SessionLog(List<Message> messages) {
+        this.state = new AtomicReference<>(Snapshot.EMPTY.append(messages, 0));
+    }
+
+    /**
+     * 当前快照
+     */
+    Snapshot snapshot() {
+        return state.get();
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param maxMessages 保留的最近消息数，0表示不限
+     * @return 日志已封存时返回false
+     */
+    boolean append(List<Message> messages, int maxMessages) {
+        while (true) {
+            Snapshot current = state.get();
+            if (current.sealed) {
+                return false;
+            }
+            if (state.compareAndSet(current, current.append(messages, maxMessages))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 封存日志并返回最终快照
+     */
+    Snapshot seal() {
+        while (true) {
+            Snapshot current = state.get();
+            if (current.sealed || state.compareAndSet(current, current.sealed())) {
+                return state.get();
+            }
+        }
+    }
+
+    /**
+     * 估算消息占用的字节数：固定开销加上文本长度（UTF-16每字符2字节）
+     */
+    static long weigh(Message message) {
+        long bytes = MESSAGE_OVERHEAD_BYTES;
+        if (message.getContent() != null) {
+            for (MessageContent content : message.getContent()) {
+                if (content.getText() != null) {
+                    bytes += 2L * content.getText().length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 日志的不可变快照
+     */
+    static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(NO_CHUNKS, NO_MESSAGES, 0, 0, 0, false);
+
+        private final Message[][] chunks;
+        private final Message[] tail;
+        // 第一条有效消息的位置，之前的消息已被裁剪
+        private final int start;
+        // 已裁剪的消息总数，即第一条有效消息在会话中的位置
+        private final long dropped;
+        private final long bytes;
+        private final boolean sealed;
+
+        private Snapshot(Message[][] chunks, Message[] tail, int start, long dropped, long bytes, boolean sealed) {
+            this.chunks = chunks;
+            this.tail = tail;
+            this.start = start;
+            this.dropped = dropped;
+            this.bytes = bytes;
+            this.sealed = sealed;
+        }
+
+        int size() {
+            return chunks.length * CHUNK_SIZE + tail.length - start;
+        }
+
+        Message get(int index) {
+            int position = start + index;
+            int chunk = position / CHUNK_SIZE;
+            if (chunk < chunks.length) {
+                return chunks[chunk][position % CHUNK_SIZE];
+            }
+            return tail[position - chunks.length * CHUNK_SIZE];
+        }
+
+        /**
+         * 第一条有效消息在会话中的位置，裁剪旧消息后位置保持不变，可作为读取游标
+         */
+        long firstPosition() {
+            return dropped;
+        }
+
+        /**
+         * 消息的估算字节数之和
+         */
+        long bytes() {
+            return bytes;
+        }
+
+        /**
+         * 最近lastN条消息的列表视图，创建为O(1)
+         *
+         * @param lastN 负数表示全部
+         */
+        List<Message> view(int lastN) {
+            int size = size();
+            int from = lastN >= 0 ? Math.max(0, size - lastN) : 0;
+            return new SnapshotList(this, from, size);
+        }
+
+        private Snapshot sealed() {
+            return new Snapshot(chunks, tail, start, dropped, bytes, true);
+        }
+
+        private Snapshot append(List<Message> messages, int maxMessages) {
+            Message[][] newChunks = chunks;
+            Message[] newTail = tail;
+            long newBytes = bytes;
+            int remaining = messages.size();
+            int offset = 0;
+            while (remaining > 0) {
+                if (newTail.length == CHUNK_SIZE) {
+                    newChunks = Arrays.copyOf(newChunks, newChunks.length + 1);
+                    newChunks[newChunks.length - 1] = newTail;
+                    newTail = NO_MESSAGES;
+                }
+                int count = Math.min(remaining, CHUNK_SIZE - newTail.length);
+                Message[] filled = Arrays.copyOf(newTail, newTail.length + count);
+                for (int i = 0; i < count; i++) {
+                    Message message = messages.get(offset + i);
+                    filled[newTail.length + i] = message;
+                    newBytes += weigh(message);
+                }
+                newTail = filled;
+                offset += count;
+                remaining -= count;
+            }
+            Snapshot appended = new Snapshot(newChunks, newTail, start, dropped, newBytes, false);
+            int overflow = appended.size() - maxMessages;
+            return maxMessages > 0 && overflow > 0 ? appended.dropFirst(overflow) : appended;
+        }
+
+        /**
+         * 丢弃最早的count条消息，完全丢弃的块从主干中释放
+         */
+        private Snapshot dropFirst(int count) {
+            long newBytes = bytes;
+            for (int i = 0; i < count; i++) {
+                newBytes -= weigh(get(i));
+            }
+            int newStart = start + count;
+            int released = Math.min(newStart / CHUNK_SIZE, chunks.length);
+            Message[][] newChunks = released > 0 ? Arrays.copyOfRange(chunks, released, chunks.length) : chunks;
+            return new Snapshot(newChunks, tail, newStart - released * CHUNK_SIZE, dropped + count, newBytes, false);
+        }
+    }
+
+    /**
+     * 快照上的列表视图
+     * 读取直接访问快照；调用方修改列表时先复制为独立的ArrayList，不影响快照
+     */
+    static final class SnapshotList extends AbstractList<Message> implements RandomAccess {
+
+        private final Snapshot snapshot;
+        private final int from;
+        private final int to;
+        private List<Message> copy;
+
+        private SnapshotList(Snapshot snapshot, int from, int to) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (copy != null) {
+                return copy.get(index);
+            }
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return snapshot.get(from + index);
+        }
+
+        @Override
+        public int size() {
+            return copy != null ? copy.size() : to - from;
+        }
+
+        @Override
+        public Message set(int index, Message element) {
+            return materialize().set(index, element);
+        }
+
+        @Override
+        public void add(int index, Message element) {
+            materialize().add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public Message remove(int index) {
+            Message removed = materialize().remove(index);
+            modCount++;
+            return removed;
+        }
+
+        /**
+         * 视图是否仍直接引用快照（未被修改）
+         */
+        boolean isSnapshotView() {
+            return copy == null;
+        }
+
+        private List<Message> materialize() {
+            if (copy == null) {
+                List<Message> messages = new ArrayList<>(to - from + 8);
+                for (int i = from; i < to; i++) {
+                    messages.add(snapshot.get(i));
+                }
+                copy = messages;
+            }
+            return copy;
+        }
+    }
+}
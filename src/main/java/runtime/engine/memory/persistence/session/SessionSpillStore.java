@@ -0,0 +1,117 @@
+package runtime.engine.memory.persistence.session;
+
+import runtime.engine.memory.codec.BinaryMessageCodec;
+import runtime.engine.memory.codec.MessageCodec;
+import runtime.engine.memory.model.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.function.BiConsumer;
+
+/**
+ * 会话溢出存储
+ * 内存会话被淘汰时写入本地目录，再次访问时读回内存并删除文件。
+ * 文件布局为 {目录}/{用户ID}/{会话ID}.session，ID使用URL安全的Base64编码，内容为二进制编码的会话。
+ * 溢出为尽力而为：读写失败只记录日志，相当于会话被直接淘汰
+ */
+class SessionSpillStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionSpillStore.class);
+    private static final String SUFFIX = ".session";
+
+    private final Path directory;
+    private final MessageCodec codec = new BinaryMessageCodec(512);
+
+    SessionSpillStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create session spill directory " + directory, e);
+        }
+    }
+
+    /**
+     * 写入会话，先写临时文件再原子替换，避免读到写了一半的文件
+     */
+    void write(Session session) {
+        Path file = file(session.getUserId(), session.getId());
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, codec.encodeSession(session).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("会话溢出写入磁盘失败，会话: {}, 用户: {}", session.getId(), session.getUserId(), e);
+        }
+    }
+
+    /**
+     * 读取并删除会话文件，文件不存在或无法读取时返回null
+     */
+    Session take(String userId, String sessionId) {
+        Path file = file(userId, sessionId);
+        try {
+            Session session = codec.decodeSession(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            Files.deleteIfExists(file);
+            return session;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("读取溢出会话失败，会话: {}, 用户: {}", sessionId, userId, e);
+            return null;
+        }
+    }
+
+    boolean contains(String userId, String sessionId) {
+        return Files.exists(file(userId, sessionId));
+    }
+
+    void delete(String userId, String sessionId) {
+        try {
+            Files.deleteIfExists(file(userId, sessionId));
+        } catch (IOException e) {
+            logger.warn("删除溢出会话失败，会话: {}, 用户: {}", sessionId, userId, e);
+        }
+    }
+
+    /**
+     * 遍历目录中已有的全部会话，参数依次为用户ID和会话ID
+     */
+    void forEachSession(BiConsumer<String, String> consumer) {
+        try (DirectoryStream<Path> users = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path userDirectory : users) {
+                String userId = decode(userDirectory.getFileName().toString());
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(userDirectory, "*" + SUFFIX)) {
+                    for (Path file : files) {
+                        String name = file.getFileName().toString();
+                        consumer.accept(userId, decode(name.substring(0, name.length() - SUFFIX.length())));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("扫描会话溢出目录失败，目录: {}", directory, e);
+        }
+    }
+
+    private Path file(String userId, String sessionId) {
+        return directory.resolve(encode(userId)).resolve(encode(sessionId) + SUFFIX);
+    }
+
+    private static String encode(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String name) {
+        return new String(Base64.getUrlDecoder().decode(name), StandardCharsets.UTF_8);
+    }
+}
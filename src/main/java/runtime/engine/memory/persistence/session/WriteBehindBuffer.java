@@ -0,0 +1,207 @@
+package runtime.engine.memory.persistence.session;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 写后缓冲
+ * 合并多个请求提交的记录，攒够一批或到达刷新间隔时由后台线程整批写出，提交方不等待写入完成。
+ * 缓冲区满时提交方阻塞，对上游形成背压。批次按提交顺序写出；整批写出失败时按键（如会话ID）拆分后分别重试，
+ * 某个键的记录仍写出失败时逐条重试，只丢弃逐条写出仍失败的记录并计入丢弃数，不影响同一批中其他键的记录。
+ * 写出函数须整批原子提交（失败时不留下部分写入），否则重试会重复写入已提交的部分。
+ * 每个键登记了尚未写出的记录数，读取方只在所读的键有未写出记录时才需要等待写出
+ */
+final class WriteBehindBuffer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int maxBatch;
+    private final Consumer<List<T>> writer;
+    private final Function<T, ?> keyFunction;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // 每个键已提交但尚未写出（或丢弃）的记录数，没有未写出记录的键不在表中
+    private final Map<Object, Integer> pending = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param name 缓冲名称，用于线程名和日志
+     * @param maxBatch 每批写出的最大记录数，缓冲中达到该数量时立即触发写出
+     * @param flushIntervalMillis 定时写出间隔
+     * @param capacity 缓冲容量
+     * @param writer 批量写出函数
+     * @param keyFunction 记录的分组键，写出失败时按键隔离，读取前按键写出
+     */
+    WriteBehindBuffer(String name, int maxBatch, long flushIntervalMillis, int capacity, Consumer<List<T>> writer,
+                      Function<T, ?> keyFunction) {
+        this.name = name;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.maxBatch, capacity));
+        this.writer = writer;
+        this.keyFunction = keyFunction;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, flushIntervalMillis);
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按顺序提交记录，缓冲区满时阻塞直到后台写出腾出空间
+     */
+    void submitAll(List<T> items) {
+        for (T item : items) {
+            // 先登记再入队，提交返回后读取方一定能看到该键有未写出的记录
+            pending.merge(keyFunction.apply(item), 1, Integer::sum);
+            if (!queue.offer(item)) {
+                requestFlush();
+                try {
+                    queue.put(item);
+                } catch (InterruptedException e) {
+                    release(List.of(item));
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for write-behind buffer " + name, e);
+                }
+            }
+        }
+        if (queue.size() >= maxBatch) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * 在调用线程中写出当前缓冲的全部记录，后台正在写出时等待其完成；读取前调用以保证能读到已提交的写入
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            List<T> batch = new ArrayList<>(maxBatch);
+            while (queue.drainTo(batch, maxBatch) > 0) {
+                write(batch);
+                batch = new ArrayList<>(maxBatch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 键有未写出的记录时在调用线程中写出缓冲，否则立即返回；读取单个键的数据前调用，不等待其他键的写入
+     */
+    void flush(Object key) {
+        if (pending.containsKey(key)) {
+            flush();
+        }
+    }
+
+    /**
+     * 写出失败后丢弃的记录数
+     */
+    long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 注册丢弃记录数指标
+     */
+    void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("memory.write_behind.dropped", dropped, AtomicLong::get)
+            .tag("buffer", name)
+            .description("写后缓冲写出失败后丢弃的记录数")
+            .register(registry);
+    }
+
+    /**
+     * 停止后台线程并写出剩余记录
+     */
+    void close() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true) && !scheduler.isShutdown()) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    private void write(List<T> batch) {
+        try {
+            writer.accept(batch);
+        } catch (RuntimeException e) {
+            logger.warn("写后缓冲{}整批写出{}条记录失败，按键拆分后重试", name, batch.size(), e);
+            for (List<T> group : groupByKey(batch)) {
+                writeGroup(group);
+            }
+        } finally {
+            release(batch);
+        }
+    }
+
+    /**
+     * 写出同一个键的记录，失败时逐条重试，只丢弃逐条写出仍失败的记录
+     */
+    private void writeGroup(List<T> group) {
+        try {
+            writer.accept(group);
+            return;
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                drop(group, e);
+                return;
+            }
+            logger.warn("写后缓冲{}写出键{}的{}条记录失败，逐条重试", name, keyFunction.apply(group.get(0)), group.size(), e);
+        }
+        for (T item : group) {
+            try {
+                writer.accept(List.of(item));
+            } catch (RuntimeException e) {
+                drop(List.of(item), e);
+            }
+        }
+    }
+
+    private void drop(List<T> items, RuntimeException error) {
+        dropped.addAndGet(items.size());
+        logger.error("写后缓冲{}丢弃键{}的{}条记录", name, keyFunction.apply(items.get(0)), items.size(), error);
+    }
+
+    private Collection<List<T>> groupByKey(List<T> batch) {
+        Map<Object, List<T>> groups = new LinkedHashMap<>();
+        for (T item : batch) {
+            groups.computeIfAbsent(keyFunction.apply(item), key -> new ArrayList<>()).add(item);
+        }
+        return groups.values();
+    }
+
+    private void release(List<T> items) {
+        for (T item : items) {
+            pending.computeIfPresent(keyFunction.apply(item), (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package runtime.engine.memory.retrieval;
+
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.MemoryRecordPage;
+import runtime.engine.memory.model.MemoryStats;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.service.MemoryService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 关键词与向量混合检索的内存服务
+ * 写入同时落到关键词检索和向量检索两个后端，列表等读取以向量后端为准；
+ * 检索时两路分别在各自的线程池中并行执行，每路受独立的时间预算约束，超时或失败的一路按空结果处理，
+ * 其余结果按倒数排名融合。检索方式可通过过滤器 retrieval 显式指定，或按过滤器 agent 查找智能体级配置
+ * 关键词后端为进程内存储时，某个用户的关键词索引在首次检索时才从向量后端按用户预热，
+ * 预热过的用户数有上限，淘汰的用户从关键词后端清除，下次检索时重新预热
+ */
+public class HybridMemoryService implements MemoryService {
+
+    /**
+     * 过滤器中显式指定检索方式的键
+     */
+    public static final String FILTER_RETRIEVAL = "retrieval";
+
+    /**
+     * 过滤器中指定智能体名称的键
+     */
+    public static final String FILTER_AGENT = "agent";
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridMemoryService.class);
+    private static final int LEG_QUEUE_CAPACITY = 64;
+    private static final int WARMUP_BATCH_SIZE = 500;
+
+    private final MemoryService lexicalService;
+    private final MemoryService vectorService;
+    private final ExecutorService lexicalExecutor;
+    private final ExecutorService vectorExecutor;
+
+    private RetrievalMode defaultMode = RetrievalMode.HYBRID;
+    private Map<String, RetrievalMode> agentModes = Collections.emptyMap();
+    private long legTimeoutMillis = 300;
+    private int rrfK = ReciprocalRankFusion.DEFAULT_K;
+    private int candidateFactor = 3;
+    private int defaultTopK = 5;
+    private Cache<String, CompletableFuture<Void>> warmedUsers;
+
+    /**
+     * @param lexicalService 关键词检索后端
+     * @param vectorService 向量检索后端，同时作为记忆的主存储
+     * @param threadsPerLeg 每路检索的线程数
+     */
+    public HybridMemoryService(MemoryService lexicalService, MemoryService vectorService, int threadsPerLeg) {
+        this.lexicalService = lexicalService;
+        this.vectorService = vectorService;
+        this.lexicalExecutor = newLegExecutor("retrieval-lexical", threadsPerLeg);
+        this.vectorExecutor = newLegExecutor("retrieval-vector", threadsPerLeg);
+    }
+
+    @Override
+    public CompletableFuture<Void> start() {
+        return CompletableFuture.allOf(lexicalService.start(), vectorService.start());
+    }
+
+    @Override
+    public CompletableFuture<Void> stop() {
+        return CompletableFuture.allOf(lexicalService.stop(), vectorService.stop())
+                .whenComplete((ignored, error) -> {
+                    lexicalExecutor.shutdown();
+                    vectorExecutor.shutdown();
+                });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> health() {
+        return lexicalService.health().thenCombine(vectorService.health(), Boolean::logicalAnd);
+    }
+
+    @Override
+    public CompletableFuture<Void> addMemory(String userId, List<Message> messages, Optional<String> sessionId) {
+        CompletableFuture<Void> vector = vectorService.addMemory(userId, messages, sessionId);
+        if (warmedUsers == null) {
+            return CompletableFuture.allOf(lexicalService.addMemory(userId, messages, sessionId), vector);
+        }
+        CompletableFuture<Void> warmup = warmedUsers.getIfPresent(userId);
+        if (warmup == null) {
+            // 尚未预热的用户只写向量后端，首次检索时随其余记忆一起预热到关键词后端
+            return vector;
+        }
+        return CompletableFuture.allOf(warmup.thenCompose(ignored -> lexicalService.addMemory(userId, messages, sessionId)), vector);
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> searchMemory(String userId, List<Message> messages, Optional<Map<String, Object>> filters) {
+        RetrievalMode mode = resolveMode(filters);
+        if (mode == RetrievalMode.LEXICAL) {
+            return searchLexical(userId, messages, filters);
+        }
+        if (mode == RetrievalMode.VECTOR) {
+            return vectorService.searchMemory(userId, messages, filters);
+        }
+
+        int topK = defaultTopK;
+        if (filters.isPresent() && filters.get().get("top_k") instanceof Integer) {
+            topK = (Integer) filters.get().get("top_k");
+        }
+        // 每路多取若干候选，融合后再截断到top_k
+        Map<String, Object> legFilters = new HashMap<>(filters.orElse(Collections.emptyMap()));
+        legFilters.put("top_k", topK * candidateFactor);
+        Optional<Map<String, Object>> legFilterOption = Optional.of(legFilters);
+
+        CompletableFuture<List<Message>> lexical = runLeg("lexical", lexicalExecutor,
+                () -> searchLexical(userId, messages, legFilterOption));
+        CompletableFuture<List<Message>> vector = runLeg("vector", vectorExecutor,
+                () -> vectorService.searchMemory(userId, messages, legFilterOption));
+        int limit = topK;
+        return lexical.thenCombine(vector, (lexicalHits, vectorHits) ->
+                ReciprocalRankFusion.fuse(List.of(lexicalHits, vectorHits), HybridMemoryService::fusionKey, rrfK, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> listMemory(String userId, Optional<Map<String, Object>> filters) {
+        return vectorService.listMemory(userId, filters);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMemory(String userId, Optional<String> sessionId) {
+        return CompletableFuture.allOf(
+                lexicalService.deleteMemory(userId, sessionId),
+                vectorService.deleteMemory(userId, sessionId));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllUsers() {
+        return vectorService.getAllUsers();
+    }
+
+    @Override
+    public Flux<String> streamAllUsers() {
+        return vectorService.streamAllUsers();
+    }
+
+    @Override
+    public CompletableFuture<MemoryRecordPage> listMemoryRecords(Optional<String> userId, Optional<String> cursor, int limit) {
+        return vectorService.listMemoryRecords(userId, cursor, limit);
+    }
+
+    @Override
+    public Flux<MemoryRecord> streamMemories(Optional<String> userId) {
+        return vectorService.streamMemories(userId);
+    }
+
+    @Override
+    public CompletableFuture<MemoryStats> getMemoryStats(String userId) {
+        return vectorService.getMemoryStats(userId);
+    }
+
+    /**
+     * 关键词检索，用户的关键词索引尚未预热时先预热；预热计入该路的时间预算，超时的一路本次按空结果融合
+     */
+    private CompletableFuture<List<Message>> searchLexical(String userId, List<Message> messages,
+                                                          Optional<Map<String, Object>> filters) {
+        if (warmedUsers == null) {
+            return lexicalService.searchMemory(userId, messages, filters);
+        }
+        return warmedUsers.get(userId, this::warmUser)
+                .thenCompose(ignored -> lexicalService.searchMemory(userId, messages, filters));
+    }
+
+    /**
+     * 在独立线程池中发起一路检索，超出时间预算、执行失败或线程池已满时返回空结果
+     * 线程池只负责发起调用，后端返回的异步结果直接参与组合，不占用线程等待，超时后也不会堆积在队列中
+     */
+    private CompletableFuture<List<Message>> runLeg(String name, ExecutorService executor,
+                                                    Supplier<CompletableFuture<List<Message>>> search) {
+        CompletableFuture<List<Message>> future;
+        try {
+            future = CompletableFuture.supplyAsync(search, executor).thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            logger.warn("{}检索线程池已满，跳过该路检索", name);
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return future
+                .orTimeout(legTimeoutMillis, TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    logger.warn("{}检索未在{}ms内完成或执行失败，按空结果参与融合: {}", name, legTimeoutMillis, error.toString());
+                    return Collections.emptyList();
+                });
+    }
+
+    private RetrievalMode resolveMode(Optional<Map<String, Object>> filters) {
+        if (filters.isEmpty()) {
+            return defaultMode;
+        }
+        Object explicit = filters.get().get(FILTER_RETRIEVAL);
+        if (explicit != null) {
+            return RetrievalMode.fromName(explicit.toString(), defaultMode);
+        }
+        Object agent = filters.get().get(FILTER_AGENT);
+        if (agent != null) {
+            return agentModes.getOrDefault(agent.toString(), defaultMode);
+        }
+        return defaultMode;
+    }
+
+    /**
+     * 用向量后端中该用户的记忆预热关键词索引，按页读取并按会话写回
+     * 预热失败时清除已写入的部分并移出预热记录，下次检索时重试
+     */
+    private CompletableFuture<Void> warmUser(String userId) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicLong restored = new AtomicLong();
+        vectorService.streamMemories(Optional.of(userId))
+                // 同一会话的连续记忆作为一批写入，保留原有的会话归属
+                .windowUntilChanged(record -> String.valueOf(record.getSessionId()))
+                .concatMap(window -> window.buffer(WARMUP_BATCH_SIZE))
+                .concatMap(batch -> Mono.fromFuture(() -> restoreBatch(batch))
+                        .doOnSuccess(ignored -> restored.addAndGet(batch.size())))
+                .subscribe(
+                        ignored -> { },
+                        error -> {
+                            logger.warn("用户{}的关键词索引预热失败，已恢复{}条记忆", userId, restored.get(), error);
+                            warmedUsers.invalidate(userId);
+                            lexicalService.deleteMemory(userId, Optional.empty())
+                                    .whenComplete((ignored, deleteError) -> done.complete(null));
+                        },
+                        () -> {
+                            logger.debug("用户{}的关键词索引预热完成，共恢复{}条记忆", userId, restored.get());
+                            done.complete(null);
+                        });
+        return done;
+    }
+
+    private CompletableFuture<Void> restoreBatch(List<MemoryRecord> batch) {
+        MemoryRecord first = batch.get(0);
+        List<Message> memories = new ArrayList<>(batch.size());
+        // 记忆按创建时间倒序读出，按时间顺序写回
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            memories.add(batch.get(i).getMessage());
+        }
+        return lexicalService.addMemory(first.getUserId(), memories, Optional.ofNullable(first.getSessionId()));
+    }
+
+    /**
+     * 两路后端返回的是各自反序列化的消息对象，按类型和文本内容识别同一条记忆
+     */
+    static String fusionKey(Message message) {
+        StringBuilder key = new StringBuilder().append(message.getType());
+        if (message.getContent() != null) {
+            for (MessageContent content : message.getContent()) {
+                key.append('\u0000').append(content.getType()).append('\u0000').append(content.getText());
+            }
+        }
+        return key.toString();
+    }
+
+    private static ExecutorService newLegExecutor(String namePrefix, int threads) {
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        // 队列满时直接拒绝，由runLeg跳过该路，避免检索排队拖慢整轮对话
+        return new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(LEG_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 设置默认检索方式
+     */
+    public void setDefaultMode(RetrievalMode defaultMode) {
+        this.defaultMode = defaultMode;
+    }
+
+    /**
+     * 设置按智能体名称指定的检索方式
+     */
+    public void setAgentModes(Map<String, RetrievalMode> agentModes) {
+        this.agentModes = agentModes != null ? agentModes : Collections.emptyMap();
+    }
+
+    /**
+     * 设置每路检索的时间预算（毫秒）
+     */
+    public void setLegTimeoutMillis(long legTimeoutMillis) {
+        this.legTimeoutMillis = legTimeoutMillis;
+    }
+
+    /**
+     * 设置倒数排名融合的平滑常数
+     */
+    public void setRrfK(int rrfK) {
+        this.rrfK = rrfK;
+    }
+
+    /**
+     * 设置每路检索的候选数相对top_k的倍数
+     */
+    public void setCandidateFactor(int candidateFactor) {
+        this.candidateFactor = Math.max(1, candidateFactor);
+    }
+
+    /**
+     * 设置未指定top_k时的返回数量
+     */
+    public void setDefaultTopK(int defaultTopK) {
+        this.defaultTopK = defaultTopK;
+    }
+
+    /**
+     * 启用按用户预热关键词索引，关键词后端为进程内存储时使用
+     * 
+     * @param maxWarmUsers 关键词后端中保留的最大用户数，超出时淘汰的用户从关键词后端清除
+     */
+    public void setLexicalWarmup(long maxWarmUsers) {
+        this.warmedUsers = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxWarmUsers))
+                .evictionListener((String userId, CompletableFuture<Void> warmup, RemovalCause cause) ->
+                        lexicalService.deleteMemory(userId, Optional.empty()))
+                .build();
+    }
+}
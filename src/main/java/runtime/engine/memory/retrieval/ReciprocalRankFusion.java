@@ -0,0 +1,69 @@
+package runtime.engine.memory.retrieval;
+
+import runtime.engine.memory.index.ScoreHeap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 倒数排名融合（Reciprocal Rank Fusion）
+ * 每个结果的融合得分为其在各排序列表中 1 / (k + rank) 之和（rank从1开始），
+ * 只依赖名次而不依赖各路得分的量纲，适合合并BM25与余弦相似度这类不可直接比较的得分
+ */
+public final class ReciprocalRankFusion {
+
+    /**
+     * 常用的平滑常数
+     */
+    public static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    /**
+     * 融合多路排序结果
+     *
+     * @param rankings 各路结果，每路按相关性降序排列
+     * @param keyFunction 结果的去重键，不同路中键相同的结果视为同一条
+     * @param k 平滑常数
+     * @param topK 返回数量
+     * @return 按融合得分降序排列的结果
+     */
+    public static <T, K> List<T> fuse(List<List<T>> rankings, Function<T, K> keyFunction, int k, int topK) {
+        // 相同键的结果共用一个槽位，得分在槽位上累加
+        List<T> items = new ArrayList<>();
+        List<Double> scores = new ArrayList<>();
+        Map<K, Integer> slots = new HashMap<>();
+        for (List<T> ranking : rankings) {
+            if (ranking == null) {
+                continue;
+            }
+            for (int i = 0; i < ranking.size(); i++) {
+                T item = ranking.get(i);
+                K key = keyFunction.apply(item);
+                Integer slot = slots.get(key);
+                double score = 1.0 / (k + i + 1);
+                if (slot == null) {
+                    slots.put(key, items.size());
+                    items.add(item);
+                    scores.add(score);
+                } else {
+                    scores.set(slot, scores.get(slot) + score);
+                }
+            }
+        }
+
+        ScoreHeap heap = new ScoreHeap(Math.max(0, Math.min(topK, items.size())));
+        for (int slot = 0; slot < items.size(); slot++) {
+            heap.offer(scores.get(slot).floatValue(), slot);
+        }
+        List<T> fused = new ArrayList<>();
+        for (int slot : heap.drainSlots()) {
+            fused.add(items.get(slot));
+        }
+        return fused;
+    }
+}
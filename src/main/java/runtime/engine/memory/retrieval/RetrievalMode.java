@@ -0,0 +1,37 @@
+package runtime.engine.memory.retrieval;
+
+/**
+ * 记忆检索方式
+ */
+public enum RetrievalMode {
+
+    /**
+     * 仅关键词（BM25）检索
+     */
+    LEXICAL,
+
+    /**
+     * 仅向量检索
+     */
+    VECTOR,
+
+    /**
+     * 关键词与向量并行检索，按倒数排名融合
+     */
+    HYBRID;
+
+    /**
+     * 按名称解析检索方式，忽略大小写，无法识别时返回默认值
+     */
+    public static RetrievalMode fromName(String name, RetrievalMode defaultMode) {
+        if (name == null) {
+            return defaultMode;
+        }
+        for (RetrievalMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+}
@@ -1,5 +1,8 @@
 package runtime.engine.memory.service;
 
+import runtime.engine.memory.index.VectorMath;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -16,6 +19,39 @@ public interface EmbeddingService {
      */
     CompletableFuture<List<Double>> embedText(String text);
     
+    /**
+     * 将文本转换为float[]形式的向量嵌入，避免装箱开销
+     * 默认基于embedText转换，实现类可直接生成原始数组
+     * 
+     * @param text 输入文本
+     * @return 向量嵌入
+     */
+    default CompletableFuture<float[]> embedVector(String text) {
+        return embedText(text).thenApply(VectorMath::toFloatArray);
+    }
+    
+    /**
+     * 批量将文本转换为向量嵌入，结果顺序与输入一致
+     * 默认逐条调用embedVector，实现类应覆盖为单次批量计算或单次远程请求
+     * 
+     * @param texts 输入文本列表
+     * @return 向量嵌入列表
+     */
+    default CompletableFuture<List<float[]>> embedTexts(List<String> texts) {
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            futures.add(embedVector(text));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(ignored -> {
+                List<float[]> vectors = new ArrayList<>(futures.size());
+                for (CompletableFuture<float[]> future : futures) {
+                    vectors.add(future.join());
+                }
+                return vectors;
+            });
+    }
+    
     /**
      * 计算两个向量之间的余弦相似度
      * 
@@ -40,4 +76,19 @@ public interface EmbeddingService {
      * @return 向量维度
      */
     int getEmbeddingDimension();
+    
+    /**
+     * 记录一条由缓存直接返回嵌入、未经本服务计算的文本
+     * 基于语料统计的实现（如TF-IDF）据此更新统计，使统计与缓存是否命中无关；无状态的实现无需覆盖
+     * 
+     * @param text 输入文本
+     */
+    default void recordCachedText(String text) {
+    }
+    
+    /**
+     * 释放服务持有的资源（如线程池），由Spring在容器关闭时调用
+     */
+    default void shutdown() {
+    }
 }
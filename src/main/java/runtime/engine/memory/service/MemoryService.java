@@ -1,8 +1,14 @@
 package runtime.engine.memory.service;
 
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.MemoryRecordPage;
+import runtime.engine.memory.model.MemoryStats;
 import runtime.engine.memory.model.Message;
 import runtime.engine.shared.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -61,4 +67,84 @@ public interface MemoryService extends Service {
      * @return CompletableFuture<List<String>> 异步用户列表结果
      */
     CompletableFuture<List<String>> getAllUsers();
+    
+    /**
+     * 流式返回所有用户ID，供管理接口逐个处理用户而不必一次加载完整列表
+     * 默认实现基于{@link #getAllUsers()}，存储支持游标遍历时应覆盖此方法
+     * 
+     * @return Flux<String> 用户ID流
+     */
+    default Flux<String> streamAllUsers() {
+        return Mono.defer(() -> Mono.fromFuture(getAllUsers())).flatMapIterable(users -> users);
+    }
+    
+    /**
+     * 按游标分页列出记忆条目，按创建时间倒序排列
+     * 默认实现以绝对偏移量作为游标，前后两次请求的limit不同也不会跳过或重复记录：
+     * 指定用户时基于{@link #listMemory}的页码分页，偏移量不是limit的整数倍时读取到偏移量所在位置后再截取，
+     * 未指定用户时跳过所有用户记忆流的前若干条；
+     * 支持按(创建时间, ID)定位的存储应覆盖此方法，使每页耗时与页码无关
+     * 
+     * @param userId 用户ID，为空时列出所有用户的记忆
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param limit 每页条数
+     * @return CompletableFuture<MemoryRecordPage> 异步分页结果
+     */
+    default CompletableFuture<MemoryRecordPage> listMemoryRecords(Optional<String> userId, Optional<String> cursor, int limit) {
+        int pageSize = Math.max(1, limit);
+        int offset = cursor.map(Integer::parseInt).orElse(0);
+        CompletableFuture<List<MemoryRecord>> records;
+        if (userId.isPresent()) {
+            String user = userId.get();
+            // 偏移量与页大小对齐时直接取对应页，否则从第一条读到偏移量之后一页再截取
+            boolean aligned = offset % pageSize == 0;
+            Map<String, Object> filters = aligned
+                ? Map.of("page_num", offset / pageSize + 1, "page_size", pageSize)
+                : Map.of("page_num", 1, "page_size", offset + pageSize);
+            int skip = aligned ? 0 : offset;
+            records = listMemory(user, Optional.of(filters)).thenApply(messages -> {
+                List<MemoryRecord> page = new ArrayList<>(pageSize);
+                for (Message message : messages.subList(Math.min(skip, messages.size()), messages.size())) {
+                    page.add(new MemoryRecord(null, user, null, message, 0));
+                }
+                return page;
+            });
+        } else {
+            records = streamMemories(Optional.empty()).skip(offset).take(pageSize).collectList().toFuture();
+        }
+        return records.thenApply(page -> new MemoryRecordPage(page,
+                page.size() == pageSize ? String.valueOf(offset + pageSize) : null));
+    }
+    
+    /**
+     * 流式返回记忆条目，供导出等需要遍历全部数据的场景使用，按需拉取，不在内存中汇总
+     * 默认实现逐页调用{@link #listMemoryRecords}，未指定用户时按{@link #streamAllUsers()}逐个用户读取
+     * 
+     * @param userId 用户ID，为空时返回所有用户的记忆
+     * @return Flux<MemoryRecord> 记忆条目流
+     */
+    default Flux<MemoryRecord> streamMemories(Optional<String> userId) {
+        if (userId.isEmpty()) {
+            return streamAllUsers().concatMap(user -> streamMemories(Optional.of(user)));
+        }
+        int pageSize = 1000;
+        return Mono.defer(() -> Mono.fromFuture(listMemoryRecords(userId, Optional.empty(), pageSize)))
+                .expand(page -> page.getNextCursor() == null
+                        ? Mono.empty()
+                        : Mono.fromFuture(() -> listMemoryRecords(userId, Optional.of(page.getNextCursor()), pageSize)))
+                .concatMapIterable(MemoryRecordPage::getRecords);
+    }
+    
+    /**
+     * 获取用户的记忆统计
+     * 默认实现通过{@link #streamMemories}遍历用户全部记忆计数，维护了计数器的存储实现应覆盖此方法
+     * 
+     * @param userId 用户ID
+     * @return CompletableFuture<MemoryStats> 异步统计结果
+     */
+    default CompletableFuture<MemoryStats> getMemoryStats(String userId) {
+        return streamMemories(Optional.of(userId))
+                .reduce(MemoryStats.empty(), (stats, record) -> stats.add(record.getMessage().getType(), record.getTimestamp()))
+                .toFuture();
+    }
 }
@@ -1,10 +1,15 @@
 package runtime.engine.memory.service;
 
 import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
 import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
 import runtime.engine.shared.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -57,4 +62,72 @@ public interface SessionHistoryService extends Service {
      * @return CompletableFuture<Void> 异步追加结果
      */
     CompletableFuture<Void> appendMessage(Session session, List<Message> messages);
+    
+    /**
+     * 检索特定会话，只加载最近的若干条消息
+     * 消息通过{@link #getMessages}按{@link MessageWindow#last(int)}窗口读取，存储实现只需覆盖getMessages；
+     * 读取会话时需要创建会话的存储实现可覆盖此方法，但应同样委托getMessages读取消息
+     * 
+     * @param userId 用户标识符
+     * @param sessionId 要检索的会话标识符
+     * @param lastN 最多返回的最近消息数，负数表示全部
+     * @return CompletableFuture<Optional<Session>> 异步会话结果，消息按时间正序排列
+     */
+    default CompletableFuture<Optional<Session>> getSession(String userId, String sessionId, int lastN) {
+        if (lastN < 0) {
+            return getSession(userId, sessionId);
+        }
+        return getMessages(userId, sessionId, MessageWindow.last(lastN))
+                .thenApply(page -> Optional.of(new Session(sessionId, userId, new ArrayList<>(page.getMessages()))));
+    }
+    
+    /**
+     * 按窗口读取会话消息，只加载窗口内的部分历史
+     * 默认实现加载完整会话后在内存中截取，游标为消息位置；支持范围读取的存储实现应覆盖此方法。
+     * 会话不存在时返回空页
+     * 
+     * @param userId 用户标识符
+     * @param sessionId 会话标识符
+     * @param window 读取窗口：最近N条、游标之后的一页或令牌预算内的最近消息
+     * @return CompletableFuture<MessagePage> 异步读取结果，消息按时间正序排列
+     */
+    default CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+        return getSession(userId, sessionId).thenApply(session -> window.apply(
+                session.map(Session::getMessages).filter(Objects::nonNull).orElseGet(ArrayList::new), 0));
+    }
+    
+    /**
+     * 游标是否为会话内的消息序号，即每追加一条消息游标加一
+     * 为true时缓存层写穿追加的消息后可直接推算新的游标，之后的读取仍由缓存返回；
+     * 游标为全局ID等无法推算的存储返回false，默认实现返回false
+     * 
+     * @return boolean 追加n条消息后游标是否恰好增加n
+     */
+    default boolean sequentialCursors() {
+        return false;
+    }
+    
+    /**
+     * 获取用户的会话统计
+     * 列出的会话不包含消息，默认实现逐个读取会话的全部消息后计数，开销与消息总数成正比，
+     * 能直接计数的存储实现应覆盖此方法
+     * 
+     * @param userId 用户标识符
+     * @return CompletableFuture<SessionStats> 异步统计结果
+     */
+    default CompletableFuture<SessionStats> getSessionStats(String userId) {
+        return listSessions(userId).thenCompose(sessions -> {
+            List<CompletableFuture<MessagePage>> pages = new ArrayList<>(sessions.size());
+            for (Session session : sessions) {
+                pages.add(getMessages(userId, session.getId(), MessageWindow.all()));
+            }
+            return CompletableFuture.allOf(pages.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                long totalMessages = 0;
+                for (CompletableFuture<MessagePage> page : pages) {
+                    totalMessages += page.join().getMessages().size();
+                }
+                return new SessionStats(sessions.size(), totalMessages, 0);
+            });
+        });
+    }
 }
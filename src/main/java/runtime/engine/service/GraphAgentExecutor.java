@@ -56,7 +56,7 @@ public class GraphAgentExecutor implements AgentExecutor {
             // 准备/创建会话
             String sessionId = getSessionId(message);
             String userId = getUserId(message);
-            Session session = sessionHistoryService.getSession(userId, sessionId).join().orElse(sessionHistoryService.createSession(userId, java.util.Optional.of(sessionId)).join());
+            Session session = sessionHistoryService.getSession(userId, sessionId).join().orElseGet(() -> sessionHistoryService.createSession(userId, java.util.Optional.of(sessionId)).join());
 
             // 记录用户输入到会话与长期记忆
             runtime.engine.memory.model.Message userMsg = buildTextMessage(getTextFromMessageParts(message));
@@ -68,7 +68,7 @@ public class GraphAgentExecutor implements AgentExecutor {
             java.util.List<runtime.engine.memory.model.Message> retrieved = memoryService.searchMemory(
                     userId,
                     java.util.List.of(userMsg),
-                    java.util.Optional.of(java.util.Map.of("top_k", 5))
+                    java.util.Optional.of(java.util.Map.of("top_k", 5, "agent", ExecuteAgent.name()))
             ).join();
             String retrievedText = formatRetrievedText(retrieved);
             String finalInput = retrievedText.isEmpty() ? inputText : (retrievedText + "\n\n" + inputText);
@@ -0,0 +1,87 @@
+-- 记忆服务分区表变体
+-- 在schema.sql之后执行，把memories和session_messages改为按created_at的月份RANGE分区：
+-- 按时间查询和归档只访问相关分区，归档任务（memory.service.archive）移走冷数据后直接删除空分区，
+-- 热表索引的大小只与保留期内的数据量有关。已有数据的表会被重建，数据量大时请在低峰期执行
+--
+-- 分区表的限制：
+--   1. 主键必须包含分区列，主键改为(id, created_at)，id仍然自增且唯一
+--   2. 分区表不支持外键，session_messages到sessions的外键被删除；删除会话时服务会先删除其消息
+--   3. 初始分区按执行时的日期生成：前3个月到后3个月每月一个分区，更早的数据落入phistory分区；
+--      之后的月份由归档任务按partition-months-ahead预建，未预建时新数据落入pmax分区，仍可正常读写
+
+USE memory_db;
+
+-- 删除session_messages上的外键（名称由MySQL生成，需先查询）
+SET @fk_name = (
+    SELECT CONSTRAINT_NAME FROM information_schema.REFERENTIAL_CONSTRAINTS
+    WHERE CONSTRAINT_SCHEMA = DATABASE() AND TABLE_NAME = 'session_messages'
+    LIMIT 1
+);
+SET @ddl = IF(@fk_name IS NOT NULL,
+    CONCAT('ALTER TABLE session_messages DROP FOREIGN KEY ', @fk_name),
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 按执行时的日期生成初始分区定义，两张表共用
+SET SESSION group_concat_max_len = 65536;
+SET @first_month = DATE_SUB(CAST(DATE_FORMAT(CURDATE(), '%Y-%m-01') AS DATE), INTERVAL 3 MONTH);
+SET @partitions = (
+    WITH RECURSIVE months (m) AS (
+        SELECT CAST(@first_month AS DATE)
+        UNION ALL
+        SELECT m + INTERVAL 1 MONTH FROM months WHERE m < CAST(@first_month AS DATE) + INTERVAL 6 MONTH
+    )
+    SELECT CONCAT(
+        'PARTITION phistory VALUES LESS THAN (UNIX_TIMESTAMP(''', CAST(@first_month AS DATE), ' 00:00:00'')), ',
+        GROUP_CONCAT(CONCAT('PARTITION p', DATE_FORMAT(m, '%Y%m'),
+            ' VALUES LESS THAN (UNIX_TIMESTAMP(''', m + INTERVAL 1 MONTH, ' 00:00:00''))')
+            ORDER BY m SEPARATOR ', '),
+        ', PARTITION pmax VALUES LESS THAN MAXVALUE')
+    FROM months
+);
+
+-- 分区memories表
+SET @memories_partitioned = (
+    SELECT COUNT(*) FROM information_schema.PARTITIONS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'memories' AND PARTITION_NAME IS NOT NULL
+);
+SET @ddl = IF(@memories_partitioned = 0,
+    'ALTER TABLE memories
+        MODIFY created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        DROP PRIMARY KEY,
+        ADD PRIMARY KEY (id, created_at)',
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF(@memories_partitioned = 0,
+    CONCAT('ALTER TABLE memories PARTITION BY RANGE (UNIX_TIMESTAMP(created_at)) (', @partitions, ')'),
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 分区session_messages表
+SET @session_messages_partitioned = (
+    SELECT COUNT(*) FROM information_schema.PARTITIONS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'session_messages' AND PARTITION_NAME IS NOT NULL
+);
+SET @ddl = IF(@session_messages_partitioned = 0,
+    'ALTER TABLE session_messages
+        MODIFY created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        DROP PRIMARY KEY,
+        ADD PRIMARY KEY (id, created_at)',
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF(@session_messages_partitioned = 0,
+    CONCAT('ALTER TABLE session_messages PARTITION BY RANGE (UNIX_TIMESTAMP(created_at)) (', @partitions, ')'),
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -14,14 +14,53 @@ CREATE TABLE IF NOT EXISTS memories (
     content TEXT,
     metadata JSON,
     embedding JSON,
+    embedding_bin BLOB,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     INDEX idx_user_id (user_id),
     INDEX idx_session_id (session_id),
     INDEX idx_created_at (created_at),
-    INDEX idx_user_session (user_id, session_id)
+    INDEX idx_user_session (user_id, session_id),
+    INDEX idx_created_at_id (created_at, id),
+    INDEX idx_user_created_at_id (user_id, created_at, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 迁移：为已有的memories表增加二进制向量列（MySQL不支持ADD COLUMN IF NOT EXISTS，需先检查）
+-- 新写入的向量只保存在embedding_bin中，历史JSON格式的embedding仍可被读取
+SET @embedding_bin_exists = (
+    SELECT COUNT(*) FROM information_schema.COLUMNS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'memories' AND COLUMN_NAME = 'embedding_bin'
+);
+SET @ddl = IF(@embedding_bin_exists = 0,
+    'ALTER TABLE memories ADD COLUMN embedding_bin BLOB AFTER embedding',
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 迁移：为已有的memories表增加键集分页索引，按(created_at, id)游标翻页时无需扫描跳过的行
+SET @idx_created_at_id_exists = (
+    SELECT COUNT(*) FROM information_schema.STATISTICS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'memories' AND INDEX_NAME = 'idx_created_at_id'
+);
+SET @ddl = IF(@idx_created_at_id_exists = 0,
+    'ALTER TABLE memories ADD INDEX idx_created_at_id (created_at, id)',
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @idx_user_created_at_id_exists = (
+    SELECT COUNT(*) FROM information_schema.STATISTICS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'memories' AND INDEX_NAME = 'idx_user_created_at_id'
+);
+SET @ddl = IF(@idx_user_created_at_id_exists = 0,
+    'ALTER TABLE memories ADD INDEX idx_user_created_at_id (user_id, created_at, id)',
+    'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
 -- 创建会话表
 CREATE TABLE IF NOT EXISTS sessions (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -50,7 +89,110 @@ CREATE TABLE IF NOT EXISTS session_messages (
     FOREIGN KEY (session_id) REFERENCES sessions(session_id) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 创建记忆归档表，保存超过热数据保留期的记忆（memory.service.archive），结构与memories相同，保留原有ID
+-- 使用压缩行格式，需要innodb_file_per_table（MySQL 5.6起默认开启）
+CREATE TABLE IF NOT EXISTS memories_archive (
+    id BIGINT PRIMARY KEY,
+    user_id VARCHAR(255) NOT NULL,
+    session_id VARCHAR(255),
+    message_type ENUM('MESSAGE', 'SYSTEM', 'USER', 'ASSISTANT') NOT NULL,
+    content TEXT,
+    metadata JSON,
+    embedding JSON,
+    embedding_bin BLOB,
+    created_at TIMESTAMP NULL,
+    updated_at TIMESTAMP NULL,
+    INDEX idx_user_created_at_id (user_id, created_at, id),
+    INDEX idx_created_at_id (created_at, id),
+    INDEX idx_user_session (user_id, session_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8;
+
+-- 创建会话消息归档表，保存超过热数据保留期的会话消息，结构与session_messages相同，保留原有ID
+CREATE TABLE IF NOT EXISTS session_messages_archive (
+    id BIGINT PRIMARY KEY,
+    session_id VARCHAR(255) NOT NULL,
+    message_type ENUM('MESSAGE', 'SYSTEM', 'USER', 'ASSISTANT') NOT NULL,
+    content TEXT,
+    metadata JSON,
+    created_at TIMESTAMP NULL,
+    INDEX idx_session_id_id (session_id, id),
+    INDEX idx_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8;
+
+-- 创建用户记忆计数器表，随记忆写入增量维护
+CREATE TABLE IF NOT EXISTS user_memory_counters (
+    user_id VARCHAR(255) PRIMARY KEY,
+    total_memories BIGINT NOT NULL DEFAULT 0,
+    user_messages BIGINT NOT NULL DEFAULT 0,
+    assistant_messages BIGINT NOT NULL DEFAULT 0,
+    last_activity TIMESTAMP NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 创建会话消息计数器表，随会话消息写入增量维护
+CREATE TABLE IF NOT EXISTS session_counters (
+    session_id VARCHAR(255) PRIMARY KEY,
+    user_id VARCHAR(255) NOT NULL,
+    message_count BIGINT NOT NULL DEFAULT 0,
+    user_messages BIGINT NOT NULL DEFAULT 0,
+    assistant_messages BIGINT NOT NULL DEFAULT 0,
+    last_activity TIMESTAMP NULL,
+    INDEX idx_user_id (user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 创建用户会话计数器表，随会话创建和消息写入增量维护
+CREATE TABLE IF NOT EXISTS user_session_counters (
+    user_id VARCHAR(255) PRIMARY KEY,
+    total_sessions BIGINT NOT NULL DEFAULT 0,
+    total_messages BIGINT NOT NULL DEFAULT 0,
+    last_activity TIMESTAMP NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 迁移：按已有数据初始化计数器（重复执行时重新计算，数据量大时耗时较长）
+INSERT INTO user_memory_counters (user_id, total_memories, user_messages, assistant_messages, last_activity)
+SELECT user_id, COUNT(*), SUM(message_type = 'USER'), SUM(message_type = 'ASSISTANT'), MAX(created_at)
+FROM (
+    SELECT user_id, message_type, created_at FROM memories
+    UNION ALL
+    SELECT user_id, message_type, created_at FROM memories_archive
+) m
+GROUP BY user_id
+ON DUPLICATE KEY UPDATE
+    total_memories = VALUES(total_memories),
+    user_messages = VALUES(user_messages),
+    assistant_messages = VALUES(assistant_messages),
+    last_activity = VALUES(last_activity);
+
+INSERT INTO session_counters (session_id, user_id, message_count, user_messages, assistant_messages, last_activity)
+SELECT s.session_id, s.user_id, COUNT(sm.id),
+    COALESCE(SUM(sm.message_type = 'USER'), 0),
+    COALESCE(SUM(sm.message_type = 'ASSISTANT'), 0),
+    MAX(sm.created_at)
+FROM sessions s
+LEFT JOIN (
+    SELECT id, session_id, message_type, created_at FROM session_messages
+    UNION ALL
+    SELECT id, session_id, message_type, created_at FROM session_messages_archive
+) sm ON s.session_id = sm.session_id
+GROUP BY s.session_id, s.user_id
+ON DUPLICATE KEY UPDATE
+    message_count = VALUES(message_count),
+    user_messages = VALUES(user_messages),
+    assistant_messages = VALUES(assistant_messages),
+    last_activity = VALUES(last_activity);
+
+INSERT INTO user_session_counters (user_id, total_sessions, total_messages, last_activity)
+SELECT s.user_id, COUNT(*), COALESCE(SUM(c.message_count), 0), MAX(s.last_activity)
+FROM sessions s
+LEFT JOIN session_counters c ON s.session_id = c.session_id
+GROUP BY s.user_id
+ON DUPLICATE KEY UPDATE
+    total_sessions = VALUES(total_sessions),
+    total_messages = VALUES(total_messages),
+    last_activity = VALUES(last_activity);
+
 -- 创建用户统计视图
+-- 计数器表只在启用统计计数器（memory.service.stats.enabled）时维护，视图始终按明细表和归档表聚合
 CREATE OR REPLACE VIEW user_memory_stats AS
 SELECT 
     user_id,
@@ -59,7 +201,11 @@ SELECT
     COUNT(CASE WHEN message_type = 'ASSISTANT' THEN 1 END) as assistant_messages,
     COUNT(DISTINCT session_id) as total_sessions,
     MAX(created_at) as last_activity
-FROM memories 
+FROM (
+    SELECT user_id, session_id, message_type, created_at FROM memories
+    UNION ALL
+    SELECT user_id, session_id, message_type, created_at FROM memories_archive
+) m
 GROUP BY user_id;
 
 -- 创建会话统计视图
@@ -73,5 +219,9 @@ SELECT
     COUNT(CASE WHEN sm.message_type = 'USER' THEN 1 END) as user_messages,
     COUNT(CASE WHEN sm.message_type = 'ASSISTANT' THEN 1 END) as assistant_messages
 FROM sessions s
-LEFT JOIN session_messages sm ON s.session_id = sm.session_id
+LEFT JOIN (
+    SELECT id, session_id, message_type FROM session_messages
+    UNION ALL
+    SELECT id, session_id, message_type FROM session_messages_archive
+) sm ON s.session_id = sm.session_id
 GROUP BY s.user_id, s.session_id, s.created_at, s.last_activity;
@@ -0,0 +1,74 @@
+package runtime.engine.memory.codec;
+
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.model.Session;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MessageCodec测试类
+ */
+class MessageCodecTest {
+
+    @Test
+    void testBinaryRoundTripIsSmallerThanJson() {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("source", "web");
+        metadata.put("turn", 3);
+        metadata.put("id", 1L << 40);
+        metadata.put("score", 0.75);
+        metadata.put("final", true);
+        metadata.put("tags", List.of("a", "b"));
+        metadata.put("missing", null);
+        Message message = new Message(MessageType.USER,
+                List.of(new MessageContent("text", "你好，redis"), new MessageContent("image", null)), metadata);
+
+        MessageCodec binary = MessageCodec.forName("binary", 0);
+        MessageCodec json = MessageCodec.forName("json", 0);
+        String encoded = binary.encode(message);
+        Message decoded = binary.decode(encoded);
+
+        assertTrue(encoded.length() < json.encode(message).length());
+        assertEquals(MessageType.USER, decoded.getType());
+        assertEquals("你好，redis", decoded.getContent().get(0).getText());
+        assertNull(decoded.getContent().get(1).getText());
+        assertEquals(metadata, decoded.getMetadata());
+        assertEquals(json.encode(message), json.encode(decoded));
+    }
+
+    @Test
+    void testCodecsReadEachOthersPayloads() {
+        Message message = new Message(MessageType.ASSISTANT, List.of(new MessageContent("text", "hello")));
+        Session session = new Session("s1", "u1", new ArrayList<>(List.of(message, message)));
+        MessageCodec binary = MessageCodec.forName("BINARY", 0);
+        MessageCodec json = MessageCodec.forName("json", 0);
+
+        assertEquals("hello", binary.decode(json.encode(message)).getContent().get(0).getText());
+        assertEquals("hello", json.decode(binary.encode(message)).getContent().get(0).getText());
+        Session fromJson = binary.decodeSession(json.encodeSession(session));
+        Session fromBinary = json.decodeSession(binary.encodeSession(session));
+        for (Session decoded : List.of(fromJson, fromBinary)) {
+            assertEquals("s1", decoded.getId());
+            assertEquals("u1", decoded.getUserId());
+            assertEquals(2, decoded.getMessages().size());
+        }
+    }
+
+    @Test
+    void testLargePayloadIsCompressed() {
+        String text = "the quick brown fox jumps over the lazy dog ".repeat(200);
+        Message message = new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+
+        String compressed = new BinaryMessageCodec(512).encode(message);
+        String plain = new BinaryMessageCodec(0).encode(message);
+
+        assertTrue(compressed.length() * 4 < plain.length());
+        assertEquals(text, new BinaryMessageCodec(512).decode(compressed).getContent().get(0).getText());
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.READER.decodeSession(compressed));
+    }
+}
@@ -0,0 +1,200 @@
+package runtime.engine.memory.context;
+
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
+import runtime.engine.memory.persistence.session.InMemorySessionHistoryService;
+import runtime.engine.memory.service.SessionHistoryService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CachingSessionHistoryService测试类
+ */
+class CachingSessionHistoryServiceTest {
+
+    @Test
+    void testHotSessionIsServedWithoutStoreReads() {
+        CountingSessionHistoryService store = new CountingSessionHistoryService(true);
+        CachingSessionHistoryService cache = new CachingSessionHistoryService(store, new LocalSessionInvalidationBus(),
+            100, 0, Duration.ofMinutes(5));
+        Session session = new Session("s1", "u1", new ArrayList<>());
+        store.appendMessage(session, List.of(text("m0"), text("m1"))).join();
+
+        // 与Runner每轮的读写一致：按令牌预算读取历史，再追加本轮的消息
+        MessageWindow history = MessageWindow.tokenBudget(8000);
+        for (int turn = 2; turn < 6; turn += 2) {
+            List<String> loaded = texts(cache.getMessages("u1", "s1", history).join());
+            assertEquals("m" + (turn - 1), loaded.get(loaded.size() - 1));
+            cache.appendMessage(new Session("s1", "u1", new ArrayList<>()),
+                List.of(text("m" + turn), text("m" + (turn + 1)))).join();
+        }
+        MessagePage page = cache.getMessages("u1", "s1", history).join();
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5"), texts(page));
+        Session recent = cache.getSession("u1", "s1", 1).join().orElseThrow();
+        assertEquals("m5", recent.getMessages().get(0).getContent().get(0).getText());
+        assertEquals(1, store.reads.get());
+
+        // 推算的游标与存储一致，从游标继续读取不会跳过之后追加的消息
+        long cursor = store.getMessages("u1", "s1", MessageWindow.all()).join().getNextCursor();
+        assertEquals(cursor, page.getNextCursor());
+        cache.appendMessage(session, List.of(text("m6"))).join();
+        assertEquals(List.of("m6"), texts(cache.getMessages("u1", "s1", MessageWindow.after(cursor, 0)).join()));
+    }
+
+    @Test
+    void testUnknownCursorIsRefilledFromStoreAfterAppend() {
+        CountingSessionHistoryService store = new CountingSessionHistoryService(false);
+        CachingSessionHistoryService cache = new CachingSessionHistoryService(store, new LocalSessionInvalidationBus(),
+            100, 0, null);
+        Session session = new Session("s1", "u1", new ArrayList<>());
+        store.appendMessage(session, List.of(text("m0"))).join();
+        cache.getMessages("u1", "s1", MessageWindow.last(10)).join();
+        cache.appendMessage(session, List.of(text("m1"))).join();
+
+        // 游标无法推算时检索会话仍由缓存返回，第一次读取消息页读取存储并回填游标
+        assertEquals(2, cache.getSession("u1", "s1", 5).join().orElseThrow().getMessages().size());
+        assertEquals(1, store.reads.get());
+        MessagePage page = cache.getMessages("u1", "s1", MessageWindow.last(10)).join();
+        cache.getMessages("u1", "s1", MessageWindow.last(10)).join();
+        assertEquals(List.of("m0", "m1"), texts(page));
+        assertEquals(2, store.reads.get());
+    }
+
+    @Test
+    void testPartialTailFallsBackToStore() {
+        CountingSessionHistoryService store = new CountingSessionHistoryService(true);
+        CachingSessionHistoryService cache = new CachingSessionHistoryService(store, new LocalSessionInvalidationBus(),
+            100, 3, null);
+        Session session = new Session("s1", "u1", new ArrayList<>());
+        for (int i = 0; i < 10; i++) {
+            store.appendMessage(session, List.of(text("m" + i))).join();
+        }
+
+        MessagePage all = cache.getMessages("u1", "s1", MessageWindow.all()).join();
+        assertEquals(10, all.getMessages().size());
+        assertEquals(List.of("m8", "m9"), texts(cache.getMessages("u1", "s1", MessageWindow.last(2)).join()));
+        assertEquals(1, store.reads.get());
+
+        MessagePage last = cache.getMessages("u1", "s1", MessageWindow.last(5)).join();
+        assertEquals(List.of("m5", "m6", "m7", "m8", "m9"), texts(last));
+        assertTrue(last.hasMore());
+        assertEquals(2, store.reads.get());
+    }
+
+    @Test
+    void testWritesOnOtherNodeInvalidateCachedTail() {
+        CountingSessionHistoryService store = new CountingSessionHistoryService(true);
+        LocalSessionInvalidationBus bus = new LocalSessionInvalidationBus();
+        CachingSessionHistoryService nodeA = new CachingSessionHistoryService(store, bus, 100, 0, null);
+        CachingSessionHistoryService nodeB = new CachingSessionHistoryService(store, bus, 100, 0, null);
+        Session session = nodeA.createSession("u1", Optional.of("s1")).join();
+        nodeA.appendMessage(session, List.of(text("m0"))).join();
+
+        assertEquals(List.of("m0"), texts(nodeA.getMessages("u1", "s1", MessageWindow.last(10)).join()));
+        assertEquals(List.of("m0"), texts(nodeB.getMessages("u1", "s1", MessageWindow.last(10)).join()));
+
+        nodeB.appendMessage(new Session("s1", "u1", new ArrayList<>()), List.of(text("m1"))).join();
+        assertEquals(List.of("m0", "m1"), texts(nodeA.getMessages("u1", "s1", MessageWindow.last(10)).join()));
+
+        nodeA.deleteSession("u1", "s1").join();
+        assertTrue(nodeB.getMessages("u1", "s1", MessageWindow.last(10)).join().getMessages().isEmpty());
+    }
+
+    private static List<String> texts(MessagePage page) {
+        return page.getMessages().stream().map(m -> m.getContent().get(0).getText()).toList();
+    }
+
+    private static Message text(String text) {
+        return new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+    }
+
+    /**
+     * 统计读取次数的会话存储
+     */
+    private static class CountingSessionHistoryService implements SessionHistoryService {
+
+        private final InMemorySessionHistoryService delegate = new InMemorySessionHistoryService();
+        private final AtomicInteger reads = new AtomicInteger();
+        private final boolean sequentialCursors;
+
+        CountingSessionHistoryService(boolean sequentialCursors) {
+            this.sequentialCursors = sequentialCursors;
+        }
+
+        @Override
+        public CompletableFuture<Void> start() {
+            return delegate.start();
+        }
+
+        @Override
+        public CompletableFuture<Void> stop() {
+            return delegate.stop();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> health() {
+            return delegate.health();
+        }
+
+        @Override
+        public CompletableFuture<Session> createSession(String userId, Optional<String> sessionId) {
+            return delegate.createSession(userId, sessionId);
+        }
+
+        @Override
+        public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId) {
+            reads.incrementAndGet();
+            return delegate.getSession(userId, sessionId);
+        }
+
+        @Override
+        public CompletableFuture<Optional<Session>> getSession(String userId, String sessionId, int lastN) {
+            reads.incrementAndGet();
+            return delegate.getSession(userId, sessionId, lastN);
+        }
+
+        @Override
+        public CompletableFuture<MessagePage> getMessages(String userId, String sessionId, MessageWindow window) {
+            reads.incrementAndGet();
+            return delegate.getMessages(userId, sessionId, window);
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteSession(String userId, String sessionId) {
+            return delegate.deleteSession(userId, sessionId);
+        }
+
+        @Override
+        public CompletableFuture<List<Session>> listSessions(String userId) {
+            return delegate.listSessions(userId);
+        }
+
+        @Override
+        public CompletableFuture<Void> appendMessage(Session session, List<Message> messages) {
+            return delegate.appendMessage(session, messages);
+        }
+
+        @Override
+        public CompletableFuture<SessionStats> getSessionStats(String userId) {
+            return delegate.getSessionStats(userId);
+        }
+
+        @Override
+        public boolean sequentialCursors() {
+            return sequentialCursors;
+        }
+    }
+}
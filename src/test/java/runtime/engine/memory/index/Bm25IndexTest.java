@@ -0,0 +1,58 @@
+package runtime.engine.memory.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bm25Index测试类
+ */
+class Bm25IndexTest {
+
+    @Test
+    void testRanksByTermRarityAndFrequency() {
+        Bm25Index index = new Bm25Index();
+        index.add(1L, "the weather is nice today");
+        index.add(2L, "redis cluster redis sentinel");
+        index.add(3L, "the redis cache is warm");
+        index.add(4L, "the the the");
+
+        List<VectorHit> hits = index.search("Redis", 10);
+
+        assertEquals(2, hits.size());
+        assertEquals(2L, hits.get(0).getId());
+        assertEquals(3L, hits.get(1).getId());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+
+        // 常见词 the 出现在三篇文档中，包含稀有词 redis 的文档3排在仅含 the 的文档之前
+        List<VectorHit> mixed = index.search("the redis", 10);
+        assertEquals(4, mixed.size());
+        assertEquals(3L, mixed.get(0).getId());
+    }
+
+    @Test
+    void testRemoveDropsPostings() {
+        Bm25Index index = new Bm25Index();
+        index.add(1L, "alpha beta");
+        index.add(2L, "beta gamma");
+
+        assertTrue(index.remove(1L));
+        assertFalse(index.remove(1L));
+
+        assertTrue(index.search("alpha", 5).isEmpty());
+        assertEquals(1, index.size());
+        assertEquals(2L, index.search("beta", 5).get(0).getId());
+    }
+
+    @Test
+    void testTokenizerSplitsCjkIntoBigrams() {
+        assertEquals(List.of("spring", "ai", "记忆", "忆服", "服务", "v2"), TextTokenizer.tokenize("Spring-AI 记忆服务, v2!"));
+
+        Bm25Index index = new Bm25Index();
+        index.add(1L, "这是一条关于记忆服务的消息");
+        index.add(2L, "今天天气很好");
+        assertEquals(1L, index.search("记忆", 5).get(0).getId());
+    }
+}
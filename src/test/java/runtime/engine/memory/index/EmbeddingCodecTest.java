@@ -0,0 +1,59 @@
+package runtime.engine.memory.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddingCodec测试类
+ */
+class EmbeddingCodecTest {
+
+    private static final int DIMENSION = 300;
+
+    @Test
+    void testFloat32RoundTrip() {
+        float[] vector = randomVector(new Random(1));
+
+        byte[] data = EmbeddingCodec.encode(vector, EmbeddingCodec.Format.FLOAT32);
+
+        assertEquals(8 + DIMENSION * Float.BYTES, data.length);
+        assertTrue(EmbeddingCodec.isEncoded(data));
+        assertEquals(DIMENSION, EmbeddingCodec.dimension(data));
+        assertEquals(VectorMath.norm(vector), EmbeddingCodec.norm(data), 1e-6f);
+        assertArrayEquals(vector, EmbeddingCodec.decode(data), 1e-5f);
+        assertEquals(DIMENSION, EmbeddingCodec.floatView(data).remaining());
+    }
+
+    @Test
+    void testInt8KeepsCosineSimilarity() {
+        Random random = new Random(2);
+        float[] vector = randomVector(random);
+        float[] query = VectorMath.normalized(randomVector(random));
+
+        byte[] data = EmbeddingCodec.encode(vector, EmbeddingCodec.Format.INT8);
+
+        assertEquals(12 + DIMENSION, data.length);
+        assertTrue(EmbeddingCodec.isEncoded(data));
+        float exact = VectorMath.dot(VectorMath.normalized(vector), query);
+        assertEquals(exact, EmbeddingCodec.dot(data, query), 0.01f);
+        assertEquals(exact, VectorMath.dot(EmbeddingCodec.decodeNormalized(data), query), 0.01f);
+    }
+
+    @Test
+    void testRejectsUnknownData() {
+        assertFalse(EmbeddingCodec.isEncoded(null));
+        assertFalse(EmbeddingCodec.isEncoded("[0.1, 0.2]".getBytes()));
+        assertThrows(IllegalArgumentException.class, () -> EmbeddingCodec.decode(new byte[]{9, 9, 9}));
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,77 @@
+package runtime.engine.memory.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FlatVectorIndex测试类
+ */
+class FlatVectorIndexTest {
+
+    @Test
+    void testSearchReturnsTopKOrderedByScore() {
+        FlatVectorIndex index = new FlatVectorIndex(3);
+        index.add(1L, new float[]{1f, 0f, 0f});
+        index.add(2L, new float[]{0f, 1f, 0f});
+        index.add(3L, new float[]{1f, 1f, 0f});
+        index.add(4L, new float[]{0f, 0f, 1f});
+
+        List<VectorHit> hits = index.search(new float[]{2f, 0.5f, 0f}, 2);
+
+        assertEquals(2, hits.size());
+        assertEquals(1L, hits.get(0).getId());
+        assertEquals(3L, hits.get(1).getId());
+        assertTrue(hits.get(0).getScore() >= hits.get(1).getScore());
+    }
+
+    @Test
+    void testVectorsAreNormalizedOnInsert() {
+        FlatVectorIndex index = new FlatVectorIndex(2);
+        index.add(1L, new float[]{10f, 0f});
+
+        List<VectorHit> hits = index.search(new float[]{3f, 0f}, 1);
+
+        assertEquals(1.0f, hits.get(0).getScore(), 1e-6);
+    }
+
+    @Test
+    void testAddOverwritesAndRemoveKeepsStorageCompact() {
+        FlatVectorIndex index = new FlatVectorIndex(2);
+        for (long id = 0; id < 100; id++) {
+            index.add(id, new float[]{1f, id});
+        }
+        index.add(5L, new float[]{-1f, 0f});
+        assertEquals(100, index.size());
+
+        assertTrue(index.remove(0L));
+        assertFalse(index.remove(0L));
+        assertEquals(99, index.size());
+
+        List<VectorHit> hits = index.search(new float[]{-1f, 0f}, 1);
+        assertEquals(5L, hits.get(0).getId());
+    }
+
+    @Test
+    void testRegistryLoadsOnceAndAppendsAfterWarmup() {
+        VectorIndexRegistry registry = new VectorIndexRegistry(userId -> new FlatVectorIndex(2));
+        assertFalse(registry.addIfPresent("u1", 1L, new float[]{1f, 0f}));
+
+        int[] loads = {0};
+        registry.getOrLoad("u1", (index, after) -> {
+            assertEquals(0, after);
+            loads[0]++;
+            index.add(1L, new float[]{1f, 0f});
+        });
+        registry.addIfPresent("u1", 2L, new float[]{0f, 1f});
+        VectorIndex index = registry.getOrLoad("u1", (i, after) -> loads[0]++);
+
+        assertEquals(1, loads[0]);
+        assertEquals(2, index.size());
+
+        registry.invalidate("u1");
+        assertFalse(registry.isLoaded("u1"));
+    }
+}
@@ -0,0 +1,136 @@
+package runtime.engine.memory.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HnswVectorIndex测试类
+ */
+class HnswVectorIndexTest {
+
+    private static final int DIMENSION = 16;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecallAgainstExactSearch() {
+        Random random = new Random(7);
+        FlatVectorIndex exact = new FlatVectorIndex(DIMENSION);
+        HnswVectorIndex hnsw = new HnswVectorIndex(DIMENSION, 16, 200, 64, null);
+        for (long id = 0; id < 2000; id++) {
+            float[] vector = randomVector(random);
+            exact.add(id, vector);
+            hnsw.add(id, vector);
+        }
+
+        int matched = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<Long> expected = ids(exact.search(query, 10));
+            Set<Long> actual = ids(hnsw.search(query, 10));
+            actual.retainAll(expected);
+            matched += actual.size();
+        }
+
+        double recall = matched / (queries * 10.0);
+        assertTrue(recall > 0.9, "recall too low: " + recall);
+    }
+
+    @Test
+    void testRemovedVectorsAreExcluded() {
+        HnswVectorIndex hnsw = new HnswVectorIndex(2, 4, 32, 16, null);
+        hnsw.add(1L, new float[]{1f, 0f});
+        hnsw.add(2L, new float[]{0.9f, 0.1f});
+        hnsw.add(3L, new float[]{0f, 1f});
+
+        assertTrue(hnsw.remove(1L));
+
+        List<VectorHit> hits = hnsw.search(new float[]{1f, 0f}, 1);
+        assertEquals(2L, hits.get(0).getId());
+        assertEquals(2, hnsw.size());
+    }
+
+    @Test
+    void testTombstonesAreCompactedAndReAddsReplaceById() {
+        Random random = new Random(5);
+        HnswVectorIndex hnsw = new HnswVectorIndex(DIMENSION, 8, 100, 16, null);
+        float[][] vectors = new float[300][];
+        for (int id = 0; id < 300; id++) {
+            vectors[id] = randomVector(random);
+            hnsw.add(id, vectors[id]);
+        }
+
+        // 重复写入相同的向量不修改图结构
+        for (int id = 0; id < 300; id++) {
+            hnsw.add(id, vectors[id].clone());
+        }
+        assertEquals(0, hnsw.deletedCount());
+
+        // 向量有微小变化时按ID替换
+        float[] updated = vectors[7].clone();
+        updated[0] += 0.001f;
+        hnsw.add(7, updated);
+        assertEquals(1, hnsw.deletedCount());
+        assertEquals(300, hnsw.size());
+        VectorHit top = hnsw.search(updated, 1).get(0);
+        assertEquals(7L, top.getId());
+        assertEquals(1.0f, top.getScore(), 1e-5f);
+
+        for (long id = 0; id < 250; id++) {
+            hnsw.remove(id);
+        }
+        assertEquals(50, hnsw.size());
+        assertTrue(hnsw.deletedCount() < 250);
+        assertEquals(40, hnsw.search(randomVector(random), 40).size());
+    }
+
+    @Test
+    void testFlushAndReloadFromMappedFile() {
+        Random random = new Random(11);
+        Path file = tempDir.resolve("user.hnsw");
+        HnswVectorIndex original = new HnswVectorIndex(DIMENSION, 8, 100, 50, file);
+        for (long id = 0; id < 300; id++) {
+            original.add(id, randomVector(random));
+        }
+        original.remove(3L);
+        original.flush();
+
+        HnswVectorIndex reloaded = new HnswVectorIndex(DIMENSION, 8, 100, 50, file);
+        float[] query = randomVector(random);
+
+        assertEquals(original.size(), reloaded.size());
+        assertEquals(ids(original.search(query, 10)), ids(reloaded.search(query, 10)));
+        assertEquals(299L, reloaded.highWaterMark());
+
+        // 注册表把文件中的最大ID交给加载器，只需补充之后写入的向量
+        VectorIndexRegistry registry = new VectorIndexRegistry(userId -> new HnswVectorIndex(DIMENSION, 8, 100, 50, file));
+        long[] loadedAfter = {-1};
+        registry.getOrLoad("u1", (index, after) -> loadedAfter[0] = after);
+        assertEquals(299L, loadedAfter[0]);
+
+        reloaded.clear();
+        assertFalse(file.toFile().exists());
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static Set<Long> ids(List<VectorHit> hits) {
+        return hits.stream().map(VectorHit::getId).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,86 @@
+package runtime.engine.memory.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ScalarQuantizedVectorIndex与ProductQuantizedVectorIndex测试类
+ */
+class QuantizedVectorIndexTest {
+
+    private static final int DIMENSION = 32;
+
+    @Test
+    void testScalarQuantizedCandidatesCoverExactTopK() {
+        double recall = candidateRecall(new ScalarQuantizedVectorIndex(DIMENSION), 10);
+        assertTrue(recall > 0.99, "recall too low: " + recall);
+    }
+
+    @Test
+    void testProductQuantizedCandidatesCoverExactTopK() {
+        ProductQuantizedVectorIndex index = new ProductQuantizedVectorIndex(DIMENSION, 8, 500);
+        double recall = candidateRecall(index, 40);
+        assertTrue(index.isTrained());
+        assertTrue(recall > 0.9, "recall too low: " + recall);
+    }
+
+    @Test
+    void testProductQuantizedRemoveBeforeAndAfterTraining() {
+        ProductQuantizedVectorIndex index = new ProductQuantizedVectorIndex(2, 2, 3);
+        index.add(1L, new float[]{1f, 0f});
+        index.add(2L, new float[]{0f, 1f});
+        assertTrue(index.remove(1L));
+        assertFalse(index.isTrained());
+
+        index.add(3L, new float[]{0.7f, 0.7f});
+        index.add(4L, new float[]{1f, 0.1f});
+        assertTrue(index.isTrained());
+        assertTrue(index.remove(2L));
+
+        List<VectorHit> hits = index.search(new float[]{1f, 0f}, 1);
+        assertEquals(4L, hits.get(0).getId());
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * 精确top_k中被量化索引前 topK * factor 个候选覆盖的比例
+     */
+    private static double candidateRecall(VectorIndex quantized, int factor) {
+        Random random = new Random(5);
+        FlatVectorIndex exact = new FlatVectorIndex(DIMENSION);
+        for (long id = 0; id < 2000; id++) {
+            float[] vector = randomVector(random);
+            exact.add(id, vector);
+            quantized.add(id, vector);
+        }
+
+        int matched = 0;
+        int queries = 30;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<Long> expected = ids(exact.search(query, 10));
+            Set<Long> candidates = ids(quantized.search(query, 10 * factor));
+            expected.retainAll(candidates);
+            matched += expected.size();
+        }
+        return matched / (queries * 10.0);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static Set<Long> ids(List<VectorHit> hits) {
+        return hits.stream().map(VectorHit::getId).collect(Collectors.toSet());
+    }
+}
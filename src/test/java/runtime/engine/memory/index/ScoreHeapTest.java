@@ -0,0 +1,71 @@
+package runtime.engine.memory.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ScoreHeap测试类
+ */
+class ScoreHeapTest {
+
+    @Test
+    void testMatchesFullSort() {
+        Random random = new Random(7);
+        float[] values = new float[1000];
+        ScoreHeap heap = new ScoreHeap(10);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat();
+            heap.offer(values[i], i);
+        }
+
+        List<Float> expected = new ArrayList<>();
+        for (float value : values) {
+            expected.add(value);
+        }
+        expected = expected.stream()
+                .sorted(Comparator.reverseOrder())
+                .limit(10)
+                .collect(Collectors.toList());
+        List<Float> actual = new ArrayList<>();
+        for (int slot : heap.drainSlots()) {
+            actual.add(values[slot]);
+        }
+        assertEquals(expected, actual);
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    void testThresholdIsLowestKeptScoreOnceFull() {
+        ScoreHeap heap = new ScoreHeap(2);
+        heap.offer(0.3f, 0);
+        assertEquals(Float.NEGATIVE_INFINITY, heap.threshold());
+        heap.offer(0.9f, 1);
+        heap.offer(0.5f, 2);
+
+        assertEquals(0.5f, heap.threshold());
+        List<VectorHit> hits = heap.drain(new long[]{10L, 11L, 12L});
+        assertEquals(List.of(11L, 12L), hits.stream().map(VectorHit::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testBm25TopHitsUsesHeapOrder() {
+        Map<Long, Double> scores = new HashMap<>();
+        scores.put(1L, 0.2);
+        scores.put(2L, 1.5);
+        scores.put(3L, 0.7);
+
+        List<VectorHit> hits = Bm25Index.topHits(scores, 2);
+
+        assertEquals(List.of(2L, 3L), hits.stream().map(VectorHit::getId).collect(Collectors.toList()));
+        assertTrue(Bm25Index.topHits(scores, 0).isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+package runtime.engine.memory.persistence.memory.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LocalKeyValueStore测试类
+ */
+class LocalKeyValueStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPrefixScansAreOrderedAndEscaped() {
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 0, 0)) {
+            store.write(new LocalKeyValueStore.WriteBatch()
+                .put(LocalKeyValueStore.key("m", "u1", "0002"), bytes("c"))
+                .put(LocalKeyValueStore.key("m", "u1", "0000"), bytes("a"))
+                .put(LocalKeyValueStore.key("m", "u1", "0001"), bytes("b"))
+                .put(LocalKeyValueStore.key("m", "u1/x", "0000"), bytes("other user")));
+
+            String prefix = LocalKeyValueStore.prefix("m", "u1");
+            assertEquals(List.of("a", "b", "c"), values(store.scan(prefix, null, 0, 0)));
+            assertEquals(List.of("b"), values(store.scan(prefix, null, 1, 1)));
+            assertEquals(List.of("b", "a"), values(store.scanDescending(prefix, prefix + "0002", 0)));
+            assertEquals(3, store.count(prefix));
+            assertEquals("u1/x", LocalKeyValueStore.lastPart(LocalKeyValueStore.key("m", "u1/x")));
+        }
+    }
+
+    @Test
+    void testReopenReplaysLogAndDropsTornTail() throws Exception {
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 1000, 0)) {
+            store.put("k1", bytes("v1"));
+            store.put("k2", bytes("v2"));
+            store.put("k1", bytes("v1'"));
+            store.delete("k2");
+        }
+        // 模拟崩溃时写了一半的批
+        try (FileChannel channel = FileChannel.open(directory.resolve("data.log"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+        }
+        long sizeWithTornTail = Files.size(directory.resolve("data.log"));
+
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 1000, 0)) {
+            assertEquals("v1'", new String(store.get("k1"), StandardCharsets.UTF_8));
+            assertNull(store.get("k2"));
+            assertEquals(sizeWithTornTail - 7, Files.size(directory.resolve("data.log")));
+
+            store.put("k3", bytes("v3"));
+        }
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 1000, 0)) {
+            assertEquals("v3", new String(store.get("k3"), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLiveDataOnly() {
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 0, Long.MAX_VALUE)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("key", bytes("value" + i));
+                store.put("other" + i, bytes("x"));
+                store.delete("other" + i);
+            }
+            store.put("kept", bytes("kept"));
+            long before = directory.resolve("data.log").toFile().length();
+
+            store.compact();
+
+            assertTrue(directory.resolve("data.log").toFile().length() < before / 10);
+            assertEquals("value99", new String(store.get("key"), StandardCharsets.UTF_8));
+            assertEquals(List.of("kept"), values(store.scan("kept", null, 0, 0)));
+            store.put("after", bytes("compaction"));
+        }
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 0, Long.MAX_VALUE)) {
+            assertEquals("value99", new String(store.get("key"), StandardCharsets.UTF_8));
+            assertEquals("compaction", new String(store.get("after"), StandardCharsets.UTF_8));
+            assertNull(store.get("other0"));
+        }
+    }
+
+    @Test
+    void testDirectoryCanOnlyBeOpenedOnce() {
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 0, 0)) {
+            store.put("k1", bytes("v1"));
+            assertThrows(IllegalStateException.class, () -> new LocalKeyValueStore(directory, 0, 0));
+            assertEquals("v1", new String(store.get("k1"), StandardCharsets.UTF_8));
+        }
+        try (LocalKeyValueStore store = new LocalKeyValueStore(directory, 0, 0)) {
+            assertEquals("v1", new String(store.get("k1"), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> values(List<LocalKeyValueStore.Entry> entries) {
+        return entries.stream().map(entry -> new String(entry.value(), StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.service.EmbeddingService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CachingEmbeddingService测试类
+ */
+class CachingEmbeddingServiceTest {
+
+    private final CountingEmbeddingService delegate = new CountingEmbeddingService();
+    private final CachingEmbeddingService embeddingService = new CachingEmbeddingService(delegate, 1024 * 1024, true);
+
+    @Test
+    void testRepeatedTextSkipsEmbedding() throws Exception {
+        float[] first = embeddingService.embedVector("Hello   World").get();
+        float[] second = embeddingService.embedVector("hello world").get();
+
+        assertSame(first, second);
+        assertEquals(1, delegate.computed.get());
+        assertEquals(1L, embeddingService.stats().hitCount());
+        assertEquals(1L, embeddingService.stats().missCount());
+    }
+
+    @Test
+    void testBatchOnlyEmbedsMisses() throws Exception {
+        embeddingService.embedVector("cached").get();
+
+        List<float[]> vectors = embeddingService.embedTexts(List.of("cached", "fresh", "FRESH", "other")).get();
+
+        assertEquals(4, vectors.size());
+        assertSame(vectors.get(1), vectors.get(2));
+        assertEquals(1, delegate.batches.get());
+        // cached 1 次 + 批内 fresh、other 各 1 次
+        assertEquals(3, delegate.computed.get());
+        assertEquals(3L, embeddingService.estimatedSize());
+    }
+
+    @Test
+    void testCaseIsKeptForCaseSensitiveModels() throws Exception {
+        CachingEmbeddingService caseSensitive = new CachingEmbeddingService(delegate, 1024 * 1024);
+
+        caseSensitive.embedVector("US").get();
+        caseSensitive.embedVector("us").get();
+        caseSensitive.embedVector(" us ").get();
+
+        assertEquals(2, delegate.computed.get());
+    }
+
+    @Test
+    void testCorpusStatisticsDoNotDependOnCacheHits() throws Exception {
+        SimpleEmbeddingService uncached = new SimpleEmbeddingService(Runnable::run);
+        SimpleEmbeddingService tfIdf = new SimpleEmbeddingService(Runnable::run);
+        CachingEmbeddingService cached = new CachingEmbeddingService(tfIdf, 1024 * 1024);
+        List<String> texts = List.of("hello world", "Hello World", "other words", "hello world");
+
+        for (String text : texts) {
+            uncached.embedVector(text).get();
+            cached.embedVector(text).get();
+        }
+        uncached.embedTexts(texts).get();
+        cached.embedTexts(texts).get();
+
+        assertEquals(uncached.getTotalDocuments(), tfIdf.getTotalDocuments());
+        assertEquals(8, tfIdf.getTotalDocuments());
+        assertEquals(uncached.getVocabularySize(), tfIdf.getVocabularySize());
+    }
+
+    @Test
+    void testTextHashMatchesMurmur3ReferenceVector() {
+        // MurmurHash3 x64 128 对 "hello" 的参考值
+        assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", TextHash.of("  HELLO ", true).toString());
+        assertNotEquals(TextHash.of("HELLO", false), TextHash.of("hello", false));
+    }
+
+    private static class CountingEmbeddingService implements EmbeddingService {
+        final AtomicInteger computed = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<List<Double>> embedText(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<float[]> embedVector(String text) {
+            computed.incrementAndGet();
+            return CompletableFuture.completedFuture(new float[]{text.length(), 1f});
+        }
+
+        @Override
+        public CompletableFuture<List<float[]>> embedTexts(List<String> texts) {
+            batches.incrementAndGet();
+            List<float[]> vectors = new ArrayList<>();
+            for (String text : texts) {
+                computed.incrementAndGet();
+                vectors.add(new float[]{text.length(), 1f});
+            }
+            return CompletableFuture.completedFuture(vectors);
+        }
+
+        @Override
+        public double cosineSimilarity(List<Double> vector1, List<Double> vector2) {
+            return 0;
+        }
+
+        @Override
+        public double euclideanDistance(List<Double> vector1, List<Double> vector2) {
+            return 0;
+        }
+
+        @Override
+        public int getEmbeddingDimension() {
+            return 2;
+        }
+    }
+}
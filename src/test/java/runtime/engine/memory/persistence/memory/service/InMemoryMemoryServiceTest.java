@@ -0,0 +1,47 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.MemoryRecordPage;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * InMemoryMemoryService测试类
+ */
+class InMemoryMemoryServiceTest {
+
+    @Test
+    void testRecordCursorIsAbsoluteWhenLimitChanges() {
+        InMemoryMemoryService service = new InMemoryMemoryService();
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            messages.add(new Message(MessageType.USER, List.of(new MessageContent("text", "m" + i))));
+        }
+        service.addMemory("u1", messages, Optional.of("s1")).join();
+
+        // 每次请求使用不同的limit，游标仍指向上一页之后的第一条
+        List<String> seen = new ArrayList<>();
+        Optional<String> cursor = Optional.empty();
+        int[] limits = {2, 3, 1, 4};
+        for (int limit : limits) {
+            MemoryRecordPage page = service.listMemoryRecords(Optional.of("u1"), cursor, limit).join();
+            for (MemoryRecord record : page.getRecords()) {
+                seen.add(record.getMessage().getContent().get(0).getText());
+            }
+            if (page.getNextCursor() == null) {
+                break;
+            }
+            cursor = Optional.of(page.getNextCursor());
+        }
+
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6"), seen);
+    }
+}
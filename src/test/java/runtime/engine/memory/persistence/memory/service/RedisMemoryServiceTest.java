@@ -0,0 +1,107 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RedisMemoryService测试类
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisMemoryServiceTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void flush() throws Exception {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.serverCommands().flushAll();
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        redisTemplate.opsForHash().put("user_memory:u1", "s1",
+                objectMapper.writeValueAsString(List.of(text("a0"), text("a1"), text("a2"))));
+        redisTemplate.opsForHash().put("user_memory:u1", "s2",
+                objectMapper.writeValueAsString(List.of(text("b0"), text("b1"))));
+    }
+
+    @Test
+    void testConcurrentNodesMigrateLegacySessionsOnce() {
+        // 两个实例模拟两个节点同时首次访问同一用户
+        RedisMemoryService first = new RedisMemoryService(redisTemplate);
+        RedisMemoryService second = new RedisMemoryService(redisTemplate);
+
+        CompletableFuture<List<Message>> firstList = first.listMemory("u1", Optional.empty());
+        CompletableFuture<List<Message>> secondList = second.listMemory("u1", Optional.empty());
+
+        // 未取得迁移锁的节点等待迁移完成，两个节点都读到完整的记忆
+        assertEquals(List.of("a0", "a1", "a2", "b0", "b1"), texts(firstList.join()));
+        assertEquals(List.of("a0", "a1", "a2", "b0", "b1"), texts(secondList.join()));
+        assertFalse(redisTemplate.hasKey("user_memory:u1"));
+        assertEquals(5, redisTemplate.opsForZSet().size("memory_timeline:u1"));
+        assertEquals(3, redisTemplate.opsForList().size("memory_session:u1:s1"));
+    }
+
+    @Test
+    void testWaitsForLockHolderBeforeReading() throws Exception {
+        // 模拟其他节点持有迁移锁后中断，锁释放后由等待的节点完成迁移
+        redisTemplate.opsForValue().set("memory_migrate_lock:u1", "other-node", Duration.ofMinutes(1));
+        RedisMemoryService service = new RedisMemoryService(redisTemplate);
+
+        CompletableFuture<List<Message>> listed = service.listMemory("u1", Optional.empty());
+        Thread.sleep(300);
+        assertFalse(listed.isDone());
+
+        redisTemplate.delete("memory_migrate_lock:u1");
+        assertEquals(List.of("a0", "a1", "a2", "b0", "b1"), texts(listed.join()));
+        assertFalse(redisTemplate.hasKey("user_memory:u1"));
+
+        service.addMemory("u1", List.of(text("a3")), Optional.of("s1")).join();
+        assertEquals(List.of("a0", "a1", "a2", "b0", "b1", "a3"),
+                texts(service.listMemory("u1", Optional.empty()).join()));
+        assertEquals(4, redisTemplate.opsForList().size("memory_session:u1:s1"));
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(m -> m.getContent().get(0).getText()).toList();
+    }
+
+    private static Message text(String text) {
+        return new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+    }
+}
@@ -0,0 +1,72 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.index.VectorMath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SimpleEmbeddingService测试类
+ */
+class SimpleEmbeddingServiceTest {
+
+    private final SimpleEmbeddingService embeddingService = new SimpleEmbeddingService(4, 16);
+
+    @AfterEach
+    void tearDown() {
+        embeddingService.shutdown();
+    }
+
+    @Test
+    void testEmbedVectorIsNormalized() throws Exception {
+        // 首篇文档的IDF均为0，先写入一篇无关文档
+        embeddingService.embedVector("unrelated document").get();
+        float[] vector = embeddingService.embedVector("spring ai alibaba runtime memory").get();
+
+        assertEquals(embeddingService.getEmbeddingDimension(), vector.length);
+        assertEquals(1.0, VectorMath.norm(vector), 1e-5);
+    }
+
+    @Test
+    void testEmptyTextProducesZeroVector() throws Exception {
+        float[] vector = embeddingService.embedVector("  ").get();
+
+        assertEquals(embeddingService.getEmbeddingDimension(), vector.length);
+        assertEquals(0.0, VectorMath.norm(vector), 0.0);
+        assertEquals(0, embeddingService.getTotalDocuments());
+    }
+
+    @Test
+    void testEmbedTextsVectorizesBatchInOrder() throws Exception {
+        List<String> texts = List.of("apple banana", "", "cherry banana", "apple cherry");
+
+        List<float[]> vectors = embeddingService.embedTexts(texts).get();
+
+        assertEquals(texts.size(), vectors.size());
+        assertEquals(0.0, VectorMath.norm(vectors.get(1)), 0.0);
+        assertEquals(3, embeddingService.getTotalDocuments());
+        assertEquals(3, embeddingService.getVocabularySize());
+        // 同一批内的文档共享文档总数，出现在两篇文档中的词具有相同的IDF
+        assertEquals(VectorMath.dot(vectors.get(0), vectors.get(2)),
+            VectorMath.dot(vectors.get(0), vectors.get(3)), 1e-6);
+    }
+
+    @Test
+    void testConcurrentEmbeddingKeepsCountsConsistent() {
+        int documents = 500;
+        List<CompletableFuture<float[]>> futures = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            futures.add(embeddingService.embedVector("shared term" + (i % 50) + " common words"));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        assertEquals(documents, embeddingService.getTotalDocuments());
+        // shared、common、words 以及 term0..term49
+        assertEquals(53, embeddingService.getVocabularySize());
+    }
+}
@@ -0,0 +1,81 @@
+package runtime.engine.memory.persistence.memory.service;
+
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.model.MemoryStats;
+import runtime.engine.memory.model.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StatsCache测试类
+ */
+class StatsCacheTest {
+
+    private final Map<String, MemoryStats> counters = new ConcurrentHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<String> reconciled = new ArrayList<>();
+
+    @Test
+    void testLocalWritesAreMergedWithoutReloading() {
+        counters.put("user1", new MemoryStats(10, 4, 6, 1000));
+        StatsCache<MemoryStats> cache = newCache(60_000);
+
+        assertEquals(10, cache.get("user1").getTotalMemories());
+        cache.apply("user1", stats -> stats.add(MessageType.USER, 2000));
+
+        MemoryStats stats = cache.get("user1");
+        assertEquals(11, stats.getTotalMemories());
+        assertEquals(5, stats.getUserMessages());
+        assertEquals(2000, stats.getLastActivity());
+        assertEquals(1, loads.get());
+        cache.close();
+    }
+
+    @Test
+    void testReconcileRecountsDirtyUsersAndReloads() {
+        counters.put("user1", new MemoryStats(1, 1, 0, 0));
+        StatsCache<MemoryStats> cache = newCache(60_000);
+        cache.get("user1");
+        cache.apply("user1", stats -> stats.add(MessageType.ASSISTANT, 0));
+
+        // 计数器表与缓存有偏差时以对账结果为准
+        counters.put("user1", new MemoryStats(5, 2, 3, 0));
+        cache.reconcile();
+
+        assertEquals(List.of("user1"), reconciled);
+        assertEquals(5, cache.get("user1").getTotalMemories());
+        assertEquals(2, loads.get());
+
+        // 没有新的写入时不再对账
+        cache.reconcile();
+        assertEquals(1, reconciled.size());
+        cache.close();
+    }
+
+    @Test
+    void testStaleSnapshotIsReloaded() {
+        counters.put("user1", new MemoryStats(1, 0, 0, 0));
+        StatsCache<MemoryStats> cache = newCache(0);
+        cache.get("user1");
+
+        counters.put("user1", new MemoryStats(2, 0, 0, 0));
+        assertEquals(2, cache.get("user1").getTotalMemories());
+        assertEquals(2, loads.get());
+        cache.close();
+    }
+
+    private StatsCache<MemoryStats> newCache(long refreshMillis) {
+        return new StatsCache<>("test", 100, refreshMillis, 0,
+            userId -> {
+                loads.incrementAndGet();
+                return counters.getOrDefault(userId, MemoryStats.empty());
+            },
+            reconciled::add);
+    }
+}
@@ -0,0 +1,140 @@
+package runtime.engine.memory.persistence.session;
+
+import org.junit.jupiter.api.Test;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.model.Session;
+import runtime.engine.memory.model.SessionStats;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * InMemorySessionHistoryService测试类
+ */
+class InMemorySessionHistoryServiceTest {
+
+    @Test
+    void testGetSessionReturnsLastMessagesWithoutTouchingStoredSession() {
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService();
+        Session session = service.createSession("u1", Optional.of("s1")).join();
+        service.appendMessage(session, List.of(text("m1"), text("m2"), text("m3"))).join();
+
+        Session recent = service.getSession("u1", "s1", 2).join().orElseThrow();
+        assertEquals(List.of("m2", "m3"), recent.getMessages().stream()
+                .map(m -> m.getContent().get(0).getText()).toList());
+
+        Session full = service.getSession("u1", "s1").join().orElseThrow();
+        assertEquals(3, full.getMessages().size());
+    }
+
+    @Test
+    void testSessionKeepsOnlyLatestMessagesAndUnknownSessionIsNotStored() {
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService(100, 0, 2, Duration.ZERO, null);
+        Session probe = service.getSession("u1", "unknown").join().orElseThrow();
+        assertTrue(probe.getMessages().isEmpty());
+        assertTrue(service.listSessions("u1").join().isEmpty());
+
+        service.appendMessage(probe, List.of(text("m1"), text("m2"), text("m3"))).join();
+
+        Session stored = service.getSession("u1", "unknown").join().orElseThrow();
+        assertEquals(List.of("m2", "m3"), stored.getMessages().stream()
+                .map(m -> m.getContent().get(0).getText()).toList());
+        assertEquals(1, service.listSessions("u1").join().size());
+    }
+
+    @Test
+    void testEvictedSessionIsSpilledAndReloaded() throws Exception {
+        Path directory = Files.createTempDirectory("session-spill");
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService(1, 0, 0, Duration.ZERO, directory);
+        Session first = service.createSession("u1", Optional.of("s1")).join();
+        service.appendMessage(first, List.of(text("kept on disk"))).join();
+        service.createSession("u1", Optional.of("s2")).join();
+
+        // s1被挤出内存后仍可列出，读取时从溢出目录读回
+        assertEquals(2, service.listSessions("u1").join().size());
+        Session reloaded = service.getSession("u1", "s1").join().orElseThrow();
+        assertEquals("kept on disk", reloaded.getMessages().get(0).getContent().get(0).getText());
+    }
+
+    @Test
+    void testConcurrentAppendsAreAllKeptAndSnapshotsStayStable() {
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService();
+        Session session = service.createSession("u1", Optional.of("s1")).join();
+        service.appendMessage(session, List.of(text("first"))).join();
+        Session before = service.getSession("u1", "s1").join().orElseThrow();
+
+        List<CompletableFuture<Void>> appends = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Session writer = new Session("s1", "u1", new ArrayList<>());
+            appends.add(service.appendMessage(writer, List.of(text("m" + i), text("n" + i))));
+        }
+        CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+
+        // 之前读取的快照不受后续追加影响，修改返回的列表也不影响存储
+        assertEquals(1, before.getMessages().size());
+        before.getMessages().add(text("local only"));
+        Session after = service.getSession("u1", "s1").join().orElseThrow();
+        assertEquals(401, after.getMessages().size());
+        assertEquals("first", after.getMessages().get(0).getContent().get(0).getText());
+    }
+
+    @Test
+    void testWindowedReadsUseStablePositionCursors() {
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService(100, 0, 40, Duration.ZERO, null);
+        Session session = service.createSession("u1", Optional.of("s1")).join();
+        for (int i = 0; i < 50; i++) {
+            service.appendMessage(session, List.of(text("m" + i))).join();
+        }
+
+        MessagePage last = service.getMessages("u1", "s1", MessageWindow.last(3)).join();
+        assertEquals(List.of("m47", "m48", "m49"), texts(last.getMessages()));
+        assertTrue(last.hasMore());
+        assertEquals(50, last.getNextCursor());
+
+        // 前10条已被裁剪，游标仍按会话中的位置计算
+        MessagePage page = service.getMessages("u1", "s1", MessageWindow.after(12, 5)).join();
+        assertEquals(List.of("m12", "m13", "m14", "m15", "m16"), texts(page.getMessages()));
+        assertTrue(page.hasMore());
+        service.appendMessage(session, List.of(text("m50"))).join();
+        MessagePage tail = service.getMessages("u1", "s1", MessageWindow.after(last.getNextCursor(), 0)).join();
+        assertEquals(List.of("m50"), texts(tail.getMessages()));
+        assertFalse(tail.hasMore());
+
+        int budget = 2 * MessageWindow.estimateTokens(text("m50"));
+        MessagePage recent = service.getMessages("u1", "s1", MessageWindow.tokenBudget(budget)).join();
+        assertEquals(List.of("m49", "m50"), texts(recent.getMessages()));
+        assertTrue(service.getMessages("u1", "missing", MessageWindow.all()).join().getMessages().isEmpty());
+    }
+
+    @Test
+    void testSessionStatsCountMessagesOfListedSessions() {
+        InMemorySessionHistoryService service = new InMemorySessionHistoryService();
+        Session first = service.createSession("u1", Optional.of("s1")).join();
+        Session second = service.createSession("u1", Optional.of("s2")).join();
+        service.appendMessage(first, List.of(text("m1"), text("m2"))).join();
+        service.appendMessage(second, List.of(text("m3"))).join();
+
+        SessionStats stats = service.getSessionStats("u1").join();
+        assertEquals(2, stats.getTotalSessions());
+        assertEquals(3, stats.getTotalMessages());
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(m -> m.getContent().get(0).getText()).toList();
+    }
+
+    private static Message text(String text) {
+        return new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+    }
+}
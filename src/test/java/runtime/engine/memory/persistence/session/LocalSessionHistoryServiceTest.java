@@ -0,0 +1,88 @@
+package runtime.engine.memory.persistence.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import runtime.engine.memory.codec.BinaryMessageCodec;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.Session;
+import runtime.engine.memory.persistence.memory.repository.LocalKeyValueStore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LocalSessionHistoryService测试类
+ */
+class LocalSessionHistoryServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMessagesSurviveRestartAndSequencesContinue() {
+        LocalSessionHistoryService service = open();
+        Session session = service.createSession("u1", Optional.of("s1")).join();
+        service.appendMessage(session, List.of(text("m0"), text("m1"))).join();
+        service.stop().join();
+
+        LocalSessionHistoryService reopened = open();
+        Session stored = reopened.getSession("u1", "s1").join().orElseThrow();
+        assertEquals(List.of("m0", "m1"), texts(stored.getMessages()));
+        reopened.appendMessage(stored, List.of(text("m2"))).join();
+
+        assertEquals(List.of("m1", "m2"), texts(reopened.getSession("u1", "s1", 2).join().orElseThrow().getMessages()));
+        assertEquals(1, reopened.listSessions("u1").join().size());
+        assertEquals(3, reopened.getSessionStats("u1").join().getTotalMessages());
+        reopened.stop().join();
+    }
+
+    @Test
+    void testWindowedReadsAndDelete() {
+        LocalSessionHistoryService service = open();
+        Session session = new Session("s/1", "u1", new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            service.appendMessage(session, List.of(text("m" + i))).join();
+        }
+
+        MessagePage last = service.getMessages("u1", "s/1", MessageWindow.last(3)).join();
+        assertEquals(List.of("m97", "m98", "m99"), texts(last.getMessages()));
+        assertTrue(last.hasMore());
+        assertEquals(100, last.getNextCursor());
+
+        MessagePage page = service.getMessages("u1", "s/1", MessageWindow.after(12, 5)).join();
+        assertEquals(List.of("m12", "m13", "m14", "m15", "m16"), texts(page.getMessages()));
+        assertTrue(page.hasMore());
+        assertEquals(17, page.getNextCursor());
+
+        int budget = 70 * MessageWindow.estimateTokens(text("m99"));
+        MessagePage recent = service.getMessages("u1", "s/1", MessageWindow.tokenBudget(budget)).join();
+        assertEquals(70, recent.getMessages().size());
+        assertEquals("m99", texts(recent.getMessages()).get(69));
+        assertTrue(recent.hasMore());
+
+        service.deleteSession("u1", "s/1").join();
+        assertTrue(service.getMessages("u1", "s/1", MessageWindow.all()).join().getMessages().isEmpty());
+        assertTrue(service.listSessions("u1").join().isEmpty());
+        service.stop().join();
+    }
+
+    private LocalSessionHistoryService open() {
+        return new LocalSessionHistoryService(new LocalKeyValueStore(directory, 0, 0), new BinaryMessageCodec(512));
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(m -> m.getContent().get(0).getText()).toList();
+    }
+
+    private static Message text(String text) {
+        return new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+    }
+}
@@ -0,0 +1,178 @@
+package runtime.engine.memory.persistence.session;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessagePage;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.model.MessageWindow;
+import runtime.engine.memory.model.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RedisSessionHistoryService测试类
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisSessionHistoryServiceTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void flush() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.serverCommands().flushAll();
+        }
+    }
+
+    @Test
+    void testListWindowReads() {
+        RedisSessionHistoryService service = new RedisSessionHistoryService(redisTemplate);
+        Session session = new Session("s1", "u1", new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            service.appendMessage(session, List.of(text("m" + i))).join();
+        }
+
+        MessagePage last = service.getMessages("u1", "s1", MessageWindow.last(3)).join();
+        assertEquals(List.of("m97", "m98", "m99"), texts(last.getMessages()));
+        assertTrue(last.hasMore());
+        assertEquals(100, last.getNextCursor());
+
+        MessagePage page = service.getMessages("u1", "s1", MessageWindow.after(12, 5)).join();
+        assertEquals(List.of("m12", "m13", "m14", "m15", "m16"), texts(page.getMessages()));
+        assertTrue(page.hasMore());
+        assertEquals(17, page.getNextCursor());
+
+        // 预算跨越多个批次，除脚本读取的最近一批外按下标向前读取
+        int budget = 70 * MessageWindow.estimateTokens(text("m99"));
+        MessagePage recent = service.getMessages("u1", "s1", MessageWindow.tokenBudget(budget)).join();
+        assertEquals(70, recent.getMessages().size());
+        assertEquals("m30", texts(recent.getMessages()).get(0));
+        assertEquals("m99", texts(recent.getMessages()).get(69));
+        assertTrue(recent.hasMore());
+
+        assertEquals(List.of("m98", "m99"), texts(service.getSession("u1", "s1", 2).join().orElseThrow().getMessages()));
+        assertEquals(100, service.getSession("u1", "s1").join().orElseThrow().getMessages().size());
+        assertEquals(100, service.getSessionStats("u1").join().getTotalMessages());
+    }
+
+    @Test
+    void testWindowReadDoesNotCreateSession() {
+        RedisSessionHistoryService service = new RedisSessionHistoryService(redisTemplate);
+
+        MessagePage empty = service.getMessages("u1", "missing", MessageWindow.last(5)).join();
+        assertTrue(empty.getMessages().isEmpty());
+        assertEquals(0, empty.getNextCursor());
+        assertTrue(service.getMessages("u1", "missing", MessageWindow.after(0, 5)).join().getMessages().isEmpty());
+        assertTrue(service.listSessions("u1").join().isEmpty());
+
+        assertTrue(service.getSession("u1", "missing", 5).join().orElseThrow().getMessages().isEmpty());
+        assertEquals(1, service.listSessions("u1").join().size());
+    }
+
+    @Test
+    void testLegacySessionMigratedOnRead() {
+        writeLegacySession("u1", "s1", "m0", "m1", "m2");
+        RedisSessionHistoryService service = new RedisSessionHistoryService(redisTemplate);
+
+        MessagePage last = service.getMessages("u1", "s1", MessageWindow.last(2)).join();
+        assertEquals(List.of("m1", "m2"), texts(last.getMessages()));
+        assertEquals(3, last.getNextCursor());
+        assertFalse(redisTemplate.hasKey("session:u1:s1"));
+        assertEquals(3, redisTemplate.opsForList().size("session_msgs:u1:s1"));
+        assertEquals(3, service.getSessionStats("u1").join().getTotalMessages());
+    }
+
+    @Test
+    void testLegacySessionMigratedOnAppend() {
+        writeLegacySession("u1", "s1", "m0", "m1");
+        RedisSessionHistoryService service = new RedisSessionHistoryService(redisTemplate);
+
+        // 追加前未读取过会话，旧消息仍应排在新消息之前
+        service.appendMessage(new Session("s1", "u1", new ArrayList<>()), List.of(text("m2"))).join();
+
+        assertFalse(redisTemplate.hasKey("session:u1:s1"));
+        assertEquals(List.of("m0", "m1", "m2"), texts(service.getSession("u1", "s1").join().orElseThrow().getMessages()));
+        assertEquals(3, service.getSessionStats("u1").join().getTotalMessages());
+    }
+
+    @Test
+    void testConcurrentJsonAppendsAreAllKept() {
+        RedisSessionHistoryService service =
+                new RedisSessionHistoryService(redisTemplate, RedisSessionHistoryService.Layout.JSON);
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.add(CompletableFuture.runAsync(() -> {
+                Session session = new Session("s1", "u1", new ArrayList<>());
+                for (int i = 0; i < 10; i++) {
+                    service.appendMessage(session, List.of(text("w" + writer + "-" + i))).join();
+                }
+            }));
+        }
+        CompletableFuture.allOf(writers.toArray(new CompletableFuture[0])).join();
+
+        List<String> stored = texts(service.getSession("u1", "s1").join().orElseThrow().getMessages());
+        assertEquals(40, stored.size());
+        for (int w = 0; w < 4; w++) {
+            assertTrue(stored.contains("w" + w + "-9"));
+        }
+        assertEquals(40, service.getSessionStats("u1").join().getTotalMessages());
+    }
+
+    /**
+     * 用JSON布局写入会话，模拟切换到LIST布局之前保存的数据
+     */
+    private static void writeLegacySession(String userId, String sessionId, String... texts) {
+        RedisSessionHistoryService legacy =
+                new RedisSessionHistoryService(redisTemplate, RedisSessionHistoryService.Layout.JSON);
+        Session session = legacy.createSession(userId, Optional.of(sessionId)).join();
+        List<Message> messages = new ArrayList<>();
+        for (String text : texts) {
+            messages.add(text(text));
+        }
+        legacy.appendMessage(session, messages).join();
+        // 旧版本没有会话摘要
+        redisTemplate.delete("session_meta:" + userId + ":" + sessionId);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(m -> m.getContent().get(0).getText()).toList();
+    }
+
+    private static Message text(String text) {
+        return new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+    }
+}
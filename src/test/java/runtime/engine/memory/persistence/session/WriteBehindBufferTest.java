@@ -0,0 +1,95 @@
+package runtime.engine.memory.persistence.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WriteBehindBuffer测试类
+ */
+class WriteBehindBufferTest {
+
+    @Test
+    void testSubmissionsAreCoalescedAndFlushedInOrder() {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 100, 60_000, 1000,
+                batch -> batches.add(new ArrayList<>(batch)), item -> item % 2);
+
+        buffer.submitAll(List.of(1, 2));
+        buffer.submitAll(List.of(3));
+        assertTrue(batches.isEmpty());
+
+        // 读取前主动写出，多次提交合并为一批
+        buffer.flush();
+        assertEquals(List.of(List.of(1, 2, 3)), batches);
+        buffer.close();
+    }
+
+    @Test
+    void testFullBufferBlocksUntilWriterCatchesUp() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger written = new AtomicInteger();
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 2, 60_000, 2, batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAndGet(batch.size());
+        }, item -> item % 2);
+
+        buffer.submitAll(List.of(1, 2));
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> buffer.submitAll(List.of(3, 4, 5)));
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        buffer.close();
+        assertEquals(5, written.get());
+    }
+
+    @Test
+    void testFailedRecordIsDroppedWithoutLosingOtherKeys() {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 100, 60_000, 1000, batch -> {
+            if (batch.contains(13)) {
+                throw new IllegalStateException("bad row");
+            }
+            written.addAll(batch);
+        }, item -> item / 10);
+
+        buffer.submitAll(List.of(11, 21, 12, 13, 22, 14));
+        buffer.flush();
+
+        // 只有写不进去的那一条被丢弃，同键和其他键的记录都按顺序写出
+        assertEquals(List.of(11, 12, 14, 21, 22), written);
+        assertEquals(1, buffer.droppedCount());
+        buffer.close();
+    }
+
+    @Test
+    void testKeyFlushOnlyWritesWhenKeyHasPendingRecords() {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindBuffer<Integer> buffer = new WriteBehindBuffer<>("test", 100, 60_000, 1000,
+                batch -> batches.add(new ArrayList<>(batch)), item -> item / 10);
+
+        buffer.submitAll(List.of(11, 12));
+        buffer.flush(2);
+        assertTrue(batches.isEmpty());
+
+        buffer.flush(1);
+        assertEquals(List.of(List.of(11, 12)), batches);
+        buffer.flush(1);
+        assertEquals(1, batches.size());
+        buffer.close();
+    }
+}
@@ -0,0 +1,195 @@
+package runtime.engine.memory.retrieval;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import runtime.engine.memory.model.MemoryRecord;
+import runtime.engine.memory.model.Message;
+import runtime.engine.memory.model.MessageContent;
+import runtime.engine.memory.model.MessageType;
+import runtime.engine.memory.service.MemoryService;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HybridMemoryService测试类
+ */
+class HybridMemoryServiceTest {
+
+    @Test
+    void testReciprocalRankFusionPrefersItemsRankedByBothLists() {
+        List<String> fused = ReciprocalRankFusion.fuse(
+                List.of(List.of("a", "b", "c"), List.of("c", "d", "b")),
+                Function.identity(), ReciprocalRankFusion.DEFAULT_K, 3);
+
+        // b和c同时出现在两路结果中，融合后排在只出现一次的a、d之前
+        assertEquals(3, fused.size());
+        assertTrue(fused.subList(0, 2).containsAll(List.of("b", "c")));
+        assertEquals("a", fused.get(2));
+    }
+
+    @Test
+    void testHybridSearchFusesBothLegs() {
+        FixedMemoryService lexical = new FixedMemoryService(List.of(text("redis cluster"), text("redis sentinel")), 0);
+        FixedMemoryService vector = new FixedMemoryService(List.of(text("cache warmup"), text("redis sentinel")), 0);
+        HybridMemoryService service = new HybridMemoryService(lexical, vector, 1);
+
+        List<Message> results = service.searchMemory("u1", List.of(text("redis")), Optional.of(Map.of("top_k", 3))).join();
+
+        assertEquals(3, results.size());
+        assertEquals("redis sentinel", firstText(results.get(0)));
+        assertEquals(Integer.valueOf(9), lexical.lastTopK);
+        service.stop().join();
+    }
+
+    @Test
+    void testSlowLegIsDroppedAfterBudget() {
+        FixedMemoryService lexical = new FixedMemoryService(List.of(text("fast result")), 0);
+        FixedMemoryService vector = new FixedMemoryService(List.of(text("slow result")), 2000);
+        HybridMemoryService service = new HybridMemoryService(lexical, vector, 1);
+        service.setLegTimeoutMillis(100);
+
+        long start = System.nanoTime();
+        List<Message> results = service.searchMemory("u1", List.of(text("result")), Optional.empty()).join();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(1, results.size());
+        assertEquals("fast result", firstText(results.get(0)));
+        assertTrue(elapsedMillis < 1500, "slow leg stalled search for " + elapsedMillis + "ms");
+        service.stop().join();
+    }
+
+    @Test
+    void testModeSelectedPerAgent() {
+        FixedMemoryService lexical = new FixedMemoryService(List.of(text("lexical only")), 0);
+        FixedMemoryService vector = new FixedMemoryService(List.of(text("vector only")), 0);
+        HybridMemoryService service = new HybridMemoryService(lexical, vector, 1);
+        service.setAgentModes(Map.of("planner", RetrievalMode.VECTOR));
+
+        List<Message> planner = service.searchMemory("u1", List.of(text("q")),
+                Optional.of(Map.of(HybridMemoryService.FILTER_AGENT, "planner"))).join();
+        List<Message> explicit = service.searchMemory("u1", List.of(text("q")),
+                Optional.of(Map.of(HybridMemoryService.FILTER_RETRIEVAL, "lexical"))).join();
+
+        assertEquals(List.of("vector only"), planner.stream().map(HybridMemoryServiceTest::firstText).toList());
+        assertEquals(List.of("lexical only"), explicit.stream().map(HybridMemoryServiceTest::firstText).toList());
+        service.stop().join();
+    }
+
+    @Test
+    void testLexicalIndexWarmedPerUserOnFirstSearch() {
+        FixedMemoryService lexical = new FixedMemoryService(List.of(text("lexical hit")), 0);
+        FixedMemoryService vector = new FixedMemoryService(List.of(text("vector hit")), 0);
+        vector.records.add(new MemoryRecord("2", "u1", "s1", text("second"), 2L));
+        vector.records.add(new MemoryRecord("1", "u1", "s1", text("first"), 1L));
+        HybridMemoryService service = new HybridMemoryService(lexical, vector, 1);
+        service.setLexicalWarmup(10);
+        service.start().join();
+
+        // 启动时不遍历记忆，未预热用户的写入只落到向量后端
+        service.addMemory("u1", List.of(text("before search")), Optional.empty()).join();
+        assertTrue(vector.streamedUsers.isEmpty());
+        assertTrue(lexical.added.isEmpty());
+
+        Optional<Map<String, Object>> lexicalOnly = Optional.of(Map.of(HybridMemoryService.FILTER_RETRIEVAL, "lexical"));
+        service.searchMemory("u1", List.of(text("q")), lexicalOnly).join();
+        service.searchMemory("u1", List.of(text("q")), lexicalOnly).join();
+        assertEquals(List.of("u1"), vector.streamedUsers);
+        assertEquals(List.of("first", "second"), lexical.added);
+
+        // 预热后的写入同时落到关键词后端
+        service.addMemory("u1", List.of(text("after search")), Optional.empty()).join();
+        assertEquals(List.of("first", "second", "after search"), lexical.added);
+        service.stop().join();
+    }
+
+    private static Message text(String text) {
+        return new Message(MessageType.MESSAGE, List.of(new MessageContent("text", text)));
+    }
+
+    private static String firstText(Message message) {
+        return message.getContent().get(0).getText();
+    }
+
+    /**
+     * 返回固定结果的检索后端，可模拟延迟
+     */
+    private static class FixedMemoryService implements MemoryService {
+        private final List<Message> results;
+        private final long delayMillis;
+        private volatile Integer lastTopK;
+        private final List<MemoryRecord> records = new ArrayList<>();
+        private final List<String> streamedUsers = new ArrayList<>();
+        private final List<String> added = Collections.synchronizedList(new ArrayList<>());
+
+        FixedMemoryService(List<Message> results, long delayMillis) {
+            this.results = results;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public CompletableFuture<List<Message>> searchMemory(String userId, List<Message> messages, Optional<Map<String, Object>> filters) {
+            lastTopK = filters.map(f -> (Integer) f.get("top_k")).orElse(null);
+            return CompletableFuture.supplyAsync(() -> {
+                if (delayMillis > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                // 每次返回新的消息对象，模拟不同后端各自反序列化的结果
+                List<Message> copies = new ArrayList<>();
+                for (Message message : results) {
+                    copies.add(text(firstText(message)));
+                }
+                return copies;
+            });
+        }
+
+        @Override
+        public CompletableFuture<Void> addMemory(String userId, List<Message> messages, Optional<String> sessionId) {
+            messages.forEach(message -> added.add(firstText(message)));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<List<Message>> listMemory(String userId, Optional<Map<String, Object>> filters) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteMemory(String userId, Optional<String> sessionId) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public Flux<MemoryRecord> streamMemories(Optional<String> userId) {
+            userId.ifPresent(streamedUsers::add);
+            return Flux.fromIterable(records);
+        }
+
+        @Override
+        public CompletableFuture<List<String>> getAllUsers() {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Override
+        public CompletableFuture<Void> start() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> stop() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> health() {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+}